@@ -16,16 +16,34 @@ android {
         versionName = "1.0"
 
         testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+
+        // URL del relay local (módulo :relay); vacía = Firebase
+        buildConfigField("String", "RELAY_URL", "\"${project.findProperty("relayUrl") ?: ""}\"")
+
+        // La app solo está en español; el resto de traducciones de las librerías sobra
+        resourceConfigurations += listOf("es", "en")
+    }
+
+    buildFeatures {
+        buildConfig = true
     }
 
     buildTypes {
         release {
-            isMinifyEnabled = false
+            isMinifyEnabled = true
+            isShrinkResources = true
             proguardFiles(
                 getDefaultProguardFile("proguard-android-optimize.txt"),
                 "proguard-rules.pro"
             )
         }
+        // Igual que release pero firmada con la clave de debug, para :macrobenchmark
+        create("benchmark") {
+            initWith(getByName("release"))
+            signingConfig = signingConfigs.getByName("debug")
+            matchingFallbacks += listOf("release")
+            isDebuggable = false
+        }
     }
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_1_8
@@ -42,6 +60,7 @@ dependencies {
     implementation(libs.play.services.location)
     implementation(libs.firebase.database)
     implementation(libs.legacy.support.v4)
+    implementation(libs.recyclerview)
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
@@ -51,4 +70,22 @@ dependencies {
     implementation ("com.google.android.gms:play-services-auth:20.6.0")
     implementation ("com.github.bumptech.glide:glide:4.15.1")
     annotationProcessor ("com.github.bumptech.glide:compiler:4.15.1")
-}
\ No newline at end of file
+}
+
+// ./gradlew :app:apkSize — tamaño de cada APK y sus entradas más pesadas, para comparar entre versiones
+tasks.register("apkSize") {
+    group = "verification"
+    description = "Muestra el tamaño de los APK de debug y release."
+    dependsOn("assembleDebug", "assembleRelease")
+    doLast {
+        fileTree(layout.buildDirectory.dir("outputs/apk")).matching { include("**/*.apk") }.forEach { apk ->
+            println(String.format("%-40s %8d KB", apk.name, apk.length() / 1024))
+            java.util.zip.ZipFile(apk).use { zip ->
+                zip.entries().toList()
+                    .sortedByDescending { it.compressedSize }
+                    .take(8)
+                    .forEach { println(String.format("    %-60s %7d KB", it.name, it.compressedSize / 1024)) }
+            }
+        }
+    }
+}
@@ -18,4 +18,27 @@
 
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
-#-renamesourcefileattribute SourceFile
\ No newline at end of file
+#-renamesourcefileattribute SourceFile
+
+# Trazas legibles en los informes de fallos (se desofuscan con mapping.txt)
+-keepattributes SourceFile,LineNumberTable
+-renamesourcefileattribute SourceFile
+
+# Firebase Realtime Database lee tipos genéricos y anotaciones por reflexión.
+# Hoy solo se guardan mapas y tipos simples; si se añade una clase modelo,
+# anotarla con @IgnoreExtraProperties o @PropertyName basta para conservarla.
+-keepattributes Signature,*Annotation*,InnerClasses,EnclosingMethod
+-keepclassmembers @com.google.firebase.database.IgnoreExtraProperties class * {
+    <init>();
+    <fields>;
+    public <methods>;
+}
+-keepclassmembers class * {
+    @com.google.firebase.database.PropertyName <fields>;
+    @com.google.firebase.database.PropertyName <methods>;
+}
+
+# El nombre del estado se guarda en LocationPrefs: no puede cambiar entre versiones
+-keepclassmembers enum com.example.ubicacion.SharingSession$State {
+    <fields>;
+}
@@ -0,0 +1,57 @@
+package com.example.ubicacion;
+
+import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import com.google.firebase.auth.FirebaseAuth;
+
+// Reanuda el envío tras reiniciar el teléfono o actualizar la app si el conductor
+// lo tenía activo. Sin sesión se da por terminado; sin permiso en segundo plano se
+// deja pendiente y MainActivity lo reanuda al abrirse.
+public class BootReceiver extends BroadcastReceiver {
+
+    private static final String TAG = "BootReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (!Intent.ACTION_BOOT_COMPLETED.equals(action) && !Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
+            return;
+        }
+        SharingSession session = UbicacionApp.getSession();
+        if (!session.shouldResumeAfterBoot()) {
+            return;
+        }
+        if (FirebaseAuth.getInstance().getCurrentUser() == null) {
+            session.requestStop();
+            session.onServiceStopped();
+            return;
+        }
+        if (!canTrackInBackground(context)) {
+            Log.i(TAG, "Sin permiso de ubicación en segundo plano; se reanudará al abrir la app");
+            return;
+        }
+        try {
+            // Sin extras el servicio toma la ruta del perfil en caché
+            ContextCompat.startForegroundService(context, new Intent(context, LocationService.class));
+        } catch (IllegalStateException | SecurityException e) {
+            Log.w(TAG, "No se pudo reanudar el servicio de ubicación", e);
+        }
+    }
+
+    private static boolean canTrackInBackground(Context context) {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            return false;
+        }
+        // Desde Android 10 un servicio de ubicación lanzado sin pantalla necesita este permiso
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.Q
+                || ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_BACKGROUND_LOCATION) == PackageManager.PERMISSION_GRANTED;
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.ubicacion;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+// Hora estimada de llegada a las próximas paradas, a partir del avance sobre el trazado que
+// calcula RouteMatcher y de los tiempos por tramo de SegmentTravelTimes. Cada ubicación:
+//  - aprende el tiempo de los tramos que terminó de cruzar (la hora del cruce se interpola
+//    entre dos ubicaciones),
+//  - actualiza solo esos tramos en un árbol de Fenwick con los segundos esperados a la hora
+//    actual, de modo que el tiempo hasta cualquier parada es una resta de dos sumas O(log n),
+//  - y recalcula las UPCOMING paradas siguientes, no la ruta entera.
+// La publicación se limita a una cada publishIntervalMs o cuando cambia la próxima parada.
+public class EtaPredictor {
+
+    public static final long DEFAULT_PUBLISH_INTERVAL_MS = 15000;
+    public static final int DEFAULT_UPCOMING = 5;
+    // Con un hueco mayor (túnel, servicio detenido) no se sabe cuándo se cruzó el tramo
+    static final long MAX_GAP_MS = 120000;
+    // Retroceder más que esto es una vuelta nueva o un reajuste del trazado, no ruido
+    static final double RESTART_METERS = 100;
+    // Una parada deja de ser "próxima" cuando queda este margen atrás
+    static final double PASSED_METERS = 30;
+    private static final long SLOT_MS = 3600000;
+    private static final long DAY_MS = 24 * SLOT_MS;
+
+    private final SegmentTravelTimes times;
+    private final TimeZone zone;
+    private final String[] stopIds;
+    private final double[] stopAlong;
+    private final long publishIntervalMs;
+
+    // Segundos esperados por tramo a la hora activa, y su árbol de Fenwick (base 1)
+    private final double[] expected;
+    private final double[] tree;
+    private int activeSlot = -1;
+
+    private double progressMeters = Double.NaN;
+    private long progressMs;
+    private long lastFixMs;
+    private long binEntryMs = -1;
+    private int nextStop;
+    private int publishedNextStop = -1;
+    private long lastPublishMs;
+
+    private final long[] arrivalMs;
+    private int upcomingCount;
+    private volatile long learnedSamples;
+
+    public EtaPredictor(RouteGeometry route, List<Stop> stops, SegmentTravelTimes times, TimeZone zone) {
+        this(route, stops, times, zone, DEFAULT_UPCOMING, DEFAULT_PUBLISH_INTERVAL_MS);
+    }
+
+    public EtaPredictor(RouteGeometry route, List<Stop> stops, SegmentTravelTimes times, TimeZone zone,
+                        int upcoming, long publishIntervalMs) {
+        this.times = times;
+        this.zone = zone;
+        this.publishIntervalMs = publishIntervalMs;
+        this.lastPublishMs = -publishIntervalMs;
+
+        // Paradas en el orden en que se recorren; las que no caen sobre el trazado no tienen estimación
+        int count = 0;
+        double[] along = new double[stops.size()];
+        Integer[] order = new Integer[stops.size()];
+        for (int i = 0; i < stops.size(); i++) {
+            Stop stop = stops.get(i);
+            along[i] = route.alongOf(stop.latitude, stop.longitude);
+            if (!Double.isNaN(along[i])) {
+                order[count++] = i;
+            }
+        }
+        Integer[] onRoute = Arrays.copyOf(order, count);
+        Arrays.sort(onRoute, (a, b) -> Double.compare(along[a], along[b]));
+        stopIds = new String[count];
+        stopAlong = new double[count];
+        for (int i = 0; i < count; i++) {
+            stopIds[i] = stops.get(onRoute[i]).id;
+            stopAlong[i] = along[onRoute[i]];
+        }
+
+        expected = new double[times.getBinCount()];
+        tree = new double[times.getBinCount() + 1];
+        arrivalMs = new long[Math.max(1, upcoming)];
+    }
+
+    public SegmentTravelTimes getTravelTimes() {
+        return times;
+    }
+
+    // Devuelve true cuando toca publicar las estimaciones (ver toMap)
+    public boolean update(long timeMs, double alongMeters, boolean offRoute) {
+        if (Double.isNaN(alongMeters)) {
+            return false;
+        }
+        int slot = slotOf(timeMs);
+        if (slot != activeSlot) {
+            rebuild(slot);
+        }
+
+        boolean restart = Double.isNaN(progressMeters) || alongMeters < progressMeters - RESTART_METERS;
+        if (restart || offRoute || timeMs - lastFixMs > MAX_GAP_MS) {
+            // Sin un cruce limpio no se aprende nada del tramo en curso
+            binEntryMs = -1;
+        }
+        if (restart) {
+            progressMeters = alongMeters;
+            progressMs = timeMs;
+            nextStop = firstStopAfter(alongMeters - PASSED_METERS);
+        } else if (alongMeters > progressMeters) {
+            learnCrossings(alongMeters, timeMs);
+            progressMeters = alongMeters;
+            progressMs = timeMs;
+        } else {
+            // Quieto o ruido hacia atrás: el avance se mantiene, pero sigue ahí a esta hora
+            progressMs = timeMs;
+        }
+        lastFixMs = timeMs;
+
+        while (nextStop < stopAlong.length && stopAlong[nextStop] < progressMeters - PASSED_METERS) {
+            nextStop++;
+        }
+        double position = secondsTo(progressMeters);
+        upcomingCount = Math.min(arrivalMs.length, stopAlong.length - nextStop);
+        for (int k = 0; k < upcomingCount; k++) {
+            double seconds = Math.max(0, secondsTo(stopAlong[nextStop + k]) - position);
+            arrivalMs[k] = timeMs + Math.round(seconds * 1000);
+        }
+
+        if (nextStop != publishedNextStop || timeMs - lastPublishMs >= publishIntervalMs) {
+            publishedNextStop = nextStop;
+            lastPublishMs = timeMs;
+            return true;
+        }
+        return false;
+    }
+
+    private void learnCrossings(double alongMeters, long timeMs) {
+        int from = times.binOf(progressMeters);
+        int to = times.binOf(alongMeters);
+        double span = alongMeters - progressMeters;
+        for (int bin = from; bin < to; bin++) {
+            double boundary = (bin + 1) * times.getBinMeters();
+            long crossMs = progressMs + Math.round((boundary - progressMeters) / span * (timeMs - progressMs));
+            if (binEntryMs >= 0 && times.observe(bin, slotOf(binEntryMs), (crossMs - binEntryMs) / 1000.0)) {
+                learnedSamples++;
+                refresh(bin);
+            }
+            binEntryMs = crossMs;
+        }
+    }
+
+    // Segundos desde el inicio del trazado hasta "alongMeters" según lo aprendido a la hora activa
+    private double secondsTo(double alongMeters) {
+        int bin = times.binOf(alongMeters);
+        double fraction = (alongMeters - bin * times.getBinMeters()) / times.binLength(bin);
+        fraction = fraction < 0 ? 0 : fraction > 1 ? 1 : fraction;
+        return prefix(bin) + expected[bin] * fraction;
+    }
+
+    private void rebuild(int slot) {
+        activeSlot = slot;
+        Arrays.fill(tree, 0);
+        for (int bin = 0; bin < expected.length; bin++) {
+            expected[bin] = times.expectedSeconds(bin, slot);
+            tree[bin + 1] += expected[bin];
+            int parent = (bin + 1) + ((bin + 1) & -(bin + 1));
+            if (parent < tree.length) {
+                tree[parent] += tree[bin + 1];
+            }
+        }
+    }
+
+    private void refresh(int bin) {
+        double value = times.expectedSeconds(bin, activeSlot);
+        double delta = value - expected[bin];
+        expected[bin] = value;
+        for (int i = bin + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // Suma de los tramos [0, bin)
+    private double prefix(int bin) {
+        double sum = 0;
+        for (int i = bin; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    private int firstStopAfter(double alongMeters) {
+        int index = Arrays.binarySearch(stopAlong, alongMeters);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private int slotOf(long timeMs) {
+        long local = (timeMs + zone.getOffset(timeMs)) % DAY_MS;
+        return (int) ((local < 0 ? local + DAY_MS : local) / SLOT_MS);
+    }
+
+    public int getUpcomingCount() {
+        return upcomingCount;
+    }
+
+    public String getUpcomingStopId(int k) {
+        return stopIds[nextStop + k];
+    }
+
+    // Hora estimada de llegada, en la misma base de tiempo que las ubicaciones
+    public long getArrivalMs(int k) {
+        return arrivalMs[k];
+    }
+
+    public int getStopCount() {
+        return stopIds.length;
+    }
+
+    public long getLearnedSamples() {
+        return learnedSamples;
+    }
+
+    // parada -> hora de llegada, para locations/<uid>/eta. Solo se arma al publicar.
+    public Map<String, Object> toMap() {
+        Map<String, Object> etas = new LinkedHashMap<>();
+        for (int k = 0; k < upcomingCount; k++) {
+            etas.put(stopIds[nextStop + k], arrivalMs[k]);
+        }
+        return etas;
+    }
+}
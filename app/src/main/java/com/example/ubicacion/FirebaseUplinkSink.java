@@ -0,0 +1,19 @@
+package com.example.ubicacion;
+
+import com.google.firebase.database.DatabaseReference;
+
+import java.util.Map;
+
+public class FirebaseUplinkSink implements LocationUplink.Sink {
+
+    private final DatabaseReference rootReference;
+
+    public FirebaseUplinkSink(DatabaseReference rootReference) {
+        this.rootReference = rootReference;
+    }
+
+    @Override
+    public void write(Map<String, Object> updates, LocationUplink.Callback callback) {
+        rootReference.updateChildren(updates, (error, ref) -> callback.onComplete(error == null));
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.ubicacion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Formato binario compacto para lotes de ubicaciones.
+//
+// Cabecera: un byte de versión. Después, por cada ubicación y respecto a la anterior
+// (la primera respecto a cero): latitud y longitud en millonésimas de grado como
+// varint zigzag de la diferencia, tiempo en ms como varint de la diferencia, velocidad
+// en dm/s, rumbo en grados y precisión en dm como varint. Una ubicación típica ocupa
+// unos 10 bytes frente a los ~70 del mapa JSON que serializa Firebase.
+public final class FixCodec {
+
+    public static final int VERSION = 1;
+    private static final double COORDINATE_SCALE = 1e6;
+
+    private FixCodec() {
+    }
+
+    public static byte[] encode(List<LocationFix> fixes) {
+        Writer writer = new Writer(fixes.size() * 12 + 1);
+        for (LocationFix fix : fixes) {
+            writer.add(fix);
+        }
+        return writer.toByteArray();
+    }
+
+    public static List<LocationFix> decode(byte[] data) {
+        List<LocationFix> fixes = new ArrayList<>();
+        Reader reader = new Reader(data, 0, data.length);
+        LocationFix fix = new LocationFix();
+        while (reader.next(fix)) {
+            fixes.add(new LocationFix().copyFrom(fix));
+        }
+        return fixes;
+    }
+
+    // Codificador reutilizable: tras reset() no vuelve a reservar memoria mientras quepa en el búfer
+    public static final class Writer {
+        private byte[] buffer;
+        private int size;
+        private long lastLat;
+        private long lastLon;
+        private long lastTime;
+
+        public Writer(int initialCapacity) {
+            buffer = new byte[Math.max(16, initialCapacity)];
+            reset();
+        }
+
+        public void reset() {
+            size = 0;
+            lastLat = 0;
+            lastLon = 0;
+            lastTime = 0;
+            buffer[size++] = (byte) VERSION;
+        }
+
+        public void add(LocationFix fix) {
+            long lat = Math.round(fix.latitude * COORDINATE_SCALE);
+            long lon = Math.round(fix.longitude * COORDINATE_SCALE);
+            ensureCapacity(40);
+            writeSigned(lat - lastLat);
+            writeSigned(lon - lastLon);
+            writeSigned(fix.time - lastTime);
+            writeUnsigned(Math.max(0, Math.round(fix.speed * 10)));
+            writeUnsigned(Math.round(normalizeBearing(fix.bearing)) % 360);
+            writeUnsigned(Math.max(0, Math.round(fix.accuracy * 10)));
+            lastLat = lat;
+            lastLon = lon;
+            lastTime = fix.time;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public byte[] buffer() {
+            return buffer;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+
+        private void writeSigned(long value) {
+            writeUnsigned((value << 1) ^ (value >> 63));
+        }
+
+        private void writeUnsigned(long value) {
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+    }
+
+    // Decodificador en streaming: rellena la misma LocationFix en cada llamada a next()
+    public static final class Reader {
+        private final byte[] data;
+        private final int end;
+        private int position;
+        private long lastLat;
+        private long lastLon;
+        private long lastTime;
+
+        public Reader(byte[] data, int offset, int length) {
+            this.data = data;
+            this.end = offset + length;
+            this.position = offset;
+            if (length < 1 || data[offset] != VERSION) {
+                throw new IllegalArgumentException("Versión de lote no soportada");
+            }
+            position++;
+        }
+
+        public boolean next(LocationFix into) {
+            if (position >= end) {
+                return false;
+            }
+            lastLat += readSigned();
+            lastLon += readSigned();
+            lastTime += readSigned();
+            float speed = readUnsigned() / 10f;
+            float bearing = readUnsigned();
+            float accuracy = readUnsigned() / 10f;
+            into.set(lastLat / COORDINATE_SCALE, lastLon / COORDINATE_SCALE, lastTime, speed, bearing, accuracy);
+            return true;
+        }
+
+        private long readSigned() {
+            long raw = readUnsigned();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        private long readUnsigned() {
+            long result = 0;
+            int shift = 0;
+            while (true) {
+                if (position >= end || shift > 63) {
+                    throw new IllegalArgumentException("Lote truncado");
+                }
+                byte b = data[position++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+                shift += 7;
+            }
+        }
+    }
+
+    private static float normalizeBearing(float bearing) {
+        float normalized = bearing % 360f;
+        return normalized < 0 ? normalized + 360f : normalized;
+    }
+
+    // Base64 estándar; java.util.Base64 requiere API 26 y minSdk es 24
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    public static String toBase64(byte[] data, int length) {
+        StringBuilder out = new StringBuilder((length + 2) / 3 * 4);
+        for (int i = 0; i < length; i += 3) {
+            int b0 = data[i] & 0xFF;
+            int b1 = i + 1 < length ? data[i + 1] & 0xFF : 0;
+            int b2 = i + 2 < length ? data[i + 2] & 0xFF : 0;
+            out.append(BASE64[b0 >>> 2]);
+            out.append(BASE64[((b0 & 0x03) << 4) | (b1 >>> 4)]);
+            out.append(i + 1 < length ? BASE64[((b1 & 0x0F) << 2) | (b2 >>> 6)] : '=');
+            out.append(i + 2 < length ? BASE64[b2 & 0x3F] : '=');
+        }
+        return out.toString();
+    }
+
+    public static byte[] fromBase64(String text) {
+        int padding = text.endsWith("==") ? 2 : text.endsWith("=") ? 1 : 0;
+        byte[] out = new byte[text.length() / 4 * 3 - padding];
+        int o = 0;
+        for (int i = 0; i < text.length(); i += 4) {
+            int n = (base64Value(text.charAt(i)) << 18) | (base64Value(text.charAt(i + 1)) << 12)
+                    | (base64Value(text.charAt(i + 2)) << 6) | base64Value(text.charAt(i + 3));
+            if (o < out.length) out[o++] = (byte) (n >>> 16);
+            if (o < out.length) out[o++] = (byte) (n >>> 8);
+            if (o < out.length) out[o++] = (byte) n;
+        }
+        return out;
+    }
+
+    private static int base64Value(char c) {
+        if (c >= 'A' && c <= 'Z') return c - 'A';
+        if (c >= 'a' && c <= 'z') return c - 'a' + 26;
+        if (c >= '0' && c <= '9') return c - '0' + 52;
+        if (c == '+') return 62;
+        if (c == '/') return 63;
+        if (c == '=') return 0;
+        throw new IllegalArgumentException("Carácter Base64 no válido: " + c);
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.ubicacion;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+// Diario binario de ubicaciones con registros de tamaño fijo en un anillo mapeado en memoria.
+// Cada registro lleva su número de secuencia y un checksum, así que tras un cierre abrupto
+// se recupera recorriendo el anillo sin depender de que la cabecera esté al día.
+public class FixJournal implements Closeable {
+
+    private static final int MAGIC = 0x59564A31; // "YVJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_ACKED_SEQ = 16;
+
+    static final int RECORD_SIZE = 48;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private long nextSeq = 1;
+    private long ackedSeq;
+    private long lostRecords;
+
+    public FixJournal(File path, int capacity) throws IOException {
+        this.file = new RandomAccessFile(path, "rw");
+        boolean fresh = file.length() < HEADER_SIZE;
+        int storedCapacity = fresh ? capacity : readStoredCapacity();
+        if (storedCapacity != capacity) {
+            // Cambió el tamaño configurado: empezamos un diario nuevo
+            fresh = true;
+        }
+        this.capacity = capacity;
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        if (fresh) {
+            file.setLength(0);
+        }
+        file.setLength(size);
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        if (fresh) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(OFFSET_CAPACITY, capacity);
+            buffer.putLong(OFFSET_ACKED_SEQ, 0);
+        } else {
+            recover();
+        }
+    }
+
+    // Un diario por cuenta: lo pendiente de un usuario nunca se envía con la sesión de otro
+    // y se retoma cuando ese usuario vuelve a entrar
+    public static File fileFor(File dir, String uid) {
+        return new File(dir, "fixes-" + uid + ".journal");
+    }
+
+    private int readStoredCapacity() throws IOException {
+        file.seek(0);
+        if (file.readInt() != MAGIC || file.readInt() != VERSION) {
+            return -1;
+        }
+        return file.readInt();
+    }
+
+    private void recover() {
+        ackedSeq = buffer.getLong(OFFSET_ACKED_SEQ);
+        long maxSeq = ackedSeq;
+        for (int slot = 0; slot < capacity; slot++) {
+            long seq = validSeqAt(slot);
+            if (seq > maxSeq) {
+                maxSeq = seq;
+            }
+        }
+        nextSeq = maxSeq + 1;
+    }
+
+    public synchronized long append(LocationFix fix) {
+        long seq = nextSeq++;
+        writeRecord(seq, fix);
+        if (seq - capacity > ackedSeq) {
+            // Anillo lleno: el registro más antiguo sin confirmar se ha sobrescrito
+            lostRecords++;
+        }
+        return seq;
+    }
+
+    // Reescribe en su sitio el último registro, para fusiones de ubicaciones casi idénticas
+    public synchronized void updateLast(LocationFix fix) {
+        long seq = nextSeq - 1;
+        if (seq > ackedSeq) {
+            writeRecord(seq, fix);
+        }
+    }
+
+    // Copia en "out" hasta "max" registros pendientes en orden y devuelve la secuencia del último,
+    // o -1 si no hay nada que enviar. No confirma nada hasta llamar a acknowledge().
+    public synchronized long read(int max, List<LocationFix> out) {
+        long last = -1;
+        for (long seq = firstPendingSeq(); seq < nextSeq && out.size() < max; seq++) {
+            int slot = slotOf(seq);
+            if (validSeqAt(slot) != seq) {
+                // Registro a medio escribir o ya sobrescrito
+                continue;
+            }
+            out.add(readRecord(slot, new LocationFix()));
+            last = seq;
+        }
+        return last;
+    }
+
+    public synchronized void acknowledge(long seq) {
+        if (seq > ackedSeq) {
+            ackedSeq = Math.min(seq, nextSeq - 1);
+            buffer.putLong(OFFSET_ACKED_SEQ, ackedSeq);
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return (int) (nextSeq - firstPendingSeq());
+    }
+
+    public synchronized long getLostRecords() {
+        return lostRecords;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    private long firstPendingSeq() {
+        return Math.max(ackedSeq + 1, nextSeq - capacity);
+    }
+
+    private int slotOf(long seq) {
+        return (int) (seq % capacity);
+    }
+
+    private void writeRecord(long seq, LocationFix fix) {
+        int offset = HEADER_SIZE + slotOf(seq) * RECORD_SIZE;
+        // La secuencia se escribe la última para que un registro a medias no parezca válido
+        buffer.putLong(offset, 0);
+        buffer.putDouble(offset + 8, fix.latitude);
+        buffer.putDouble(offset + 16, fix.longitude);
+        buffer.putLong(offset + 24, fix.time);
+        buffer.putFloat(offset + 32, fix.speed);
+        buffer.putFloat(offset + 36, fix.bearing);
+        buffer.putFloat(offset + 40, fix.accuracy);
+        buffer.putInt(offset + 44, checksum(seq, offset));
+        buffer.putLong(offset, seq);
+    }
+
+    private LocationFix readRecord(int slot, LocationFix into) {
+        int offset = HEADER_SIZE + slot * RECORD_SIZE;
+        return into.set(buffer.getDouble(offset + 8), buffer.getDouble(offset + 16), buffer.getLong(offset + 24),
+                buffer.getFloat(offset + 32), buffer.getFloat(offset + 36), buffer.getFloat(offset + 40));
+    }
+
+    private long validSeqAt(int slot) {
+        int offset = HEADER_SIZE + slot * RECORD_SIZE;
+        long seq = buffer.getLong(offset);
+        if (seq <= 0 || slotOf(seq) != slot || buffer.getInt(offset + 44) != checksum(seq, offset)) {
+            return 0;
+        }
+        return seq;
+    }
+
+    private int checksum(long seq, int offset) {
+        long h = seq * 0x9E3779B97F4A7C15L;
+        for (int i = 8; i < 44; i += 4) {
+            h = (h ^ buffer.getInt(offset + i)) * 0x100000001B3L;
+        }
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.ubicacion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Procesa las ubicaciones fuera del hilo que las recibe. El callback solo copia la
+// ubicación en una FixQueue; las etapas (filtrado, codificación, envío) corren en
+// el ejecutor, una ubicación tras otra y en orden.
+public class FixPipeline {
+
+    public interface Stage {
+        // Devuelve false para descartar la ubicación y no pasarla a las etapas siguientes
+        boolean process(LocationFix fix);
+    }
+
+    public static final class StageStats {
+        public final String name;
+        private final LatencyHistogram histogram;
+        private final AtomicLong failures = new AtomicLong();
+
+        StageStats(String name) {
+            this.name = name;
+            this.histogram = new LatencyHistogram(name + "_ns");
+        }
+
+        void record(long nanos) {
+            histogram.record(nanos);
+        }
+
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        // Ubicaciones en las que la etapa lanzó una excepción; se descartan sin frenar la cola
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getMeanNanos() {
+            return histogram.getMean();
+        }
+
+        public long getMaxNanos() {
+            return histogram.getMax();
+        }
+
+        public long getPercentileNanos(double percentile) {
+            return histogram.getPercentile(percentile);
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+    }
+
+    private final FixQueue queue;
+    private final Executor executor;
+    private final List<Stage> stages = new ArrayList<>();
+    private final List<StageStats> stageStats = new ArrayList<>();
+    private final StageStats queueWait = new StageStats("queue_wait");
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final AtomicLong droppedFixes = new AtomicLong();
+    private final LocationFix current = new LocationFix();
+    private final Runnable drainTask = this::drain;
+    private Runnable onDrained;
+
+    public FixPipeline(int capacity, Executor executor) {
+        this.queue = new FixQueue(capacity);
+        this.executor = executor;
+    }
+
+    // Las etapas se añaden antes de empezar a recibir ubicaciones
+    public FixPipeline addStage(String name, Stage stage) {
+        stages.add(stage);
+        stageStats.add(new StageStats("stage_" + name));
+        return this;
+    }
+
+    // Se ejecuta en el hilo del pipeline cada vez que la cola queda vacía
+    public FixPipeline setOnDrained(Runnable onDrained) {
+        this.onDrained = onDrained;
+        return this;
+    }
+
+    public boolean submit(double latitude, double longitude, long time, float speed, float bearing, float accuracy) {
+        if (!queue.offer(latitude, longitude, time, speed, bearing, accuracy, System.nanoTime())) {
+            // Contrapresión: si el procesamiento no da abasto se pierde la ubicación, nunca se bloquea al productor
+            droppedFixes.incrementAndGet();
+            return false;
+        }
+        scheduleDrain();
+        return true;
+    }
+
+    public boolean submit(LocationFix fix) {
+        return submit(fix.latitude, fix.longitude, fix.time, fix.speed, fix.bearing, fix.accuracy);
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                // El servicio se está cerrando: lo que quede en la cola ya no se procesa
+                droppedFixes.incrementAndGet();
+            }
+        }
+    }
+
+    private void drain() {
+        do {
+            try {
+                long enqueuedAt;
+                while ((enqueuedAt = queue.poll(current)) >= 0) {
+                    long start = System.nanoTime();
+                    queueWait.record(start - enqueuedAt);
+                    for (int i = 0; i < stages.size(); i++) {
+                        StageStats stats = stageStats.get(i);
+                        boolean keep;
+                        try {
+                            keep = stages.get(i).process(current);
+                        } catch (RuntimeException e) {
+                            stats.failures.incrementAndGet();
+                            keep = false;
+                        }
+                        long end = System.nanoTime();
+                        stats.record(end - start);
+                        start = end;
+                        if (!keep) {
+                            break;
+                        }
+                    }
+                }
+                if (onDrained != null) {
+                    onDrained.run();
+                }
+            } finally {
+                // Pase lo que pase, la próxima ubicación vuelve a programar el vaciado
+                drainScheduled.set(false);
+            }
+            // Una ubicación pudo llegar justo antes de liberar la marca
+        } while (!queue.isEmpty() && drainScheduled.compareAndSet(false, true));
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getCapacity() {
+        return queue.capacity();
+    }
+
+    public long getDroppedFixes() {
+        return droppedFixes.get();
+    }
+
+    public StageStats getQueueWaitStats() {
+        return queueWait;
+    }
+
+    public List<StageStats> getStageStats() {
+        return Collections.unmodifiableList(stageStats);
+    }
+}
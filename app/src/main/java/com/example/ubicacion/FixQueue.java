@@ -0,0 +1,79 @@
+package com.example.ubicacion;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Cola acotada sin bloqueos (varios productores, un consumidor) con las ranuras
+// preasignadas: encolar copia los valores y no reserva memoria.
+public class FixQueue {
+
+    private final LocationFix[] slots;
+    private final long[] enqueuedAtNanos;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    public FixQueue(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        slots = new LocationFix[size];
+        enqueuedAtNanos = new long[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new LocationFix();
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    // Devuelve false si la cola está llena; el productor nunca espera
+    public boolean offer(double latitude, double longitude, long time, float speed, float bearing, float accuracy, long nowNanos) {
+        while (true) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots[index].set(latitude, longitude, time, speed, bearing, accuracy);
+                    enqueuedAtNanos[index] = nowNanos;
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+    }
+
+    public boolean offer(LocationFix fix, long nowNanos) {
+        return offer(fix.latitude, fix.longitude, fix.time, fix.speed, fix.bearing, fix.accuracy, nowNanos);
+    }
+
+    // Solo desde el hilo consumidor. Copia la ubicación en "into" y devuelve el instante
+    // en que se encoló, o -1 si la cola está vacía.
+    public long poll(LocationFix into) {
+        long pos = head.get();
+        int index = (int) (pos & mask);
+        if (sequences.get(index) != pos + 1) {
+            return -1;
+        }
+        into.copyFrom(slots[index]);
+        long enqueuedAt = enqueuedAtNanos[index];
+        sequences.lazySet(index, pos + mask + 1);
+        head.lazySet(pos + 1);
+        return enqueuedAt;
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.ubicacion;
+
+// Vigila que el proveedor siga entregando ubicaciones y que los envíos se confirmen.
+// Si el proveedor se queda mudo (GPS perdido, permiso retirado, ubicación apagada) escala
+// por pasos en lugar de seguir como si nada:
+//  - REREQUEST: se vuelve a pedir ubicaciones, sin distancia mínima
+//  - FALLBACK: se baja a precisión equilibrada, que también usa wifi y antenas
+//  - DEGRADED: se avisa arriba y en la notificación; se reintenta cada DEGRADED_RETRY_MS
+// Con la primera ubicación se sale del paso. Si se recuperó en FALLBACK se sigue así
+// FALLBACK_HOLD_MS antes de volver a probar la precisión alta.
+public class FixWatchdog {
+
+    public enum Step {
+        OK,
+        REREQUEST,
+        FALLBACK,
+        DEGRADED
+    }
+
+    public interface Listener {
+        // Al entrar en un paso, y cada DEGRADED_RETRY_MS mientras dura DEGRADED
+        void onStep(Step step);
+
+        void onUploadStalled(boolean stalled);
+    }
+
+    // Sin ubicaciones durante tantos intervalos esperados se considera atascado
+    static final int STALL_INTERVALS = 3;
+    static final long MIN_STALL_MS = 20 * 1000L;
+    // Tiempo que se le da a cada paso antes de pasar al siguiente
+    static final long MIN_STEP_MS = 30 * 1000L;
+    static final long DEGRADED_RETRY_MS = 5 * 60 * 1000L;
+    static final long FALLBACK_HOLD_MS = 2 * 60 * 1000L;
+    // Con distancia mínima el proveedor no entrega nada si el vehículo no se mueve
+    static final long STATIONARY_GAP_MS = 5 * 60 * 1000L;
+    // Un envío hecho sin ninguna confirmación en este tiempo. Cuenta desde que se envió, no
+    // desde que hay datos pendientes: con ventanas largas lo pendiente espera a propósito.
+    static final long UPLOAD_STALL_MS = 3 * 60 * 1000L;
+
+    private final Listener listener;
+    private Step step = Step.OK;
+    private long stepSinceMs;
+    private long lastFixMs;
+    private long expectedGapMs = SamplingPolicy.INITIAL.intervalMs;
+    private long restarts;
+
+    private long ackedCount = -1;
+    private long lastAckMs;
+    private boolean uploadStalled;
+
+    public FixWatchdog(Listener listener, long nowMs) {
+        this.listener = listener;
+        lastFixMs = nowMs;
+        lastAckMs = nowMs;
+        stepSinceMs = nowMs;
+    }
+
+    // Lo que pidió la política, antes de aplicarle el paso actual
+    public synchronized void setExpected(SamplingPolicy.Decision decision) {
+        expectedGapMs = decision.minDisplacementMeters > 0
+                ? Math.max(decision.intervalMs, STATIONARY_GAP_MS)
+                : decision.intervalMs;
+    }
+
+    public void onFix(long nowMs) {
+        Step changed;
+        synchronized (this) {
+            lastFixMs = nowMs;
+            if (step == Step.REREQUEST) {
+                changed = enter(Step.OK, nowMs);
+            } else if (step == Step.DEGRADED) {
+                // Sea cual sea el proveedor que volvió, se queda en el de respaldo un rato
+                changed = enter(Step.FALLBACK, nowMs);
+            } else {
+                changed = null;
+            }
+        }
+        notifyStep(changed);
+    }
+
+    // sentFixes: ubicaciones confirmadas por el servidor hasta ahora (solo importa si cambia).
+    // awaitingAck: hay un envío hecho sin confirmar y debería haber conexión.
+    public void tick(long nowMs, long sentFixes, boolean awaitingAck) {
+        Step changed;
+        Boolean stalledChanged = null;
+        synchronized (this) {
+            changed = update(nowMs);
+            if (sentFixes != ackedCount || !awaitingAck) {
+                ackedCount = sentFixes;
+                lastAckMs = nowMs;
+            }
+            boolean stalled = awaitingAck && nowMs - lastAckMs >= UPLOAD_STALL_MS;
+            if (stalled != uploadStalled) {
+                uploadStalled = stalled;
+                stalledChanged = stalled;
+            }
+        }
+        notifyStep(changed);
+        if (stalledChanged != null) {
+            listener.onUploadStalled(stalledChanged);
+        }
+    }
+
+    private Step update(long nowMs) {
+        long stallMs = Math.max(STALL_INTERVALS * expectedGapMs, MIN_STALL_MS);
+        long stepMs = Math.max(expectedGapMs, MIN_STEP_MS);
+        switch (step) {
+            case OK:
+                return nowMs - lastFixMs >= stallMs ? enter(Step.REREQUEST, nowMs) : null;
+            case REREQUEST:
+                return nowMs - stepSinceMs >= stepMs ? enter(Step.FALLBACK, nowMs) : null;
+            case FALLBACK:
+                if (lastFixMs < stepSinceMs) {
+                    // El respaldo tampoco entregó nada
+                    return nowMs - stepSinceMs >= stepMs ? enter(Step.DEGRADED, nowMs) : null;
+                }
+                if (nowMs - lastFixMs >= stallMs) {
+                    return enter(Step.DEGRADED, nowMs);
+                }
+                return nowMs - stepSinceMs >= FALLBACK_HOLD_MS ? enter(Step.OK, nowMs) : null;
+            default:
+                return nowMs - stepSinceMs >= DEGRADED_RETRY_MS ? enter(Step.DEGRADED, nowMs) : null;
+        }
+    }
+
+    private Step enter(Step next, long nowMs) {
+        if (next != Step.OK) {
+            restarts++;
+        }
+        step = next;
+        stepSinceMs = nowMs;
+        return next;
+    }
+
+    private void notifyStep(Step changed) {
+        // Fuera del candado: el listener vuelve a pedir ubicaciones
+        if (changed != null) {
+            listener.onStep(changed);
+        }
+    }
+
+    // La decisión con el paso actual encima: fuera de OK se pide sin distancia mínima, para
+    // que un vehículo quieto también responda, y en el respaldo nunca con precisión alta
+    public synchronized SamplingPolicy.Decision apply(SamplingPolicy.Decision decision) {
+        if (step == Step.OK) {
+            return decision;
+        }
+        SamplingPolicy.Priority priority = decision.priority;
+        if ((step == Step.FALLBACK || step == Step.DEGRADED) && priority == SamplingPolicy.Priority.HIGH_ACCURACY) {
+            priority = SamplingPolicy.Priority.BALANCED;
+        }
+        return new SamplingPolicy.Decision(decision.intervalMs, decision.fastestIntervalMs, priority, 0f);
+    }
+
+    public synchronized Step getStep() {
+        return step;
+    }
+
+    public synchronized boolean isUploadStalled() {
+        return uploadStalled;
+    }
+
+    public synchronized long getSilenceMs(long nowMs) {
+        return nowMs - lastFixMs;
+    }
+
+    public synchronized long getUnackedMs(long nowMs) {
+        return nowMs - lastAckMs;
+    }
+
+    // Veces que se volvió a pedir ubicaciones (cada paso fuera de OK)
+    public synchronized long getRestarts() {
+        return restarts;
+    }
+}
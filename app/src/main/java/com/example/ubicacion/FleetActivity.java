@@ -0,0 +1,287 @@
+package com.example.ubicacion;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.recyclerview.widget.SimpleItemAnimator;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Vista del despachador: todos los vehículos de una ruta, en vivo. Se escucha
+// rutas/<empresa>/rutas/<ruta>/vehiculos y locations/<uid> de cada uno con
+// ChildEventListener, así cada evento trae solo el hijo que cambió y nunca el árbol entero.
+// FleetView junta los cambios y la lista se actualiza como mucho una vez cada FRAME_MS.
+// Mientras la pantalla está visible deja un WatcherBeacon por vehículo, para que cada uno
+// publique en vivo en lugar de solo su latido.
+public class FleetActivity extends AppCompatActivity {
+
+    private static final long FRAME_MS = 250;
+    // Sin ubicaciones en este tiempo el vehículo se muestra como sin datos recientes
+    private static final long STALE_MS = 2 * 60 * 1000L;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private FleetView fleet = new FleetView();
+    private FleetAdapter adapter;
+    private TextView headerTextView;
+    private String empresa;
+    private String ruta;
+    private String watcherId;
+    private long lastFrameAt;
+
+    private DatabaseReference vehiclesRef;
+    private ChildEventListener vehiclesListener;
+    private DatabaseReference locationsRef;
+    private final Map<String, ChildEventListener> locationListeners = new HashMap<>();
+    private final Map<String, WatcherBeacon> beacons = new HashMap<>();
+
+    private final Runnable frame = new Runnable() {
+        @Override
+        public void run() {
+            lastFrameAt = SystemClock.uptimeMillis();
+            fleet.flush(adapter);
+            headerTextView.setText(String.format(Locale.US, "Ruta %s · %d vehículos", ruta, fleet.getRowCount()));
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_fleet);
+        empresa = getIntent().getStringExtra(LocationService.EXTRA_EMPRESA);
+        ruta = getIntent().getStringExtra(LocationService.EXTRA_RUTA);
+        if (empresa == null || ruta == null) {
+            Toast.makeText(this, "No hay una ruta asignada", Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+        headerTextView = findViewById(R.id.tv_fleet_header);
+        headerTextView.setText("Ruta " + ruta);
+
+        RecyclerView list = findViewById(R.id.rv_fleet);
+        list.setLayoutManager(new LinearLayoutManager(this));
+        list.setHasFixedSize(true);
+        // Sin el fundido de cada cambio: con cientos de filas cada 250 ms solo sería trabajo extra
+        RecyclerView.ItemAnimator animator = list.getItemAnimator();
+        if (animator instanceof SimpleItemAnimator) {
+            ((SimpleItemAnimator) animator).setSupportsChangeAnimations(false);
+        }
+        adapter = new FleetAdapter();
+        list.setAdapter(adapter);
+
+        FirebaseDatabase database = FirebaseDatabase.getInstance();
+        vehiclesRef = database.getReference("rutas").child(empresa).child("rutas").child(ruta).child("vehiculos");
+        locationsRef = database.getReference("locations");
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        watcherId = currentUser != null ? currentUser.getUid() : null;
+    }
+
+    // Solo se escucha con la pantalla visible; al volver se arma de nuevo desde los eventos
+    // iniciales, que Firebase entrega desde su caché
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (vehiclesRef == null) {
+            return;
+        }
+        fleet = new FleetView();
+        adapter.notifyDataSetChanged();
+        vehiclesListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot dataSnapshot, @Nullable String previousChildName) {
+                String uid = dataSnapshot.getKey();
+                onUpdate(fleet.putVehicle(uid, dataSnapshot.child("nombre").getValue(String.class)));
+                watchLocation(uid);
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot dataSnapshot, @Nullable String previousChildName) {
+                onUpdate(fleet.putVehicle(dataSnapshot.getKey(), dataSnapshot.child("nombre").getValue(String.class)));
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot dataSnapshot) {
+                String uid = dataSnapshot.getKey();
+                ChildEventListener listener = locationListeners.remove(uid);
+                if (listener != null) {
+                    locationsRef.child(uid).removeEventListener(listener);
+                }
+                WatcherBeacon beacon = beacons.remove(uid);
+                if (beacon != null) {
+                    beacon.stop();
+                }
+                onUpdate(fleet.removeVehicle(uid));
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot dataSnapshot, @Nullable String previousChildName) {
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {
+                Toast.makeText(FleetActivity.this, "Sin permiso para ver la flota de esta ruta", Toast.LENGTH_SHORT).show();
+            }
+        };
+        vehiclesRef.addChildEventListener(vehiclesListener);
+    }
+
+    private void watchLocation(String uid) {
+        if (locationListeners.containsKey(uid)) {
+            return;
+        }
+        ChildEventListener listener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot dataSnapshot, @Nullable String previousChildName) {
+                onUpdate(fleet.putField(uid, dataSnapshot.getKey(), dataSnapshot.getValue()));
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot dataSnapshot, @Nullable String previousChildName) {
+                onUpdate(fleet.putField(uid, dataSnapshot.getKey(), dataSnapshot.getValue()));
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot dataSnapshot) {
+                onUpdate(fleet.putField(uid, dataSnapshot.getKey(), null));
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot dataSnapshot, @Nullable String previousChildName) {
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {
+                // Sin permiso sobre ese vehículo: queda en la lista sin posición
+            }
+        };
+        locationListeners.put(uid, listener);
+        locationsRef.child(uid).addChildEventListener(listener);
+        // El propio vehículo no cuenta como observado por estar mirando la flota
+        if (watcherId != null && !watcherId.equals(uid)) {
+            WatcherBeacon beacon = new WatcherBeacon(uid, watcherId);
+            beacons.put(uid, beacon);
+            beacon.start();
+        }
+    }
+
+    // El primer cambio después de un cuadro programa el siguiente; los demás esperan en FleetView
+    private void onUpdate(boolean scheduleFrame) {
+        if (scheduleFrame) {
+            handler.postAtTime(frame, Math.max(SystemClock.uptimeMillis(), lastFrameAt + FRAME_MS));
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (vehiclesListener == null) {
+            return;
+        }
+        vehiclesRef.removeEventListener(vehiclesListener);
+        vehiclesListener = null;
+        for (Map.Entry<String, ChildEventListener> entry : locationListeners.entrySet()) {
+            locationsRef.child(entry.getKey()).removeEventListener(entry.getValue());
+        }
+        locationListeners.clear();
+        for (WatcherBeacon beacon : beacons.values()) {
+            beacon.stop();
+        }
+        beacons.clear();
+        handler.removeCallbacks(frame);
+    }
+
+    private static final class VehicleHolder extends RecyclerView.ViewHolder {
+        final TextView name;
+        final TextView status;
+
+        VehicleHolder(View itemView) {
+            super(itemView);
+            name = itemView.findViewById(R.id.tv_vehicle_name);
+            status = itemView.findViewById(R.id.tv_vehicle_status);
+        }
+    }
+
+    // Lee directamente de la lista visible de FleetView, que solo cambia en flush()
+    private final class FleetAdapter extends RecyclerView.Adapter<VehicleHolder> implements FleetView.Changes {
+
+        @NonNull
+        @Override
+        public VehicleHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_fleet_vehicle, parent, false);
+            return new VehicleHolder(view);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull VehicleHolder holder, int position) {
+            FleetView.Vehicle vehicle = fleet.getRow(position);
+            holder.name.setText(vehicle.name != null ? vehicle.name : vehicle.uid);
+            holder.status.setText(status(vehicle, System.currentTimeMillis()));
+        }
+
+        @Override
+        public int getItemCount() {
+            return fleet.getRowCount();
+        }
+
+        @Override
+        public void onInserted(int position) {
+            notifyItemInserted(position);
+        }
+
+        @Override
+        public void onRemoved(int position) {
+            notifyItemRemoved(position);
+        }
+
+        @Override
+        public void onChanged(int position) {
+            notifyItemChanged(position);
+        }
+    }
+
+    private static String status(FleetView.Vehicle vehicle, long nowMs) {
+        if (vehicle.timestamp == 0) {
+            return "Sin ubicación";
+        }
+        long age = Math.max(0, nowMs - vehicle.timestamp) / 1000;
+        String ago = age < 60 ? age + " s" : age / 60 + " min";
+        if (vehicle.degraded) {
+            return "Sin señal · última ubicación hace " + ago;
+        }
+        if (nowMs - vehicle.timestamp > STALE_MS) {
+            return "Sin datos recientes · hace " + ago;
+        }
+        StringBuilder text = new StringBuilder();
+        if (vehicle.offRoute) {
+            text.append("Fuera de ruta");
+        } else if (vehicle.stopId != null) {
+            text.append("En parada ").append(vehicle.stopId);
+        } else if (!Double.isNaN(vehicle.progressMeters)) {
+            text.append(String.format(Locale.US, "km %.1f", vehicle.progressMeters / 1000));
+        } else {
+            text.append("En servicio");
+        }
+        return text.append(" · hace ").append(ago).toString();
+    }
+}
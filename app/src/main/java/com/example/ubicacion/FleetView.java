@@ -0,0 +1,193 @@
+package com.example.ubicacion;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Estado en memoria de los vehículos de una ruta para la vista del despachador.
+// Los eventos de Firebase (un hijo por vez, ver FleetActivity) cambian el mapa por uid al
+// instante, pero la lista que ve el adaptador solo cambia en flush(): una vez por cuadro,
+// con inserciones, bajas y cambios por posición, sin rehacer la lista entera. Un vehículo
+// que cambia diez veces entre dos cuadros se redibuja una vez.
+// Todo corre en el hilo principal, como los callbacks de Firebase.
+public class FleetView {
+
+    public static final class Vehicle {
+        public final String uid;
+        public String name;
+        public double latitude = Double.NaN;
+        public double longitude = Double.NaN;
+        public long timestamp;
+        public double progressMeters = Double.NaN;
+        public boolean offRoute;
+        public boolean degraded;
+        public String stopId;
+
+        // Nombre con el que está ubicado en la lista visible
+        String shownName;
+        boolean present;
+        boolean shown;
+        boolean dirty;
+        boolean queued;
+
+        Vehicle(String uid) {
+            this.uid = uid;
+        }
+
+        String sortName() {
+            return name != null ? name : uid;
+        }
+    }
+
+    // Cambios por posición, en el orden en que hay que avisarlos al adaptador
+    public interface Changes {
+        void onInserted(int position);
+
+        void onRemoved(int position);
+
+        void onChanged(int position);
+    }
+
+    private final Map<String, Vehicle> vehicles = new HashMap<>();
+    private final List<Vehicle> rows = new ArrayList<>();
+    private final List<Vehicle> queue = new ArrayList<>();
+
+    // Alta o cambio de nombre desde rutas/<empresa>/rutas/<ruta>/vehiculos.
+    // Devuelve true si hace falta programar un cuadro.
+    public boolean putVehicle(String uid, String name) {
+        Vehicle vehicle = vehicles.get(uid);
+        if (vehicle == null) {
+            vehicle = new Vehicle(uid);
+            vehicles.put(uid, vehicle);
+        }
+        vehicle.present = true;
+        vehicle.name = name;
+        return mark(vehicle);
+    }
+
+    public boolean removeVehicle(String uid) {
+        Vehicle vehicle = vehicles.remove(uid);
+        if (vehicle == null) {
+            return false;
+        }
+        vehicle.present = false;
+        return mark(vehicle);
+    }
+
+    // Un hijo de locations/<uid>; value == null es que se borró. Las claves que la lista no
+    // muestra (eta, config...) no ensucian la fila.
+    public boolean putField(String uid, String key, Object value) {
+        Vehicle vehicle = vehicles.get(uid);
+        if (vehicle == null) {
+            return false;
+        }
+        switch (key) {
+            case "latitude":
+                vehicle.latitude = value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+                break;
+            case "longitude":
+                vehicle.longitude = value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+                break;
+            case "timestamp":
+                vehicle.timestamp = value instanceof Number ? ((Number) value).longValue() : 0;
+                break;
+            case "progreso":
+                vehicle.progressMeters = value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+                break;
+            case "fueraDeRuta":
+                vehicle.offRoute = Boolean.TRUE.equals(value);
+                break;
+            case "salud":
+                vehicle.degraded = value instanceof Map && Boolean.TRUE.equals(((Map<?, ?>) value).get("degradado"));
+                break;
+            case "parada":
+                vehicle.stopId = value instanceof String ? (String) value : null;
+                break;
+            default:
+                return false;
+        }
+        return mark(vehicle);
+    }
+
+    private boolean mark(Vehicle vehicle) {
+        vehicle.dirty = true;
+        if (vehicle.queued) {
+            return false;
+        }
+        vehicle.queued = true;
+        queue.add(vehicle);
+        return queue.size() == 1;
+    }
+
+    public boolean hasPending() {
+        return !queue.isEmpty();
+    }
+
+    // Lleva la lista visible al estado actual y avisa cada cambio con la posición del momento
+    public void flush(Changes changes) {
+        for (int i = 0; i < queue.size(); i++) {
+            Vehicle vehicle = queue.get(i);
+            vehicle.queued = false;
+            if (!vehicle.dirty) {
+                continue;
+            }
+            vehicle.dirty = false;
+            if (vehicle.shown && (!vehicle.present || !vehicle.sortName().equals(vehicle.shownName))) {
+                // Baja, o cambio de nombre: sale de su lugar y se vuelve a insertar en orden
+                int position = indexOf(vehicle.shownName, vehicle.uid);
+                rows.remove(position);
+                vehicle.shown = false;
+                changes.onRemoved(position);
+            }
+            if (!vehicle.present) {
+                continue;
+            }
+            if (!vehicle.shown) {
+                vehicle.shownName = vehicle.sortName();
+                int position = -indexOf(vehicle.shownName, vehicle.uid) - 1;
+                rows.add(position, vehicle);
+                vehicle.shown = true;
+                changes.onInserted(position);
+            } else {
+                changes.onChanged(indexOf(vehicle.shownName, vehicle.uid));
+            }
+        }
+        queue.clear();
+    }
+
+    // Búsqueda binaria por nombre y uid, como Arrays.binarySearch
+    private int indexOf(String name, String uid) {
+        int low = 0;
+        int high = rows.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Vehicle row = rows.get(mid);
+            int cmp = row.shownName.compareToIgnoreCase(name);
+            if (cmp == 0) {
+                cmp = row.uid.compareTo(uid);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // Lo que muestra el adaptador; solo cambia dentro de flush()
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    public Vehicle getRow(int position) {
+        return rows.get(position);
+    }
+
+    public int getVehicleCount() {
+        return vehicles.size();
+    }
+}
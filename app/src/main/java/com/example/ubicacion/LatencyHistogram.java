@@ -0,0 +1,102 @@
+package com.example.ubicacion;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Histograma log-lineal al estilo HDR: cada potencia de dos se divide en 32 cubos iguales,
+// así que el error relativo de cualquier percentil es menor de 1/32 (~3 %).
+// Registrar es un incremento atómico sin bloqueos ni reservas de memoria; leer percentiles
+// recorre los ~1200 cubos y solo se hace al mostrar o enviar las métricas.
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Valores hasta 2^40 (unos 18 minutos en nanosegundos); lo demás cae en el último cubo
+    private static final int MAX_BITS = 40;
+    private static final int BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 2) * (SUB_BUCKETS / 2);
+
+    public final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexFor(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Reintenta hasta publicar el nuevo máximo
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    // Límite superior del cubo que contiene el percentil (0..100)
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    static int indexFor(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int bits = 64 - Long.numberOfLeadingZeros(value);
+        if (bits > MAX_BITS) {
+            return BUCKETS - 1;
+        }
+        // Los SUB_BUCKET_BITS bits más altos eligen el cubo dentro de su potencia de dos
+        int shift = bits - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS / 2;
+        return (shift + 1) * (SUB_BUCKETS / 2) + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / (SUB_BUCKETS / 2) - 1;
+        long sub = index % (SUB_BUCKETS / 2) + SUB_BUCKETS / 2;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.ubicacion;
+
+// Posición reportada por el GPS, independiente de android.location.Location
+// para poder procesarla y probarla en la JVM.
+public class LocationFix {
+
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    public double latitude;
+    public double longitude;
+    public long time;
+    public float speed;
+    public float bearing;
+    public float accuracy;
+
+    public LocationFix() {
+    }
+
+    public LocationFix(double latitude, double longitude, long time) {
+        this(latitude, longitude, time, 0f, 0f, 0f);
+    }
+
+    public LocationFix(double latitude, double longitude, long time, float speed, float bearing, float accuracy) {
+        set(latitude, longitude, time, speed, bearing, accuracy);
+    }
+
+    public LocationFix set(double latitude, double longitude, long time, float speed, float bearing, float accuracy) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.time = time;
+        this.speed = speed;
+        this.bearing = bearing;
+        this.accuracy = accuracy;
+        return this;
+    }
+
+    public LocationFix copyFrom(LocationFix other) {
+        return set(other.latitude, other.longitude, other.time, other.speed, other.bearing, other.accuracy);
+    }
+
+    public double distanceTo(LocationFix other) {
+        return distanceMeters(latitude, longitude, other.latitude, other.longitude);
+    }
+
+    // Distancia haversine en metros
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+}
@@ -5,12 +5,23 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.location.Location;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.BatteryManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
@@ -23,42 +34,725 @@ import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class LocationService extends Service {
 
     private static final String CHANNEL_ID = "LocationServiceChannel";
+    // Diario anterior, compartido por todas las cuentas; se descarta al arrancar
+    private static final String LEGACY_JOURNAL_FILE = "fixes.journal";
+    private static final int JOURNAL_CAPACITY = 20000; // ~12 h a una ubicación cada 2 s
+    private static final int PIPELINE_CAPACITY = 256;
+    private static final int SOURCE_CAPACITY = 64;
+    private static final int SOURCE_QUANTUM = 8;
+    private static final long DEFAULT_SOURCE_INTERVAL_MS = 1000;
+
+    // Ruta cuyas paradas se vigilan; sin extras se usa la del perfil en caché
+    public static final String EXTRA_EMPRESA = "empresa";
+    public static final String EXTRA_RUTA = "ruta";
+
+    private static final int NOTIFICATION_ID = 1;
+    private static final long NOTIFICATION_REFRESH_MS = 60 * 1000L;
+    private static final long METRICS_UPLOAD_MS = 5 * 60 * 1000L;
+    private static final long MIN_DRAIN_WINDOW_MS = 10 * 60 * 1000L;
+    private static final long SHIFT_MS = 12 * 60 * 60 * 1000L;
+    private static final long SHIFT_DATA_BUDGET_BYTES = 15L * 1024 * 1024;
+    // Por debajo de esto la red se trata como 2G
+    private static final int SLOW_LINK_KBPS = 250;
+    private static final long PRESENCE_TICK_MS = 10 * 1000L;
+    // Cada cuánto se guardan en disco los tiempos por tramo aprendidos
+    private static final long ETA_SAVE_MS = 10 * 60 * 1000L;
+    private static final long WATCHDOG_TICK_MS = 5 * 1000L;
+
+    private static volatile FixPipeline activePipeline;
+    private static volatile Metrics activeMetrics;
+
     private FusedLocationProviderClient fusedLocationClient;
-    private DatabaseReference databaseReference;
     private LocationCallback locationCallback;
+    private LocationUplink uplink;
+    private FixJournal journal;
+    private final SamplingPolicy samplingPolicy = new SamplingPolicy();
+    private SamplingPolicy.Decision currentDecision;
+    // Escala si el proveedor deja de entregar ubicaciones o los envíos dejan de confirmarse
+    private FixWatchdog watchdog;
+    private String healthPath;
+    private HandlerThread callbackThread;
+    private ExecutorService processingExecutor;
+    private FixPipeline pipeline;
+    private StopDetector stopDetector;
+    private final RouteMatcher routeMatcher = new RouteMatcher();
+    private String stopsRouteKey;
+    // Trazado y paradas de la ruta actual: con ambos se arma el predictor de llegadas
+    private RouteGeometry routeGeometry;
+    private List<Stop> routeStops;
+    private volatile EtaPredictor etaPredictor;
+    private volatile File etaFile;
+    private long etaSavedAt;
+    private Handler periodicHandler;
+    private String metricsPath;
+    private SharingSession session;
+    private volatile TripStore tripStore;
+    private ConnectivityManager connectivityManager;
+    private UploadScheduler uploadScheduler;
+    private volatile UploadScheduler.Plan uploadPlan;
+    private TrackingConfig.Values uploadLimits;
+    // Configuración remota: un ChildEventListener por capa, que solo recibe las claves que cambian
+    private final TrackingConfig trackingConfig = new TrackingConfig();
+    private volatile TrackingConfig.Values configValues = TrackingConfig.DEFAULTS;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean configApplyPending;
+    private String configEmpresa;
+    private String configStatusPath;
+    private DatabaseReference fleetConfigRef;
+    private ChildEventListener fleetConfigListener;
+    private DatabaseReference vehicleConfigRef;
+    private ChildEventListener vehicleConfigListener;
+    private DatabaseReference accountActiveRef;
+    private ValueEventListener accountActiveListener;
+    private long closedSourcesBytes;
+    private volatile PresenceMonitor presenceMonitor;
+    private DatabaseReference watchersRef;
+    private ValueEventListener watchersListener;
+    private DatabaseReference serverOffsetRef;
+    private ValueEventListener serverOffsetListener;
+    private volatile long serverTimeOffsetMs;
+    // Unidades adicionales (receptores NMEA externos) publicadas desde este dispositivo
+    private LocationUplink.Sink uplinkSink;
+    private MultiSourcePipeline sourcesPipeline;
+    private final Map<String, ExternalUnit> externalUnits = new HashMap<>();
+    private DatabaseReference sourcesRef;
+    private ValueEventListener sourcesListener;
+
+    private final Metrics metrics = new Metrics();
+    private final Metrics.Counter fixesReceived = metrics.counter("fixes_received");
+    private final LatencyHistogram fixAge = metrics.histogram("fix_age_ms");
+    private final long startedAt = SystemClock.elapsedRealtime();
+    private volatile int batteryLevel = -1;
+    private volatile int dischargeStartLevel = -1;
+    private volatile long dischargeStartMs;
+
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+            int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+            boolean charging = status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+            if (level >= 0 && scale > 0) {
+                int percent = level * 100 / scale;
+                trackDischarge(percent, charging);
+                samplingPolicy.setBattery(percent, charging);
+                applySamplingDecision();
+                if (uploadScheduler != null) {
+                    uploadScheduler.setBattery(percent, charging);
+                    applyUploadPlan();
+                }
+            }
+        }
+    };
+
+    // Sin red las ubicaciones siguen entrando al diario; al volver la conexión se envía lo acumulado
+    private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(Network network) {
+            periodicHandler.post(() -> onConnectivityChanged(true));
+        }
+
+        @Override
+        public void onLost(Network network) {
+            periodicHandler.post(() -> onConnectivityChanged(connectivityManager.getActiveNetwork() != null));
+        }
+
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+            UploadScheduler.Network type = toUploadNetwork(capabilities);
+            periodicHandler.post(() -> {
+                // Lo enviado hasta aquí salió por la red anterior
+                uploadScheduler.setBytesSent(sentBytes());
+                uploadScheduler.setNetwork(type);
+                applyUploadPlan();
+            });
+        }
+    };
+
+    // En Doze la red solo está disponible en las ventanas de mantenimiento
+    private final BroadcastReceiver idleReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            PowerManager powerManager = getSystemService(PowerManager.class);
+            uploadScheduler.setDeviceIdle(powerManager != null && powerManager.isDeviceIdleMode());
+            applyUploadPlan();
+        }
+    };
+
+    // La radio se encendió por otra app o por el sistema: se aprovecha para enviar lo pendiente
+    private final ConnectivityManager.OnNetworkActiveListener radioActiveListener =
+            () -> periodicHandler.post(this::piggybackUpload);
 
     @Override
     public void onCreate() {
         super.onCreate();
+        session = UbicacionApp.getSession();
 
         // Configuración del cliente de ubicación
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
-        databaseReference = FirebaseDatabase.getInstance().getReference("locations");
+
+        // El usuario se resuelve una sola vez, no en cada ubicación
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (currentUser != null) {
+            // Con -PrelayUrl=http://... las posiciones van al relay local en vez de a Firebase
+            uplinkSink = BuildConfig.RELAY_URL.isEmpty()
+                    ? new FirebaseUplinkSink(FirebaseDatabase.getInstance().getReference())
+                    : new RelayUplinkSink(BuildConfig.RELAY_URL);
+            uplink = new LocationUplink(uplinkSink, currentUser.getUid(), currentUser.getDisplayName());
+            uplink.setCompactTrail(true);
+            uplink.setMetrics(metrics);
+            metricsPath = "metricas/" + currentUser.getUid() + "/";
+            healthPath = "locations/" + currentUser.getUid() + "/salud";
+            try {
+                new File(getFilesDir(), LEGACY_JOURNAL_FILE).delete();
+                journal = new FixJournal(FixJournal.fileFor(getFilesDir(), currentUser.getUid()), JOURNAL_CAPACITY);
+                uplink.setJournal(journal);
+            } catch (IOException e) {
+                // Sin diario seguimos enviando, solo que sin persistencia ante cortes
+                journal = null;
+            }
+        }
+
+        uploadScheduler = new UploadScheduler(SHIFT_DATA_BUDGET_BYTES, SHIFT_MS, SystemClock.elapsedRealtime());
+        applyUploadPlan();
+
+        stopDetector = new StopDetector(event -> {
+            if (uplink != null) {
+                uplink.offerEvent(event, SystemClock.elapsedRealtime());
+            }
+        });
+
+        // Nada del procesamiento corre en el hilo principal: los callbacks llegan a su propio
+        // hilo y solo copian la ubicación en la cola del pipeline
+        callbackThread = new HandlerThread("location-callbacks");
+        callbackThread.start();
+        processingExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "location-pipeline"));
+        pipeline = new FixPipeline(PIPELINE_CAPACITY, processingExecutor)
+                .addStage("sampling", fix -> {
+                    samplingPolicy.onFix(fix);
+                    return true;
+                })
+                // Las paradas se evalúan antes del filtro: la simplificación del recorrido
+                // se saltaría justo las ubicaciones de la llegada
+                .addStage("stops", fix -> {
+                    stopDetector.process(fix);
+                    samplingPolicy.setDistanceToNextStop(stopDetector.getDistanceToNearestStop());
+                    return true;
+                })
+                // Avance sobre el trazado: también con ubicaciones en bruto, el filtro no cambia el tramo
+                .addStage("route", fix -> {
+                    routeMatcher.process(fix);
+                    if (uplink != null && routeMatcher.hasMatch()) {
+                        uplink.offerRouteProgress(routeMatcher.getDistanceAlongMeters(), routeMatcher.isOffRoute());
+                    }
+                    return true;
+                })
+                .addStage("eta", fix -> {
+                    EtaPredictor eta = etaPredictor;
+                    if (eta != null) {
+                        if (eta.update(fix.time, routeMatcher.getDistanceAlongMeters(), routeMatcher.isOffRoute())
+                                && uplink != null) {
+                            uplink.offerStopEtas(eta.toMap());
+                        }
+                        long now = SystemClock.elapsedRealtime();
+                        if (now - etaSavedAt >= ETA_SAVE_MS) {
+                            etaSavedAt = now;
+                            saveTravelTimes();
+                        }
+                    }
+                    return true;
+                })
+                // La política ve todas las ubicaciones en bruto; al envío solo llegan las filtradas
+                .addStage("filter", new TrackFilter())
+                // Historial local del turno, independiente de que el envío llegue o no
+                .addStage("trip", fix -> {
+                    if (tripStore == null) {
+                        // Abrirlo recorre los segmentos guardados: mejor aquí que en el hilo principal
+                        tripStore = UbicacionApp.getTripStore();
+                    }
+                    if (tripStore != null) {
+                        tripStore.append(fix);
+                    }
+                    return true;
+                })
+                .addStage("upload", fix -> {
+                    sendLocationToFirebase(fix);
+                    return true;
+                })
+                .setOnDrained(this::applySamplingDecision);
+        // Las fuentes externas comparten el hilo del pipeline; cada una por turnos
+        sourcesPipeline = new MultiSourcePipeline(processingExecutor, SOURCE_QUANTUM);
+        activePipeline = pipeline;
+        registerMetrics();
+        activeMetrics = metrics;
+
+        // Los avisos llegan en el hilo de los callbacks, el mismo de periodicHandler
+        watchdog = new FixWatchdog(new FixWatchdog.Listener() {
+            @Override
+            public void onStep(FixWatchdog.Step step) {
+                onWatchdogStep(step);
+            }
+
+            @Override
+            public void onUploadStalled(boolean stalled) {
+                reportHealth();
+                refreshNotification.run();
+            }
+        }, SystemClock.elapsedRealtime());
 
         locationCallback = new LocationCallback() {
             @Override
             public void onLocationResult(LocationResult locationResult) {
-                if (locationResult != null && locationResult.getLastLocation() != null) {
-                    Location location = locationResult.getLastLocation();
-                    sendLocationToFirebase(location);
+                if (locationResult != null) {
+                    long nowNanos = SystemClock.elapsedRealtimeNanos();
+                    watchdog.onFix(nowNanos / 1000000);
+                    for (Location location : locationResult.getLocations()) {
+                        fixesReceived.increment();
+                        fixAge.record((nowNanos - location.getElapsedRealtimeNanos()) / 1000000);
+                        pipeline.submit(location.getLatitude(), location.getLongitude(), location.getTime(),
+                                location.getSpeed(), location.getBearing(), location.getAccuracy());
+                    }
                 }
             }
         };
 
-        startLocationUpdates();
+        // El receptor de batería es "sticky": entrega el estado actual al registrarse
+        registerReceiver(batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        applySamplingDecision();
+
+        periodicHandler = new Handler(callbackThread.getLooper());
+        periodicHandler.postDelayed(refreshNotification, NOTIFICATION_REFRESH_MS);
+        periodicHandler.postDelayed(uploadMetrics, METRICS_UPLOAD_MS);
+        periodicHandler.postDelayed(watchdogTick, WATCHDOG_TICK_MS);
+        periodicHandler.postDelayed(tripFlush, TripStore.DEFAULT_MAX_BLOCK_AGE_MS);
+
+        // El servicio arranca con un turno nuevo (el de UploadScheduler). Si se vuelve a compartir
+        // con el servicio todavía vivo también; recuperar la conexión no cuenta como turno nuevo.
+        session.setListener((previous, state) -> {
+            if (state == SharingSession.State.SHARING && previous != SharingSession.State.PAUSED_OFFLINE) {
+                periodicHandler.post(() -> {
+                    uploadScheduler.startShift(SystemClock.elapsedRealtime());
+                    applyUploadPlan();
+                });
+            }
+        });
+
+        // El callback solo avisa cuando hay red; si arrancamos sin ella hay que marcarlo aquí
+        connectivityManager = getSystemService(ConnectivityManager.class);
+        if (connectivityManager.getActiveNetwork() == null) {
+            session.onConnectivityChanged(false);
+        }
+        connectivityManager.registerDefaultNetworkCallback(networkCallback);
+        connectivityManager.addDefaultNetworkActiveListener(radioActiveListener);
+        registerReceiver(idleReceiver, new IntentFilter(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED));
+
+        if (currentUser != null && BuildConfig.RELAY_URL.isEmpty()) {
+            watchPresence(currentUser.getUid());
+        }
+    }
+
+    // Con alguien mirando se publica en vivo; sin nadie, solo un latido por minuto
+    // (SamplingPolicy.HEARTBEAT_INTERVAL_MS).
+    // Con el relay no hay canal de presencia y se publica siempre en vivo.
+    private void watchPresence(String uid) {
+        presenceMonitor = new PresenceMonitor(mode -> periodicHandler.post(() -> onPresenceChanged(mode)));
+        FirebaseDatabase database = FirebaseDatabase.getInstance();
+        // Las marcas de los observadores son hora del servidor
+        serverOffsetRef = database.getReference(".info/serverTimeOffset");
+        serverOffsetListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                Long offset = dataSnapshot.getValue(Long.class);
+                serverTimeOffsetMs = offset != null ? offset : 0;
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+                // Se sigue con la hora local
+            }
+        };
+        serverOffsetRef.addValueEventListener(serverOffsetListener);
+        watchersRef = database.getReference("watchers").child(uid);
+        watchersListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                long[] lastSeen = new long[(int) dataSnapshot.getChildrenCount()];
+                int i = 0;
+                for (DataSnapshot child : dataSnapshot.getChildren()) {
+                    Long seen = child.getValue(Long.class);
+                    if (i < lastSeen.length) {
+                        lastSeen[i++] = seen != null ? seen : 0;
+                    }
+                }
+                presenceMonitor.onWatchers(lastSeen, serverNow());
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+                // Sin permiso de lectura: sin presencia se queda en vivo
+            }
+        };
+        watchersRef.addValueEventListener(watchersListener);
+        periodicHandler.postDelayed(presenceTick, PRESENCE_TICK_MS);
+    }
+
+    private long serverNow() {
+        return System.currentTimeMillis() + serverTimeOffsetMs;
+    }
+
+    private final Runnable presenceTick = new Runnable() {
+        @Override
+        public void run() {
+            presenceMonitor.tick(serverNow());
+            periodicHandler.postDelayed(this, PRESENCE_TICK_MS);
+        }
+    };
+
+    private void onPresenceChanged(PresenceMonitor.Mode mode) {
+        boolean live = mode == PresenceMonitor.Mode.LIVE;
+        samplingPolicy.setLive(live);
+        uploadScheduler.setWatched(live);
+        applySamplingDecision();
+        applyUploadPlan();
+        if (live) {
+            // Quien acaba de abrir el mapa recibe ya la última posición, sin esperar la ventana
+            flushEarly();
+        }
+    }
+
+    // Hay un servicio corriendo en este proceso (la pantalla lo compara con el estado guardado)
+    public static boolean isRunning() {
+        return activePipeline != null;
+    }
+
+    private void onConnectivityChanged(boolean online) {
+        boolean wasPaused = session.getState() == SharingSession.State.PAUSED_OFFLINE;
+        session.onConnectivityChanged(online);
+        boolean paused = session.getState() == SharingSession.State.PAUSED_OFFLINE;
+        if (paused != wasPaused) {
+            if (!paused) {
+                flushEarly();
+                flushExternalUplinks();
+            }
+            refreshNotification.run();
+        }
+        if (!online) {
+            uploadScheduler.setBytesSent(sentBytes());
+            uploadScheduler.setNetwork(UploadScheduler.Network.NONE);
+            applyUploadPlan();
+        }
+    }
+
+    private static UploadScheduler.Network toUploadNetwork(NetworkCapabilities capabilities) {
+        if (capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)) {
+            return UploadScheduler.Network.UNMETERED;
+        }
+        // Sin permiso de teléfono no se sabe si es 2G: se deduce del ancho de banda estimado
+        int kbps = capabilities.getLinkDownstreamBandwidthKbps();
+        return kbps > 0 && kbps < SLOW_LINK_KBPS ? UploadScheduler.Network.SLOW : UploadScheduler.Network.CELLULAR;
     }
 
-    private void startLocationUpdates() {
+    // Bytes enviados por este servicio, del propio vehículo y de las unidades externas
+    private synchronized long sentBytes() {
+        long bytes = uplink != null ? uplink.getSentBytes() : 0;
+        bytes += closedSourcesBytes;
+        for (ExternalUnit unit : externalUnits.values()) {
+            bytes += unit.uplink.getSentBytes();
+        }
+        return bytes;
+    }
+
+    // Ajusta ventana y tamaño de lote de todos los envíos cuando el planificador cambia de plan
+    private synchronized void applyUploadPlan() {
+        if (uplink == null) {
+            return;
+        }
+        uploadScheduler.setBytesSent(sentBytes());
+        UploadScheduler.Plan plan = uploadScheduler.evaluate(SystemClock.elapsedRealtime());
+        TrackingConfig.Values limits = configValues;
+        if (plan != uploadPlan || limits != uploadLimits) {
+            uploadPlan = plan;
+            uploadLimits = limits;
+            applyUploadPlan(uplink, plan);
+            for (ExternalUnit unit : externalUnits.values()) {
+                applyUploadPlan(unit.uplink, plan);
+            }
+        }
+    }
+
+    // El plan con los límites de la configuración remota encima
+    private void applyUploadPlan(LocationUplink target, UploadScheduler.Plan plan) {
+        TrackingConfig.Values limits = configValues;
+        target.setWindowMs(limits.limitWindowMs(plan.windowMs));
+        target.setMinGapMs(limits.limitWindowMs(0));
+        target.setMaxBatchSize(limits.capBatchSize(plan.maxBatchSize));
+    }
+
+    private final Runnable deferredFlush = this::flushEarly;
+
+    // Envíos fuera de la ventana: respetan el mínimo de la configuración remota y, si todavía
+    // no toca, salen en cuanto se cumple
+    private void flushEarly() {
+        if (uplink == null || session.getState() == SharingSession.State.PAUSED_OFFLINE) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (!uplink.flushEarly(now)) {
+            long delayMs = uplink.getEarlyFlushDelayMs(now);
+            if (delayMs > 0) {
+                periodicHandler.removeCallbacks(deferredFlush);
+                periodicHandler.postDelayed(deferredFlush, delayMs);
+            }
+        }
+    }
+
+    private void piggybackUpload() {
+        UploadScheduler.Plan plan = uploadPlan;
+        if (uplink == null || plan == null || session.getState() == SharingSession.State.PAUSED_OFFLINE) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        long minGapMs = configValues.limitWindowMs(plan.piggybackMinGapMs);
+        if (UploadScheduler.shouldPiggyback(minGapMs, now, uplink.getLastFlushMs(), uplink.hasPending())) {
+            uplink.flush(now);
+        }
+    }
+
+    // Métricas del servicio en marcha, o null si no está activo
+    @Nullable
+    public static Metrics getActiveMetrics() {
+        return activeMetrics;
+    }
+
+    private void registerMetrics() {
+        metrics.register(pipeline.getQueueWaitStats().getHistogram());
+        for (FixPipeline.StageStats stats : pipeline.getStageStats()) {
+            metrics.register(stats.getHistogram());
+            metrics.gauge(stats.name + "_failures", stats::getFailures);
+        }
+        metrics.gauge("queue_depth", pipeline::getQueueDepth);
+        metrics.gauge("pipeline_dropped", pipeline::getDroppedFixes);
+        metrics.gauge("fix_rate_per_min", () -> {
+            long minutes = (SystemClock.elapsedRealtime() - startedAt) / 60000;
+            return minutes > 0 ? (double) fixesReceived.get() / minutes : Double.NaN;
+        });
+        metrics.gauge("stop_arrivals", stopDetector::getArrivals);
+        metrics.gauge("route_progress_m", routeMatcher::getDistanceAlongMeters);
+        metrics.gauge("route_off", () -> routeMatcher.isOffRoute() ? 1 : 0);
+        metrics.gauge("route_grid_queries", routeMatcher::getGridQueries);
+        metrics.gauge("eta_learned", () -> {
+            EtaPredictor eta = etaPredictor;
+            return eta != null ? eta.getLearnedSamples() : Double.NaN;
+        });
+        metrics.gauge("sampling_interval_s", () -> {
+            SamplingPolicy.Decision decision = currentDecision;
+            return decision != null ? decision.intervalMs / 1000.0 : Double.NaN;
+        });
+        metrics.gauge("watchdog_step", () -> watchdog.getStep().ordinal());
+        metrics.gauge("watchdog_restarts", () -> watchdog.getRestarts());
+        metrics.gauge("battery_pct", () -> batteryLevel);
+        metrics.gauge("battery_drain_pct_h", this::getBatteryDrainPerHour);
+        if (uplink != null) {
+            metrics.gauge("uplink_pending", uplink::getPendingCount);
+            metrics.gauge("uplink_sent", uplink::getSentFixes);
+            metrics.gauge("uplink_dropped", uplink::getDroppedFixes);
+            metrics.gauge("upload_mode", () -> {
+                UploadScheduler.Plan plan = uploadPlan;
+                return plan != null ? plan.mode.ordinal() : Double.NaN;
+            });
+            metrics.gauge("upload_shift_kb", () -> uploadScheduler.getShiftBytes() / 1024.0);
+            metrics.gauge("watchers", () -> {
+                PresenceMonitor monitor = presenceMonitor;
+                return monitor != null ? monitor.getWatcherCount() : Double.NaN;
+            });
+        }
+        metrics.register(sourcesPipeline.getQueueWaitHistogram());
+        metrics.gauge("sources", sourcesPipeline::getSourceCount);
+        metrics.gauge("sources_rate_limited", sourcesPipeline::getRateLimited);
+        if (journal != null) {
+            metrics.gauge("journal_pending", journal::getPendingCount);
+        }
+        metrics.gauge("trip_disk_kb", () -> {
+            TripStore store = tripStore;
+            return store != null ? store.getDiskBytes() / 1024.0 : Double.NaN;
+        });
+        metrics.gauge("trip_write_errors", () -> {
+            TripStore store = tripStore;
+            return store != null ? store.getWriteErrors() : Double.NaN;
+        });
+    }
+
+    // El consumo se mide solo mientras descarga: al enchufar el teléfono la cuenta empieza de nuevo
+    private void trackDischarge(int percent, boolean charging) {
+        batteryLevel = percent;
+        if (charging) {
+            dischargeStartLevel = -1;
+        } else if (dischargeStartLevel < 0) {
+            dischargeStartMs = SystemClock.elapsedRealtime();
+            dischargeStartLevel = percent;
+        }
+    }
+
+    private double getBatteryDrainPerHour() {
+        long elapsed = SystemClock.elapsedRealtime() - dischargeStartMs;
+        if (dischargeStartLevel < 0 || elapsed < MIN_DRAIN_WINDOW_MS) {
+            return Double.NaN;
+        }
+        return (dischargeStartLevel - batteryLevel) * 3600000.0 / elapsed;
+    }
+
+    private final Runnable refreshNotification = new Runnable() {
+        @Override
+        public void run() {
+            NotificationManager manager = getSystemService(NotificationManager.class);
+            if (manager != null) {
+                manager.notify(NOTIFICATION_ID, buildNotification(summary()));
+            }
+            periodicHandler.removeCallbacks(this);
+            periodicHandler.postDelayed(this, NOTIFICATION_REFRESH_MS);
+        }
+    };
+
+    private final Runnable uploadMetrics = new Runnable() {
+        @Override
+        public void run() {
+            if (uplink != null) {
+                Map<String, Object> snapshot = metrics.snapshot();
+                snapshot.put("uptime_s", (SystemClock.elapsedRealtime() - startedAt) / 1000);
+                uplink.offerExtra(metricsPath + System.currentTimeMillis(), snapshot);
+                flushEarly();
+            }
+            periodicHandler.postDelayed(this, METRICS_UPLOAD_MS);
+        }
+    };
+
+    // Con el vehículo parado el filtro no deja pasar ubicaciones y el bloque del historial no
+    // llega a su edad máxima: se escribe igual para no perderlo si el sistema mata el proceso
+    private final Runnable tripFlush = new Runnable() {
+        @Override
+        public void run() {
+            TripStore store = tripStore;
+            if (store != null) {
+                store.flush();
+            }
+            periodicHandler.postDelayed(this, TripStore.DEFAULT_MAX_BLOCK_AGE_MS);
+        }
+    };
+
+    private String summary() {
+        if (session.getState() == SharingSession.State.PAUSED_OFFLINE) {
+            return String.format(Locale.US, "Sin conexión · %d ubicaciones guardadas para enviar",
+                    journal != null ? journal.getPendingCount() : uplink != null ? uplink.getPendingCount() : 0);
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (watchdog.getStep() == FixWatchdog.Step.DEGRADED) {
+            return String.format(Locale.US, "Sin señal de ubicación desde hace %d min · reintentando",
+                    watchdog.getSilenceMs(now) / 60000);
+        }
+        if (watchdog.isUploadStalled()) {
+            return String.format(Locale.US, "Envíos sin confirmar desde hace %d min · %d pendientes",
+                    watchdog.getUnackedMs(now) / 60000, uplink != null ? uplink.getPendingCount() : 0);
+        }
+        LatencyHistogram writes = metrics.histogram("write_ms");
+        return String.format(Locale.US, "%d ubicaciones · cola %d · envío p95 %d ms",
+                fixesReceived.get(), pipeline.getQueueDepth(), writes.getPercentile(95));
+    }
+
+    // Profundidad de cola y latencia por etapa del servicio en marcha, o null si no está activo
+    @Nullable
+    public static FixPipeline getActivePipeline() {
+        return activePipeline;
+    }
+
+    // Reconfigura el proveedor solo cuando la política (o el paso del watchdog) cambia de decisión
+    private synchronized void applySamplingDecision() {
+        SamplingPolicy.Decision wanted = samplingPolicy.evaluate();
+        watchdog.setExpected(wanted);
+        SamplingPolicy.Decision decision = watchdog.apply(wanted);
+        if (!decision.equals(currentDecision)) {
+            currentDecision = decision;
+            startLocationUpdates(decision);
+        }
+    }
+
+    // Una solicitud igual a la vigente no despierta a un proveedor trabado: se quita y se pide de nuevo
+    private synchronized void restartLocationUpdates() {
+        fusedLocationClient.removeLocationUpdates(locationCallback);
+        currentDecision = null;
+        applySamplingDecision();
+    }
+
+    private final Runnable watchdogTick = new Runnable() {
+        @Override
+        public void run() {
+            boolean awaitingAck = uplink != null && uplink.isAwaitingAck()
+                    && session.getState() != SharingSession.State.PAUSED_OFFLINE;
+            watchdog.tick(SystemClock.elapsedRealtime(), uplink != null ? uplink.getSentFixes() : 0, awaitingAck);
+            // También el plan: así los bytes se reparten entre Wi-Fi y datos móviles con poco
+            // retraso, y al cumplirse el turno el presupuesto vuelve a empezar
+            applyUploadPlan();
+            periodicHandler.postDelayed(this, WATCHDOG_TICK_MS);
+        }
+    };
+
+    private void onWatchdogStep(FixWatchdog.Step step) {
+        if (step == FixWatchdog.Step.OK) {
+            // Vuelve a lo que pide la política, con su distancia mínima y precisión
+            applySamplingDecision();
+        } else {
+            restartLocationUpdates();
+        }
+        reportHealth();
+        refreshNotification.run();
+    }
+
+    // locations/<uid>/salud: el despacho distingue un vehículo sin señal de uno que se fue
+    private void reportHealth() {
+        if (uplink == null) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        FixWatchdog.Step step = watchdog.getStep();
+        Map<String, Object> health = new HashMap<>();
+        health.put("degradado", step == FixWatchdog.Step.DEGRADED || watchdog.isUploadStalled());
+        health.put("paso", step.name());
+        health.put("sinUbicacionS", watchdog.getSilenceMs(now) / 1000);
+        health.put("sinEnvio", watchdog.isUploadStalled());
+        uplink.offerExtra(healthPath, health);
+        flushEarly();
+    }
+
+    private void startLocationUpdates(SamplingPolicy.Decision decision) {
         LocationRequest locationRequest = LocationRequest.create();
-        locationRequest.setInterval(5000); // 5 segundos
-        locationRequest.setFastestInterval(2000); // 2 segundos
-        locationRequest.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+        locationRequest.setInterval(decision.intervalMs);
+        locationRequest.setFastestInterval(decision.fastestIntervalMs);
+        locationRequest.setPriority(toRequestPriority(decision.priority));
+        locationRequest.setSmallestDisplacement(decision.minDisplacementMeters);
 
         if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED && ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
             // TODO: Consider calling
@@ -70,15 +764,32 @@ public class LocationService extends Service {
             // for ActivityCompat#requestPermissions for more details.
             return;
         }
-        fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, Looper.getMainLooper());
+        // Volver a pedir con el mismo callback reemplaza la solicitud anterior
+        fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, callbackThread.getLooper());
     }
 
-    private void sendLocationToFirebase(Location location) {
-        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
-        if (currentUser != null) {
-            String userName = currentUser.getDisplayName();
-            LocationData locationData = new LocationData(location.getLatitude(), location.getLongitude(), userName);
-            databaseReference.child(currentUser.getUid()).setValue(locationData);
+    private static int toRequestPriority(SamplingPolicy.Priority priority) {
+        switch (priority) {
+            case LOW_POWER:
+                return LocationRequest.PRIORITY_LOW_POWER;
+            case BALANCED:
+                return LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY;
+            default:
+                return LocationRequest.PRIORITY_HIGH_ACCURACY;
+        }
+    }
+
+    private void sendLocationToFirebase(LocationFix fix) {
+        if (uplink == null) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        uplink.offer(fix, now);
+        // El gasto del turno cambia con cada envío: el plan se revisa con cada ubicación
+        applyUploadPlan();
+        // El envío se aprovecha de la llegada de ubicaciones, sin temporizadores extra
+        if (session.getState() != SharingSession.State.PAUSED_OFFLINE) {
+            uplink.flushIfDue(now);
         }
     }
 
@@ -86,25 +797,430 @@ public class LocationService extends Service {
     public int onStartCommand(Intent intent, int flags, int startId) {
         createNotificationChannel();
 
+        startForeground(NOTIFICATION_ID, buildNotification("Compartiendo tu ubicación en tiempo real"));
+
+        if (!session.onServiceStarted()) {
+            // Reinicio de START_STICKY después de que el usuario detuviera el envío
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+
+        watchRouteStops(intent);
+        watchExternalSources();
+
+        return START_STICKY;
+    }
+
+    // dispositivos/<uid>/fuentes/<unidad> = {nombre, url, intervaloMs}: cada entrada es una
+    // unidad que este dispositivo publica en locations/<unidad> con su propio receptor
+    private void watchExternalSources() {
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (sourcesListener != null || currentUser == null || uplinkSink == null) {
+            return;
+        }
+        sourcesRef = FirebaseDatabase.getInstance().getReference("dispositivos")
+                .child(currentUser.getUid())
+                .child("fuentes");
+        sourcesListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                Map<String, ExternalUnit> configured = new HashMap<>();
+                for (DataSnapshot child : dataSnapshot.getChildren()) {
+                    String url = child.child("url").getValue(String.class);
+                    Long interval = child.child("intervaloMs").getValue(Long.class);
+                    if (url != null) {
+                        configured.put(child.getKey(), new ExternalUnit(child.child("nombre").getValue(String.class),
+                                url, interval != null ? interval : DEFAULT_SOURCE_INTERVAL_MS));
+                    }
+                }
+                updateExternalSources(configured);
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+                // Sin permiso o sin red: se sigue publicando solo este dispositivo
+            }
+        };
+        sourcesRef.addValueEventListener(sourcesListener);
+    }
+
+    // Una unidad externa con la entrada de configuración con la que se abrió
+    private static final class ExternalUnit {
+        @Nullable
+        final String name;
+        final String url;
+        final long intervalMs;
+        NmeaSource source;
+        LocationUplink uplink;
+
+        ExternalUnit(@Nullable String name, String url, long intervalMs) {
+            this.name = name;
+            this.url = url;
+            this.intervalMs = intervalMs;
+        }
+
+        boolean sameConfig(ExternalUnit other) {
+            return url.equals(other.url) && intervalMs == other.intervalMs
+                    && (name != null ? name.equals(other.name) : other.name == null);
+        }
+    }
+
+    // Solo se cierran y abren las unidades cuya entrada cambió: las demás siguen conectadas
+    private synchronized void updateExternalSources(Map<String, ExternalUnit> configured) {
+        Iterator<Map.Entry<String, ExternalUnit>> running = externalUnits.entrySet().iterator();
+        while (running.hasNext()) {
+            Map.Entry<String, ExternalUnit> entry = running.next();
+            ExternalUnit wanted = configured.get(entry.getKey());
+            if (wanted == null || !wanted.sameConfig(entry.getValue())) {
+                closeExternalUnit(entry.getValue());
+                running.remove();
+            }
+        }
+        for (Map.Entry<String, ExternalUnit> entry : configured.entrySet()) {
+            if (!externalUnits.containsKey(entry.getKey())) {
+                addExternalSource(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void addExternalSource(String unitId, ExternalUnit unit) {
+        LocationUplink unitUplink = new LocationUplink(uplinkSink, unitId, unit.name != null ? unit.name : unitId);
+        if (uploadPlan != null) {
+            applyUploadPlan(unitUplink, uploadPlan);
+        }
+        TrackFilter filter = new TrackFilter();
+        int index = sourcesPipeline.addSource(unitId, SOURCE_CAPACITY, unit.intervalMs, fix -> {
+            if (filter.process(fix)) {
+                long now = SystemClock.elapsedRealtime();
+                unitUplink.offer(fix, now);
+                if (session.getState() != SharingSession.State.PAUSED_OFFLINE) {
+                    unitUplink.flushIfDue(now);
+                }
+            }
+            return true;
+        });
+        NmeaSource source;
+        try {
+            source = NmeaSource.fromUrl(unitId, unit.url, sourcesPipeline, index);
+        } catch (IllegalArgumentException e) {
+            sourcesPipeline.removeSource(index);
+            return;
+        }
+        unit.source = source;
+        unit.uplink = unitUplink;
+        externalUnits.put(unitId, unit);
+        source.start();
+    }
+
+    private synchronized void flushExternalUplinks() {
+        long now = SystemClock.elapsedRealtime();
+        for (ExternalUnit unit : externalUnits.values()) {
+            unit.uplink.flushEarly(now);
+        }
+    }
+
+    // Al cerrar se envía lo que quede: estas unidades no tienen diario
+    private void closeExternalUnit(ExternalUnit unit) {
+        unit.source.close();
+        unit.uplink.flush(SystemClock.elapsedRealtime());
+        closedSourcesBytes += unit.uplink.getSentBytes();
+    }
+
+    private synchronized void closeExternalSources() {
+        for (ExternalUnit unit : externalUnits.values()) {
+            closeExternalUnit(unit);
+        }
+        externalUnits.clear();
+    }
+
+    // configuracion/<empresa>/general, configuracion/<empresa>/vehiculos/<uid> y vehiculos/<uid>/activo
+    // quedan escuchados mientras dure el servicio: un cambio en la consola llega en segundos
+    // sin reiniciar nada. Al cambiar de empresa se sueltan los nodos de la anterior.
+    private void watchTrackingConfig(String empresa, String uid) {
+        if (empresa.equals(configEmpresa)) {
+            return;
+        }
+        unwatchTrackingConfig();
+        configEmpresa = empresa;
+        configStatusPath = "locations/" + uid + "/config";
+        FirebaseDatabase database = FirebaseDatabase.getInstance();
+        DatabaseReference companyRef = database.getReference("configuracion").child(empresa);
+        fleetConfigRef = companyRef.child("general");
+        fleetConfigListener = new ConfigLayerListener(TrackingConfig.Layer.FLEET);
+        fleetConfigRef.addChildEventListener(fleetConfigListener);
+        vehicleConfigRef = companyRef.child("vehiculos").child(uid);
+        vehicleConfigListener = new ConfigLayerListener(TrackingConfig.Layer.VEHICLE);
+        vehicleConfigRef.addChildEventListener(vehicleConfigListener);
+        accountActiveRef = database.getReference("vehiculos").child(uid).child("activo");
+        accountActiveListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                trackingConfig.put(TrackingConfig.Layer.ACCOUNT, "activo", dataSnapshot.getValue());
+                scheduleConfigApply();
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+                // Sin permiso de lectura: se mantiene lo último conocido
+            }
+        };
+        accountActiveRef.addValueEventListener(accountActiveListener);
+    }
+
+    private void unwatchTrackingConfig() {
+        if (configEmpresa == null) {
+            return;
+        }
+        fleetConfigRef.removeEventListener(fleetConfigListener);
+        vehicleConfigRef.removeEventListener(vehicleConfigListener);
+        accountActiveRef.removeEventListener(accountActiveListener);
+        for (TrackingConfig.Layer layer : TrackingConfig.Layer.values()) {
+            trackingConfig.clear(layer);
+        }
+        configEmpresa = null;
+    }
+
+    // Lleva cada clave que cambia a su capa del TrackingConfig
+    private final class ConfigLayerListener implements ChildEventListener {
+        private final TrackingConfig.Layer layer;
+
+        ConfigLayerListener(TrackingConfig.Layer layer) {
+            this.layer = layer;
+        }
+
+        @Override
+        public void onChildAdded(DataSnapshot dataSnapshot, @Nullable String previousChildName) {
+            trackingConfig.put(layer, dataSnapshot.getKey(), dataSnapshot.getValue());
+            scheduleConfigApply();
+        }
+
+        @Override
+        public void onChildChanged(DataSnapshot dataSnapshot, @Nullable String previousChildName) {
+            trackingConfig.put(layer, dataSnapshot.getKey(), dataSnapshot.getValue());
+            scheduleConfigApply();
+        }
+
+        @Override
+        public void onChildRemoved(DataSnapshot dataSnapshot) {
+            trackingConfig.put(layer, dataSnapshot.getKey(), null);
+            scheduleConfigApply();
+        }
+
+        @Override
+        public void onChildMoved(DataSnapshot dataSnapshot, @Nullable String previousChildName) {
+        }
+
+        @Override
+        public void onCancelled(DatabaseError databaseError) {
+            // Sin permiso de lectura: se mantiene lo último aplicado
+        }
+    }
+
+    // Los eventos de una misma escritura llegan seguidos en el hilo principal: se aplican
+    // juntos al terminar, no clave por clave
+    private void scheduleConfigApply() {
+        if (!configApplyPending) {
+            configApplyPending = true;
+            mainHandler.post(this::applyTrackingConfig);
+        }
+    }
+
+    private void applyTrackingConfig() {
+        configApplyPending = false;
+        if (configEmpresa == null) {
+            return;
+        }
+        TrackingConfig.Values previous = configValues;
+        TrackingConfig.Values values = trackingConfig.resolve();
+        configValues = values;
+        if (!values.active) {
+            deactivateAccount();
+            return;
+        }
+        if (!values.sameLimits(previous)) {
+            // Solo se vuelve a pedir ubicaciones si la decisión resultante cambia
+            samplingPolicy.setLimits(values.minIntervalMs, values.maxPriority);
+            applySamplingDecision();
+            applyUploadPlan();
+        }
+        if (uplink != null && (values.fleetVersion != previous.fleetVersion
+                || values.vehicleVersion != previous.vehicleVersion)) {
+            // Operaciones ve qué vehículos ya tomaron cada versión
+            Map<String, Object> applied = new HashMap<>();
+            applied.put("general", values.fleetVersion);
+            applied.put("vehiculo", values.vehicleVersion);
+            uplink.offerExtra(configStatusPath, applied);
+        }
+    }
+
+    // Cuenta desactivada desde el panel: se deja de enviar ya, sin esperar a que el
+    // conductor vuelva a abrir la app. La pantalla lo verá al reconciliar la sesión.
+    private void deactivateAccount() {
+        new ProfileCache(this).clear();
+        session.requestStop();
+        stopSelf();
+    }
+
+    private void watchRouteStops(@Nullable Intent intent) {
+        String empresa = intent != null ? intent.getStringExtra(EXTRA_EMPRESA) : null;
+        String ruta = intent != null ? intent.getStringExtra(EXTRA_RUTA) : null;
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        if ((empresa == null || ruta == null) && currentUser != null) {
+            // Reinicio por START_STICKY: el intent llega vacío
+            VehicleProfile profile = new ProfileCache(this).load(currentUser.getUid());
+            if (profile != null) {
+                empresa = profile.empresa;
+                ruta = profile.ruta;
+            }
+        }
+        if (empresa == null || ruta == null) {
+            return;
+        }
+        if (currentUser != null) {
+            watchTrackingConfig(empresa, currentUser.getUid());
+        }
+        if (uplink != null) {
+            uplink.setRoute(empresa, ruta);
+        }
+        String routeKey = empresa + "/" + ruta;
+        if (routeKey.equals(stopsRouteKey)) {
+            return;
+        }
+        stopsRouteKey = routeKey;
+        routeGeometry = null;
+        routeStops = null;
+        DatabaseReference routeRef = FirebaseDatabase.getInstance().getReference("rutas")
+                .child(empresa)
+                .child("rutas")
+                .child(ruta);
+        routeRef.child("paradas")
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(DataSnapshot dataSnapshot) {
+                        if (!routeKey.equals(stopsRouteKey)) {
+                            return;
+                        }
+                        List<Stop> stops = new ArrayList<>();
+                        for (DataSnapshot child : dataSnapshot.getChildren()) {
+                            Double latitude = child.child("latitude").getValue(Double.class);
+                            Double longitude = child.child("longitude").getValue(Double.class);
+                            Double radio = child.child("radio").getValue(Double.class);
+                            if (latitude != null && longitude != null) {
+                                stops.add(new Stop(child.getKey(), child.child("nombre").getValue(String.class),
+                                        latitude, longitude, radio != null ? radio : 0));
+                            }
+                        }
+                        stopDetector.setIndex(new StopIndex(stops));
+                        routeStops = stops;
+                        startEtaPredictor(routeKey);
+                    }
+
+                    @Override
+                    public void onCancelled(DatabaseError databaseError) {
+                        // Se reintenta con el próximo arranque del servicio
+                        stopsRouteKey = null;
+                    }
+                });
+        routeRef.child("trazado")
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(DataSnapshot dataSnapshot) {
+                        if (!routeKey.equals(stopsRouteKey)) {
+                            return;
+                        }
+                        RouteGeometry route = readRouteGeometry(dataSnapshot);
+                        if (route != null) {
+                            routeMatcher.setRoute(route);
+                            routeGeometry = route;
+                            startEtaPredictor(routeKey);
+                        }
+                    }
+
+                    @Override
+                    public void onCancelled(DatabaseError databaseError) {
+                        stopsRouteKey = null;
+                    }
+                });
+    }
+
+    // Lo aprendido en turnos anteriores se lee del disco en el hilo del pipeline, que es
+    // también el único que actualiza el predictor
+    private void startEtaPredictor(String routeKey) {
+        RouteGeometry route = routeGeometry;
+        List<Stop> stops = routeStops;
+        if (route == null || stops == null || processingExecutor.isShutdown()) {
+            return;
+        }
+        File file = new File(getFilesDir(), "eta-" + routeKey.replace('/', '-') + ".bin");
+        processingExecutor.execute(() -> {
+            saveTravelTimes();
+            SegmentTravelTimes times = SegmentTravelTimes.load(file, route.getLengthMeters(),
+                    SegmentTravelTimes.DEFAULT_BIN_METERS);
+            etaFile = file;
+            etaPredictor = new EtaPredictor(route, stops, times, TimeZone.getDefault());
+        });
+    }
+
+    private void saveTravelTimes() {
+        EtaPredictor eta = etaPredictor;
+        if (eta == null) {
+            return;
+        }
+        try {
+            eta.getTravelTimes().save(etaFile);
+        } catch (IOException e) {
+            // Se pierde lo aprendido desde el último guardado, el servicio sigue igual
+        }
+    }
+
+    // El trazado puede venir como polilínea codificada o como lista ordenada de {latitude, longitude}
+    @Nullable
+    private static RouteGeometry readRouteGeometry(DataSnapshot trazado) {
+        try {
+            Object value = trazado.getValue();
+            if (value instanceof String) {
+                return RouteGeometry.fromEncodedPolyline((String) value);
+            }
+            int count = (int) trazado.getChildrenCount();
+            double[] latitudes = new double[count];
+            double[] longitudes = new double[count];
+            int n = 0;
+            for (DataSnapshot point : trazado.getChildren()) {
+                Double latitude = point.child("latitude").getValue(Double.class);
+                Double longitude = point.child("longitude").getValue(Double.class);
+                if (latitude != null && longitude != null) {
+                    latitudes[n] = latitude;
+                    longitudes[n] = longitude;
+                    n++;
+                }
+            }
+            return n >= 2 ? new RouteGeometry(Arrays.copyOf(latitudes, n), Arrays.copyOf(longitudes, n)) : null;
+        } catch (IllegalArgumentException e) {
+            // Trazado mal formado: seguimos sin avance sobre la ruta
+            return null;
+        }
+    }
+
+
+
+
+    private Notification buildNotification(String text) {
         Intent notificationIntent = new Intent(this, MainActivity.class);
         PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
+        Intent metricsIntent = new Intent(this, MetricsActivity.class);
+        PendingIntent metricsPendingIntent = PendingIntent.getActivity(this, 1, metricsIntent, PendingIntent.FLAG_IMMUTABLE);
 
-        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setContentTitle("Viaje Comenzado")
-                .setContentText("Compartiendo tu ubicación en tiempo real")
+                .setContentText(text)
                 .setSmallIcon(R.drawable.mapa) // Asegúrate de que este icono exista y sea válido
                 .setOngoing(true) // La notificación no puede ser deslizada para eliminarla
+                .setOnlyAlertOnce(true)
                 .setContentIntent(pendingIntent)
+                .addAction(0, "Diagnóstico", metricsPendingIntent)
                 .build();
-
-        startForeground(1, notification);
-
-        return START_STICKY;
     }
 
-
-
-
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
@@ -114,7 +1230,49 @@ public class LocationService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        unregisterReceiver(batteryReceiver);
+        unregisterReceiver(idleReceiver);
+        connectivityManager.unregisterNetworkCallback(networkCallback);
+        connectivityManager.removeDefaultNetworkActiveListener(radioActiveListener);
+        if (sourcesListener != null) {
+            sourcesRef.removeEventListener(sourcesListener);
+        }
+        unwatchTrackingConfig();
+        mainHandler.removeCallbacksAndMessages(null);
+        if (watchersListener != null) {
+            watchersRef.removeEventListener(watchersListener);
+            serverOffsetRef.removeEventListener(serverOffsetListener);
+        }
         fusedLocationClient.removeLocationUpdates(locationCallback);
+        session.setListener(null);
+        activePipeline = null;
+        activeMetrics = null;
+        periodicHandler.removeCallbacksAndMessages(null);
+        callbackThread.quitSafely();
+        // Deja terminar lo que ya estaba en la cola antes del último envío
+        processingExecutor.shutdown();
+        try {
+            processingExecutor.awaitTermination(500, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (uplink != null) {
+            uplink.flush(SystemClock.elapsedRealtime());
+        }
+        closeExternalSources();
+        saveTravelTimes();
+        TripStore store = tripStore;
+        if (store != null) {
+            store.flush();
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ignored) {
+                // Los registros ya están en el archivo mapeado
+            }
+        }
+        session.onServiceStopped();
     }
 
     private void createNotificationChannel() {
@@ -131,17 +1289,4 @@ public class LocationService extends Service {
             }
         }
     }
-
-
-    class LocationData {
-        public double latitude;
-        public double longitude;
-        public String userName;
-
-        public LocationData(double latitude, double longitude, String userName) {
-            this.latitude = latitude;
-            this.longitude = longitude;
-            this.userName = userName;
-        }
-    }
 }
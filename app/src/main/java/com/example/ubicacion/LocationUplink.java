@@ -0,0 +1,422 @@
+package com.example.ubicacion;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Agrupa las ubicaciones en ventanas y las envía en un único updateChildren,
+// descartando o fusionando las que apenas se movieron.
+public class LocationUplink {
+
+    public interface Sink {
+        // Escribe todas las rutas de "updates" de forma atómica, relativas a la raíz de la base de datos
+        void write(Map<String, Object> updates, Callback callback);
+    }
+
+    public interface Callback {
+        void onComplete(boolean success);
+    }
+
+    public static final long DEFAULT_WINDOW_MS = 10000;
+    public static final double DEFAULT_MIN_DISTANCE_METERS = 10;
+    public static final long DEFAULT_MAX_SILENCE_MS = 60000;
+    public static final int DEFAULT_MAX_PENDING = 500;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 200;
+    // Cabeceras, marco del websocket y confirmación de cada updateChildren, aproximado
+    public static final int REQUEST_OVERHEAD_BYTES = 300;
+
+    private final Sink sink;
+    private final String uid;
+    private final String userName;
+    private final ArrayDeque<LocationFix> pending = new ArrayDeque<>();
+    private final ArrayDeque<StopEvent> pendingEvents = new ArrayDeque<>();
+    private final Map<String, Object> pendingExtras = new HashMap<>();
+    private final LocationFix lastAccepted = new LocationFix();
+
+    private long windowMs = DEFAULT_WINDOW_MS;
+    private long minGapMs;
+    private double minDistanceMeters = DEFAULT_MIN_DISTANCE_METERS;
+    private long maxSilenceMs = DEFAULT_MAX_SILENCE_MS;
+    private int maxPending = DEFAULT_MAX_PENDING;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private FixJournal journal;
+    private FixCodec.Writer compactWriter;
+    private String empresa;
+    private String ruta;
+
+    private boolean hasLastAccepted;
+    private boolean inFlight;
+    private boolean flushed;
+    private boolean awaitingAck;
+    private long windowStartMs;
+    private long lastFlushMs;
+    private long sentFixes;
+    private long droppedFixes;
+    private long sentEvents;
+    private long sentBytes;
+    private long flushBytes;
+    private long flushStartedNanos;
+
+    private Metrics.Counter writesOk;
+    private Metrics.Counter writesFailed;
+    private LatencyHistogram writeLatency;
+    private LatencyHistogram fixToAck;
+
+    public LocationUplink(Sink sink, String uid, String userName) {
+        this.sink = sink;
+        this.uid = uid;
+        this.userName = userName;
+    }
+
+    public synchronized void setWindowMs(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    // Mínimo entre envíos que fija la configuración remota; también vale para los adelantados
+    public synchronized void setMinGapMs(long minGapMs) {
+        this.minGapMs = minGapMs;
+    }
+
+    public synchronized void setMinDistanceMeters(double minDistanceMeters) {
+        this.minDistanceMeters = minDistanceMeters;
+    }
+
+    public synchronized void setMaxSilenceMs(long maxSilenceMs) {
+        this.maxSilenceMs = maxSilenceMs;
+    }
+
+    public synchronized void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    public synchronized void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    // El recorrido de cada lote se guarda como un único texto Base64 con FixCodec
+    // en lugar de un mapa por ubicación
+    public synchronized void setCompactTrail(boolean compactTrail) {
+        this.compactWriter = compactTrail ? new FixCodec.Writer(DEFAULT_MAX_BATCH_SIZE * 12) : null;
+    }
+
+    // Ruta asignada: viaja con cada posición para que el relay sepa en qué ruta mostrarla
+    public synchronized void setRoute(String empresa, String ruta) {
+        this.empresa = empresa;
+        this.ruta = ruta;
+    }
+
+    // Con diario, las ubicaciones sobreviven a la muerte del proceso y se reenvían en orden
+    public synchronized void setJournal(FixJournal journal) {
+        this.journal = journal;
+    }
+
+    // Envíos correctos y fallidos, duración de cada escritura y antigüedad de las ubicaciones al confirmarse
+    public synchronized void setMetrics(Metrics metrics) {
+        writesOk = metrics.counter("writes_ok");
+        writesFailed = metrics.counter("writes_failed");
+        writeLatency = metrics.histogram("write_ms");
+        fixToAck = metrics.histogram("fix_to_ack_ms");
+    }
+
+    // Rutas adicionales (por ejemplo metricas/<uid>) que viajan con el próximo envío.
+    // Si ese envío falla se pierden: es información de diagnóstico, no de servicio.
+    public synchronized void offerExtra(String path, Object value) {
+        pendingExtras.put(path, value);
+    }
+
+    // Avance sobre el trazado de la ruta: viaja con el próximo envío y cada valor pisa al
+    // anterior, así que perder uno solo retrasa el dato hasta la siguiente ubicación
+    public synchronized void offerRouteProgress(double distanceAlongMeters, boolean offRoute) {
+        pendingExtras.put("locations/" + uid + "/progreso", Math.round(distanceAlongMeters));
+        pendingExtras.put("locations/" + uid + "/fueraDeRuta", offRoute);
+    }
+
+    // parada -> hora estimada de llegada; reemplaza el nodo entero para que las paradas
+    // ya pasadas desaparezcan
+    public synchronized void offerStopEtas(Map<String, Object> etas) {
+        pendingExtras.put("locations/" + uid + "/eta", etas);
+    }
+
+    // Devuelve false si la ubicación se descartó o se fusionó con la anterior
+    public synchronized boolean offer(LocationFix fix, long nowMs) {
+        if (hasLastAccepted && lastAccepted.distanceTo(fix) < minDistanceMeters) {
+            LocationFix last = pending.peekLast();
+            if (last != null && last.distanceTo(fix) < minDistanceMeters) {
+                // Sigue en el mismo sitio: solo refrescamos la hora del punto pendiente
+                last.time = fix.time;
+                last.speed = fix.speed;
+                last.accuracy = Math.min(last.accuracy, fix.accuracy);
+                if (journal != null) {
+                    journal.updateLast(last);
+                }
+                droppedFixes++;
+                return false;
+            }
+            if (fix.time - lastAccepted.time < maxSilenceMs) {
+                droppedFixes++;
+                return false;
+            }
+        }
+
+        if (pending.isEmpty()) {
+            windowStartMs = nowMs;
+        }
+        while (pending.size() >= maxPending) {
+            pending.pollFirst();
+            droppedFixes++;
+        }
+        pending.addLast(new LocationFix().copyFrom(fix));
+        if (journal != null) {
+            journal.append(fix);
+        }
+        lastAccepted.copyFrom(fix);
+        hasLastAccepted = true;
+        return true;
+    }
+
+    // Los eventos de parada no esperan a la ventana: es lo que el pasajero está mirando
+    public synchronized void offerEvent(StopEvent event, long nowMs) {
+        while (pendingEvents.size() >= maxPending) {
+            pendingEvents.pollFirst();
+        }
+        pendingEvents.addLast(event);
+        flushEarly(nowMs);
+    }
+
+    // Envío adelantado a la ventana (parada, alguien empezó a mirar, cambió la salud): sale ya,
+    // salvo que el anterior haya sido hace menos de minGapMs
+    public synchronized boolean flushEarly(long nowMs) {
+        return getEarlyFlushDelayMs(nowMs) == 0 && flush(nowMs);
+    }
+
+    // Cuánto falta para poder adelantar un envío; 0 si ya se puede
+    public synchronized long getEarlyFlushDelayMs(long nowMs) {
+        return flushed ? Math.max(0, lastFlushMs + minGapMs - nowMs) : 0;
+    }
+
+    public synchronized boolean flushIfDue(long nowMs) {
+        if (!pendingEvents.isEmpty() && !inFlight && getEarlyFlushDelayMs(nowMs) == 0) {
+            return flush(nowMs);
+        }
+        if (!pending.isEmpty()) {
+            if (nowMs - windowStartMs < windowMs) {
+                return false;
+            }
+        } else if (!hasJournalBacklog() || nowMs - lastFlushMs < windowMs) {
+            return false;
+        }
+        return flush(nowMs);
+    }
+
+    public synchronized boolean flush(long nowMs) {
+        if (inFlight) {
+            return false;
+        }
+        final List<LocationFix> batch;
+        final long lastSeq;
+        if (journal != null) {
+            // El diario es la fuente de verdad: incluye lo que quedó sin confirmar de antes
+            batch = new ArrayList<>();
+            lastSeq = journal.read(maxBatchSize, batch);
+        } else {
+            batch = new ArrayList<>(pending);
+            lastSeq = -1;
+        }
+        if (batch.isEmpty() && pendingEvents.isEmpty() && pendingExtras.isEmpty()) {
+            return false;
+        }
+        final List<StopEvent> events = new ArrayList<>(pendingEvents);
+        pendingEvents.clear();
+        pending.clear();
+        windowStartMs = nowMs;
+        lastFlushMs = nowMs;
+        flushed = true;
+        awaitingAck = true;
+        inFlight = true;
+        flushStartedNanos = System.nanoTime();
+
+        Map<String, Object> updates = buildUpdates(batch, events);
+        updates.putAll(pendingExtras);
+        pendingExtras.clear();
+        flushBytes = estimateBytes(updates);
+        sink.write(updates, success -> onWriteComplete(batch, lastSeq, events, success));
+        return true;
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized long getSentFixes() {
+        return sentFixes;
+    }
+
+    public synchronized long getDroppedFixes() {
+        return droppedFixes;
+    }
+
+    public synchronized long getSentEvents() {
+        return sentEvents;
+    }
+
+    // Estimación de lo transmitido, incluidos los intentos fallidos: también gastan datos
+    public synchronized long getSentBytes() {
+        return sentBytes;
+    }
+
+    public synchronized long getLastFlushMs() {
+        return lastFlushMs;
+    }
+
+    // Se envió algo (en curso o fallido) y todavía no llegó ninguna confirmación. Lo que solo
+    // espera a su ventana no cuenta: no se puede confirmar lo que no se mandó.
+    public synchronized boolean isAwaitingAck() {
+        return awaitingAck;
+    }
+
+    public synchronized boolean hasPending() {
+        return !pending.isEmpty() || !pendingEvents.isEmpty() || hasJournalBacklog();
+    }
+
+    // Tamaño aproximado en la red: rutas y valores como texto más la cabecera de la petición
+    static long estimateBytes(Map<String, Object> updates) {
+        long bytes = REQUEST_OVERHEAD_BYTES;
+        for (Map.Entry<String, Object> entry : updates.entrySet()) {
+            bytes += entry.getKey().length() + 4 + estimateValue(entry.getValue());
+        }
+        return bytes;
+    }
+
+    private static long estimateValue(Object value) {
+        if (value instanceof Map) {
+            long bytes = 2;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += String.valueOf(entry.getKey()).length() + 4 + estimateValue(entry.getValue());
+            }
+            return bytes;
+        }
+        return value == null ? 4 : String.valueOf(value).length();
+    }
+
+    private boolean hasJournalBacklog() {
+        return journal != null && journal.getPendingCount() > 0;
+    }
+
+    private synchronized void onWriteComplete(List<LocationFix> batch, long lastSeq, List<StopEvent> events, boolean success) {
+        inFlight = false;
+        sentBytes += flushBytes;
+        recordWrite(batch, success);
+        if (success) {
+            awaitingAck = false;
+            sentFixes += batch.size();
+            sentEvents += events.size();
+            if (journal != null) {
+                journal.acknowledge(lastSeq);
+                if (hasJournalBacklog() && pending.isEmpty()) {
+                    // Hay conexión otra vez: vaciamos el atraso lote a lote
+                    flush(lastFlushMs);
+                }
+            }
+            if (!pendingEvents.isEmpty()) {
+                // Eventos que llegaron mientras había un envío en curso
+                flushEarly(lastFlushMs);
+            }
+            return;
+        }
+        // Los eventos no van al diario: se reintentan desde memoria
+        for (int i = events.size() - 1; i >= 0 && pendingEvents.size() < maxPending; i--) {
+            pendingEvents.addFirst(events.get(i));
+        }
+        if (journal != null) {
+            // Lo pendiente sigue en el diario y se reenviará en el próximo flush
+            return;
+        }
+        // Reintentamos el lote en el siguiente envío, sin superar el límite de pendientes
+        for (int i = batch.size() - 1; i >= 0 && pending.size() < maxPending; i--) {
+            pending.addFirst(batch.get(i));
+        }
+    }
+
+    private void recordWrite(List<LocationFix> batch, boolean success) {
+        if (writesOk == null) {
+            return;
+        }
+        writeLatency.record((System.nanoTime() - flushStartedNanos) / 1000000);
+        if (!success) {
+            writesFailed.increment();
+            return;
+        }
+        writesOk.increment();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < batch.size(); i++) {
+            fixToAck.record(now - batch.get(i).time);
+        }
+    }
+
+    Map<String, Object> buildUpdates(List<LocationFix> batch) {
+        return buildUpdates(batch, Collections.<StopEvent>emptyList());
+    }
+
+    Map<String, Object> buildUpdates(List<LocationFix> batch, List<StopEvent> events) {
+        Map<String, Object> updates = new HashMap<>();
+        if (!events.isEmpty()) {
+            addEvents(updates, events);
+        }
+        if (batch.isEmpty()) {
+            return updates;
+        }
+        LocationFix latest = batch.get(batch.size() - 1);
+
+        String locationPath = "locations/" + uid + "/";
+        updates.put(locationPath + "latitude", latest.latitude);
+        updates.put(locationPath + "longitude", latest.longitude);
+        updates.put(locationPath + "userName", userName);
+        updates.put(locationPath + "timestamp", latest.time);
+        // Para extrapolar entre envíos, como hace TrackFilter al decidir qué no enviar
+        updates.put(locationPath + "speed", latest.speed);
+        updates.put(locationPath + "bearing", latest.bearing);
+        if (empresa != null && ruta != null) {
+            updates.put(locationPath + "empresa", empresa);
+            updates.put(locationPath + "ruta", ruta);
+        }
+
+        String trackPath = "recorridos/" + uid + "/";
+        if (compactWriter != null) {
+            compactWriter.reset();
+            for (LocationFix fix : batch) {
+                compactWriter.add(fix);
+            }
+            updates.put(trackPath + batch.get(0).time, FixCodec.toBase64(compactWriter.buffer(), compactWriter.size()));
+            return updates;
+        }
+        for (LocationFix fix : batch) {
+            Map<String, Object> point = new HashMap<>();
+            point.put("latitude", fix.latitude);
+            point.put("longitude", fix.longitude);
+            updates.put(trackPath + fix.time, point);
+        }
+        return updates;
+    }
+
+    private void addEvents(Map<String, Object> updates, List<StopEvent> events) {
+        String eventPath = "eventos/" + uid + "/";
+        for (StopEvent event : events) {
+            Map<String, Object> value = new HashMap<>();
+            value.put("tipo", event.type == StopEvent.Type.ARRIVAL ? "llegada" : "salida");
+            value.put("parada", event.stopId);
+            value.put("nombre", event.stopName);
+            value.put("timestamp", event.time);
+            if (event.type == StopEvent.Type.DEPARTURE) {
+                value.put("permanenciaMs", event.dwellMs);
+            }
+            // La clave lleva el tipo para que una llegada y una salida en el mismo ms no choquen
+            updates.put(eventPath + event.time + "_" + value.get("tipo"), value);
+        }
+        // Parada actual para quien solo mira locations/<uid>; null al salir la borra
+        StopEvent last = events.get(events.size() - 1);
+        updates.put("locations/" + uid + "/parada", last.type == StopEvent.Type.ARRIVAL ? last.stopId : null);
+    }
+}
@@ -4,13 +4,13 @@ import android.Manifest;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.location.LocationManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.provider.Settings;
+import android.util.Log;
 import android.view.View;
 import android.view.WindowManager;
 import android.view.animation.Animation;
@@ -27,6 +27,7 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.bumptech.glide.Glide;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.database.DataSnapshot;
@@ -41,16 +42,21 @@ public class MainActivity extends AppCompatActivity {
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1;
     private static final int NOTIFICATION_PERMISSION_REQUEST_CODE = 2;
 
-    private static final String PREFS_NAME = "LocationPrefs";
-    private static final String KEY_IS_SHARING_LOCATION = "isSharingLocation";
-
     private boolean isSharingLocation = false;
-    private Button toggleButton, signInButton, signOutButton, registerButton;
+    private Button toggleButton, signInButton, signOutButton, registerButton, fleetButton;
     private TextView userNameTextView, rutaTextView, empresaTextView;
     private ImageView profilePictureImageView, backgroundImageView;
     private FirebaseAuth mAuth;
     private EditText emailEditText, passwordEditText;
     private LocationManager locationManager;
+    private ProfileCache profileCache;
+    private ProfileRefresh profileRefresh;
+    private SharingSession session;
+    private boolean reportedInteractive;
+    private boolean sessionShown;
+    private boolean backgroundLoaded;
+    // Perfil en pantalla: de ahí sale la ruta de la vista de flota
+    private VehicleProfile shownProfile;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -59,12 +65,16 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         mAuth = FirebaseAuth.getInstance();
-        FirebaseUser currentUser = mAuth.getCurrentUser();
+        // Sesión, perfil en caché y estado del servicio ya se leyeron en paralelo durante el splash
+        StartupOrchestrator startup = UbicacionApp.getStartup();
+        boolean restored = startup.isReady() && startup.getError(UbicacionApp.TASK_AUTH) == null;
+        FirebaseUser currentUser = restored ? startup.get(UbicacionApp.TASK_AUTH) : mAuth.getCurrentUser();
 
         // Enlazar vistas
         toggleButton = findViewById(R.id.btn_toggle_location);
         signInButton = findViewById(R.id.btn_sign_in);
         signOutButton = findViewById(R.id.btn_sign_out);
+        fleetButton = findViewById(R.id.btn_fleet);
         backgroundImageView = findViewById(R.id.iv_background_image);
         userNameTextView = findViewById(R.id.tv_user_name);
         rutaTextView = findViewById(R.id.txt_ruta);
@@ -74,12 +84,23 @@ public class MainActivity extends AppCompatActivity {
         passwordEditText = findViewById(R.id.et_password);
 
         locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
+        profileCache = new ProfileCache(this);
+        session = UbicacionApp.getSession();
+
+        // Las imágenes se decodifican fuera del hilo principal y al tamaño de la vista
+        Glide.with(this).load(R.drawable.ic_default_profile).into(profilePictureImageView);
 
         // Ocultar botones por defecto
         toggleButton.setVisibility(View.GONE);
         signOutButton.setVisibility(View.GONE);
 
         updateUI(currentUser);
+        if (currentUser != null) {
+            // Con sesión ya iniciada se pinta el perfil en caché sin esperar a la red
+            VehicleProfile cached = restored ? startup.get(UbicacionApp.TASK_PROFILE) : profileCache.load(currentUser.getUid());
+            checkAccountStatus(currentUser, cached);
+        }
+        reportInteractive();
 
         toggleButton.setOnClickListener(v -> {
             if (isLocationEnabled()) {
@@ -91,6 +112,39 @@ public class MainActivity extends AppCompatActivity {
 
         signInButton.setOnClickListener(v -> signIn());
         signOutButton.setOnClickListener(v -> signOut());
+        fleetButton.setOnClickListener(v -> openFleet());
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (mAuth.getCurrentUser() != null) {
+            reconcileSession();
+        }
+    }
+
+    // El proceso pudo morir, o el teléfono reiniciarse, con el envío activo: el botón
+    // refleja el estado guardado y el servicio se alinea con él
+    private void reconcileSession() {
+        SharingSession.Action action = session.reconcile(LocationService.isRunning());
+        if (action == SharingSession.Action.START_SERVICE) {
+            if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
+                FirebaseUser user = mAuth.getCurrentUser();
+                ContextCompat.startForegroundService(this, locationServiceIntent(user != null ? profileCache.load(user.getUid()) : null));
+            } else {
+                // Se retiró el permiso mientras tanto: el servicio no puede volver
+                session.requestStop();
+                session.onServiceStopped();
+            }
+        } else if (action == SharingSession.Action.STOP_SERVICE) {
+            stopService(new Intent(this, LocationService.class));
+        }
+        boolean active = session.isActive();
+        if (!sessionShown || active != isSharingLocation) {
+            sessionShown = true;
+            isSharingLocation = active;
+            updateUIBasedOnLocationState();
+        }
     }
 
 
@@ -107,6 +161,7 @@ public class MainActivity extends AppCompatActivity {
             if (task.isSuccessful()) {
                 FirebaseUser user = mAuth.getCurrentUser();
                 checkAccountStatus(user);
+                reconcileSession();
 
             } else {
                 Toast.makeText(MainActivity.this, "Error al iniciar sesión", Toast.LENGTH_SHORT).show();
@@ -116,7 +171,60 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void checkAccountStatus(FirebaseUser user) {
-        DatabaseReference userRef = FirebaseDatabase.getInstance().getReference("vehiculos").child(user.getUid());
+        checkAccountStatus(user, profileCache.load(user.getUid()));
+    }
+
+    private void checkAccountStatus(FirebaseUser user, VehicleProfile cached) {
+        if (cached != null && cached.activo) {
+            showProfile(cached);
+            if (!cached.isFresh(System.currentTimeMillis(), ProfileCache.TTL_MS)) {
+                // Caducada: se muestra igual, avisando que puede estar desactualizada
+                Toast.makeText(MainActivity.this, "Verificando cuenta…", Toast.LENGTH_SHORT).show();
+            }
+        }
+        // Siempre se revalida en segundo plano: una cuenta desactivada o cambiada de ruta
+        // no puede esperar a que caduque el caché
+        refreshProfile(user.getUid(), cached);
+    }
+
+    private void refreshProfile(String userId, VehicleProfile cached) {
+        final ProfileRefresh refresh = new ProfileRefresh(userId, cached, new ProfileRefresh.Listener() {
+            @Override
+            public void requestAccount() {
+                loadAccount(userId);
+            }
+
+            @Override
+            public void requestRoute(String empresa, String ruta) {
+                loadCompanyAndRoutes(empresa, ruta, userId);
+            }
+
+            @Override
+            public void onProfile(VehicleProfile profile) {
+                if (!profile.sameContent(cached)) {
+                    showProfile(profile);
+                }
+                profileCache.save(profile);
+                if (isSharingLocation && (cached == null || !cached.sameRoute(profile.empresa, profile.ruta))) {
+                    // Cambió la ruta con el servicio en marcha: que cargue las paradas nuevas
+                    startService(locationServiceIntent(profile));
+                }
+            }
+
+            @Override
+            public void onDeactivated() {
+                profileCache.clear();
+                Toast.makeText(MainActivity.this, "Cuenta desactivada. Contacte con el administrador.", Toast.LENGTH_SHORT).show();
+                signOut();
+            }
+        }, System.currentTimeMillis());
+        profileRefresh = refresh;
+        refresh.start();
+    }
+
+    private void loadAccount(String userId) {
+        DatabaseReference userRef = FirebaseDatabase.getInstance().getReference("vehiculos").child(userId);
+        final ProfileRefresh refresh = profileRefresh;
 
         userRef.addListenerForSingleValueEvent(new ValueEventListener() {
             @Override
@@ -126,12 +234,7 @@ public class MainActivity extends AppCompatActivity {
                     String empresa = dataSnapshot.child("empresa").getValue(String.class);
                     String ruta = dataSnapshot.child("ruta").getValue(String.class);
 
-                    if (activo != null && activo) {
-                        loadCompanyAndRoutes(empresa, ruta, user.getUid());
-                    } else {
-                        Toast.makeText(MainActivity.this, "Cuenta desactivada. Contacte con el administrador.", Toast.LENGTH_SHORT).show();
-                        signOut();
-                    }
+                    refresh.onAccount(activo != null && activo, empresa, ruta);
                 }
             }
 
@@ -150,22 +253,13 @@ public class MainActivity extends AppCompatActivity {
                 .child(ruta)
                 .child("vehiculos")
                 .child(userId);
+        final ProfileRefresh refresh = profileRefresh;
 
         routeRef.addListenerForSingleValueEvent(new ValueEventListener() {
             @Override
             public void onDataChange(DataSnapshot dataSnapshot) {
-                if (dataSnapshot.exists()) {
-                    String nombreVehiculo = dataSnapshot.child("nombre").getValue(String.class);
-                    Double latitude = dataSnapshot.child("latitude").getValue(Double.class);
-                    Double longitude = dataSnapshot.child("longitude").getValue(Double.class);
-
-                    // Actualiza la UI con los datos obtenidos
-                    userNameTextView.setText(nombreVehiculo);
-                    rutaTextView.setText(ruta);
-                    empresaTextView.setText(empresa);
-
-                    // Aquí puedes continuar cargando más datos o mostrar el mapa con la ubicación
-                }
+                String nombreVehiculo = dataSnapshot.exists() ? dataSnapshot.child("nombre").getValue(String.class) : null;
+                refresh.onRoute(empresa, ruta, nombreVehiculo);
             }
 
             @Override
@@ -175,9 +269,41 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    // Fin de la traza de inicio: la pantalla ya muestra datos útiles y acepta toques
+    private void reportInteractive() {
+        if (reportedInteractive) {
+            return;
+        }
+        reportedInteractive = true;
+        StartupOrchestrator startup = UbicacionApp.getStartup();
+        startup.mark("interactive");
+        Log.i("Startup", "Traza de inicio (ms): " + startup.getTrace());
+        getWindow().getDecorView().post(this::reportFullyDrawn);
+    }
+
+    private void showProfile(VehicleProfile profile) {
+        shownProfile = profile;
+        userNameTextView.setText(profile.nombre);
+        rutaTextView.setText(profile.ruta);
+        empresaTextView.setText(profile.empresa);
+        fleetButton.setVisibility(profile.empresa != null && profile.ruta != null ? View.VISIBLE : View.GONE);
+    }
+
+    private void openFleet() {
+        VehicleProfile profile = shownProfile;
+        if (profile == null) {
+            return;
+        }
+        Intent intent = new Intent(this, FleetActivity.class);
+        intent.putExtra(LocationService.EXTRA_EMPRESA, profile.empresa);
+        intent.putExtra(LocationService.EXTRA_RUTA, profile.ruta);
+        startActivity(intent);
+    }
+
 
     private void signOut() {
         stopSharingLocation();
+        profileCache.clear();
         mAuth.signOut();
         updateUI(null);
         Toast.makeText(MainActivity.this, "Sesión cerrada", Toast.LENGTH_SHORT).show();
@@ -196,6 +322,8 @@ public class MainActivity extends AppCompatActivity {
             userNameTextView.setText("Inicie Sesión para Comenzar");
             empresaTextView.setText("");
             rutaTextView.setText("");
+            shownProfile = null;
+            fleetButton.setVisibility(View.GONE);
             toggleButton.setVisibility(View.GONE);
             signOutButton.setVisibility(View.GONE);
             signInButton.setVisibility(View.VISIBLE);
@@ -316,46 +444,61 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void startSharingLocation() {
+        if (!session.requestStart()) {
+            // Ya estaba activo (por ejemplo reanudado tras reiniciar): no se lanza otro servicio
+            isSharingLocation = true;
+            updateUIBasedOnLocationState();
+            return;
+        }
         isSharingLocation = true;
-        saveLocationState(isSharingLocation);
         toggleButton.setText("Detener envío de ubicación");
 
-        backgroundImageView.setVisibility(View.VISIBLE);
+        showBackground();
         Animation rotateScaleAnimation = AnimationUtils.loadAnimation(this, R.anim.rotate_scale);
         backgroundImageView.startAnimation(rotateScaleAnimation);
 
+        FirebaseUser user = mAuth.getCurrentUser();
+        VehicleProfile profile = user != null ? profileCache.load(user.getUid()) : null;
+        ContextCompat.startForegroundService(this, locationServiceIntent(profile));
+    }
+
+    private Intent locationServiceIntent(VehicleProfile profile) {
         Intent serviceIntent = new Intent(this, LocationService.class);
-        ContextCompat.startForegroundService(this, serviceIntent);
+        if (profile != null) {
+            serviceIntent.putExtra(LocationService.EXTRA_EMPRESA, profile.empresa);
+            serviceIntent.putExtra(LocationService.EXTRA_RUTA, profile.ruta);
+        }
+        return serviceIntent;
     }
 
     private void stopSharingLocation() {
         isSharingLocation = false;
-        saveLocationState(isSharingLocation);
+        session.requestStop();
         toggleButton.setText("Iniciar envío de ubicación");
 
         Animation rotateScaleAnimation = AnimationUtils.loadAnimation(this, R.anim.fade_and_shrink);
         backgroundImageView.startAnimation(rotateScaleAnimation);
 
         Intent serviceIntent = new Intent(this, LocationService.class);
-        stopService(serviceIntent);
-    }
-
-    private void saveLocationState(boolean isSharing) {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putBoolean(KEY_IS_SHARING_LOCATION, isSharing);
-        editor.apply();
+        if (!stopService(serviceIntent)) {
+            // No había servicio que detener: la parada termina aquí
+            session.onServiceStopped();
+        }
     }
 
-    private boolean getLocationState() {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        return prefs.getBoolean(KEY_IS_SHARING_LOCATION, false);
+    // El fondo animado solo se ve compartiendo: se carga la primera vez que hace falta
+    private void showBackground() {
+        if (!backgroundLoaded) {
+            backgroundLoaded = true;
+            Glide.with(this).load(R.drawable.your_background_image).into(backgroundImageView);
+        }
+        backgroundImageView.setVisibility(View.VISIBLE);
     }
 
     private void updateUIBasedOnLocationState() {
         if (isSharingLocation) {
             toggleButton.setText("Detener envío de ubicación");
-            backgroundImageView.setVisibility(View.VISIBLE);
+            showBackground();
             Animation rotateScaleAnimation = AnimationUtils.loadAnimation(this, R.anim.rotate_scale);
             backgroundImageView.startAnimation(rotateScaleAnimation);
         } else {
@@ -0,0 +1,123 @@
+package com.example.ubicacion;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Registro de métricas del servicio. Contadores, histogramas y medidores se crean al
+// arrancar y quien registra guarda la referencia: el camino caliente nunca busca por
+// nombre ni reserva memoria. Los nombres usan "_" porque van como claves de la base de datos.
+public class Metrics {
+
+    public static final class Counter {
+        public final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    public interface Gauge {
+        double value();
+    }
+
+    private static final class NamedGauge {
+        final String name;
+        final Gauge gauge;
+
+        NamedGauge(String name, Gauge gauge) {
+            this.name = name;
+            this.gauge = gauge;
+        }
+    }
+
+    private final List<Counter> counters = new CopyOnWriteArrayList<>();
+    private final List<LatencyHistogram> histograms = new CopyOnWriteArrayList<>();
+    private final List<NamedGauge> gauges = new CopyOnWriteArrayList<>();
+
+    public synchronized Counter counter(String name) {
+        for (Counter counter : counters) {
+            if (counter.name.equals(name)) {
+                return counter;
+            }
+        }
+        Counter counter = new Counter(name);
+        counters.add(counter);
+        return counter;
+    }
+
+    public synchronized LatencyHistogram histogram(String name) {
+        for (LatencyHistogram histogram : histograms) {
+            if (histogram.name.equals(name)) {
+                return histogram;
+            }
+        }
+        LatencyHistogram histogram = new LatencyHistogram(name);
+        histograms.add(histogram);
+        return histogram;
+    }
+
+    // Histograma creado por otro componente (por ejemplo las etapas de FixPipeline)
+    public void register(LatencyHistogram histogram) {
+        histograms.add(histogram);
+    }
+
+    public void gauge(String name, Gauge gauge) {
+        gauges.add(new NamedGauge(name, gauge));
+    }
+
+    // Versión compacta para metricas/<uid>: contadores y medidores como números,
+    // histogramas como "n/p50/p95/p99/max" en la unidad en que se registraron
+    public Map<String, Object> snapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (Counter counter : counters) {
+            out.put(counter.name, counter.get());
+        }
+        for (NamedGauge gauge : gauges) {
+            double value = gauge.gauge.value();
+            if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+                out.put(gauge.name, Math.round(value * 100) / 100.0);
+            }
+        }
+        for (LatencyHistogram histogram : histograms) {
+            if (histogram.getCount() > 0) {
+                out.put(histogram.name, histogram.getCount() + "/" + histogram.getPercentile(50) + "/"
+                        + histogram.getPercentile(95) + "/" + histogram.getPercentile(99) + "/" + histogram.getMax());
+            }
+        }
+        return out;
+    }
+
+    // Texto legible para la pantalla de diagnóstico
+    public String format() {
+        StringBuilder out = new StringBuilder();
+        for (Counter counter : counters) {
+            out.append(String.format(Locale.US, "%-28s %d%n", counter.name, counter.get()));
+        }
+        for (NamedGauge gauge : gauges) {
+            out.append(String.format(Locale.US, "%-28s %.2f%n", gauge.name, gauge.gauge.value()));
+        }
+        out.append(String.format(Locale.US, "%n%-20s %7s %9s %9s %9s %9s%n", "histograma", "n", "p50", "p95", "p99", "max"));
+        for (LatencyHistogram histogram : histograms) {
+            out.append(String.format(Locale.US, "%-20s %7d %9d %9d %9d %9d%n", histogram.name, histogram.getCount(),
+                    histogram.getPercentile(50), histogram.getPercentile(95), histogram.getPercentile(99), histogram.getMax()));
+        }
+        return out.toString();
+    }
+}
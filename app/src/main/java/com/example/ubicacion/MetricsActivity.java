@@ -0,0 +1,84 @@
+package com.example.ubicacion;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+// Pantalla de diagnóstico: muestra las métricas del servicio en marcha y se refresca cada segundo
+public class MetricsActivity extends AppCompatActivity {
+
+    private static final long REFRESH_MS = 1000;
+    private static final long SHIFT_MS = 12 * 60 * 60 * 1000L;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private TextView metricsTextView;
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            Metrics metrics = LocationService.getActiveMetrics();
+            metricsTextView.setText(metrics != null ? metrics.format() : "El servicio de ubicación no está activo");
+            handler.postDelayed(this, REFRESH_MS);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        metricsTextView = findViewById(R.id.tv_metrics);
+        findViewById(R.id.btn_export_trip).setOnClickListener(v -> exportTrip());
+    }
+
+    // Escribe el GPX en la carpeta de la app (Android/data/.../files/viajes), accesible por USB
+    private void exportTrip() {
+        new Thread(() -> {
+            String message;
+            TripStore store = UbicacionApp.getTripStore();
+            File dir = getExternalFilesDir("viajes");
+            if (store == null || dir == null) {
+                message = "El historial de recorridos no está disponible";
+            } else {
+                long now = System.currentTimeMillis();
+                String name = "recorrido-" + new SimpleDateFormat("yyyyMMdd-HHmm", Locale.US).format(new Date(now));
+                File file = new File(dir, name + ".gpx");
+                try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8")))) {
+                    store.flush();
+                    int count = store.exportGpx(now - SHIFT_MS, now, name, out);
+                    message = count + " ubicaciones exportadas a " + file.getAbsolutePath();
+                } catch (IOException e) {
+                    message = "No se pudo exportar el recorrido";
+                }
+            }
+            final String text = message;
+            handler.post(() -> Toast.makeText(this, text, Toast.LENGTH_LONG).show());
+        }, "trip-export").start();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        handler.post(refresh);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        handler.removeCallbacks(refresh);
+    }
+}
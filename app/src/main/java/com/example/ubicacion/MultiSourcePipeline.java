@@ -0,0 +1,273 @@
+package com.example.ubicacion;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Varias fuentes de ubicación (receptores NMEA externos, otras unidades) procesadas por un
+// solo hilo. Cada fuente tiene su cola acotada, su límite de frecuencia y su etapa; el
+// hilo las recorre por turnos tomando como mucho "quantum" ubicaciones de cada una, así una
+// fuente que envía a 10 Hz no retrasa a las demás.
+//
+// El índice de una fuente es su hueco en el arreglo más una generación: al quitarla el hueco
+// queda libre para la siguiente, y un productor rezagado con el índice viejo no escribe en
+// la fuente nueva. Así el arreglo no crece con cada cambio de configuración.
+public class MultiSourcePipeline {
+
+    private static final int SLOT_BITS = 16;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+
+    public static final class Source {
+        public final String id;
+        final int index;
+        final FixQueue queue;
+        final long minIntervalMs;
+        final FixPipeline.Stage stage;
+        final AtomicLong lastAcceptedTime = new AtomicLong(Long.MIN_VALUE);
+        final AtomicLong accepted = new AtomicLong();
+        final AtomicLong rateLimited = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        volatile long delivered;
+        volatile boolean removed;
+
+        Source(String id, int index, int capacity, long minIntervalMs, FixPipeline.Stage stage) {
+            this.id = id;
+            this.index = index;
+            this.queue = new FixQueue(capacity);
+            this.minIntervalMs = minIntervalMs;
+            this.stage = stage;
+        }
+
+        public long getAccepted() {
+            return accepted.get();
+        }
+
+        // Descartadas por llegar antes de minIntervalMs desde la anterior
+        public long getRateLimited() {
+            return rateLimited.get();
+        }
+
+        // Descartadas por cola llena
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        // Ubicaciones en las que la etapa lanzó una excepción
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getDelivered() {
+            return delivered;
+        }
+
+        public int getQueueDepth() {
+            return queue.size();
+        }
+    }
+
+    private final Executor executor;
+    private final int quantum;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final LocationFix current = new LocationFix();
+    private final LatencyHistogram queueWait = new LatencyHistogram("sources_queue_wait_ns");
+    private final Runnable drainTask = this::drain;
+    // Copia al escribir; los huecos de fuentes quitadas quedan en null hasta reutilizarse
+    private volatile Source[] sources = new Source[0];
+    private int[] generations = new int[0];
+    private volatile int sourceCount;
+    private long removedRateLimited;
+    private int nextStart;
+    private Runnable onDrained;
+
+    public MultiSourcePipeline(Executor executor, int quantum) {
+        this.executor = executor;
+        this.quantum = Math.max(1, quantum);
+    }
+
+    // Se ejecuta en el hilo del pipeline cada vez que todas las colas quedan vacías
+    public MultiSourcePipeline setOnDrained(Runnable onDrained) {
+        this.onDrained = onDrained;
+        return this;
+    }
+
+    // Devuelve el índice con el que la fuente envía sus ubicaciones
+    public synchronized int addSource(String id, int capacity, long minIntervalMs, FixPipeline.Stage stage) {
+        int slot = 0;
+        while (slot < sources.length && sources[slot] != null) {
+            slot++;
+        }
+        if (slot > SLOT_MASK) {
+            throw new IllegalStateException("Demasiadas fuentes");
+        }
+        Source[] next = Arrays.copyOf(sources, Math.max(sources.length, slot + 1));
+        if (slot >= generations.length) {
+            generations = Arrays.copyOf(generations, slot + 1);
+        }
+        // Generación positiva en 15 bits: el índice nunca es negativo
+        int index = slot | (generations[slot] & 0x7FFF) << SLOT_BITS;
+        next[slot] = new Source(id, index, capacity, minIntervalMs, stage);
+        sources = next;
+        sourceCount++;
+        return index;
+    }
+
+    // La fuente deja de aceptar ubicaciones; lo que ya estaba en su cola se descarta y su
+    // hueco queda para la próxima fuente
+    public synchronized void removeSource(int index) {
+        Source source = lookup(index);
+        if (source == null) {
+            return;
+        }
+        source.removed = true;
+        removedRateLimited += source.rateLimited.get();
+        int slot = index & SLOT_MASK;
+        generations[slot]++;
+        Source[] next = sources.clone();
+        next[slot] = null;
+        // Sin huecos al final, para que el recorrido del hilo no crezca
+        int length = next.length;
+        while (length > 0 && next[length - 1] == null) {
+            length--;
+        }
+        sources = length == next.length ? next : Arrays.copyOf(next, length);
+        sourceCount--;
+    }
+
+    private Source lookup(int index) {
+        Source[] snapshot = sources;
+        int slot = index & SLOT_MASK;
+        if (index < 0 || slot >= snapshot.length) {
+            return null;
+        }
+        Source source = snapshot[slot];
+        return source != null && source.index == index ? source : null;
+    }
+
+    public boolean submit(int index, double latitude, double longitude, long time, float speed, float bearing, float accuracy) {
+        Source source = lookup(index);
+        if (source == null || source.removed) {
+            return false;
+        }
+        // Límite por fuente según la hora de la ubicación, no la de llegada: un receptor que
+        // entrega en ráfagas no se salta el límite
+        long last;
+        do {
+            last = source.lastAcceptedTime.get();
+            if (last != Long.MIN_VALUE && time - last < source.minIntervalMs && time >= last) {
+                source.rateLimited.incrementAndGet();
+                return false;
+            }
+        } while (!source.lastAcceptedTime.compareAndSet(last, time));
+        if (!source.queue.offer(latitude, longitude, time, speed, bearing, accuracy, System.nanoTime())) {
+            // No entró: que no cuente para el límite y el productor pueda reintentar
+            source.lastAcceptedTime.compareAndSet(time, last);
+            source.dropped.incrementAndGet();
+            return false;
+        }
+        source.accepted.incrementAndGet();
+        scheduleDrain();
+        return true;
+    }
+
+    public boolean submit(int index, LocationFix fix) {
+        return submit(index, fix.latitude, fix.longitude, fix.time, fix.speed, fix.bearing, fix.accuracy);
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                // El servicio se está cerrando
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        do {
+            try {
+                boolean progress;
+                do {
+                    progress = false;
+                    Source[] snapshot = sources;
+                    int n = snapshot.length;
+                    // Cada ronda empieza por una fuente distinta para no favorecer a la primera
+                    int start = n > 0 ? nextStart++ % n : 0;
+                    for (int k = 0; k < n; k++) {
+                        Source source = snapshot[(start + k) % n];
+                        if (source == null) {
+                            continue;
+                        }
+                        for (int taken = 0; taken < quantum; taken++) {
+                            long enqueuedAt = source.queue.poll(current);
+                            if (enqueuedAt < 0) {
+                                break;
+                            }
+                            progress = true;
+                            if (source.removed) {
+                                continue;
+                            }
+                            queueWait.record(System.nanoTime() - enqueuedAt);
+                            try {
+                                source.stage.process(current);
+                                source.delivered++;
+                            } catch (RuntimeException e) {
+                                // Una fuente con datos rotos no detiene a las demás
+                                source.failures.incrementAndGet();
+                            }
+                        }
+                    }
+                } while (progress);
+                if (onDrained != null) {
+                    onDrained.run();
+                }
+            } finally {
+                drainScheduled.set(false);
+            }
+        } while (hasPending() && drainScheduled.compareAndSet(false, true));
+    }
+
+    private boolean hasPending() {
+        for (Source source : sources) {
+            if (source != null && !source.queue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // null si la fuente ya se quitó
+    public Source getSource(int index) {
+        return lookup(index);
+    }
+
+    // Fuentes activas
+    public int getSourceCount() {
+        return sourceCount;
+    }
+
+    // Huecos del arreglo que recorre el hilo, activos o libres
+    public int getSlotCount() {
+        return sources.length;
+    }
+
+    // Descartadas por el límite de frecuencia, sumando las fuentes ya quitadas
+    public synchronized long getRateLimited() {
+        long total = removedRateLimited;
+        for (Source source : sources) {
+            if (source != null) {
+                total += source.rateLimited.get();
+            }
+        }
+        return total;
+    }
+
+    public LatencyHistogram getQueueWaitHistogram() {
+        return queueWait;
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.ubicacion;
+
+// Lector de frases NMEA 0183 de receptores GPS externos. Usa RMC para posición, hora,
+// velocidad y rumbo, y GGA para la calidad (HDOP), que se convierte en una precisión
+// aproximada. Acepta cualquier emisor (GP, GN, GL, GA, BD) y comprueba el checksum.
+// No reserva memoria: recorre la línea por índices y rellena la LocationFix que recibe.
+public class NmeaParser {
+
+    // Error típico de un receptor por unidad de HDOP, en metros
+    private static final float UERE_METERS = 5f;
+    private static final float DEFAULT_ACCURACY_METERS = 10f;
+    private static final float KNOTS_TO_MPS = 0.514444f;
+    private static final int MAX_FIELDS = 20;
+    private static final double[] POW10 = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12};
+
+    private final int[] fieldStart = new int[MAX_FIELDS];
+    private final int[] fieldEnd = new int[MAX_FIELDS];
+    private int fieldCount;
+    private float lastHdop = -1;
+    private long badChecksums;
+
+    // Devuelve true si la línea era un RMC válido y "into" tiene una ubicación nueva
+    public boolean parse(CharSequence line, LocationFix into) {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (end < 7 || line.charAt(0) != '$') {
+            return false;
+        }
+        int star = end - 3;
+        if (star > 0 && line.charAt(star) == '*') {
+            int expected = (hexValue(line.charAt(star + 1)) << 4) | hexValue(line.charAt(star + 2));
+            int sum = 0;
+            for (int i = 1; i < star; i++) {
+                sum ^= line.charAt(i);
+            }
+            if (expected < 0 || sum != expected) {
+                badChecksums++;
+                return false;
+            }
+            end = star;
+        }
+        split(line, end);
+        if (fieldCount < 1 || fieldEnd[0] - fieldStart[0] != 5) {
+            return false;
+        }
+        int type = fieldStart[0] + 2;
+        if (matches(line, type, "GGA")) {
+            parseGga(line);
+            return false;
+        }
+        if (matches(line, type, "RMC")) {
+            return parseRmc(line, into);
+        }
+        return false;
+    }
+
+    public long getBadChecksums() {
+        return badChecksums;
+    }
+
+    // $GPGGA,hhmmss.ss,lat,N,lon,E,calidad,satélites,hdop,...
+    private void parseGga(CharSequence line) {
+        if (fieldCount < 9) {
+            return;
+        }
+        int quality = (int) parseNumber(line, 6, -1);
+        lastHdop = quality > 0 ? (float) parseNumber(line, 8, -1) : -1;
+    }
+
+    // $GPRMC,hhmmss.ss,A,ddmm.mmmm,N,dddmm.mmmm,W,nudos,rumbo,ddmmyy,...
+    private boolean parseRmc(CharSequence line, LocationFix into) {
+        if (fieldCount < 10 || fieldEnd[2] - fieldStart[2] != 1 || line.charAt(fieldStart[2]) != 'A') {
+            return false;
+        }
+        double latitude = parseCoordinate(line, 3, 2);
+        double longitude = parseCoordinate(line, 5, 3);
+        long time = parseTime(line, 1, 9);
+        if (Double.isNaN(latitude) || Double.isNaN(longitude) || time < 0) {
+            return false;
+        }
+        if (isHemisphere(line, 4, 'S')) {
+            latitude = -latitude;
+        }
+        if (isHemisphere(line, 6, 'W')) {
+            longitude = -longitude;
+        }
+        double knots = parseNumber(line, 7, 0);
+        double course = parseNumber(line, 8, 0);
+        float accuracy = lastHdop > 0 ? lastHdop * UERE_METERS : DEFAULT_ACCURACY_METERS;
+        into.set(latitude, longitude, time, (float) knots * KNOTS_TO_MPS, (float) course, accuracy);
+        return true;
+    }
+
+    private void split(CharSequence line, int end) {
+        fieldCount = 0;
+        int start = 1;
+        for (int i = 1; i <= end && fieldCount < MAX_FIELDS; i++) {
+            if (i == end || line.charAt(i) == ',') {
+                fieldStart[fieldCount] = start;
+                fieldEnd[fieldCount] = i;
+                fieldCount++;
+                start = i + 1;
+            }
+        }
+    }
+
+    // ddmm.mmmm (latitud, 2 dígitos de grados) o dddmm.mmmm (longitud, 3)
+    private double parseCoordinate(CharSequence line, int field, int degreeDigits) {
+        int start = fieldStart[field];
+        if (fieldEnd[field] - start < degreeDigits + 2) {
+            return Double.NaN;
+        }
+        double degrees = 0;
+        for (int i = start; i < start + degreeDigits; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Double.NaN;
+            }
+            degrees = degrees * 10 + digit;
+        }
+        double minutes = parseRange(line, start + degreeDigits, fieldEnd[field]);
+        if (Double.isNaN(minutes) || minutes >= 60) {
+            return Double.NaN;
+        }
+        return degrees + minutes / 60.0;
+    }
+
+    // Hora UTC hhmmss(.sss) del campo timeField y fecha ddmmyy de dateField, en ms desde 1970
+    private long parseTime(CharSequence line, int timeField, int dateField) {
+        int t = fieldStart[timeField];
+        int d = fieldStart[dateField];
+        if (fieldEnd[timeField] - t < 6 || fieldEnd[dateField] - d != 6) {
+            return -1;
+        }
+        int hours = twoDigits(line, t);
+        int minutes = twoDigits(line, t + 2);
+        double seconds = parseRange(line, t + 4, fieldEnd[timeField]);
+        int day = twoDigits(line, d);
+        int month = twoDigits(line, d + 2);
+        int shortYear = twoDigits(line, d + 4);
+        // Año de dos cifras: 80-99 es 19xx, como hacen la mayoría de receptores
+        int year = shortYear >= 80 ? 1900 + shortYear : 2000 + shortYear;
+        if (hours < 0 || minutes < 0 || Double.isNaN(seconds) || day < 1 || month < 1 || month > 12 || shortYear < 0) {
+            return -1;
+        }
+        long days = daysFromCivil(year, month, day);
+        return ((days * 24 + hours) * 60 + minutes) * 60000L + Math.round(seconds * 1000);
+    }
+
+    // Días desde 1970-01-01 para una fecha del calendario gregoriano (algoritmo de H. Hinnant)
+    static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    private double parseNumber(CharSequence line, int field, double fallback) {
+        if (field >= fieldCount || fieldEnd[field] == fieldStart[field]) {
+            return fallback;
+        }
+        double value = parseRange(line, fieldStart[field], fieldEnd[field]);
+        return Double.isNaN(value) ? fallback : value;
+    }
+
+    // Decimal sin signo ni exponente, que es todo lo que usa NMEA
+    private static double parseRange(CharSequence line, int start, int end) {
+        if (start >= end) {
+            return Double.NaN;
+        }
+        long mantissa = 0;
+        int decimals = -1;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (mantissa < Long.MAX_VALUE / 10 && decimals < POW10.length - 1) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (decimals >= 0) {
+                        decimals++;
+                    }
+                }
+            } else {
+                return Double.NaN;
+            }
+        }
+        return decimals > 0 ? mantissa / POW10[decimals] : mantissa;
+    }
+
+    private static int twoDigits(CharSequence line, int at) {
+        int a = line.charAt(at) - '0';
+        int b = line.charAt(at + 1) - '0';
+        return a < 0 || a > 9 || b < 0 || b > 9 ? -1 : a * 10 + b;
+    }
+
+    private boolean isHemisphere(CharSequence line, int field, char hemisphere) {
+        return fieldEnd[field] - fieldStart[field] == 1 && line.charAt(fieldStart[field]) == hemisphere;
+    }
+
+    private static boolean matches(CharSequence line, int at, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (line.charAt(at + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        return -1;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.ubicacion;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.Charset;
+
+// Lee frases NMEA de un receptor externo (socket TCP) o de un archivo grabado y las envía
+// a su fuente en el MultiSourcePipeline. Corre en su propio hilo; si la conexión se cae
+// vuelve a intentarlo con espera creciente hasta que se cierra la fuente.
+public class NmeaSource implements Closeable {
+
+    public interface Connector {
+        InputStream open() throws IOException;
+    }
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int READ_TIMEOUT_MS = 15000;
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30000;
+    // En la reproducción de un archivo no se espera más que esto entre dos ubicaciones
+    private static final long MAX_REPLAY_GAP_MS = 5000;
+
+    private final String name;
+    private final Connector connector;
+    private final boolean reconnect;
+    private final boolean paced;
+    private final MultiSourcePipeline pipeline;
+    private final int sourceIndex;
+    private final NmeaParser parser = new NmeaParser();
+    private final LocationFix fix = new LocationFix();
+    private volatile boolean closed;
+    private volatile InputStream stream;
+    private Thread thread;
+    private volatile long lines;
+
+    // reconnect: volver a conectar al terminar el flujo (socket); paced: respetar la hora
+    // de cada frase al reproducir un archivo
+    public NmeaSource(String name, Connector connector, boolean reconnect, boolean paced,
+                      MultiSourcePipeline pipeline, int sourceIndex) {
+        this.name = name;
+        this.connector = connector;
+        this.reconnect = reconnect;
+        this.paced = paced;
+        this.pipeline = pipeline;
+        this.sourceIndex = sourceIndex;
+    }
+
+    // "tcp://host:puerto" o "file:///ruta/al/archivo.nmea"
+    public static NmeaSource fromUrl(String name, String url, MultiSourcePipeline pipeline, int sourceIndex) {
+        URI uri = URI.create(url);
+        if ("tcp".equals(uri.getScheme())) {
+            String host = uri.getHost();
+            int port = uri.getPort();
+            if (host == null || port <= 0) {
+                throw new IllegalArgumentException("Fuente NMEA sin host o puerto: " + url);
+            }
+            return new NmeaSource(name, () -> {
+                Socket socket = new Socket();
+                try {
+                    socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+                    // Un receptor que deja de emitir cuenta como conexión caída
+                    socket.setSoTimeout(READ_TIMEOUT_MS);
+                    return socket.getInputStream();
+                } catch (IOException e) {
+                    socket.close();
+                    throw e;
+                }
+            }, true, false, pipeline, sourceIndex);
+        }
+        if ("file".equals(uri.getScheme())) {
+            String path = uri.getPath();
+            return new NmeaSource(name, () -> new FileInputStream(path), false, true, pipeline, sourceIndex);
+        }
+        throw new IllegalArgumentException("Fuente NMEA no soportada: " + url);
+    }
+
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this::run, "nmea-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void run() {
+        long backoff = MIN_BACKOFF_MS;
+        while (!closed) {
+            try (InputStream in = connector.open()) {
+                stream = in;
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charset.forName("US-ASCII")));
+                backoff = MIN_BACKOFF_MS;
+                read(reader);
+                if (!reconnect) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Receptor apagado o fuera de alcance: se reintenta
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                stream = null;
+            }
+            if (closed) {
+                return;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    private void read(BufferedReader reader) throws IOException, InterruptedException {
+        long previousTime = -1;
+        String line;
+        while (!closed && (line = reader.readLine()) != null) {
+            lines++;
+            if (!parser.parse(line, fix)) {
+                continue;
+            }
+            if (paced && previousTime >= 0 && fix.time > previousTime) {
+                Thread.sleep(Math.min(fix.time - previousTime, MAX_REPLAY_GAP_MS));
+            }
+            previousTime = fix.time;
+            pipeline.submit(sourceIndex, fix);
+        }
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getBadChecksums() {
+        return parser.getBadChecksums();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        InputStream in = stream;
+        if (in != null) {
+            try {
+                // Desbloquea la lectura en curso
+                in.close();
+            } catch (IOException ignored) {
+                // Ya estaba cerrado
+            }
+        }
+        Thread t;
+        synchronized (this) {
+            t = thread;
+        }
+        if (t != null) {
+            t.interrupt();
+        }
+        pipeline.removeSource(sourceIndex);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.ubicacion;
+
+// Sabe si alguien tiene el vehículo abierto a partir de watchers/<uid>: cada pasajero o
+// despachador escribe ahí su marca de tiempo mientras mira (ver WatcherBeacon). Pasa a
+// LIVE en cuanto aparece uno y vuelve a HEARTBEAT un rato después de que se va el último,
+// para no cambiar de modo cada vez que alguien cierra y reabre el mapa.
+public class PresenceMonitor {
+
+    public enum Mode {
+        HEARTBEAT,
+        LIVE
+    }
+
+    public interface Listener {
+        void onModeChanged(Mode mode);
+    }
+
+    // Un observador que no renueva su marca en este tiempo se da por ido (onDisconnect no
+    // siempre llega: navegador cerrado a la fuerza, teléfono sin batería)
+    static final long WATCHER_TTL_MS = 2 * 60 * 1000L;
+    static final long LINGER_MS = 30 * 1000L;
+
+    private final Listener listener;
+    // Hasta recibir la primera lista no se sabe: se publica como si alguien mirara
+    private Mode mode = Mode.LIVE;
+    private long[] lastSeen = new long[0];
+    private int watcherCount;
+    private long unwatchedSinceMs = -1;
+
+    public PresenceMonitor(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Marcas de tiempo de todos los observadores registrados, en hora del servidor
+    public void onWatchers(long[] lastSeenMs, long nowMs) {
+        Mode changed;
+        synchronized (this) {
+            lastSeen = lastSeenMs.clone();
+            changed = update(nowMs);
+        }
+        notify(changed);
+    }
+
+    // Se llama periódicamente para caducar observadores y terminar la espera
+    public void tick(long nowMs) {
+        Mode changed;
+        synchronized (this) {
+            changed = update(nowMs);
+        }
+        notify(changed);
+    }
+
+    public synchronized Mode getMode() {
+        return mode;
+    }
+
+    public synchronized int getWatcherCount() {
+        return watcherCount;
+    }
+
+    // Devuelve el modo nuevo si cambió, o null
+    private Mode update(long nowMs) {
+        int count = 0;
+        for (long seen : lastSeen) {
+            if (nowMs - seen < WATCHER_TTL_MS) {
+                count++;
+            }
+        }
+        watcherCount = count;
+        Mode next;
+        if (count > 0) {
+            unwatchedSinceMs = -1;
+            next = Mode.LIVE;
+        } else {
+            if (unwatchedSinceMs < 0) {
+                unwatchedSinceMs = nowMs;
+            }
+            next = nowMs - unwatchedSinceMs >= LINGER_MS ? Mode.HEARTBEAT : mode;
+        }
+        if (next == mode) {
+            return null;
+        }
+        mode = next;
+        return next;
+    }
+
+    private void notify(Mode changed) {
+        // Fuera del candado: el listener reconfigura el proveedor y el envío
+        if (changed != null) {
+            listener.onModeChanged(changed);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.ubicacion;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+// Caché local del VehicleProfile. Se invalida por tiempo (TTL), por usuario y por
+// versión del esquema, para que un cambio de formato no lea datos viejos.
+public class ProfileCache {
+
+    public static final long TTL_MS = 12 * 60 * 60 * 1000L;
+
+    private static final String PREFS_NAME = "ProfilePrefs";
+    private static final int SCHEMA_VERSION = 1;
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_UID = "uid";
+    private static final String KEY_ACTIVO = "activo";
+    private static final String KEY_EMPRESA = "empresa";
+    private static final String KEY_RUTA = "ruta";
+    private static final String KEY_NOMBRE = "nombre";
+    private static final String KEY_FETCHED_AT = "fetchedAt";
+
+    private final SharedPreferences prefs;
+
+    public ProfileCache(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Nullable
+    public VehicleProfile load(String uid) {
+        if (prefs.getInt(KEY_VERSION, 0) != SCHEMA_VERSION || !uid.equals(prefs.getString(KEY_UID, null))) {
+            return null;
+        }
+        return new VehicleProfile(uid,
+                prefs.getBoolean(KEY_ACTIVO, false),
+                prefs.getString(KEY_EMPRESA, null),
+                prefs.getString(KEY_RUTA, null),
+                prefs.getString(KEY_NOMBRE, null),
+                prefs.getLong(KEY_FETCHED_AT, 0));
+    }
+
+    public void save(VehicleProfile profile) {
+        prefs.edit()
+                .putInt(KEY_VERSION, SCHEMA_VERSION)
+                .putString(KEY_UID, profile.uid)
+                .putBoolean(KEY_ACTIVO, profile.activo)
+                .putString(KEY_EMPRESA, profile.empresa)
+                .putString(KEY_RUTA, profile.ruta)
+                .putString(KEY_NOMBRE, profile.nombre)
+                .putLong(KEY_FETCHED_AT, profile.fetchedAt)
+                .apply();
+    }
+
+    public void clear() {
+        prefs.edit().clear().apply();
+    }
+}
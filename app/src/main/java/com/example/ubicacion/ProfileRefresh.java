@@ -0,0 +1,97 @@
+package com.example.ubicacion;
+
+// Coordina las dos lecturas del perfil: vehiculos/<uid> y rutas/<empresa>/rutas/<ruta>/vehiculos/<uid>.
+// Si hay una empresa y ruta en caché, la segunda lectura se lanza a la vez que la primera;
+// solo si la cuenta resulta tener otra ruta se repite con los datos correctos.
+public class ProfileRefresh {
+
+    public interface Listener {
+        void requestAccount();
+
+        void requestRoute(String empresa, String ruta);
+
+        void onProfile(VehicleProfile profile);
+
+        void onDeactivated();
+    }
+
+    private final String uid;
+    private final VehicleProfile cached;
+    private final Listener listener;
+    private final long startedAt;
+
+    private boolean finished;
+    private boolean accountLoaded;
+    private String empresa;
+    private String ruta;
+
+    private String requestedEmpresa;
+    private String requestedRuta;
+    private boolean routeLoaded;
+    private String nombre;
+
+    public ProfileRefresh(String uid, VehicleProfile cached, Listener listener, long startedAt) {
+        this.uid = uid;
+        this.cached = cached;
+        this.listener = listener;
+        this.startedAt = startedAt;
+    }
+
+    public void start() {
+        listener.requestAccount();
+        if (cached != null && cached.empresa != null && cached.ruta != null) {
+            requestRoute(cached.empresa, cached.ruta);
+        }
+    }
+
+    public void onAccount(boolean activo, String empresa, String ruta) {
+        if (finished) {
+            return;
+        }
+        if (!activo) {
+            finished = true;
+            listener.onDeactivated();
+            return;
+        }
+        if (empresa == null || ruta == null) {
+            // Cuenta sin ruta asignada: no hay nada más que cargar
+            finished = true;
+            return;
+        }
+        accountLoaded = true;
+        this.empresa = empresa;
+        this.ruta = ruta;
+        if (!empresa.equals(requestedEmpresa) || !ruta.equals(requestedRuta)) {
+            // La ruta en caché era otra: la lectura especulativa no sirve
+            requestRoute(empresa, ruta);
+        }
+        tryFinish();
+    }
+
+    public void onRoute(String empresa, String ruta, String nombre) {
+        if (finished || !empresa.equals(requestedEmpresa) || !ruta.equals(requestedRuta)) {
+            return;
+        }
+        routeLoaded = true;
+        this.nombre = nombre;
+        tryFinish();
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    private void requestRoute(String empresa, String ruta) {
+        requestedEmpresa = empresa;
+        requestedRuta = ruta;
+        routeLoaded = false;
+        listener.requestRoute(empresa, ruta);
+    }
+
+    private void tryFinish() {
+        if (accountLoaded && routeLoaded) {
+            finished = true;
+            listener.onProfile(new VehicleProfile(uid, true, empresa, ruta, nombre, startedAt));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.ubicacion;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+// Envía las actualizaciones al relay local (módulo :relay) en lugar de a Firebase.
+// Usa el mismo formato que la API REST de la base de datos: PATCH /.json con el mapa multi-ruta.
+public class RelayUplinkSink implements LocationUplink.Sink {
+
+    private static final int TIMEOUT_MS = 10000;
+
+    private final String url;
+    private final Executor executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "relay-uplink");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RelayUplinkSink(String baseUrl) {
+        url = baseUrl.endsWith("/") ? baseUrl + ".json" : baseUrl + "/.json";
+    }
+
+    @Override
+    public void write(Map<String, Object> updates, LocationUplink.Callback callback) {
+        // JSONObject copia el mapa aquí, en el hilo del llamador, antes de que el lote cambie
+        final String body = new JSONObject(updates).toString();
+        executor.execute(() -> callback.onComplete(post(body)));
+    }
+
+    private boolean post(String body) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            // HttpURLConnection no admite PATCH
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    byte[] buffer = new byte[256];
+                    while (in.read(buffer) != -1) {
+                        // vaciar la respuesta para poder reutilizar la conexión
+                    }
+                }
+            }
+            return status == HttpURLConnection.HTTP_OK;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.ubicacion;
+
+import java.util.Arrays;
+
+// Trazado de una ruta (rutas/<empresa>/rutas/<ruta>/trazado) proyectado a metros sobre un
+// plano local, con la distancia acumulada en cada vértice y una rejilla de tramos: cada
+// celda guarda los tramos cuyo rectángulo la toca. Como en StopIndex, una consulta mira
+// solo las celdas vecinas y todo vive en arreglos primitivos.
+public class RouteGeometry {
+
+    public static final double DEFAULT_CELL_METERS = 100;
+    private static final double METERS_PER_DEGREE_LAT = 110574.0;
+    private static final double METERS_PER_DEGREE_LON = 111320.0;
+    // Entre dos tramos a distancia parecida gana el más cercano al último punto conocido:
+    // 100 m de recorrido pesan como 2 m de distancia lateral
+    private static final double ALONG_WEIGHT = 0.02;
+    // Retroceder 10 m sobre el trazado pesa como 5 m de distancia lateral
+    private static final double BACKWARD_WEIGHT = 0.5;
+
+    // Resultado reutilizable de una proyección
+    public static final class Snap {
+        public int segment = -1;
+        // Distancia recorrida desde el inicio de la ruta hasta el punto proyectado
+        public double alongMeters = Double.NaN;
+        public double distanceMeters = Double.POSITIVE_INFINITY;
+
+        void clear() {
+            segment = -1;
+            alongMeters = Double.NaN;
+            distanceMeters = Double.POSITIVE_INFINITY;
+        }
+    }
+
+    private final double[] x;
+    private final double[] y;
+    private final double[] cumulative;
+    private final double originLat;
+    private final double originLon;
+    private final double lonScale;
+    private final double cellMeters;
+
+    // Tabla hash abierta celda -> tramo de "cellSegments" (formato CSR)
+    private final long[] tableKeys;
+    private final int[] tableStart;
+    private final int[] tableCount;
+    private final int tableMask;
+    private final int[] cellSegments;
+    // Para las búsquedas del RouteMatcher, que corren siempre en el hilo del pipeline
+    private final Snap scratch = new Snap();
+
+    public RouteGeometry(double[] latitudes, double[] longitudes) {
+        this(latitudes, longitudes, DEFAULT_CELL_METERS);
+    }
+
+    public RouteGeometry(double[] latitudes, double[] longitudes, double cellMeters) {
+        if (latitudes.length != longitudes.length || latitudes.length < 2) {
+            throw new IllegalArgumentException("El trazado necesita al menos dos puntos");
+        }
+        int n = latitudes.length;
+        this.cellMeters = cellMeters;
+        double sumLat = 0;
+        double sumLon = 0;
+        for (int i = 0; i < n; i++) {
+            sumLat += latitudes[i];
+            sumLon += longitudes[i];
+        }
+        originLat = sumLat / n;
+        originLon = sumLon / n;
+        lonScale = METERS_PER_DEGREE_LON * Math.cos(Math.toRadians(originLat));
+
+        x = new double[n];
+        y = new double[n];
+        cumulative = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = toX(longitudes[i]);
+            y[i] = toY(latitudes[i]);
+            if (i > 0) {
+                cumulative[i] = cumulative[i - 1] + Math.hypot(x[i] - x[i - 1], y[i] - y[i - 1]);
+            }
+        }
+
+        // Pares (celda, tramo) de todas las celdas que toca el rectángulo de cada tramo
+        int segments = n - 1;
+        int pairs = 0;
+        for (int s = 0; s < segments; s++) {
+            pairs += (int) ((cellSpan(x[s], x[s + 1]) + 1) * (cellSpan(y[s], y[s + 1]) + 1));
+        }
+        long[] pairKeys = new long[pairs];
+        int[] pairSegments = new int[pairs];
+        int p = 0;
+        for (int s = 0; s < segments; s++) {
+            long x0 = cell(Math.min(x[s], x[s + 1]));
+            long x1 = cell(Math.max(x[s], x[s + 1]));
+            long y0 = cell(Math.min(y[s], y[s + 1]));
+            long y1 = cell(Math.max(y[s], y[s + 1]));
+            for (long cx = x0; cx <= x1; cx++) {
+                for (long cy = y0; cy <= y1; cy++) {
+                    pairKeys[p] = cellKey(cx, cy);
+                    pairSegments[p] = s;
+                    p++;
+                }
+            }
+        }
+
+        // Ordenamos los pares por celda para guardar cada celda como un tramo contiguo
+        Integer[] order = new Integer[pairs];
+        for (int i = 0; i < pairs; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(pairKeys[a], pairKeys[b]));
+        cellSegments = new int[pairs];
+        for (int i = 0; i < pairs; i++) {
+            cellSegments[i] = pairSegments[order[i]];
+        }
+
+        int tableSize = Integer.highestOneBit(Math.max(4, pairs * 2 - 1)) << 1;
+        tableMask = tableSize - 1;
+        tableKeys = new long[tableSize];
+        tableStart = new int[tableSize];
+        tableCount = new int[tableSize];
+        Arrays.fill(tableStart, -1);
+        for (int i = 0; i < pairs; i++) {
+            long key = pairKeys[order[i]];
+            int slot = slotFor(key);
+            if (tableStart[slot] < 0) {
+                tableKeys[slot] = key;
+                tableStart[slot] = i;
+            }
+            tableCount[slot]++;
+        }
+    }
+
+    // Polilínea codificada al estilo de Google (precisión 1e-5), como la devuelven las APIs de rutas
+    public static RouteGeometry fromEncodedPolyline(String encoded) {
+        double[] lat = new double[encoded.length() / 2 + 1];
+        double[] lon = new double[lat.length];
+        int count = 0;
+        int index = 0;
+        long latE5 = 0;
+        long lonE5 = 0;
+        long[] value = new long[1];
+        while (index < encoded.length()) {
+            index = readPolylineValue(encoded, index, value);
+            latE5 += value[0];
+            index = readPolylineValue(encoded, index, value);
+            lonE5 += value[0];
+            lat[count] = latE5 / 1e5;
+            lon[count] = lonE5 / 1e5;
+            count++;
+        }
+        return new RouteGeometry(Arrays.copyOf(lat, count), Arrays.copyOf(lon, count));
+    }
+
+    private static int readPolylineValue(String encoded, int index, long[] into) {
+        long result = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (index >= encoded.length()) {
+                throw new IllegalArgumentException("Polilínea incompleta");
+            }
+            b = encoded.charAt(index++) - 63;
+            result |= (long) (b & 0x1F) << shift;
+            shift += 5;
+        } while (b >= 0x20);
+        into[0] = (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+        return index;
+    }
+
+    public int getSegmentCount() {
+        return x.length - 1;
+    }
+
+    public double getLengthMeters() {
+        return cumulative[cumulative.length - 1];
+    }
+
+    // Distancia recorrida hasta el vértice "index"
+    public double getAlongMeters(int index) {
+        return cumulative[index];
+    }
+
+    double toX(double longitude) {
+        return (longitude - originLon) * lonScale;
+    }
+
+    double toY(double latitude) {
+        return (latitude - originLat) * METERS_PER_DEGREE_LAT;
+    }
+
+    // Ajuste dentro de los tramos [from, to], los vecinos del último ajuste. Saltar adelante
+    // penaliza poco y retroceder mucho: en una ida y vuelta por la misma calle el vehículo
+    // sigue en su sentido y no salta a la otra mano antes de dar la vuelta.
+    void nearestInWindow(int from, int to, double px, double py, double lastAlong, Snap into) {
+        into.clear();
+        double bestScore = Double.POSITIVE_INFINITY;
+        for (int s = from; s <= to; s++) {
+            project(s, px, py, scratch);
+            double score = scratch.distanceMeters;
+            score += scratch.alongMeters < lastAlong
+                    ? BACKWARD_WEIGHT * (lastAlong - scratch.alongMeters)
+                    : ALONG_WEIGHT * (scratch.alongMeters - lastAlong);
+            if (score < bestScore) {
+                bestScore = score;
+                copy(scratch, into);
+            }
+        }
+    }
+
+    // Tramo más cercano en las celdas vecinas. Con "preferAlong" (no NaN), entre tramos que
+    // pasan por el mismo sitio gana el más cercano a él. Devuelve cuántos tramos miró.
+    int nearest(double px, double py, double preferAlong, Snap into) {
+        return nearest(px, py, preferAlong, into, scratch);
+    }
+
+    // Distancia recorrida hasta el punto del trazado más cercano, por ejemplo de una parada
+    // (NaN si no hay tramo a menos de una celda). Se puede llamar desde cualquier hilo.
+    public double alongOf(double latitude, double longitude) {
+        Snap snap = new Snap();
+        nearest(toX(longitude), toY(latitude), Double.NaN, snap, new Snap());
+        return snap.alongMeters;
+    }
+
+    private int nearest(double px, double py, double preferAlong, Snap into, Snap candidate) {
+        into.clear();
+        long cx = cell(px);
+        long cy = cell(py);
+        double bestScore = Double.POSITIVE_INFINITY;
+        int visited = 0;
+        for (long dy = -1; dy <= 1; dy++) {
+            for (long dx = -1; dx <= 1; dx++) {
+                int slot = find(cellKey(cx + dx, cy + dy));
+                if (slot < 0) {
+                    continue;
+                }
+                int end = tableStart[slot] + tableCount[slot];
+                for (int i = tableStart[slot]; i < end; i++) {
+                    project(cellSegments[i], px, py, candidate);
+                    visited++;
+                    double score = candidate.distanceMeters;
+                    if (!Double.isNaN(preferAlong)) {
+                        score += ALONG_WEIGHT * Math.abs(candidate.alongMeters - preferAlong);
+                    }
+                    if (score < bestScore) {
+                        bestScore = score;
+                        copy(candidate, into);
+                    }
+                }
+            }
+        }
+        if (into.distanceMeters > cellMeters) {
+            // Más allá de una celda puede haber otro tramo más cerca que no se miró
+            into.clear();
+        }
+        return visited;
+    }
+
+    // Proyección de (px, py) sobre el tramo "segment"
+    private void project(int segment, double px, double py, Snap into) {
+        double ax = x[segment];
+        double ay = y[segment];
+        double dx = x[segment + 1] - ax;
+        double dy = y[segment + 1] - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSquared : 0;
+        t = t < 0 ? 0 : t > 1 ? 1 : t;
+        double sx = ax + t * dx - px;
+        double sy = ay + t * dy - py;
+        into.segment = segment;
+        into.distanceMeters = Math.sqrt(sx * sx + sy * sy);
+        into.alongMeters = cumulative[segment] + t * (cumulative[segment + 1] - cumulative[segment]);
+    }
+
+    private static void copy(Snap from, Snap into) {
+        into.segment = from.segment;
+        into.alongMeters = from.alongMeters;
+        into.distanceMeters = from.distanceMeters;
+    }
+
+    private long cellSpan(double a, double b) {
+        return cell(Math.max(a, b)) - cell(Math.min(a, b));
+    }
+
+    private long cell(double meters) {
+        return (long) Math.floor(meters / cellMeters);
+    }
+
+    private static long cellKey(long cx, long cy) {
+        return (cx << 32) ^ (cy & 0xFFFFFFFFL);
+    }
+
+    private int slotFor(long key) {
+        int slot = hash(key) & tableMask;
+        while (tableStart[slot] >= 0 && tableKeys[slot] != key) {
+            slot = (slot + 1) & tableMask;
+        }
+        return slot;
+    }
+
+    private int find(long key) {
+        int slot = hash(key) & tableMask;
+        while (tableStart[slot] >= 0) {
+            if (tableKeys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        return -1;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
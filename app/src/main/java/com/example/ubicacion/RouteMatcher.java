@@ -0,0 +1,127 @@
+package com.example.ubicacion;
+
+// Etapa del pipeline que ajusta cada ubicación al trazado de la ruta asignada y publica
+// cuánto se ha recorrido y si el vehículo salió de la ruta. Primero busca en una ventana
+// fija de tramos alrededor del último ajuste y solo si ahí no encaja consulta la rejilla,
+// así el coste por ubicación no crece con el largo del trazado.
+// Fuera de ruta: OFF_ROUTE_FIXES ubicaciones seguidas lejos del trazado; de vuelta, con
+// ON_ROUTE_FIXES cerca. La histéresis evita que el aviso parpadee con el ruido del GPS.
+public class RouteMatcher implements FixPipeline.Stage {
+
+    static final double ON_ROUTE_METERS = 40;
+    // Margen extra según la precisión informada, con tope para que una mala lectura no lo estire
+    static final float MAX_ACCURACY_MARGIN = 30f;
+    static final int OFF_ROUTE_FIXES = 3;
+    static final int ON_ROUTE_FIXES = 2;
+    static final int WINDOW_BEHIND = 2;
+    static final int WINDOW_AHEAD = 30;
+    // Con más error que esto la ubicación no dice por dónde vamos
+    static final float MAX_ACCURACY_METERS = 50f;
+
+    private final RouteGeometry.Snap snap = new RouteGeometry.Snap();
+    private volatile RouteGeometry route;
+    private RouteGeometry activeRoute;
+
+    private int segment = -1;
+    private int offFixes;
+    private int onFixes;
+    private volatile double distanceAlongMeters = Double.NaN;
+    private volatile double distanceFromRouteMeters = Double.NaN;
+    private volatile boolean offRoute;
+    private volatile long segmentsVisited;
+    private volatile long gridQueries;
+
+    // El trazado llega de la red después de arrancar; hasta entonces la etapa no hace nada
+    public void setRoute(RouteGeometry route) {
+        this.route = route;
+    }
+
+    @Override
+    public boolean process(LocationFix fix) {
+        RouteGeometry r = route;
+        if (r == null) {
+            return true;
+        }
+        if (r != activeRoute) {
+            // Trazado nuevo: el tramo anterior ya no vale
+            activeRoute = r;
+            segment = -1;
+            offFixes = 0;
+            onFixes = 0;
+            offRoute = false;
+            distanceAlongMeters = Double.NaN;
+            distanceFromRouteMeters = Double.NaN;
+        }
+        if (fix.accuracy > MAX_ACCURACY_METERS) {
+            return true;
+        }
+        double px = r.toX(fix.longitude);
+        double py = r.toY(fix.latitude);
+        double tolerance = ON_ROUTE_METERS + Math.min(fix.accuracy, MAX_ACCURACY_MARGIN);
+
+        long visited = 0;
+        snap.clear();
+        if (segment >= 0) {
+            int from = Math.max(0, segment - WINDOW_BEHIND);
+            int to = Math.min(r.getSegmentCount() - 1, segment + WINDOW_AHEAD);
+            r.nearestInWindow(from, to, px, py, distanceAlongMeters, snap);
+            visited = to - from + 1;
+        }
+        if (snap.distanceMeters > tolerance) {
+            // Primera ubicación, salto grande o fuera de la ventana: la rejilla decide
+            double lastAlong = distanceAlongMeters;
+            double nearestMiss = snap.distanceMeters;
+            visited += r.nearest(px, py, lastAlong, snap);
+            gridQueries++;
+            if (snap.segment < 0) {
+                snap.distanceMeters = nearestMiss;
+            }
+        }
+        segmentsVisited += visited;
+
+        distanceFromRouteMeters = snap.distanceMeters;
+        if (snap.segment >= 0 && snap.distanceMeters <= tolerance) {
+            segment = snap.segment;
+            distanceAlongMeters = snap.alongMeters;
+            offFixes = 0;
+            if (offRoute && ++onFixes >= ON_ROUTE_FIXES) {
+                offRoute = false;
+                onFixes = 0;
+            }
+        } else {
+            // Se conserva el último avance conocido mientras está fuera
+            onFixes = 0;
+            if (!offRoute && ++offFixes >= OFF_ROUTE_FIXES) {
+                offRoute = true;
+            }
+        }
+        return true;
+    }
+
+    public boolean hasMatch() {
+        return !Double.isNaN(distanceAlongMeters);
+    }
+
+    // Metros recorridos desde el inicio del trazado (NaN sin ajuste todavía)
+    public double getDistanceAlongMeters() {
+        return distanceAlongMeters;
+    }
+
+    // Distancia al trazado de la última ubicación (infinita si no hay tramo a menos de una celda)
+    public double getDistanceFromRouteMeters() {
+        return distanceFromRouteMeters;
+    }
+
+    public boolean isOffRoute() {
+        return offRoute;
+    }
+
+    // Tramos examinados en total; dividido por las ubicaciones da el coste por ubicación
+    public long getSegmentsVisited() {
+        return segmentsVisited;
+    }
+
+    public long getGridQueries() {
+        return gridQueries;
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.ubicacion;
+
+// Decide cada cuánto y con qué precisión pedir ubicaciones según la velocidad,
+// si el vehículo está detenido, la batería y la cercanía a la próxima parada.
+public class SamplingPolicy {
+
+    public enum Priority {
+        HIGH_ACCURACY,
+        BALANCED,
+        LOW_POWER
+    }
+
+    public static final class Decision {
+        public final long intervalMs;
+        public final long fastestIntervalMs;
+        public final Priority priority;
+        public final float minDisplacementMeters;
+
+        public Decision(long intervalMs, long fastestIntervalMs, Priority priority, float minDisplacementMeters) {
+            this.intervalMs = intervalMs;
+            this.fastestIntervalMs = fastestIntervalMs;
+            this.priority = priority;
+            this.minDisplacementMeters = minDisplacementMeters;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Decision)) return false;
+            Decision other = (Decision) o;
+            return intervalMs == other.intervalMs
+                    && fastestIntervalMs == other.fastestIntervalMs
+                    && priority == other.priority
+                    && minDisplacementMeters == other.minDisplacementMeters;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (intervalMs ^ (intervalMs >>> 32));
+            result = 31 * result + priority.hashCode();
+            return 31 * result + Float.floatToIntBits(minDisplacementMeters);
+        }
+
+        @Override
+        public String toString() {
+            return intervalMs + "ms/" + priority + "/" + minDisplacementMeters + "m";
+        }
+    }
+
+    // Intervalos permitidos: evitan reconfigurar el proveedor por cambios mínimos de velocidad
+    private static final long[] INTERVAL_STEPS_MS = {2000, 3000, 5000, 10000, 15000, 30000, 60000, 120000};
+
+    static final double STOPPED_SPEED_MPS = 0.8;
+    static final long STOP_DWELL_MS = 60000;
+    static final long PARKED_DWELL_MS = 10 * 60000;
+    static final double TARGET_SPACING_METERS = 80;
+    static final double NEAR_STOP_METERS = 250;
+    static final int LOW_BATTERY_PERCENT = 20;
+    static final int CRITICAL_BATTERY_PERCENT = 10;
+    // Sin nadie mirando basta con un latido para que el vehículo no aparezca caducado
+    static final long HEARTBEAT_INTERVAL_MS = 60000;
+
+    public static final Decision INITIAL = new Decision(5000, 2000, Priority.HIGH_ACCURACY, 0f);
+    static final Decision HEARTBEAT = new Decision(HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS / 2, Priority.BALANCED, 0f);
+
+    private double speedMps;
+    private boolean hasPrevious;
+    private double previousLatitude;
+    private double previousLongitude;
+    private long previousTime;
+    private long slowSinceMs = -1;
+    private long lastFixTime;
+    private long movingIntervalMs;
+
+    private int batteryPercent = 100;
+    private boolean charging;
+    private double distanceToNextStopMeters = Double.NaN;
+    private boolean live = true;
+    private long minIntervalMs;
+    private Priority maxPriority;
+
+    public synchronized void onFix(LocationFix fix) {
+        double measured = fix.speed;
+        if (hasPrevious && fix.time > previousTime && measured <= 0) {
+            // Sin velocidad del GPS: la estimamos con el desplazamiento
+            double meters = LocationFix.distanceMeters(previousLatitude, previousLongitude, fix.latitude, fix.longitude);
+            measured = meters * 1000.0 / (fix.time - previousTime);
+        }
+        speedMps = hasPrevious ? 0.5 * speedMps + 0.5 * measured : measured;
+
+        if (speedMps < STOPPED_SPEED_MPS) {
+            if (slowSinceMs < 0) {
+                slowSinceMs = fix.time;
+            }
+        } else {
+            slowSinceMs = -1;
+        }
+
+        hasPrevious = true;
+        previousLatitude = fix.latitude;
+        previousLongitude = fix.longitude;
+        previousTime = fix.time;
+        lastFixTime = fix.time;
+    }
+
+    public synchronized void setBattery(int percent, boolean charging) {
+        this.batteryPercent = percent;
+        this.charging = charging;
+    }
+
+    // NaN cuando no se conoce la próxima parada
+    public synchronized void setDistanceToNextStop(double meters) {
+        this.distanceToNextStopMeters = meters;
+    }
+
+    // false cuando nadie tiene el vehículo abierto (ver PresenceMonitor)
+    public synchronized void setLive(boolean live) {
+        this.live = live;
+    }
+
+    // Límites de la configuración remota (ver TrackingConfig): 0 y null son "sin límite"
+    public synchronized void setLimits(long minIntervalMs, Priority maxPriority) {
+        this.minIntervalMs = minIntervalMs;
+        this.maxPriority = maxPriority;
+    }
+
+    public synchronized double getSpeedMps() {
+        return speedMps;
+    }
+
+    public synchronized boolean isStopped() {
+        return slowSinceMs >= 0 && lastFixTime - slowSinceMs >= STOP_DWELL_MS;
+    }
+
+    public synchronized Decision evaluate() {
+        if (!hasPrevious) {
+            return limit(live ? INITIAL : HEARTBEAT);
+        }
+
+        long interval;
+        Priority priority;
+        float displacement;
+        long stoppedFor = slowSinceMs >= 0 ? lastFixTime - slowSinceMs : 0;
+
+        if (stoppedFor >= PARKED_DWELL_MS) {
+            // Estacionado en la terminal
+            interval = 60000;
+            priority = Priority.LOW_POWER;
+            displacement = 25f;
+        } else if (stoppedFor >= STOP_DWELL_MS) {
+            interval = 30000;
+            priority = Priority.BALANCED;
+            displacement = 10f;
+        } else {
+            double speed = Math.max(speedMps, 1.0);
+            interval = (long) (TARGET_SPACING_METERS / speed * 1000);
+            interval = Math.max(2000, Math.min(15000, interval));
+            // Histéresis: pequeñas oscilaciones de velocidad no cambian el escalón elegido
+            if (movingIntervalMs > 0 && interval >= movingIntervalMs * 0.7 && interval <= movingIntervalMs * 1.5) {
+                interval = movingIntervalMs;
+            } else {
+                interval = snap(interval);
+                movingIntervalMs = interval;
+            }
+            priority = Priority.HIGH_ACCURACY;
+            displacement = 0f;
+        }
+
+        if (!live) {
+            interval = Math.max(interval, HEARTBEAT_INTERVAL_MS);
+            priority = downgrade(priority);
+        } else if (!Double.isNaN(distanceToNextStopMeters) && distanceToNextStopMeters < NEAR_STOP_METERS
+                && stoppedFor < PARKED_DWELL_MS) {
+            // Llegando a una parada: máxima resolución para detectar la llegada
+            interval = Math.min(interval, 3000);
+            priority = Priority.HIGH_ACCURACY;
+        }
+
+        if (!charging) {
+            if (batteryPercent <= CRITICAL_BATTERY_PERCENT) {
+                interval *= 4;
+                priority = downgrade(downgrade(priority));
+            } else if (batteryPercent <= LOW_BATTERY_PERCENT) {
+                interval *= 2;
+                priority = downgrade(priority);
+            }
+        }
+
+        interval = snap(interval);
+        long fastest = Math.max(1000, interval / 2);
+        return limit(new Decision(interval, fastest, priority, displacement));
+    }
+
+    // El límite también sube el intervalo mínimo: si no, otras apps cercanas con GPS
+    // seguirían entregando ubicaciones más seguido de lo permitido
+    private Decision limit(Decision decision) {
+        boolean slower = minIntervalMs > decision.intervalMs || minIntervalMs > decision.fastestIntervalMs;
+        boolean coarser = maxPriority != null && decision.priority.ordinal() < maxPriority.ordinal();
+        if (!slower && !coarser) {
+            return decision;
+        }
+        return new Decision(Math.max(decision.intervalMs, minIntervalMs),
+                Math.max(decision.fastestIntervalMs, minIntervalMs),
+                coarser ? maxPriority : decision.priority, decision.minDisplacementMeters);
+    }
+
+    private static Priority downgrade(Priority priority) {
+        return priority == Priority.HIGH_ACCURACY ? Priority.BALANCED : Priority.LOW_POWER;
+    }
+
+    // Redondea hacia abajo para no perder resolución
+    private static long snap(long interval) {
+        long snapped = INTERVAL_STEPS_MS[0];
+        for (long step : INTERVAL_STEPS_MS) {
+            if (step <= interval) {
+                snapped = step;
+            }
+        }
+        return snapped;
+    }
+}
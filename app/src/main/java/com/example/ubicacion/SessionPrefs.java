@@ -0,0 +1,43 @@
+package com.example.ubicacion;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+// Guarda el estado de SharingSession en LocationPrefs. Se escribe con commit() porque
+// el proceso puede morir justo después de un cambio y el estado debe quedar en disco.
+public class SessionPrefs implements SharingSession.Store {
+
+    static final String PREFS_NAME = "LocationPrefs";
+    // Versiones anteriores solo guardaban si se estaba compartiendo
+    private static final String KEY_IS_SHARING_LOCATION = "isSharingLocation";
+    private static final String KEY_STATE = "sessionState";
+    private static final String KEY_CHANGED_AT = "sessionChangedAt";
+
+    private final SharedPreferences prefs;
+
+    public SessionPrefs(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public SharingSession.State load() {
+        String name = prefs.getString(KEY_STATE, null);
+        if (name != null) {
+            try {
+                return SharingSession.State.valueOf(name);
+            } catch (IllegalArgumentException ignored) {
+                // Estado desconocido: se deduce del valor antiguo
+            }
+        }
+        return prefs.getBoolean(KEY_IS_SHARING_LOCATION, false) ? SharingSession.State.SHARING : SharingSession.State.IDLE;
+    }
+
+    @Override
+    public void save(SharingSession.State state) {
+        prefs.edit()
+                .putString(KEY_STATE, state.name())
+                .putBoolean(KEY_IS_SHARING_LOCATION, state == SharingSession.State.SHARING || state == SharingSession.State.PAUSED_OFFLINE)
+                .putLong(KEY_CHANGED_AT, System.currentTimeMillis())
+                .commit();
+    }
+}
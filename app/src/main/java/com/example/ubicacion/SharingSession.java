@@ -0,0 +1,135 @@
+package com.example.ubicacion;
+
+// Estado persistente del envío de ubicación. Es la única fuente de verdad para la
+// pantalla, el servicio y el arranque del teléfono: sobrevive a la muerte del proceso
+// y al reinicio, y evita lanzar el servicio dos veces.
+//
+//   IDLE ──start──> SHARING <──online/offline──> PAUSED_OFFLINE
+//     ^                │                               │
+//     └──servicio────STOPPING <────────stop────────────┘
+//        detenido
+public class SharingSession {
+
+    public enum State {
+        IDLE,
+        SHARING,
+        // Sigue registrando ubicaciones en el diario; solo se dejan de intentar envíos
+        PAUSED_OFFLINE,
+        // Se pidió parar y el servicio aún no terminó
+        STOPPING
+    }
+
+    public enum Action {
+        NONE,
+        START_SERVICE,
+        STOP_SERVICE
+    }
+
+    public interface Store {
+        State load();
+
+        void save(State state);
+    }
+
+    // Se llama con el candado de la sesión tomado: solo debe anotar o encolar trabajo
+    public interface Listener {
+        void onStateChanged(State previous, State state);
+    }
+
+    private final Store store;
+    private State state;
+    private Listener listener;
+
+    public SharingSession(Store store) {
+        this.store = store;
+        State loaded = store.load();
+        this.state = loaded != null ? loaded : State.IDLE;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    // Lo que el usuario ve como "compartiendo", con o sin red
+    public synchronized boolean isActive() {
+        return state == State.SHARING || state == State.PAUSED_OFFLINE;
+    }
+
+    // Devuelve false si ya estaba activo: el servicio no se vuelve a lanzar
+    public synchronized boolean requestStart() {
+        if (isActive()) {
+            return false;
+        }
+        setState(State.SHARING);
+        return true;
+    }
+
+    // Devuelve false si no había nada que parar
+    public synchronized boolean requestStop() {
+        if (state == State.IDLE) {
+            return false;
+        }
+        setState(State.STOPPING);
+        return true;
+    }
+
+    // El servicio arrancó (por la pantalla, el arranque del teléfono o START_STICKY).
+    // Devuelve false si el usuario ya lo había detenido y el servicio debe pararse solo.
+    public synchronized boolean onServiceStarted() {
+        return isActive();
+    }
+
+    // El servicio terminó. Si el sistema lo mató compartiendo, el estado se conserva
+    // para reanudar; solo una parada pedida vuelve a IDLE.
+    public synchronized void onServiceStopped() {
+        if (state == State.STOPPING) {
+            setState(State.IDLE);
+        }
+    }
+
+    public synchronized void onConnectivityChanged(boolean online) {
+        if (state == State.SHARING && !online) {
+            setState(State.PAUSED_OFFLINE);
+        } else if (state == State.PAUSED_OFFLINE && online) {
+            setState(State.SHARING);
+        }
+    }
+
+    // Tras reiniciar el teléfono o actualizar la app: el servicio no está corriendo
+    public synchronized boolean shouldResumeAfterBoot() {
+        if (state == State.STOPPING) {
+            // La parada quedó a medias al apagarse; el usuario quería parar
+            setState(State.IDLE);
+        }
+        return isActive();
+    }
+
+    // Compara el estado guardado con el servicio real al abrir la pantalla
+    public synchronized Action reconcile(boolean serviceRunning) {
+        if (isActive()) {
+            return serviceRunning ? Action.NONE : Action.START_SERVICE;
+        }
+        if (serviceRunning) {
+            return Action.STOP_SERVICE;
+        }
+        if (state == State.STOPPING) {
+            setState(State.IDLE);
+        }
+        return Action.NONE;
+    }
+
+    private void setState(State next) {
+        if (next != state) {
+            State previous = state;
+            state = next;
+            store.save(next);
+            if (listener != null) {
+                listener.onStateChanged(previous, next);
+            }
+        }
+    }
+}
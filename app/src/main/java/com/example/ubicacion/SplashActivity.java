@@ -3,12 +3,26 @@ package com.example.ubicacion;
 import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.view.WindowManager;
 
 import androidx.appcompat.app.AppCompatActivity;
 
 public class SplashActivity extends AppCompatActivity {
 
+    // Lo justo para que el logo no parpadee; el resto del tiempo lo marca el arranque real
+    private static final long MIN_DISPLAY_MS = 300;
+    // Si algo se cuelga (disco lento, Firebase), MainActivity sabe cargar por su cuenta
+    private static final long MAX_WAIT_MS = 3000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable launchMain = this::launchMain;
+    private final Runnable onStartupReady = () -> handler.post(this::onReady);
+    private StartupOrchestrator startup;
+    private long shownAt;
+    private boolean launched;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -19,17 +33,36 @@ public class SplashActivity extends AppCompatActivity {
 
         setContentView(R.layout.activity_splash);
 
-        // Duración del splash screen
-        int SPLASH_SCREEN_TIME_OUT = 2000;
-
-        new Handler().postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                // Iniciar la actividad principal después del tiempo definido
-                Intent intent = new Intent(SplashActivity.this, MainActivity.class);
-                startActivity(intent);
-                finish();
-            }
-        }, SPLASH_SCREEN_TIME_OUT);
+        shownAt = SystemClock.elapsedRealtime();
+        startup = UbicacionApp.getStartup();
+        startup.mark("splash_created");
+        handler.postDelayed(launchMain, MAX_WAIT_MS);
+        startup.whenReady(onStartupReady);
+    }
+
+    private void onReady() {
+        long remaining = MIN_DISPLAY_MS - (SystemClock.elapsedRealtime() - shownAt);
+        handler.removeCallbacks(launchMain);
+        if (remaining > 0) {
+            handler.postDelayed(launchMain, remaining);
+        } else {
+            launchMain();
+        }
+    }
+
+    private void launchMain() {
+        if (launched || isFinishing()) {
+            return;
+        }
+        launched = true;
+        startActivity(new Intent(SplashActivity.this, MainActivity.class));
+        finish();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        startup.removeListener(onStartupReady);
+        handler.removeCallbacksAndMessages(null);
     }
 }
@@ -0,0 +1,203 @@
+package com.example.ubicacion;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+// Arranca en paralelo las tareas que la primera pantalla necesita (sesión, perfil en caché,
+// estado del servicio) y avisa cuando todas terminaron. Una tarea puede depender de otra:
+// se lanza en cuanto su dependencia termina, sin esperar al resto.
+// Guarda cuánto tardó cada tarea desde el arranque para la traza de inicio.
+public class StartupOrchestrator {
+
+    public interface Clock {
+        long nowNanos();
+    }
+
+    public interface Task<T> {
+        T run(StartupOrchestrator startup) throws Exception;
+    }
+
+    private static final class Entry {
+        final String name;
+        final String dependsOn;
+        final Task<?> task;
+        boolean started;
+        boolean done;
+        Object result;
+        Throwable error;
+        long finishedAtNanos;
+
+        Entry(String name, String dependsOn, Task<?> task) {
+            this.name = name;
+            this.dependsOn = dependsOn;
+            this.task = task;
+        }
+    }
+
+    private final Executor executor;
+    private final Clock clock;
+    private final long startNanos;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final List<Runnable> readyListeners = new ArrayList<>();
+    private final Map<String, Long> marks = new LinkedHashMap<>();
+    private boolean launched;
+    private long readyAtNanos = -1;
+
+    public StartupOrchestrator(Executor executor, Clock clock, long startNanos) {
+        this.executor = executor;
+        this.clock = clock;
+        this.startNanos = startNanos;
+    }
+
+    public synchronized <T> StartupOrchestrator add(String name, Task<T> task) {
+        return add(name, null, task);
+    }
+
+    public synchronized <T> StartupOrchestrator add(String name, String dependsOn, Task<T> task) {
+        if (launched) {
+            throw new IllegalStateException("Las tareas se añaden antes de start()");
+        }
+        entries.put(name, new Entry(name, dependsOn, task));
+        return this;
+    }
+
+    public void start() {
+        List<Entry> runnable = new ArrayList<>();
+        synchronized (this) {
+            launched = true;
+            for (Entry entry : entries.values()) {
+                if (entry.dependsOn == null || !entries.containsKey(entry.dependsOn)) {
+                    entry.started = true;
+                    runnable.add(entry);
+                }
+            }
+            if (entries.isEmpty()) {
+                readyAtNanos = clock.nowNanos();
+            }
+        }
+        for (Entry entry : runnable) {
+            launch(entry);
+        }
+        if (isReady()) {
+            notifyReady();
+        }
+    }
+
+    // Resultado de una tarea terminada; null si aún no terminó o falló
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T get(String name) {
+        Entry entry = entries.get(name);
+        return entry != null && entry.done ? (T) entry.result : null;
+    }
+
+    public synchronized Throwable getError(String name) {
+        Entry entry = entries.get(name);
+        return entry != null ? entry.error : null;
+    }
+
+    public synchronized boolean isReady() {
+        return readyAtNanos >= 0;
+    }
+
+    // Se ejecuta en el hilo que termine la última tarea (o enseguida si ya estaba todo listo)
+    public void whenReady(Runnable listener) {
+        synchronized (this) {
+            if (!isReady()) {
+                readyListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    public synchronized void removeListener(Runnable listener) {
+        readyListeners.remove(listener);
+    }
+
+    // Hito de la traza de inicio (primera pantalla, interactiva...), en ms desde el arranque
+    public synchronized void mark(String name) {
+        if (!marks.containsKey(name)) {
+            marks.put(name, clock.nowNanos() - startNanos);
+        }
+    }
+
+    public synchronized long getReadyMillis() {
+        return readyAtNanos < 0 ? -1 : (readyAtNanos - startNanos) / 1000000;
+    }
+
+    // Milisegundos desde el arranque hasta que terminó cada tarea y cada hito
+    public synchronized Map<String, Long> getTrace() {
+        Map<String, Long> trace = new LinkedHashMap<>();
+        for (Entry entry : entries.values()) {
+            if (entry.done) {
+                trace.put(entry.name, (entry.finishedAtNanos - startNanos) / 1000000);
+            }
+        }
+        if (readyAtNanos >= 0) {
+            trace.put("ready", (readyAtNanos - startNanos) / 1000000);
+        }
+        for (Map.Entry<String, Long> mark : marks.entrySet()) {
+            trace.put(mark.getKey(), mark.getValue() / 1000000);
+        }
+        return trace;
+    }
+
+    private void launch(Entry entry) {
+        executor.execute(() -> {
+            Object result = null;
+            Throwable error = null;
+            try {
+                result = entry.task.run(this);
+            } catch (Exception e) {
+                // Una tarea que falla no bloquea el arranque: la pantalla usa su valor por defecto
+                error = e;
+            }
+            finish(entry, result, error);
+        });
+    }
+
+    private void finish(Entry entry, Object result, Throwable error) {
+        List<Entry> unblocked = new ArrayList<>();
+        boolean nowReady;
+        synchronized (this) {
+            entry.done = true;
+            entry.result = result;
+            entry.error = error;
+            entry.finishedAtNanos = clock.nowNanos();
+            for (Entry other : entries.values()) {
+                if (!other.started && entry.name.equals(other.dependsOn)) {
+                    other.started = true;
+                    unblocked.add(other);
+                }
+            }
+            boolean allDone = true;
+            for (Entry other : entries.values()) {
+                allDone &= other.done;
+            }
+            nowReady = allDone && readyAtNanos < 0;
+            if (nowReady) {
+                readyAtNanos = clock.nowNanos();
+            }
+        }
+        for (Entry next : unblocked) {
+            launch(next);
+        }
+        if (nowReady) {
+            notifyReady();
+        }
+    }
+
+    private void notifyReady() {
+        List<Runnable> listeners;
+        synchronized (this) {
+            listeners = new ArrayList<>(readyListeners);
+            readyListeners.clear();
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+}
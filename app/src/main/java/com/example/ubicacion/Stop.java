@@ -0,0 +1,21 @@
+package com.example.ubicacion;
+
+// Parada de una ruta: rutas/<empresa>/rutas/<ruta>/paradas/<id>
+public class Stop {
+
+    public static final double DEFAULT_RADIUS_METERS = 40;
+
+    public final String id;
+    public final String nombre;
+    public final double latitude;
+    public final double longitude;
+    public final double radiusMeters;
+
+    public Stop(String id, String nombre, double latitude, double longitude, double radiusMeters) {
+        this.id = id;
+        this.nombre = nombre;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusMeters = radiusMeters > 0 ? radiusMeters : DEFAULT_RADIUS_METERS;
+    }
+}
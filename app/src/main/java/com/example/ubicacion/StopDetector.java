@@ -0,0 +1,114 @@
+package com.example.ubicacion;
+
+// Etapa del pipeline que convierte ubicaciones en llegadas y salidas de parada.
+// Llegada: dos ubicaciones seguidas dentro del radio, o una sola si el vehículo va casi parado.
+// Salida: alejarse más de EXIT_FACTOR veces el radio, o llegar a otra parada. La histéresis
+// evita eventos repetidos cuando el GPS oscila en el borde del radio.
+public class StopDetector implements FixPipeline.Stage {
+
+    public interface Listener {
+        void onStopEvent(StopEvent event);
+    }
+
+    static final double EXIT_FACTOR = 1.5;
+    static final int CONFIRM_FIXES = 2;
+    static final float SLOW_SPEED_MPS = 1.5f;
+    // Con más error que esto la ubicación no dice en qué parada estamos
+    static final float MAX_ACCURACY_METERS = 50f;
+
+    private final Listener listener;
+    private final StopIndex.Match match = new StopIndex.Match();
+    private volatile StopIndex index;
+    private StopIndex activeIndex;
+
+    private int currentStop = -1;
+    private long arrivedAt;
+    private int candidateStop = -1;
+    private int candidateFixes;
+    private volatile double distanceToNearestStop = Double.NaN;
+    private volatile long arrivals;
+    private volatile long departures;
+
+    public StopDetector(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Las paradas llegan de la red después de arrancar; hasta entonces la etapa no hace nada
+    public void setIndex(StopIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public boolean process(LocationFix fix) {
+        StopIndex stops = index;
+        if (stops == null || stops.size() == 0) {
+            return true;
+        }
+        if (stops != activeIndex) {
+            // Paradas nuevas: los índices anteriores ya no valen
+            activeIndex = stops;
+            currentStop = -1;
+            candidateStop = -1;
+            candidateFixes = 0;
+        }
+        stops.query(fix.latitude, fix.longitude, match);
+        distanceToNearestStop = match.stop >= 0 ? match.distanceMeters : Double.NaN;
+        if (fix.accuracy > MAX_ACCURACY_METERS) {
+            return true;
+        }
+
+        if (currentStop >= 0) {
+            double limit = stops.get(currentStop).radiusMeters * EXIT_FACTOR;
+            boolean left = stops.distanceTo(currentStop, fix.latitude, fix.longitude) > limit;
+            if (left || (match.inside >= 0 && match.inside != currentStop)) {
+                depart(stops, fix.time);
+            }
+        }
+
+        if (currentStop < 0 && match.inside >= 0) {
+            if (match.inside == candidateStop) {
+                candidateFixes++;
+            } else {
+                candidateStop = match.inside;
+                candidateFixes = 1;
+            }
+            if (candidateFixes >= CONFIRM_FIXES || fix.speed < SLOW_SPEED_MPS) {
+                arrive(stops, candidateStop, fix.time);
+            }
+        } else if (match.inside < 0) {
+            candidateStop = -1;
+            candidateFixes = 0;
+        }
+        return true;
+    }
+
+    // Distancia a la parada más cercana (NaN si no hay ninguna en ~250 m)
+    public double getDistanceToNearestStop() {
+        return distanceToNearestStop;
+    }
+
+    public long getArrivals() {
+        return arrivals;
+    }
+
+    public long getDepartures() {
+        return departures;
+    }
+
+    private void arrive(StopIndex stops, int stop, long time) {
+        currentStop = stop;
+        arrivedAt = time;
+        candidateStop = -1;
+        candidateFixes = 0;
+        arrivals++;
+        Stop s = stops.get(stop);
+        listener.onStopEvent(new StopEvent(StopEvent.Type.ARRIVAL, s.id, s.nombre, time, 0));
+    }
+
+    private void depart(StopIndex stops, long time) {
+        Stop s = stops.get(currentStop);
+        currentStop = -1;
+        departures++;
+        listener.onStopEvent(new StopEvent(StopEvent.Type.DEPARTURE, s.id, s.nombre, time, time - arrivedAt));
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.ubicacion;
+
+// Llegada o salida de una parada, tal como se envía en eventos/<uid>
+public class StopEvent {
+
+    public enum Type {
+        ARRIVAL,
+        DEPARTURE
+    }
+
+    public final Type type;
+    public final String stopId;
+    public final String stopName;
+    public final long time;
+    // Tiempo detenido en la parada; solo en las salidas
+    public final long dwellMs;
+
+    public StopEvent(Type type, String stopId, String stopName, long time, long dwellMs) {
+        this.type = type;
+        this.stopId = stopId;
+        this.stopName = stopName;
+        this.time = time;
+        this.dwellMs = dwellMs;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + stopId + " @" + time;
+    }
+}
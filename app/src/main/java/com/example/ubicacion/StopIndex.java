@@ -0,0 +1,197 @@
+package com.example.ubicacion;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Índice espacial inmutable de las paradas de una ruta. Las coordenadas se proyectan a metros
+// sobre un plano local y se reparten en una rejilla de celdas de tamaño fijo; cada consulta
+// mira solo las 3x3 celdas vecinas, así que su coste no depende del número de paradas.
+// Todo vive en arreglos primitivos: consultar no reserva memoria.
+public class StopIndex {
+
+    public static final double DEFAULT_CELL_METERS = 250;
+    private static final double METERS_PER_DEGREE_LAT = 110574.0;
+    private static final double METERS_PER_DEGREE_LON = 111320.0;
+
+    // Resultado reutilizable de una consulta
+    public static final class Match {
+        public int stop = -1;
+        public double distanceMeters = Double.POSITIVE_INFINITY;
+        // Parada cuyo radio contiene la posición, o -1
+        public int inside = -1;
+
+        void clear() {
+            stop = -1;
+            distanceMeters = Double.POSITIVE_INFINITY;
+            inside = -1;
+        }
+    }
+
+    private final Stop[] stops;
+    private final double[] x;
+    private final double[] y;
+    private final double[] radius;
+    private final double originLat;
+    private final double originLon;
+    private final double lonScale;
+    private final double cellMeters;
+
+    // Tabla hash abierta celda -> tramo de "cellStops" (formato CSR)
+    private final long[] tableKeys;
+    private final int[] tableStart;
+    private final int[] tableCount;
+    private final int tableMask;
+    private final int[] cellStops;
+
+    public StopIndex(List<Stop> stopList) {
+        this(stopList, DEFAULT_CELL_METERS);
+    }
+
+    public StopIndex(List<Stop> stopList, double cellMeters) {
+        int n = stopList.size();
+        stops = stopList.toArray(new Stop[0]);
+        x = new double[n];
+        y = new double[n];
+        radius = new double[n];
+
+        double sumLat = 0;
+        double sumLon = 0;
+        double maxRadius = 0;
+        for (Stop stop : stops) {
+            sumLat += stop.latitude;
+            sumLon += stop.longitude;
+            maxRadius = Math.max(maxRadius, stop.radiusMeters);
+        }
+        originLat = n > 0 ? sumLat / n : 0;
+        originLon = n > 0 ? sumLon / n : 0;
+        lonScale = METERS_PER_DEGREE_LON * Math.cos(Math.toRadians(originLat));
+        // Una parada debe caber en las celdas vecinas para no perder llegadas
+        this.cellMeters = Math.max(cellMeters, maxRadius);
+
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = (stops[i].longitude - originLon) * lonScale;
+            y[i] = (stops[i].latitude - originLat) * METERS_PER_DEGREE_LAT;
+            radius[i] = stops[i].radiusMeters;
+            keys[i] = cellKey(cell(x[i]), cell(y[i]));
+        }
+
+        // Ordenamos las paradas por celda para guardar cada celda como un tramo contiguo
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        cellStops = new int[n];
+        for (int i = 0; i < n; i++) {
+            cellStops[i] = order[i];
+        }
+
+        int tableSize = Integer.highestOneBit(Math.max(4, n * 2 - 1)) << 1;
+        tableMask = tableSize - 1;
+        tableKeys = new long[tableSize];
+        tableStart = new int[tableSize];
+        tableCount = new int[tableSize];
+        Arrays.fill(tableStart, -1);
+        for (int i = 0; i < n; i++) {
+            long key = keys[cellStops[i]];
+            int slot = slotFor(key);
+            if (tableStart[slot] < 0) {
+                tableKeys[slot] = key;
+                tableStart[slot] = i;
+            }
+            tableCount[slot]++;
+        }
+    }
+
+    public int size() {
+        return stops.length;
+    }
+
+    public Stop get(int index) {
+        return stops[index];
+    }
+
+    // Parada más cercana a menos de una celda, y la que contiene la posición si la hay
+    public Match query(double latitude, double longitude, Match into) {
+        into.clear();
+        if (stops.length == 0) {
+            return into;
+        }
+        double px = (longitude - originLon) * lonScale;
+        double py = (latitude - originLat) * METERS_PER_DEGREE_LAT;
+        long cx = cell(px);
+        long cy = cell(py);
+        double bestInsideRatio = Double.POSITIVE_INFINITY;
+        for (long dy = -1; dy <= 1; dy++) {
+            for (long dx = -1; dx <= 1; dx++) {
+                int slot = find(cellKey(cx + dx, cy + dy));
+                if (slot < 0) {
+                    continue;
+                }
+                int end = tableStart[slot] + tableCount[slot];
+                for (int i = tableStart[slot]; i < end; i++) {
+                    int stop = cellStops[i];
+                    double ddx = x[stop] - px;
+                    double ddy = y[stop] - py;
+                    double distance = Math.sqrt(ddx * ddx + ddy * ddy);
+                    if (distance < into.distanceMeters) {
+                        into.distanceMeters = distance;
+                        into.stop = stop;
+                    }
+                    // Si dos radios se solapan gana la parada relativamente más cercana
+                    double ratio = distance / radius[stop];
+                    if (ratio <= 1 && ratio < bestInsideRatio) {
+                        bestInsideRatio = ratio;
+                        into.inside = stop;
+                    }
+                }
+            }
+        }
+        if (into.distanceMeters > cellMeters) {
+            // Más allá de una celda el resultado no es fiable: puede haber otra más cerca
+            into.stop = -1;
+            into.distanceMeters = Double.POSITIVE_INFINITY;
+        }
+        return into;
+    }
+
+    // Distancia en metros a la parada "index" sobre el mismo plano local
+    public double distanceTo(int index, double latitude, double longitude) {
+        double ddx = x[index] - (longitude - originLon) * lonScale;
+        double ddy = y[index] - (latitude - originLat) * METERS_PER_DEGREE_LAT;
+        return Math.sqrt(ddx * ddx + ddy * ddy);
+    }
+
+    private long cell(double meters) {
+        return (long) Math.floor(meters / cellMeters);
+    }
+
+    private static long cellKey(long cx, long cy) {
+        return (cx << 32) ^ (cy & 0xFFFFFFFFL);
+    }
+
+    private int slotFor(long key) {
+        int slot = hash(key) & tableMask;
+        while (tableStart[slot] >= 0 && tableKeys[slot] != key) {
+            slot = (slot + 1) & tableMask;
+        }
+        return slot;
+    }
+
+    private int find(long key) {
+        int slot = hash(key) & tableMask;
+        while (tableStart[slot] >= 0) {
+            if (tableKeys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        return -1;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
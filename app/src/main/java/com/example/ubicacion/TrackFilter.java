@@ -0,0 +1,170 @@
+package com.example.ubicacion;
+
+// Etapa del pipeline que limpia el recorrido antes de enviarlo:
+//  1. descarta ubicaciones imprecisas o con saltos imposibles,
+//  2. las suaviza con un filtro de Kalman ponderado por la precisión del GPS,
+//  3. solo deja pasar las que se apartan de la posición extrapolada (dead reckoning)
+//     desde el último punto emitido más que la tolerancia.
+// La ubicación emitida lleva en speed y bearing la velocidad de esa extrapolación: quien la
+// recibe puede hacer el mismo dead reckoning y ver lo que el filtro dio por previsto.
+// Todo el estado son primitivos: procesar una ubicación no reserva memoria.
+public class TrackFilter implements FixPipeline.Stage {
+
+    private static final double METERS_PER_DEGREE = 111320.0;
+    private static final int MAX_CONSECUTIVE_REJECTIONS = 5;
+    // Por debajo de esta velocidad la extrapolación asume vehículo detenido
+    private static final double STILL_SPEED_MPS = 1.0;
+
+    private float maxAccuracyMeters = 50f;
+    private double maxSpeedMps = 45;
+    private double toleranceMeters = 12;
+    private long maxGapMs = 60000;
+    private double processNoiseMps = 3;
+
+    // Estado del filtro de Kalman
+    private boolean initialized;
+    private double latitude;
+    private double longitude;
+    private double varianceMeters2;
+    private long time;
+    private int consecutiveRejections;
+
+    // Velocidad suavizada en metros por segundo (este, norte)
+    private double velocityEast;
+    private double velocityNorth;
+
+    // Último punto emitido, base de la extrapolación
+    private boolean hasEmitted;
+    private double emittedLatitude;
+    private double emittedLongitude;
+    private long emittedTime;
+    private double emittedVelocityEast;
+    private double emittedVelocityNorth;
+
+    private long inputCount;
+    private long rejectedCount;
+    private long emittedCount;
+
+    public void setMaxAccuracyMeters(float maxAccuracyMeters) {
+        this.maxAccuracyMeters = maxAccuracyMeters;
+    }
+
+    public void setMaxSpeedMps(double maxSpeedMps) {
+        this.maxSpeedMps = maxSpeedMps;
+    }
+
+    public void setToleranceMeters(double toleranceMeters) {
+        this.toleranceMeters = toleranceMeters;
+    }
+
+    public void setMaxGapMs(long maxGapMs) {
+        this.maxGapMs = maxGapMs;
+    }
+
+    // Devuelve true si la ubicación debe enviarse; en ese caso "fix" queda con la posición suavizada
+    @Override
+    public boolean process(LocationFix fix) {
+        inputCount++;
+        float accuracy = fix.accuracy > 0 ? fix.accuracy : 10f;
+        if (accuracy > maxAccuracyMeters) {
+            rejectedCount++;
+            return false;
+        }
+
+        if (!initialized || fix.time < time) {
+            reset(fix, accuracy);
+        } else {
+            double dt = (fix.time - time) / 1000.0;
+            double cosLat = Math.cos(Math.toRadians(latitude));
+            // Predicción con velocidad constante y residuo de la medida respecto a ella
+            double predictedNorth = velocityNorth * dt;
+            double predictedEast = velocityEast * dt;
+            double residualNorth = (fix.latitude - latitude) * METERS_PER_DEGREE - predictedNorth;
+            double residualEast = (fix.longitude - longitude) * METERS_PER_DEGREE * cosLat - predictedEast;
+            double jump = Math.sqrt(residualNorth * residualNorth + residualEast * residualEast);
+
+            if (dt > 0 && jump - accuracy > maxSpeedMps * dt) {
+                // Salto imposible: lo ignoramos salvo que se repita, en cuyo caso el equivocado era el filtro
+                rejectedCount++;
+                if (++consecutiveRejections <= MAX_CONSECUTIVE_REJECTIONS) {
+                    return false;
+                }
+                reset(fix, accuracy);
+            } else {
+                consecutiveRejections = 0;
+                varianceMeters2 += dt * processNoiseMps * processNoiseMps;
+                double gain = varianceMeters2 / (varianceMeters2 + accuracy * accuracy);
+                latitude += (predictedNorth + gain * residualNorth) / METERS_PER_DEGREE;
+                longitude += (predictedEast + gain * residualEast) / (METERS_PER_DEGREE * cosLat);
+                varianceMeters2 *= (1 - gain);
+                time = fix.time;
+
+                if (dt > 0) {
+                    double beta = Math.min(1.0, gain * dt / 4.0);
+                    velocityNorth += beta * residualNorth / dt;
+                    velocityEast += beta * residualEast / dt;
+                }
+            }
+        }
+
+        if (!shouldEmit()) {
+            return false;
+        }
+        emittedLatitude = latitude;
+        emittedLongitude = longitude;
+        emittedTime = time;
+        boolean still = velocityEast * velocityEast + velocityNorth * velocityNorth < STILL_SPEED_MPS * STILL_SPEED_MPS;
+        emittedVelocityEast = still ? 0 : velocityEast;
+        emittedVelocityNorth = still ? 0 : velocityNorth;
+        hasEmitted = true;
+        emittedCount++;
+
+        fix.latitude = latitude;
+        fix.longitude = longitude;
+        fix.accuracy = (float) Math.sqrt(varianceMeters2);
+        fix.speed = (float) Math.sqrt(emittedVelocityEast * emittedVelocityEast + emittedVelocityNorth * emittedVelocityNorth);
+        if (fix.speed > 0) {
+            double bearing = Math.toDegrees(Math.atan2(emittedVelocityEast, emittedVelocityNorth));
+            fix.bearing = (float) (bearing < 0 ? bearing + 360 : bearing);
+        }
+        return true;
+    }
+
+    private boolean shouldEmit() {
+        if (!hasEmitted || time - emittedTime >= maxGapMs) {
+            return true;
+        }
+        double dt = (time - emittedTime) / 1000.0;
+        double cosLat = Math.cos(Math.toRadians(emittedLatitude));
+        double predictedNorth = emittedVelocityNorth * dt;
+        double predictedEast = emittedVelocityEast * dt;
+        double actualNorth = (latitude - emittedLatitude) * METERS_PER_DEGREE;
+        double actualEast = (longitude - emittedLongitude) * METERS_PER_DEGREE * cosLat;
+        double errorNorth = actualNorth - predictedNorth;
+        double errorEast = actualEast - predictedEast;
+        return errorNorth * errorNorth + errorEast * errorEast > toleranceMeters * toleranceMeters;
+    }
+
+    private void reset(LocationFix fix, float accuracy) {
+        initialized = true;
+        latitude = fix.latitude;
+        longitude = fix.longitude;
+        varianceMeters2 = accuracy * accuracy;
+        time = fix.time;
+        velocityEast = 0;
+        velocityNorth = 0;
+        consecutiveRejections = 0;
+    }
+
+    public long getInputCount() {
+        return inputCount;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public long getEmittedCount() {
+        return emittedCount;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.ubicacion;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Configuración de seguimiento que operaciones cambia en caliente, en tres capas:
+//  - FLEET: configuracion/<empresa>/general, para toda la flota
+//  - VEHICLE: configuracion/<empresa>/vehiculos/<uid>, pisa a la de la flota
+//  - ACCOUNT: vehiculos/<uid>/activo, la misma marca que revisa la pantalla al entrar
+// Cada clave llega por separado (un ChildEventListener por nodo, solo con lo que cambió) y
+// resolve() arma los valores efectivos. Las claves desconocidas o con valores fuera de
+// rango se ignoran, así un error al editar la consola no deja a la flota sin servicio.
+//
+// Claves: version, activo, intervaloMinMs (límite de frecuencia de ubicaciones),
+// prioridadMax (HIGH_ACCURACY, BALANCED o LOW_POWER), ventanaMinMs y loteMax (envío).
+public class TrackingConfig {
+
+    public enum Layer {
+        FLEET,
+        VEHICLE,
+        ACCOUNT
+    }
+
+    static final long MAX_INTERVAL_MS = 10 * 60 * 1000L;
+    static final long MAX_WINDOW_MS = 10 * 60 * 1000L;
+
+    // Valores efectivos; 0 o null es "sin límite"
+    public static final class Values {
+        public final long fleetVersion;
+        public final long vehicleVersion;
+        public final boolean active;
+        public final long minIntervalMs;
+        public final SamplingPolicy.Priority maxPriority;
+        public final long minWindowMs;
+        public final int maxBatchSize;
+
+        Values(long fleetVersion, long vehicleVersion, boolean active, long minIntervalMs,
+               SamplingPolicy.Priority maxPriority, long minWindowMs, int maxBatchSize) {
+            this.fleetVersion = fleetVersion;
+            this.vehicleVersion = vehicleVersion;
+            this.active = active;
+            this.minIntervalMs = minIntervalMs;
+            this.maxPriority = maxPriority;
+            this.minWindowMs = minWindowMs;
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        // Los límites cambian algo en el servicio; las versiones solo se informan
+        public boolean sameLimits(Values other) {
+            return other != null
+                    && active == other.active
+                    && minIntervalMs == other.minIntervalMs
+                    && maxPriority == other.maxPriority
+                    && minWindowMs == other.minWindowMs
+                    && maxBatchSize == other.maxBatchSize;
+        }
+
+        public int capBatchSize(int batchSize) {
+            return maxBatchSize > 0 ? Math.min(batchSize, maxBatchSize) : batchSize;
+        }
+
+        public long limitWindowMs(long windowMs) {
+            return Math.max(windowMs, minWindowMs);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "v%d.%d%s intervalo>=%d ms prioridad<=%s ventana>=%d ms lote<=%d",
+                    fleetVersion, vehicleVersion, active ? "" : " INACTIVO", minIntervalMs, maxPriority,
+                    minWindowMs, maxBatchSize);
+        }
+    }
+
+    public static final Values DEFAULTS = new Values(0, 0, true, 0, null, 0, 0);
+
+    private final EnumMap<Layer, Map<String, Object>> layers = new EnumMap<>(Layer.class);
+
+    public TrackingConfig() {
+        for (Layer layer : Layer.values()) {
+            layers.put(layer, new HashMap<>());
+        }
+    }
+
+    // value == null borra la clave (onChildRemoved)
+    public synchronized void put(Layer layer, String key, Object value) {
+        if (value == null) {
+            layers.get(layer).remove(key);
+        } else {
+            layers.get(layer).put(key, value);
+        }
+    }
+
+    // El nodo entero desapareció o se dejó de escuchar
+    public synchronized void clear(Layer layer) {
+        layers.get(layer).clear();
+    }
+
+    public synchronized Values resolve() {
+        boolean active = true;
+        for (Map<String, Object> layer : layers.values()) {
+            if (Boolean.FALSE.equals(layer.get("activo"))) {
+                active = false;
+            }
+        }
+        long minInterval = readLong("intervaloMinMs", 0, MAX_INTERVAL_MS);
+        long minWindow = readLong("ventanaMinMs", 0, MAX_WINDOW_MS);
+        int maxBatch = (int) readLong("loteMax", 1, LocationUplink.DEFAULT_MAX_BATCH_SIZE);
+        SamplingPolicy.Priority maxPriority = null;
+        Object priority = lookup("prioridadMax");
+        if (priority instanceof String) {
+            try {
+                maxPriority = SamplingPolicy.Priority.valueOf(((String) priority).toUpperCase(Locale.US));
+            } catch (IllegalArgumentException ignored) {
+                // Valor mal escrito: sin límite de prioridad
+            }
+        }
+        return new Values(version(Layer.FLEET), version(Layer.VEHICLE), active,
+                minInterval < 0 ? 0 : minInterval, maxPriority, minWindow < 0 ? 0 : minWindow,
+                maxBatch < 0 ? 0 : maxBatch);
+    }
+
+    // La capa del vehículo pisa a la de la flota
+    private Object lookup(String key) {
+        Object value = layers.get(Layer.VEHICLE).get(key);
+        return value != null ? value : layers.get(Layer.FLEET).get(key);
+    }
+
+    // -1 si falta o está fuera de [min, max]
+    private long readLong(String key, long min, long max) {
+        Object value = lookup(key);
+        if (!(value instanceof Number)) {
+            return -1;
+        }
+        long number = ((Number) value).longValue();
+        return number >= min && number <= max ? number : -1;
+    }
+
+    private long version(Layer layer) {
+        Object value = layers.get(layer).get("version");
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+}
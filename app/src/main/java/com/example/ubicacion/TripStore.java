@@ -0,0 +1,466 @@
+package com.example.ubicacion;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+
+// Historial local de recorridos. Las ubicaciones entran en un bloque de arrays primitivos;
+// al llenarse o al pasar DEFAULT_MAX_BLOCK_AGE_MS desde su primera ubicación, el bloque se codifica con FixCodec (~10 bytes por ubicación) y se añade como
+// segmento al archivo en curso. Los archivos rotan por tamaño y se borra el más antiguo al
+// pasar del límite, así que el disco usado está acotado. Un índice en memoria con el rango
+// de tiempo de cada segmento permite leer solo lo que cae dentro de una consulta.
+//
+// Archivo: cabecera de 8 bytes y segmentos [cabecera de 32 bytes][lote de FixCodec].
+// Tras un cierre abrupto se conservan los segmentos completos y se corta el resto.
+public class TripStore implements Closeable {
+
+    public interface Visitor {
+        // Recibe siempre la misma instancia; devuelve false para terminar la consulta
+        boolean visit(LocationFix fix);
+    }
+
+    public static final int DEFAULT_BLOCK_SIZE = 300; // 5 min a 1 Hz
+    public static final int DEFAULT_FILE_BYTES = 512 * 1024; // más de un turno de 12 h a 1 Hz
+    public static final int DEFAULT_MAX_FILES = 16;
+    // Tras el filtro llega una fracción de las ubicaciones y un bloque tardaría horas en llenarse;
+    // lo que no está en disco se pierde si el sistema mata el proceso
+    public static final long DEFAULT_MAX_BLOCK_AGE_MS = 5 * 60 * 1000L;
+
+    private static final int FILE_MAGIC = 0x59565431; // "YVT1"
+    private static final int FILE_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int SEGMENT_MAGIC = 0x53454731; // "SEG1"
+    private static final int SEGMENT_HEADER_SIZE = 32;
+    private static final String FILE_PREFIX = "trip-";
+    private static final String FILE_SUFFIX = ".seg";
+
+    private final File dir;
+    private final int maxFileBytes;
+    private final int maxFiles;
+
+    // Bloque activo, aún sin escribir
+    private final int blockSize;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final long[] times;
+    private final float[] speeds;
+    private final float[] bearings;
+    private final float[] accuracies;
+    private int blockCount;
+    private long maxBlockAgeMs = DEFAULT_MAX_BLOCK_AGE_MS;
+
+    // Índice de segmentos escritos, en orden
+    private int segmentCount;
+    private int[] segmentFile = new int[256];
+    private long[] segmentOffset = new long[256];
+    private int[] segmentLength = new int[256];
+    private int[] segmentFixes = new int[256];
+    private long[] segmentMinTime = new long[256];
+    private long[] segmentMaxTime = new long[256];
+
+    // Archivos en disco, del más antiguo al actual
+    private int[] fileIds = new int[Math.max(4, DEFAULT_MAX_FILES)];
+    private int fileCount;
+    private RandomAccessFile current;
+    private int currentId;
+
+    // Reutilizados para no reservar memoria al escribir ni al leer
+    private final FixCodec.Writer writer;
+    private final ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final LocationFix scratch = new LocationFix();
+    private byte[] readBuffer = new byte[4096];
+
+    private long totalFixes;
+    private long writeErrors;
+
+    public TripStore(File dir) throws IOException {
+        this(dir, DEFAULT_BLOCK_SIZE, DEFAULT_FILE_BYTES, DEFAULT_MAX_FILES);
+    }
+
+    public TripStore(File dir, int blockSize, int maxFileBytes, int maxFiles) throws IOException {
+        if (blockSize < 1 || maxFiles < 2 || maxFileBytes < FILE_HEADER_SIZE + SEGMENT_HEADER_SIZE) {
+            throw new IllegalArgumentException("Configuración de TripStore no válida");
+        }
+        this.dir = dir;
+        this.blockSize = blockSize;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        latitudes = new double[blockSize];
+        longitudes = new double[blockSize];
+        times = new long[blockSize];
+        speeds = new float[blockSize];
+        bearings = new float[blockSize];
+        accuracies = new float[blockSize];
+        writer = new FixCodec.Writer(blockSize * 12 + 1);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("No se pudo crear " + dir);
+        }
+        load();
+    }
+
+    // Edad del bloque según la hora de las ubicaciones, no la del reloj
+    public synchronized void setMaxBlockAgeMs(long maxBlockAgeMs) {
+        this.maxBlockAgeMs = maxBlockAgeMs;
+    }
+
+    // Camino caliente: copia en el bloque y, una vez por bloque, escribe un segmento
+    public synchronized void append(LocationFix fix) {
+        int i = blockCount++;
+        latitudes[i] = fix.latitude;
+        longitudes[i] = fix.longitude;
+        times[i] = fix.time;
+        speeds[i] = fix.speed;
+        bearings[i] = fix.bearing;
+        accuracies[i] = fix.accuracy;
+        totalFixes++;
+        if (blockCount == blockSize || fix.time - times[0] >= maxBlockAgeMs) {
+            spill();
+        }
+    }
+
+    // Escribe el bloque parcial (al parar el servicio, cada tanto mientras no llegan ubicaciones
+    // o antes de exportar desde otro proceso)
+    public synchronized void flush() {
+        if (blockCount > 0) {
+            spill();
+        }
+    }
+
+    // Visita en orden las ubicaciones con from <= time <= to. Devuelve cuántas visitó.
+    public synchronized int query(long from, long to, Visitor visitor) {
+        int visited = 0;
+        for (int s = 0; s < segmentCount; s++) {
+            if (segmentMaxTime[s] < from || segmentMinTime[s] > to) {
+                continue;
+            }
+            byte[] data = readSegment(s);
+            if (data == null) {
+                continue;
+            }
+            FixCodec.Reader reader = new FixCodec.Reader(data, 0, segmentLength[s]);
+            while (reader.next(scratch)) {
+                if (scratch.time >= from && scratch.time <= to) {
+                    visited++;
+                    if (!visitor.visit(scratch)) {
+                        return visited;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < blockCount; i++) {
+            if (times[i] >= from && times[i] <= to) {
+                scratch.set(latitudes[i], longitudes[i], times[i], speeds[i], bearings[i], accuracies[i]);
+                visited++;
+                if (!visitor.visit(scratch)) {
+                    return visited;
+                }
+            }
+        }
+        return visited;
+    }
+
+    // Reproducción reducida: como mucho una ubicación cada intervalMs, más la última del rango
+    // para que el recorrido termine donde terminó de verdad
+    public synchronized int replay(long from, long to, long intervalMs, Visitor visitor) {
+        final LocationFix pending = new LocationFix();
+        final long[] lastEmitted = {Long.MIN_VALUE};
+        final boolean[] hasPending = {false};
+        final boolean[] stopped = {false};
+        final int[] emitted = {0};
+        query(from, to, fix -> {
+            if (lastEmitted[0] == Long.MIN_VALUE || fix.time - lastEmitted[0] >= intervalMs) {
+                lastEmitted[0] = fix.time;
+                hasPending[0] = false;
+                emitted[0]++;
+                if (!visitor.visit(fix)) {
+                    stopped[0] = true;
+                    return false;
+                }
+            } else {
+                pending.copyFrom(fix);
+                hasPending[0] = true;
+            }
+            return true;
+        });
+        if (hasPending[0] && !stopped[0]) {
+            emitted[0]++;
+            visitor.visit(pending);
+        }
+        return emitted[0];
+    }
+
+    // GPX 1.1 escrito a medida que se lee, sin cargar el recorrido entero en memoria
+    public synchronized int exportGpx(long from, long to, String name, Writer out) throws IOException {
+        SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Date date = new Date();
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<gpx version=\"1.1\" creator=\"YAVOY\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n"
+                + "<trk><name>" + escapeXml(name) + "</name><trkseg>\n");
+        final IOException[] failure = {null};
+        int count = query(from, to, fix -> {
+            date.setTime(fix.time);
+            try {
+                out.write(String.format(Locale.US, "<trkpt lat=\"%.6f\" lon=\"%.6f\"><time>%s</time><speed>%.1f</speed></trkpt>\n",
+                        fix.latitude, fix.longitude, iso.format(date), fix.speed));
+                return true;
+            } catch (IOException e) {
+                failure[0] = e;
+                return false;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        out.write("</trkseg></trk>\n</gpx>\n");
+        out.flush();
+        return count;
+    }
+
+    // Hora de la ubicación más antigua guardada, o -1 si no hay ninguna
+    public synchronized long getOldestTime() {
+        long oldest = segmentCount > 0 ? segmentMinTime[0] : Long.MAX_VALUE;
+        for (int i = 0; i < blockCount; i++) {
+            oldest = Math.min(oldest, times[i]);
+        }
+        return oldest == Long.MAX_VALUE ? -1 : oldest;
+    }
+
+    public synchronized long getDiskBytes() {
+        long bytes = 0;
+        for (int f = 0; f < fileCount; f++) {
+            bytes += fileOf(fileIds[f]).length();
+        }
+        return bytes;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segmentCount;
+    }
+
+    // Ubicaciones recibidas desde que se abrió el historial
+    public synchronized long getAppendedFixes() {
+        return totalFixes;
+    }
+
+    public synchronized long getWriteErrors() {
+        return writeErrors;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+
+    private void spill() {
+        writer.reset();
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        for (int i = 0; i < blockCount; i++) {
+            writer.add(scratch.set(latitudes[i], longitudes[i], times[i], speeds[i], bearings[i], accuracies[i]));
+            minTime = Math.min(minTime, times[i]);
+            maxTime = Math.max(maxTime, times[i]);
+        }
+        int length = writer.size();
+        crc.reset();
+        crc.update(writer.buffer(), 0, length);
+        header.clear();
+        header.putInt(SEGMENT_MAGIC).putInt(blockCount).putLong(minTime).putLong(maxTime)
+                .putInt(length).putInt((int) crc.getValue());
+        try {
+            if (current == null || current.length() + SEGMENT_HEADER_SIZE + length > maxFileBytes) {
+                rotate();
+            }
+            long offset = current.length();
+            current.seek(offset);
+            current.write(header.array(), 0, SEGMENT_HEADER_SIZE);
+            current.write(writer.buffer(), 0, length);
+            addSegment(currentId, offset + SEGMENT_HEADER_SIZE, length, blockCount, minTime, maxTime);
+        } catch (IOException e) {
+            // Sin disco se pierde este bloque, pero el servicio sigue enviando
+            writeErrors++;
+        }
+        blockCount = 0;
+    }
+
+    private void rotate() throws IOException {
+        if (current != null) {
+            current.close();
+        }
+        currentId = fileCount > 0 ? fileIds[fileCount - 1] + 1 : 1;
+        current = new RandomAccessFile(fileOf(currentId), "rw");
+        current.setLength(0);
+        current.writeInt(FILE_MAGIC);
+        current.writeInt(FILE_VERSION);
+        fileIds[fileCount++] = currentId;
+        while (fileCount > maxFiles) {
+            dropOldestFile();
+        }
+    }
+
+    private void dropOldestFile() {
+        int id = fileIds[0];
+        System.arraycopy(fileIds, 1, fileIds, 0, --fileCount);
+        int drop = 0;
+        while (drop < segmentCount && segmentFile[drop] == id) {
+            drop++;
+        }
+        if (drop > 0) {
+            int keep = segmentCount - drop;
+            System.arraycopy(segmentFile, drop, segmentFile, 0, keep);
+            System.arraycopy(segmentOffset, drop, segmentOffset, 0, keep);
+            System.arraycopy(segmentLength, drop, segmentLength, 0, keep);
+            System.arraycopy(segmentFixes, drop, segmentFixes, 0, keep);
+            System.arraycopy(segmentMinTime, drop, segmentMinTime, 0, keep);
+            System.arraycopy(segmentMaxTime, drop, segmentMaxTime, 0, keep);
+            segmentCount = keep;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        fileOf(id).delete();
+    }
+
+    private void addSegment(int file, long offset, int length, int fixes, long minTime, long maxTime) {
+        if (segmentCount == segmentFile.length) {
+            int size = segmentCount * 2;
+            segmentFile = Arrays.copyOf(segmentFile, size);
+            segmentOffset = Arrays.copyOf(segmentOffset, size);
+            segmentLength = Arrays.copyOf(segmentLength, size);
+            segmentFixes = Arrays.copyOf(segmentFixes, size);
+            segmentMinTime = Arrays.copyOf(segmentMinTime, size);
+            segmentMaxTime = Arrays.copyOf(segmentMaxTime, size);
+        }
+        int s = segmentCount++;
+        segmentFile[s] = file;
+        segmentOffset[s] = offset;
+        segmentLength[s] = length;
+        segmentFixes[s] = fixes;
+        segmentMinTime[s] = minTime;
+        segmentMaxTime[s] = maxTime;
+    }
+
+    private byte[] readSegment(int s) {
+        int length = segmentLength[s];
+        if (readBuffer.length < length) {
+            readBuffer = new byte[Math.max(length, readBuffer.length * 2)];
+        }
+        try {
+            if (segmentFile[s] == currentId && current != null) {
+                current.seek(segmentOffset[s]);
+                current.readFully(readBuffer, 0, length);
+            } else {
+                try (RandomAccessFile file = new RandomAccessFile(fileOf(segmentFile[s]), "r")) {
+                    file.seek(segmentOffset[s]);
+                    file.readFully(readBuffer, 0, length);
+                }
+            }
+            return readBuffer;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Reconstruye el índice leyendo las cabeceras y verificando cada segmento
+    private void load() throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+        int[] ids = new int[files != null ? files.length : 0];
+        int n = 0;
+        for (int i = 0; i < ids.length; i++) {
+            String name = files[i].getName();
+            try {
+                ids[n++] = Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                n--;
+            }
+        }
+        ids = Arrays.copyOf(ids, n);
+        Arrays.sort(ids);
+        // Si bajó el límite de archivos se borran los sobrantes más antiguos
+        for (int i = 0; i < ids.length - maxFiles; i++) {
+            //noinspection ResultOfMethodCallIgnored
+            fileOf(ids[i]).delete();
+        }
+        if (fileIds.length < maxFiles + 1) {
+            fileIds = new int[maxFiles + 1];
+        }
+        for (int i = Math.max(0, ids.length - maxFiles); i < ids.length; i++) {
+            if (scanFile(ids[i])) {
+                fileIds[fileCount++] = ids[i];
+            }
+        }
+        if (fileCount > 0) {
+            currentId = fileIds[fileCount - 1];
+            current = new RandomAccessFile(fileOf(currentId), "rw");
+        }
+    }
+
+    private boolean scanFile(int id) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileOf(id), "rw")) {
+            long length = file.length();
+            if (length >= FILE_HEADER_SIZE && file.readInt() == FILE_MAGIC && file.readInt() == FILE_VERSION) {
+                scanSegments(file, id, length);
+                return true;
+            }
+        }
+        // Cabecera inválida: se borra una vez cerrado
+        //noinspection ResultOfMethodCallIgnored
+        fileOf(id).delete();
+        return false;
+    }
+
+    // Indexa los segmentos válidos y corta el que quedó a medio escribir
+    private void scanSegments(RandomAccessFile file, int id, long length) throws IOException {
+        long offset = FILE_HEADER_SIZE;
+        while (offset + SEGMENT_HEADER_SIZE <= length) {
+            file.seek(offset);
+            file.readFully(header.array(), 0, SEGMENT_HEADER_SIZE);
+            header.clear();
+            int magic = header.getInt();
+            int fixes = header.getInt();
+            long minTime = header.getLong();
+            long maxTime = header.getLong();
+            int size = header.getInt();
+            int checksum = header.getInt();
+            long payload = offset + SEGMENT_HEADER_SIZE;
+            if (magic != SEGMENT_MAGIC || size <= 0 || payload + size > length) {
+                break;
+            }
+            if (readBuffer.length < size) {
+                readBuffer = new byte[size];
+            }
+            file.readFully(readBuffer, 0, size);
+            crc.reset();
+            crc.update(readBuffer, 0, size);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            addSegment(id, payload, size, fixes, minTime, maxTime);
+            offset = payload + size;
+        }
+        if (offset < length) {
+            // Segmento a medio escribir al cortarse la app
+            file.setLength(offset);
+        }
+    }
+
+    private File fileOf(int id) {
+        return new File(dir, FILE_PREFIX + id + FILE_SUFFIX);
+    }
+
+    private static String escapeXml(String text) {
+        return text == null ? "" : text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.ubicacion;
+
+import android.app.Application;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Lanza al crear el proceso lo que la primera pantalla necesita, mientras se muestra el splash
+public class UbicacionApp extends Application {
+
+    public static final String TASK_AUTH = "auth";
+    public static final String TASK_PROFILE = "profile";
+    public static final String TASK_SERVICE_STATE = "service_state";
+
+    private static UbicacionApp instance;
+    private static StartupOrchestrator startup;
+    private static SharingSession session;
+    private static TripStore tripStore;
+    private static boolean tripStoreFailed;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        instance = this;
+        // El proceso pudo empezar bastante antes que Application.onCreate
+        long startNanos = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                ? Process.getStartElapsedRealtime() * 1000000L
+                : SystemClock.elapsedRealtimeNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "startup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        startup = new StartupOrchestrator(executor, SystemClock::elapsedRealtimeNanos, startNanos)
+                // Restaurar la sesión lee el disco y puede tardar en el primer arranque
+                .add(TASK_AUTH, s -> FirebaseAuth.getInstance().getCurrentUser())
+                .add(TASK_PROFILE, TASK_AUTH, s -> {
+                    FirebaseUser user = s.get(TASK_AUTH);
+                    return user != null ? new ProfileCache(this).load(user.getUid()) : null;
+                })
+                .add(TASK_SERVICE_STATE, s -> getSession().getState());
+        startup.start();
+        startup.whenReady(executor::shutdown);
+    }
+
+    public static StartupOrchestrator getStartup() {
+        return startup;
+    }
+
+    // Una sola sesión por proceso, compartida por la pantalla, el servicio y el receptor de arranque
+    public static synchronized SharingSession getSession() {
+        if (session == null) {
+            session = new SharingSession(new SessionPrefs(instance));
+        }
+        return session;
+    }
+
+    // Historial de recorridos del dispositivo; lo escribe el servicio y lo lee la exportación.
+    // null si no se pudo abrir (sin espacio): el envío de ubicaciones no depende de él.
+    public static synchronized TripStore getTripStore() {
+        if (tripStore == null && !tripStoreFailed) {
+            try {
+                tripStore = new TripStore(new File(instance.getFilesDir(), "trips"));
+            } catch (IOException e) {
+                Log.w("TripStore", "No se pudo abrir el historial de recorridos", e);
+                tripStoreFailed = true;
+            }
+        }
+        return tripStore;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.ubicacion;
+
+// Decide cada cuánto y en qué lotes se envían las ubicaciones según la red, la batería,
+// el modo reposo (Doze), si alguien está mirando el vehículo y lo que ya se gastó del
+// presupuesto de datos del turno. No depende de Android: recibe la hora en cada llamada.
+public class UploadScheduler {
+
+    public enum Mode {
+        // Alguien mira el mapa: ventana corta
+        REAL_TIME,
+        NEAR_REAL_TIME,
+        // Nadie mira, red mala, batería crítica o Doze: lotes grandes y espaciados
+        BULK
+    }
+
+    public enum Network {
+        NONE,
+        // 2G o enlace con muy poco ancho de banda
+        SLOW,
+        CELLULAR,
+        // Wi-Fi o cualquier red sin tarifa por datos
+        UNMETERED
+    }
+
+    public static final class Plan {
+        public final Mode mode;
+        public final long windowMs;
+        public final int maxBatchSize;
+        // Con la radio ya encendida por otra razón se envía lo pendiente si pasó al menos esto
+        public final long piggybackMinGapMs;
+
+        Plan(Mode mode, long windowMs, int maxBatchSize, long piggybackMinGapMs) {
+            this.mode = mode;
+            this.windowMs = windowMs;
+            this.maxBatchSize = maxBatchSize;
+            this.piggybackMinGapMs = piggybackMinGapMs;
+        }
+
+        @Override
+        public String toString() {
+            return mode + "/" + windowMs + "ms/" + maxBatchSize;
+        }
+    }
+
+    static final Plan REAL_TIME = new Plan(Mode.REAL_TIME, 2000, 50, 1000);
+    static final Plan NEAR_REAL_TIME = new Plan(Mode.NEAR_REAL_TIME, 15000, 200, 5000);
+    static final Plan BULK = new Plan(Mode.BULK, 120000, 500, 20000);
+
+    static final int LOW_BATTERY_PERCENT = 20;
+    static final int CRITICAL_BATTERY_PERCENT = 10;
+    // Margen sobre el gasto proporcional antes de frenar: los primeros minutos gastan más
+    static final double BUDGET_SLACK = 0.1;
+
+    private final long budgetBytes;
+    private final long shiftMs;
+    private long shiftStartMs;
+    private long bytesSent;
+    // Bytes del turno enviados con datos móviles; lo que sale por Wi-Fi no cuenta
+    private long shiftBytes;
+
+    private Network network = Network.CELLULAR;
+    private int batteryPercent = 100;
+    private boolean charging;
+    private boolean deviceIdle;
+    // Sin información de presencia se supone que alguien mira
+    private boolean watched = true;
+
+    public UploadScheduler(long budgetBytes, long shiftMs, long nowMs) {
+        this.budgetBytes = budgetBytes;
+        this.shiftMs = shiftMs;
+        this.shiftStartMs = nowMs;
+    }
+
+    // Los bytes que todavía no se pasaron con setBytesSent se cuentan con la red nueva
+    public synchronized void setNetwork(Network network) {
+        this.network = network;
+    }
+
+    public synchronized void setBattery(int percent, boolean charging) {
+        this.batteryPercent = percent;
+        this.charging = charging;
+    }
+
+    public synchronized void setDeviceIdle(boolean deviceIdle) {
+        this.deviceIdle = deviceIdle;
+    }
+
+    public synchronized void setWatched(boolean watched) {
+        this.watched = watched;
+    }
+
+    // Contador acumulado de bytes del envío. Lo enviado desde la llamada anterior se atribuye
+    // a la red de ese momento: cuanto más seguido se llame, más fino el reparto.
+    public synchronized void setBytesSent(long bytesSent) {
+        long delta = bytesSent - this.bytesSent;
+        if (delta > 0 && network != Network.UNMETERED) {
+            shiftBytes += delta;
+        }
+        this.bytesSent = bytesSent;
+    }
+
+    // Presupuesto nuevo: al empezar a compartir y cada vez que se cumple la duración del turno
+    public synchronized void startShift(long nowMs) {
+        shiftStartMs = nowMs;
+        shiftBytes = 0;
+    }
+
+    public synchronized long getShiftBytes() {
+        return shiftBytes;
+    }
+
+    public synchronized Plan evaluate(long nowMs) {
+        if (nowMs - shiftStartMs >= shiftMs) {
+            startShift(nowMs);
+        }
+        if (deviceIdle || network == Network.NONE) {
+            return BULK;
+        }
+        int level = watched ? 0 : 1;
+        if (network == Network.SLOW) {
+            level++;
+        }
+        if (!charging) {
+            if (batteryPercent <= CRITICAL_BATTERY_PERCENT) {
+                level = 2;
+            } else if (batteryPercent <= LOW_BATTERY_PERCENT) {
+                level++;
+            }
+        }
+        // El presupuesto es de datos móviles: en Wi-Fi no frena
+        if (network != Network.UNMETERED) {
+            if (shiftBytes >= budgetBytes) {
+                level = 2;
+            } else if (shiftBytes > allowedBytes(nowMs)) {
+                // Va por delante del ritmo que permite llegar al final del turno: un escalón menos
+                level++;
+            }
+        }
+        if (level <= 0) {
+            return REAL_TIME;
+        }
+        return level == 1 ? NEAR_REAL_TIME : BULK;
+    }
+
+    // Otra parte de la app (o del sistema) acaba de usar la red: enviar ahora cuesta poca energía extra
+    // minGapMs: el piggybackMinGapMs del plan, con el mínimo de la configuración remota encima
+    public static boolean shouldPiggyback(long minGapMs, long nowMs, long lastFlushMs, boolean hasPending) {
+        return hasPending && nowMs - lastFlushMs >= minGapMs;
+    }
+
+    private long allowedBytes(long nowMs) {
+        double elapsed = Math.min(1.0, Math.max(0, nowMs - shiftStartMs) / (double) shiftMs);
+        return (long) (budgetBytes * Math.min(1.0, elapsed + BUDGET_SLACK));
+    }
+}
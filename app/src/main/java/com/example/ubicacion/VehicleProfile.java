@@ -0,0 +1,42 @@
+package com.example.ubicacion;
+
+// Datos del vehículo que necesita la pantalla principal: estado de la cuenta,
+// empresa, ruta y nombre. Se guardan en caché para no esperar a la red al arrancar.
+public class VehicleProfile {
+
+    public final String uid;
+    public final boolean activo;
+    public final String empresa;
+    public final String ruta;
+    public final String nombre;
+    public final long fetchedAt;
+
+    public VehicleProfile(String uid, boolean activo, String empresa, String ruta, String nombre, long fetchedAt) {
+        this.uid = uid;
+        this.activo = activo;
+        this.empresa = empresa;
+        this.ruta = ruta;
+        this.nombre = nombre;
+        this.fetchedAt = fetchedAt;
+    }
+
+    public boolean isFresh(long now, long ttlMs) {
+        return now >= fetchedAt && now - fetchedAt < ttlMs;
+    }
+
+    public boolean sameRoute(String otherEmpresa, String otherRuta) {
+        return equal(empresa, otherEmpresa) && equal(ruta, otherRuta);
+    }
+
+    public boolean sameContent(VehicleProfile other) {
+        return other != null
+                && activo == other.activo
+                && equal(uid, other.uid)
+                && sameRoute(other.empresa, other.ruta)
+                && equal(nombre, other.nombre);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
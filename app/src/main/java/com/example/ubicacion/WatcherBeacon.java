@@ -0,0 +1,56 @@
+package com.example.ubicacion;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ServerValue;
+
+// Lado del que mira: mientras la pantalla del vehículo está abierta mantiene su marca en
+// watchers/<vehículo>/<observador> para que el servicio del vehículo publique en vivo.
+// Firebase la borra sola si se pierde la conexión; si ni eso llega, caduca por tiempo.
+// FleetActivity mantiene una por cada vehículo de la lista mientras está visible.
+public class WatcherBeacon {
+
+    private static final long REFRESH_MS = PresenceMonitor.WATCHER_TTL_MS / 2;
+
+    private final DatabaseReference ref;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean started;
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            ref.setValue(ServerValue.TIMESTAMP);
+            handler.postDelayed(this, REFRESH_MS);
+        }
+    };
+
+    public WatcherBeacon(String vehicleUid, String watcherId) {
+        ref = FirebaseDatabase.getInstance().getReference("watchers")
+                .child(vehicleUid)
+                .child(watcherId);
+    }
+
+    // Llamar desde onStart de la pantalla que muestra el vehículo
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        ref.onDisconnect().removeValue();
+        refresh.run();
+    }
+
+    // Llamar desde onStop
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        handler.removeCallbacks(refresh);
+        ref.onDisconnect().cancel();
+        ref.removeValue();
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.ubicacion;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class EtaPredictorTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final long DAY_MS = 24 * 3600 * 1000L;
+    // Un lunes cualquiera a medianoche (UTC)
+    private static final long MONDAY_MS = 1700438400000L;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("eta").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    // Ruta de 8 km con una parada cada 500 m. Entre los metros 2000 y 4000 hay un atasco a
+    // las horas punta (7-9 h y 17-19 h); en cada parada el bus espera 15-45 s.
+    static final class Line {
+        final double[][] points = RouteMatcherTest.windingRoute(801);
+        final RouteGeometry route = new RouteGeometry(points[0], points[1]);
+        final List<Stop> stops = new ArrayList<>();
+        final double[] stopAlong;
+
+        Line() {
+            stopAlong = new double[16];
+            for (int i = 0; i < stopAlong.length; i++) {
+                int vertex = 50 * (i + 1);
+                stops.add(new Stop("p" + i, "Parada " + i, points[0][vertex], points[1][vertex], 30));
+                stopAlong[i] = route.getAlongMeters(vertex);
+            }
+        }
+
+        double speedAt(double along, long timeMs) {
+            int hour = (int) ((timeMs % DAY_MS) / 3600000);
+            boolean rush = (hour >= 7 && hour < 9) || (hour >= 17 && hour < 19);
+            if (rush && along > 2000 && along < 4000) {
+                return 2.5;
+            }
+            return along > 6000 ? 11 : 8;
+        }
+    }
+
+    interface Observer {
+        // Cada segundo: hora, avance real, vuelta y las estimaciones publicadas por el predictor
+        void onSecond(long timeMs, double trueAlong, int lap, EtaPredictor predictor);
+    }
+
+    // Reproduce un turno: vueltas seguidas desde startMs hasta endMs, a 1 Hz con ruido de GPS,
+    // pasando por RouteMatcher y EtaPredictor como en LocationService
+    static void runShift(Line line, EtaPredictor predictor, long startMs, long endMs, long seed, Observer observer) {
+        Random random = new Random(seed);
+        RouteMatcher matcher = new RouteMatcher();
+        matcher.setRoute(line.route);
+        LocationFix fix = new LocationFix();
+        double length = line.route.getLengthMeters();
+        double along = 0;
+        int lap = 0;
+        int nextStop = 0;
+        long dwellUntil = 0;
+        for (long t = startMs; t < endMs; t += 1000) {
+            if (t >= dwellUntil) {
+                double speed = line.speedAt(along, t) * (0.85 + random.nextDouble() * 0.3);
+                along += speed;
+                if (nextStop < line.stopAlong.length && along >= line.stopAlong[nextStop]) {
+                    along = line.stopAlong[nextStop];
+                    nextStop++;
+                    dwellUntil = t + 15000 + random.nextInt(30) * 1000L;
+                }
+                if (along >= length) {
+                    // Vuelta a la terminal y otra vuelta
+                    along = 0;
+                    nextStop = 0;
+                    lap++;
+                    dwellUntil = t + 120000;
+                }
+            }
+            int i = Math.min((int) (along / 10), line.points[0].length - 2);
+            double f = along / 10 - i;
+            double lat = line.points[0][i] + (line.points[0][i + 1] - line.points[0][i]) * f;
+            double lon = line.points[1][i] + (line.points[1][i + 1] - line.points[1][i]) * f;
+            fix.set(lat + random.nextGaussian() * 4 / 110574.0, lon + random.nextGaussian() * 4 / 111320.0,
+                    t, 8f, 0f, 8f);
+            matcher.process(fix);
+            predictor.update(t, matcher.getDistanceAlongMeters(), matcher.isOffRoute());
+            if (observer != null) {
+                observer.onSecond(t, along, lap, predictor);
+            }
+        }
+    }
+
+    // Error medio absoluto (s) de las estimaciones hechas entre 3 y 15 minutos antes de llegar
+    static double meanAbsoluteError(Line line, EtaPredictor predictor, long startMs, long endMs, long seed) {
+        List<long[]> predictions = new ArrayList<>();
+        List<long[]> arrivals = new ArrayList<>();
+        int[] reached = {0, -1};
+        runShift(line, predictor, startMs, endMs, seed, (timeMs, trueAlong, lap, p) -> {
+            if (lap != reached[1]) {
+                reached[0] = 0;
+                reached[1] = lap;
+            }
+            while (reached[0] < line.stopAlong.length && trueAlong >= line.stopAlong[reached[0]]) {
+                arrivals.add(new long[]{lap, reached[0], timeMs});
+                reached[0]++;
+            }
+            for (int k = 0; k < p.getUpcomingCount(); k++) {
+                int stop = Integer.parseInt(p.getUpcomingStopId(k).substring(1));
+                predictions.add(new long[]{lap, stop, timeMs, p.getArrivalMs(k)});
+            }
+        });
+        double sum = 0;
+        int count = 0;
+        for (long[] prediction : predictions) {
+            for (long[] arrival : arrivals) {
+                if (arrival[0] == prediction[0] && arrival[1] == prediction[1]) {
+                    long ahead = arrival[2] - prediction[2];
+                    if (ahead >= 180000 && ahead <= 900000) {
+                        sum += Math.abs(prediction[3] - arrival[2]) / 1000.0;
+                        count++;
+                    }
+                    break;
+                }
+            }
+        }
+        assertTrue(count > 100);
+        return sum / count;
+    }
+
+    private EtaPredictor predictor(Line line, SegmentTravelTimes times) {
+        return new EtaPredictor(line.route, line.stops, times, UTC);
+    }
+
+    @Test
+    public void learnedTravelTimesBeatDefaultSpeed() {
+        Line line = new Line();
+        SegmentTravelTimes times = new SegmentTravelTimes(line.route.getLengthMeters(), SegmentTravelTimes.DEFAULT_BIN_METERS);
+        // Cinco turnos de 6 a 20 h para aprender, cada uno con su propia semilla
+        for (int day = 0; day < 5; day++) {
+            long start = MONDAY_MS + day * DAY_MS + 6 * 3600000L;
+            runShift(line, predictor(line, times), start, start + 14 * 3600000L, 100 + day, null);
+        }
+        assertTrue(times.getSamples(15, 8) >= SegmentTravelTimes.MIN_SLOT_SAMPLES);
+
+        long start = MONDAY_MS + 7 * DAY_MS + 6 * 3600000L;
+        long end = start + 14 * 3600000L;
+        double untrained = meanAbsoluteError(line, predictor(line,
+                new SegmentTravelTimes(line.route.getLengthMeters(), SegmentTravelTimes.DEFAULT_BIN_METERS)), start, end, 7);
+        double trained = meanAbsoluteError(line, predictor(line, times), start, end, 7);
+        assertTrue(trained < 60);
+        assertTrue(trained < untrained / 2);
+    }
+
+    @Test
+    public void rushHourIsLearnedSeparately() {
+        Line line = new Line();
+        SegmentTravelTimes times = new SegmentTravelTimes(line.route.getLengthMeters(), SegmentTravelTimes.DEFAULT_BIN_METERS);
+        for (int day = 0; day < 3; day++) {
+            long start = MONDAY_MS + day * DAY_MS + 6 * 3600000L;
+            runShift(line, predictor(line, times), start, start + 14 * 3600000L, 200 + day, null);
+        }
+        // Tramo 2600-2800 m sin paradas: 80 s en hora punta, ~25 s el resto del día
+        int bin = 13;
+        assertEquals(80, times.expectedSeconds(bin, 8), 15);
+        assertEquals(25, times.expectedSeconds(bin, 12), 6);
+        // A las 3 de la mañana no hubo servicio: se usa la media de todas las horas
+        assertEquals(0, times.getSamples(bin, 3));
+        assertTrue(times.expectedSeconds(bin, 3) > times.expectedSeconds(bin, 12));
+    }
+
+    @Test
+    public void publishesAtThrottledRateAndOnStopChange() {
+        Line line = new Line();
+        EtaPredictor predictor = predictor(line,
+                new SegmentTravelTimes(line.route.getLengthMeters(), SegmentTravelTimes.DEFAULT_BIN_METERS));
+        long t = MONDAY_MS + 12 * 3600000L;
+        assertTrue(predictor.update(t, 10, false));
+        assertEquals(EtaPredictor.DEFAULT_UPCOMING, predictor.getUpcomingCount());
+        assertEquals("p0", predictor.getUpcomingStopId(0));
+        assertEquals(5, predictor.toMap().size());
+        int published = 0;
+        for (int s = 1; s < 60; s++) {
+            if (predictor.update(t + s * 1000L, 10 + s, false)) {
+                published++;
+            }
+        }
+        // Un minuto a 1 Hz sin cambiar de parada: cada 15 s
+        assertEquals(3, published);
+        // Dejar atrás la parada publica enseguida
+        assertTrue(predictor.update(t + 61000, line.stopAlong[0] + EtaPredictor.PASSED_METERS + 1, false));
+        assertEquals("p1", predictor.getUpcomingStopId(0));
+        // Las estimaciones crecen con la distancia
+        for (int k = 1; k < predictor.getUpcomingCount(); k++) {
+            assertTrue(predictor.getArrivalMs(k) > predictor.getArrivalMs(k - 1));
+        }
+    }
+
+    @Test
+    public void travelTimesSurviveRestartAndRejectOtherRoute() throws IOException {
+        SegmentTravelTimes times = new SegmentTravelTimes(8000, 200);
+        times.observe(3, 8, 60);
+        times.observe(3, 8, 70);
+        times.observe(3, 8, 80);
+        assertFalse(times.observe(3, 8, 1)); // 200 m en 1 s
+        File file = new File(dir, "eta.bin");
+        times.save(file);
+
+        SegmentTravelTimes loaded = SegmentTravelTimes.load(file, 8000, 200);
+        assertEquals(3, loaded.getSamples(3, 8));
+        assertEquals(times.expectedSeconds(3, 8), loaded.expectedSeconds(3, 8), 1e-6);
+        assertEquals(70, loaded.expectedSeconds(3, 8), 1e-3);
+
+        // Otro trazado: se empieza de cero
+        assertEquals(0, SegmentTravelTimes.load(file, 9500, 200).getSamples(3, 8));
+        // Archivo dañado: también
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(100);
+            raf.write(0x5A);
+        }
+        assertEquals(0, SegmentTravelTimes.load(file, 8000, 200).getSamples(3, 8));
+        assertEquals(0, SegmentTravelTimes.load(new File(dir, "no-existe.bin"), 8000, 200).getSamples(3, 8));
+    }
+
+    @Test
+    public void updateCostDoesNotGrowWithRouteLength() {
+        // 100 tramos (20 km) frente a 10 000 tramos (2 000 km): el coste por ubicación es logarítmico
+        double[] lengths = {20000, 2000000};
+        double[] nanosPerUpdate = new double[lengths.length];
+        for (int r = 0; r < lengths.length; r++) {
+            int vertices = (int) (lengths[r] / 10) + 1;
+            double[][] points = RouteMatcherTest.windingRoute(vertices);
+            RouteGeometry route = new RouteGeometry(points[0], points[1]);
+            List<Stop> stops = new ArrayList<>();
+            for (int v = 50; v < vertices; v += 50) {
+                stops.add(new Stop("p" + v, "Parada", points[0][v], points[1][v], 30));
+            }
+            SegmentTravelTimes times = new SegmentTravelTimes(route.getLengthMeters(), SegmentTravelTimes.DEFAULT_BIN_METERS);
+            EtaPredictor predictor = new EtaPredictor(route, stops, times, UTC);
+            int updates = 200000;
+            long start = MONDAY_MS + 12 * 3600000L;
+            double length = route.getLengthMeters();
+            // Calentamiento con aprendizaje en cada cruce de tramo
+            for (int i = 0; i < updates; i++) {
+                predictor.update(start + i * 1000L, (i * 9.0) % length, false);
+            }
+            long allocatedBefore = allocatedBytes();
+            long begin = System.nanoTime();
+            for (int i = 0; i < updates; i++) {
+                predictor.update(start + (updates + i) * 1000L, (i * 9.0) % length, false);
+            }
+            long elapsed = System.nanoTime() - begin;
+            long allocated = allocatedBytes() - allocatedBefore;
+            nanosPerUpdate[r] = (double) elapsed / updates;
+            assertTrue(allocated < 1024);
+            assertTrue(predictor.getLearnedSamples() > 0);
+        }
+        // Holgura amplia para máquinas de CI ruidosas: 100 veces más tramos no es 100 veces más caro
+        assertTrue(nanosPerUpdate[1] < nanosPerUpdate[0] * 5 + 200);
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
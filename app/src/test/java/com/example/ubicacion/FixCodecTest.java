@@ -0,0 +1,160 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FixCodecTest {
+
+    private static List<LocationFix> shiftFixes(int count) {
+        GpsTrace trace = GpsTrace.syntheticShift(3);
+        List<LocationFix> fixes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            LocationFix truth = trace.get((i * 5) % trace.size());
+            fixes.add(new LocationFix(truth.latitude, truth.longitude, 1700000000000L + i * 5000L,
+                    truth.speed, (i * 37) % 360, 4.5f + (i % 7)));
+        }
+        return fixes;
+    }
+
+    @Test
+    public void roundTripKeepsSubMeterPrecision() {
+        List<LocationFix> fixes = shiftFixes(500);
+        List<LocationFix> decoded = FixCodec.decode(FixCodec.encode(fixes));
+
+        assertEquals(fixes.size(), decoded.size());
+        for (int i = 0; i < fixes.size(); i++) {
+            LocationFix expected = fixes.get(i);
+            LocationFix actual = decoded.get(i);
+            assertTrue(expected.distanceTo(actual) < 0.1);
+            assertEquals(expected.time, actual.time);
+            assertEquals(expected.speed, actual.speed, 0.05);
+            assertEquals(expected.bearing, actual.bearing, 0.5);
+            assertEquals(expected.accuracy, actual.accuracy, 0.05);
+        }
+    }
+
+    @Test
+    public void handlesNegativeDeltasAndOutOfOrderTimes() {
+        List<LocationFix> fixes = new ArrayList<>();
+        fixes.add(new LocationFix(89.999999, 179.999999, 5000, 0f, 359.6f, 0f));
+        fixes.add(new LocationFix(-89.999999, -179.999999, 1000, 40f, -10f, 100f));
+        List<LocationFix> decoded = FixCodec.decode(FixCodec.encode(fixes));
+        assertEquals(-89.999999, decoded.get(1).latitude, 1e-9);
+        assertEquals(1000, decoded.get(1).time);
+        assertEquals(350f, decoded.get(1).bearing, 0);
+        assertEquals(0f, decoded.get(0).bearing, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedPayload() {
+        byte[] data = FixCodec.encode(shiftFixes(3));
+        byte[] truncated = new byte[data.length - 1];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        FixCodec.decode(truncated);
+    }
+
+    @Test
+    public void base64RoundTrip() {
+        for (int length = 0; length < 10; length++) {
+            byte[] data = new byte[length];
+            for (int i = 0; i < length; i++) {
+                data[i] = (byte) (i * 97 - 50);
+            }
+            assertArrayEquals(data, FixCodec.fromBase64(FixCodec.toBase64(data, length)));
+        }
+    }
+
+    @Test
+    public void uplinkWritesCompactTrail() {
+        LocationUplinkTest.FakeDatabase database = new LocationUplinkTest.FakeDatabase();
+        LocationUplink uplink = new LocationUplink(database, "bus1", "Bus 1");
+        uplink.setCompactTrail(true);
+        List<LocationFix> fixes = shiftFixes(20);
+        for (LocationFix fix : fixes) {
+            uplink.offer(fix, 0);
+        }
+        uplink.flush(0);
+
+        String payload = null;
+        for (Map.Entry<String, Object> entry : database.values.entrySet()) {
+            if (entry.getKey().startsWith("recorridos/bus1/")) {
+                payload = (String) entry.getValue();
+            }
+        }
+        List<LocationFix> decoded = FixCodec.decode(FixCodec.fromBase64(payload));
+        assertEquals(fixes.get(fixes.size() - 1).time, decoded.get(decoded.size() - 1).time);
+        assertEquals(uplink.getSentFixes(), decoded.size());
+    }
+
+    @Test
+    public void bytesAndAllocationPerFixAgainstPojoPath() {
+        List<LocationFix> fixes = shiftFixes(1000);
+        int rounds = 200;
+
+        // Ruta anterior: un LocationData por ubicación que Firebase convierte en mapa y JSON
+        long pojoBytes = 0;
+        long pojoAllocated = allocatedBytes();
+        for (int r = 0; r < rounds; r++) {
+            pojoBytes = 0;
+            for (LocationFix fix : fixes) {
+                Map<String, Object> map = new HashMap<>();
+                map.put("latitude", fix.latitude);
+                map.put("longitude", fix.longitude);
+                map.put("userName", "Bus 1");
+                pojoBytes += toJson(map).getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        pojoAllocated = allocatedBytes() - pojoAllocated;
+
+        FixCodec.Writer writer = new FixCodec.Writer(fixes.size() * 12);
+        long codecAllocated = allocatedBytes();
+        for (int r = 0; r < rounds; r++) {
+            writer.reset();
+            for (int i = 0; i < fixes.size(); i++) {
+                writer.add(fixes.get(i));
+            }
+        }
+        codecAllocated = allocatedBytes() - codecAllocated;
+
+        double pojoPerFix = (double) pojoBytes / fixes.size();
+        double codecPerFix = (double) writer.size() / fixes.size();
+        assertTrue(codecPerFix * 4 < pojoPerFix);
+        if (pojoAllocated > 0) {
+            assertTrue(codecAllocated * 10 < pojoAllocated);
+        }
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static String toJson(Map<String, Object> map) {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(entry.getKey()).append("\":");
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                json.append('"').append(value).append('"');
+            } else {
+                json.append(value);
+            }
+        }
+        return json.append('}').toString();
+    }
+}
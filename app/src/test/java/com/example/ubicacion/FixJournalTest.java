@@ -0,0 +1,191 @@
+package com.example.ubicacion;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FixJournalTest {
+
+    private File path;
+
+    @Before
+    public void setUp() throws IOException {
+        path = File.createTempFile("fixes", ".journal");
+        path.delete();
+    }
+
+    @After
+    public void tearDown() {
+        path.delete();
+    }
+
+    private static LocationFix fix(int i) {
+        return new LocationFix(-12.0 + i * 1e-4, -77.0 - i * 1e-4, 1000L * i, 5f, 90f, 8f);
+    }
+
+    @Test
+    public void readsInOrderAndAcknowledges() throws IOException {
+        try (FixJournal journal = new FixJournal(path, 100)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append(fix(i));
+            }
+            List<LocationFix> out = new ArrayList<>();
+            long last = journal.read(4, out);
+            assertEquals(4, out.size());
+            assertEquals(0L, out.get(0).time);
+            assertEquals(3000L, out.get(3).time);
+            assertEquals(8f, out.get(3).accuracy, 0);
+
+            journal.acknowledge(last);
+            assertEquals(6, journal.getPendingCount());
+            out.clear();
+            journal.read(100, out);
+            assertEquals(4000L, out.get(0).time);
+            assertEquals(6, out.size());
+        }
+    }
+
+    @Test
+    public void recoversPendingRecordsAfterReopen() throws IOException {
+        FixJournal journal = new FixJournal(path, 100);
+        for (int i = 0; i < 10; i++) {
+            journal.append(fix(i));
+        }
+        journal.acknowledge(3);
+        // Simula la muerte del proceso: no se llama a close()
+
+        try (FixJournal reopened = new FixJournal(path, 100)) {
+            assertEquals(7, reopened.getPendingCount());
+            List<LocationFix> out = new ArrayList<>();
+            reopened.read(100, out);
+            assertEquals(3000L, out.get(0).time);
+            assertEquals(9000L, out.get(6).time);
+
+            reopened.append(fix(10));
+            assertEquals(8, reopened.getPendingCount());
+        }
+        journal.close();
+    }
+
+    @Test
+    public void skipsTornRecordOnRecovery() throws IOException {
+        try (FixJournal journal = new FixJournal(path, 100)) {
+            for (int i = 0; i < 5; i++) {
+                journal.append(fix(i));
+            }
+        }
+        // Corrompe la latitud del registro con secuencia 3
+        try (RandomAccessFile raw = new RandomAccessFile(path, "rw")) {
+            raw.seek(32 + 3 * FixJournal.RECORD_SIZE + 8);
+            raw.writeLong(42);
+        }
+        try (FixJournal reopened = new FixJournal(path, 100)) {
+            List<LocationFix> out = new ArrayList<>();
+            reopened.read(100, out);
+            assertEquals(4, out.size());
+            assertEquals(Arrays.asList(0L, 1000L, 3000L, 4000L),
+                    Arrays.asList(out.get(0).time, out.get(1).time, out.get(2).time, out.get(3).time));
+        }
+    }
+
+    @Test
+    public void boundedSizeOverwritesOldestUnacknowledged() throws IOException {
+        try (FixJournal journal = new FixJournal(path, 50)) {
+            for (int i = 0; i < 120; i++) {
+                journal.append(fix(i));
+            }
+            assertEquals(50, journal.getPendingCount());
+            assertEquals(70, journal.getLostRecords());
+            List<LocationFix> out = new ArrayList<>();
+            journal.read(100, out);
+            assertEquals(70000L, out.get(0).time);
+        }
+        assertEquals(32 + 50L * FixJournal.RECORD_SIZE, path.length());
+    }
+
+    @Test
+    public void uplinkReplaysBacklogInOrderedBatches() throws IOException {
+        LocationUplinkTest.FakeDatabase database = new LocationUplinkTest.FakeDatabase();
+        try (FixJournal journal = new FixJournal(path, 1000)) {
+            LocationUplink uplink = new LocationUplink(database, "bus1", "Bus 1");
+            uplink.setJournal(journal);
+            uplink.setMaxBatchSize(25);
+
+            database.online = false;
+            for (int i = 0; i < 100; i++) {
+                uplink.offer(fix(i * 2), i * 1000L);
+                uplink.flushIfDue(i * 1000L);
+            }
+            assertEquals(100, journal.getPendingCount());
+
+            database.online = true;
+            database.writes = 0;
+            uplink.flush(200000);
+            assertEquals(0, journal.getPendingCount());
+            assertEquals(4, database.writes);
+            assertEquals(198000L, database.values.get("locations/bus1/timestamp"));
+            assertNotNull(database.values.get("recorridos/bus1/0"));
+        }
+    }
+
+    @Test
+    public void eachAccountKeepsItsOwnBacklog() throws IOException {
+        File dir = path.getParentFile();
+        File first = FixJournal.fileFor(dir, "uidA" + System.nanoTime());
+        File second = FixJournal.fileFor(dir, "uidB" + System.nanoTime());
+        assertNotEquals(first, second);
+        try {
+            try (FixJournal journal = new FixJournal(first, 100)) {
+                for (int i = 0; i < 5; i++) {
+                    journal.append(fix(i));
+                }
+            }
+            // Otra cuenta en el mismo equipo no ve ni reenvía lo pendiente de la primera
+            try (FixJournal journal = new FixJournal(second, 100)) {
+                assertEquals(0, journal.getPendingCount());
+                journal.append(fix(9));
+            }
+            // Al volver la primera cuenta, su pendiente sigue intacto
+            try (FixJournal journal = new FixJournal(first, 100)) {
+                List<LocationFix> out = new ArrayList<>();
+                journal.read(100, out);
+                assertEquals(5, out.size());
+                assertEquals(0L, out.get(0).time);
+            }
+        } finally {
+            first.delete();
+            second.delete();
+        }
+    }
+
+    @Test
+    public void appendKeepsUpWithTheFixRate() throws IOException {
+        int count = 200000;
+        LocationFix fix = fix(1);
+        try (FixJournal journal = new FixJournal(path, 20000)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                fix.time = i;
+                journal.append(fix);
+            }
+            long elapsed = System.nanoTime() - start;
+
+            List<LocationFix> out = new ArrayList<>(20000);
+            journal.read(20000, out);
+            double appendsPerSecond = count * 1e9 / elapsed;
+
+            // Un autobús genera como mucho una ubicación por segundo; sobra margen
+            assertTrue(appendsPerSecond > 10000);
+            assertEquals(20000, out.size());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FixPipelineTest {
+
+    @Test
+    public void queueIsBoundedAndFifo() {
+        FixQueue queue = new FixQueue(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(new LocationFix(0, 0, i), i));
+        }
+        assertFalse(queue.offer(new LocationFix(0, 0, 99), 99));
+        assertEquals(4, queue.size());
+
+        LocationFix out = new LocationFix();
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, queue.poll(out));
+            assertEquals(i, out.time);
+        }
+        assertEquals(-1, queue.poll(out));
+        assertTrue(queue.offer(new LocationFix(0, 0, 5), 5));
+    }
+
+    @Test
+    public void runsStagesInOrderOffTheCallerThread() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        List<Long> uploaded = new ArrayList<>();
+        List<String> threads = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        FixPipeline pipeline = new FixPipeline(64, executor)
+                .addStage("filter", fix -> fix.accuracy < 50)
+                .addStage("upload", fix -> {
+                    uploaded.add(fix.time);
+                    threads.add(Thread.currentThread().getName());
+                    if (fix.time == 4) {
+                        done.countDown();
+                    }
+                    return true;
+                });
+
+        for (int i = 0; i < 5; i++) {
+            pipeline.submit(-12, -77, i, 0f, 0f, i == 2 ? 100f : 5f);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList(0L, 1L, 3L, 4L), uploaded);
+        assertFalse(threads.contains(Thread.currentThread().getName()));
+        assertEquals(5, pipeline.getStageStats().get(0).getCount());
+        assertEquals(4, pipeline.getStageStats().get(1).getCount());
+        assertEquals(0, pipeline.getDroppedFixes());
+    }
+
+    @Test
+    public void failingStageDropsOnlyThatFix() {
+        List<Long> uploaded = new ArrayList<>();
+        // Ejecutor en el mismo hilo: cada submit vacía la cola antes de volver
+        FixPipeline pipeline = new FixPipeline(64, Runnable::run)
+                .addStage("route", fix -> {
+                    if (fix.time == 1) {
+                        throw new IllegalStateException("ruta a medio cargar");
+                    }
+                    return true;
+                })
+                .addStage("upload", fix -> uploaded.add(fix.time));
+
+        for (int i = 0; i < 4; i++) {
+            pipeline.submit(-12, -77, i, 0f, 0f, 5f);
+        }
+        // Después del fallo el pipeline sigue programando vaciados
+        assertEquals(Arrays.asList(0L, 2L, 3L), uploaded);
+        assertEquals(0, pipeline.getQueueDepth());
+        assertEquals(1, pipeline.getStageStats().get(0).getFailures());
+        assertEquals(4, pipeline.getStageStats().get(0).getCount());
+        assertEquals(0, pipeline.getStageStats().get(1).getFailures());
+    }
+
+    @Test
+    public void burstAgainstSlowStageNeverBlocksProducer() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        FixPipeline pipeline = new FixPipeline(32, executor)
+                .addStage("upload", fix -> {
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return true;
+                });
+
+        int burst = 500;
+        long[] submitNanos = new long[burst];
+        for (int i = 0; i < burst; i++) {
+            long start = System.nanoTime();
+            pipeline.submit(-12, -77, i, 0f, 0f, 5f);
+            submitNanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(submitNanos);
+        long p99 = submitNanos[burst * 99 / 100];
+        // Muy por debajo de un frame de 16 ms aunque la etapa vaya saturada
+        assertTrue(p99 < TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(pipeline.getDroppedFixes() > 0);
+        assertTrue(pipeline.getQueueDepth() <= pipeline.getCapacity());
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentProducersLoseNothingWithinCapacity() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        int producers = 4;
+        int perProducer = 10000;
+        CountDownLatch done = new CountDownLatch(producers * perProducer);
+        FixPipeline pipeline = new FixPipeline(1024, executor)
+                .addStage("count", fix -> {
+                    done.countDown();
+                    return true;
+                });
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!pipeline.submit(-12, -77, i, 0f, 0f, 5f)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(producers * perProducer, pipeline.getStageStats().get(0).getCount());
+    }
+}
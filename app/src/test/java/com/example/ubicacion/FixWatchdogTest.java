@@ -0,0 +1,231 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FixWatchdogTest {
+
+    // Cada cuánto revisa el servicio
+    private static final long TICK_MS = 5000;
+    private static final SamplingPolicy.Decision MOVING =
+            new SamplingPolicy.Decision(5000, 2500, SamplingPolicy.Priority.HIGH_ACCURACY, 0f);
+    private static final SamplingPolicy.Decision PARKED =
+            new SamplingPolicy.Decision(60000, 30000, SamplingPolicy.Priority.LOW_POWER, 25f);
+
+    // Proveedor simulado: entrega una ubicación por intervalo mientras "works" diga que sí.
+    // Reproduce lo que hace el servicio: cada paso vuelve a pedir con la decisión ajustada.
+    private abstract static class Provider implements FixWatchdog.Listener {
+        final List<FixWatchdog.Step> steps = new ArrayList<>();
+        final List<Long> fixes = new ArrayList<>();
+        SamplingPolicy.Decision policy = MOVING;
+        SamplingPolicy.Decision request;
+        FixWatchdog watchdog;
+        long now;
+        long nextFixMs;
+        int requests;
+
+        // Si el proveedor entrega ubicaciones con esta solicitud en este momento
+        abstract boolean works(SamplingPolicy.Decision request);
+
+        Provider start() {
+            watchdog = new FixWatchdog(this, 0);
+            rerequest();
+            return this;
+        }
+
+        void rerequest() {
+            watchdog.setExpected(policy);
+            request = watchdog.apply(policy);
+            nextFixMs = now + request.intervalMs;
+            requests++;
+        }
+
+        void runUntil(long endMs) {
+            while (now < endMs) {
+                now += 1000;
+                if (now >= nextFixMs) {
+                    nextFixMs = now + request.intervalMs;
+                    if (works(request)) {
+                        fixes.add(now);
+                        watchdog.onFix(now);
+                    }
+                }
+                if (now % TICK_MS == 0) {
+                    watchdog.tick(now, 0, false);
+                }
+            }
+        }
+
+        @Override
+        public void onStep(FixWatchdog.Step step) {
+            steps.add(step);
+            rerequest();
+        }
+
+        @Override
+        public void onUploadStalled(boolean stalled) {
+        }
+
+        long firstFixAfter(long timeMs) {
+            for (long fix : fixes) {
+                if (fix > timeMs) {
+                    return fix;
+                }
+            }
+            return -1;
+        }
+    }
+
+    @Test
+    public void stuckProviderRecoversWithARerequest() {
+        // A los 60 s deja de entregar y solo vuelve si se le pide de nuevo
+        Provider provider = new Provider() {
+            @Override
+            boolean works(SamplingPolicy.Decision request) {
+                return now < 60000 || requests > 1;
+            }
+        }.start();
+        provider.runUntil(5 * 60000);
+
+        long recovered = provider.firstFixAfter(60000);
+        long latency = recovered - 60000;
+        // Tres intervalos sin nada (mínimo 20 s), la revisión y un intervalo más
+        assertTrue(latency <= FixWatchdog.MIN_STALL_MS + TICK_MS + MOVING.intervalMs);
+        assertEquals(FixWatchdog.Step.REREQUEST, provider.steps.get(0));
+        assertEquals(FixWatchdog.Step.OK, provider.watchdog.getStep());
+        // Al recuperarse vuelve a la solicitud de la política
+        assertEquals(MOVING, provider.request);
+    }
+
+    @Test
+    public void lostGpsFallsBackToBalancedAndProbesHighAccuracyAgain() {
+        // Sin GPS desde los 60 s hasta los 10 min; el equilibrado (wifi y antenas) sigue
+        Provider provider = new Provider() {
+            @Override
+            boolean works(SamplingPolicy.Decision request) {
+                return now < 60000 || now >= 10 * 60000
+                        || request.priority != SamplingPolicy.Priority.HIGH_ACCURACY;
+            }
+        }.start();
+        provider.runUntil(15 * 60000);
+
+        long latency = provider.firstFixAfter(60000) - 60000;
+        assertTrue(latency <= FixWatchdog.MIN_STALL_MS + FixWatchdog.MIN_STEP_MS + TICK_MS + MOVING.intervalMs);
+        assertFalse(provider.steps.contains(FixWatchdog.Step.DEGRADED));
+
+        // Mientras falta el GPS el hueco más largo es el de cada prueba de precisión alta
+        long worstGap = 0;
+        for (int i = 1; i < provider.fixes.size(); i++) {
+            worstGap = Math.max(worstGap, provider.fixes.get(i) - provider.fixes.get(i - 1));
+        }
+        assertTrue(worstGap <= FixWatchdog.MIN_STALL_MS + FixWatchdog.MIN_STEP_MS + TICK_MS + MOVING.intervalMs);
+
+        // Con el GPS de vuelta, la siguiente prueba se queda en precisión alta
+        assertEquals(FixWatchdog.Step.OK, provider.watchdog.getStep());
+        assertEquals(SamplingPolicy.Priority.HIGH_ACCURACY, provider.request.priority);
+    }
+
+    @Test
+    public void deadProviderReportsDegradedAndRecoversWhenItComesBack() {
+        // Ubicación apagada desde los 60 s hasta los 20 min
+        Provider provider = new Provider() {
+            @Override
+            boolean works(SamplingPolicy.Decision request) {
+                return now < 60000 || now >= 20 * 60000;
+            }
+        }.start();
+        provider.runUntil(3 * 60000);
+        assertEquals(FixWatchdog.Step.DEGRADED, provider.watchdog.getStep());
+        assertEquals(SamplingPolicy.Priority.BALANCED, provider.request.priority);
+
+        // Degradado, sin martillar al proveedor: un reintento cada DEGRADED_RETRY_MS
+        long requestsBefore = provider.requests;
+        provider.runUntil(20 * 60000 - 1000);
+        assertEquals(FixWatchdog.Step.DEGRADED, provider.watchdog.getStep());
+        assertTrue(provider.requests - requestsBefore <= (17 * 60000) / FixWatchdog.DEGRADED_RETRY_MS + 1);
+
+        // Con la primera ubicación deja de estar degradado
+        provider.runUntil(20 * 60000 + MOVING.intervalMs);
+        assertEquals(FixWatchdog.Step.FALLBACK, provider.watchdog.getStep());
+        long latency = provider.firstFixAfter(20 * 60000 - 1) - 20 * 60000;
+        assertTrue(latency <= MOVING.intervalMs);
+
+        provider.runUntil(25 * 60000);
+        assertEquals(FixWatchdog.Step.OK, provider.watchdog.getStep());
+        assertEquals(MOVING, provider.request);
+    }
+
+    @Test
+    public void parkedVehicleIsNotAStall() {
+        // Con distancia mínima y el vehículo quieto el proveedor no entrega nada
+        Provider provider = new Provider() {
+            @Override
+            boolean works(SamplingPolicy.Decision request) {
+                return request.minDisplacementMeters == 0;
+            }
+        };
+        provider.policy = PARKED;
+        provider.start();
+        provider.runUntil(2 * 60 * 60000);
+
+        // Solo una ubicación de prueba cada STALL_INTERVALS × STATIONARY_GAP_MS
+        assertFalse(provider.steps.contains(FixWatchdog.Step.FALLBACK));
+        assertFalse(provider.steps.contains(FixWatchdog.Step.DEGRADED));
+        long probes = provider.watchdog.getRestarts();
+        assertTrue(probes <= 2 * 60 * 60000 / (FixWatchdog.STALL_INTERVALS * FixWatchdog.STATIONARY_GAP_MS));
+        assertEquals(PARKED, provider.request);
+    }
+
+    @Test
+    public void flagsUploadsWithoutAcknowledgement() {
+        List<Boolean> stalls = new ArrayList<>();
+        FixWatchdog watchdog = new FixWatchdog(new FixWatchdog.Listener() {
+            @Override
+            public void onStep(FixWatchdog.Step step) {
+            }
+
+            @Override
+            public void onUploadStalled(boolean stalled) {
+                stalls.add(stalled);
+            }
+        }, 0);
+
+        // Confirmaciones al día
+        long t = 0;
+        for (long sent = 1; sent <= 10; sent++) {
+            t += TICK_MS;
+            watchdog.onFix(t);
+            watchdog.tick(t, sent, true);
+        }
+        // Sin confirmar nada pese a tener pendientes
+        long lastAck = t;
+        while (t - lastAck < FixWatchdog.UPLOAD_STALL_MS) {
+            t += TICK_MS;
+            watchdog.onFix(t);
+            watchdog.tick(t, 10, true);
+            assertEquals(t - lastAck >= FixWatchdog.UPLOAD_STALL_MS, watchdog.isUploadStalled());
+        }
+        // Sin conexión no se espera confirmación: no es un atasco
+        t += TICK_MS;
+        watchdog.onFix(t);
+        watchdog.tick(t, 10, false);
+        assertFalse(watchdog.isUploadStalled());
+        // Vuelve la conexión: el plazo cuenta desde ahí
+        long online = t;
+        while (t - online < FixWatchdog.UPLOAD_STALL_MS - TICK_MS) {
+            t += TICK_MS;
+            watchdog.onFix(t);
+            watchdog.tick(t, 10, true);
+        }
+        assertFalse(watchdog.isUploadStalled());
+        // Los envíos no tocan el proveedor de ubicaciones
+        assertEquals(FixWatchdog.Step.OK, watchdog.getStep());
+        assertEquals(2, stalls.size());
+        assertTrue(stalls.get(0));
+        assertFalse(stalls.get(1));
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FleetViewTest {
+
+    // Adaptador simulado: aplica los avisos a su propia copia, como haría el RecyclerView
+    private static final class Adapter implements FleetView.Changes {
+        final FleetView view;
+        final List<String> shown = new ArrayList<>();
+        int inserted;
+        int removed;
+        int changed;
+
+        Adapter(FleetView view) {
+            this.view = view;
+        }
+
+        @Override
+        public void onInserted(int position) {
+            inserted++;
+            shown.add(position, view.getRow(position).uid);
+        }
+
+        @Override
+        public void onRemoved(int position) {
+            removed++;
+            shown.remove(position);
+        }
+
+        @Override
+        public void onChanged(int position) {
+            changed++;
+            assertEquals(shown.get(position), view.getRow(position).uid);
+        }
+
+        void reset() {
+            inserted = removed = changed = 0;
+        }
+
+        void assertInSync() {
+            assertEquals(view.getRowCount(), shown.size());
+            for (int i = 0; i < shown.size(); i++) {
+                assertEquals(view.getRow(i).uid, shown.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void appliesChildEventsAsIncrementalChanges() {
+        FleetView view = new FleetView();
+        Adapter adapter = new Adapter(view);
+
+        // El primer evento programa el cuadro; los siguientes se suman al mismo
+        assertTrue(view.putVehicle("u2", "Unidad 12"));
+        assertFalse(view.putVehicle("u1", "Unidad 03"));
+        assertFalse(view.putVehicle("u3", "unidad 07"));
+        assertFalse(view.putField("u1", "latitude", -0.18));
+        view.flush(adapter);
+        adapter.assertInSync();
+        assertEquals(3, adapter.inserted);
+        assertEquals(0, adapter.changed);
+        // Orden por nombre, sin distinguir mayúsculas
+        assertEquals("u1", view.getRow(0).uid);
+        assertEquals("u3", view.getRow(1).uid);
+        assertEquals(-0.18, view.getRow(0).latitude, 1e-9);
+
+        // Solo se redibuja la fila que cambió; las claves que no se muestran no cuentan
+        adapter.reset();
+        assertFalse(view.putField("u3", "eta", new HashMap<String, Object>()));
+        assertFalse(view.hasPending());
+        assertTrue(view.putField("u3", "fueraDeRuta", true));
+        Map<String, Object> health = new HashMap<>();
+        health.put("degradado", true);
+        view.putField("u3", "salud", health);
+        view.flush(adapter);
+        assertEquals(1, adapter.changed);
+        assertEquals(0, adapter.inserted + adapter.removed);
+        assertTrue(view.getRow(1).offRoute);
+        assertTrue(view.getRow(1).degraded);
+
+        // Cambio de nombre: se mueve a su nuevo lugar
+        adapter.reset();
+        view.putVehicle("u2", "Unidad 01");
+        view.removeVehicle("u3");
+        view.flush(adapter);
+        adapter.assertInSync();
+        assertEquals("u2", view.getRow(0).uid);
+        assertEquals(2, view.getRowCount());
+
+        // Alta y baja en el mismo cuadro: el adaptador no se entera
+        adapter.reset();
+        view.putVehicle("u9", "Unidad 99");
+        view.putField("u9", "latitude", 1.0);
+        view.removeVehicle("u9");
+        view.putField("u9", "longitude", 1.0);
+        view.flush(adapter);
+        assertEquals(0, adapter.inserted + adapter.removed + adapter.changed);
+        assertEquals(2, view.getVehicleCount());
+    }
+
+    @Test
+    public void randomEventsKeepTheAdapterInSync() {
+        FleetView view = new FleetView();
+        Adapter adapter = new Adapter(view);
+        Random random = new Random(7);
+        String[] keys = {"latitude", "longitude", "timestamp", "progreso", "fueraDeRuta", "parada"};
+        for (int frame = 0; frame < 500; frame++) {
+            for (int e = 0; e < 40; e++) {
+                String uid = "u" + random.nextInt(120);
+                int kind = random.nextInt(20);
+                if (kind == 0) {
+                    view.removeVehicle(uid);
+                } else if (kind <= 2) {
+                    view.putVehicle(uid, "Unidad " + random.nextInt(60));
+                } else {
+                    view.putField(uid, keys[random.nextInt(keys.length)], random.nextDouble());
+                }
+            }
+            view.flush(adapter);
+            adapter.assertInSync();
+            assertEquals(view.getVehicleCount(), view.getRowCount());
+        }
+    }
+
+    @Test
+    public void coalescesAFleetOfHundredsIntoOneChangePerVehiclePerFrame() {
+        FleetView view = new FleetView();
+        Adapter adapter = new Adapter(view);
+        int fleet = 500;
+        String[] uids = new String[fleet];
+        for (int i = 0; i < fleet; i++) {
+            uids[i] = "uid" + i;
+            view.putVehicle(uids[i], "Unidad " + i);
+        }
+        view.flush(adapter);
+
+        // Cada vehículo publica posición, hora y avance (4 eventos) dos veces por cuadro
+        Double[] values = new Double[16];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 0.001;
+        }
+        Long stamp = 1L;
+        int frames = 200;
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            adapter.reset();
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < fleet; i++) {
+                    Double value = values[(frame + i + round) & 15];
+                    view.putField(uids[i], "latitude", value);
+                    view.putField(uids[i], "longitude", value);
+                    view.putField(uids[i], "timestamp", stamp);
+                    view.putField(uids[i], "progreso", value);
+                }
+            }
+            view.flush(adapter);
+            assertEquals(fleet, adapter.changed);
+            assertEquals(0, adapter.inserted + adapter.removed);
+        }
+        long nanosPerFrame = (System.nanoTime() - start) / frames;
+        long bytesPerFrame = (allocatedBytes() - allocated) / frames;
+        // Muy por debajo de un cuadro de 16 ms, y sin basura que dispare el GC en pantalla
+        assertTrue(nanosPerFrame < 4000000);
+        assertTrue(bytesPerFrame < 1024);
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
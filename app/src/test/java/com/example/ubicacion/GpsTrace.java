@@ -0,0 +1,86 @@
+package com.example.ubicacion;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Recorrido GPS de referencia a 1 Hz para las simulaciones.
+// Formato CSV: tiempo_ms,latitud,longitud,velocidad_mps
+class GpsTrace {
+
+    final List<LocationFix> points = new ArrayList<>();
+
+    int size() {
+        return points.size();
+    }
+
+    LocationFix get(int i) {
+        return points.get(i);
+    }
+
+    static GpsTrace load(Reader csv) throws IOException {
+        GpsTrace trace = new GpsTrace();
+        BufferedReader reader = new BufferedReader(csv);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split(",");
+            trace.points.add(new LocationFix(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]),
+                    Long.parseLong(parts[0]), Float.parseFloat(parts[3]), 0f, 5f));
+        }
+        return trace;
+    }
+
+    // Turno sintético: espera en la terminal, tramo urbano con paradas, vía rápida y vuelta a la terminal
+    static GpsTrace syntheticShift(long seed) {
+        GpsTrace trace = new GpsTrace();
+        Random random = new Random(seed);
+        double lat = -12.0464;
+        double lon = -77.0428;
+        double bearing = 0;
+        long time = 0;
+
+        time = trace.dwell(lat, lon, time, 15 * 60);
+        for (int block = 0; block < 15; block++) {
+            bearing += (random.nextDouble() - 0.5) * 0.6;
+            for (int s = 0; s < 110; s++) {
+                double speed = 8 + random.nextGaussian();
+                double[] next = move(lat, lon, bearing, speed);
+                lat = next[0];
+                lon = next[1];
+                trace.points.add(new LocationFix(lat, lon, time, (float) speed, 0f, 5f));
+                time += 1000;
+            }
+            time = trace.dwell(lat, lon, time, 25);
+        }
+        for (int s = 0; s < 600; s++) {
+            double[] next = move(lat, lon, bearing, 25);
+            lat = next[0];
+            lon = next[1];
+            trace.points.add(new LocationFix(lat, lon, time, 25f, 0f, 5f));
+            time += 1000;
+        }
+        trace.dwell(lat, lon, time, 20 * 60);
+        return trace;
+    }
+
+    private long dwell(double lat, double lon, long time, int seconds) {
+        for (int s = 0; s < seconds; s++) {
+            points.add(new LocationFix(lat, lon, time, 0f, 0f, 5f));
+            time += 1000;
+        }
+        return time;
+    }
+
+    private static double[] move(double lat, double lon, double bearing, double meters) {
+        double dLat = meters * Math.cos(bearing) / 111320.0;
+        double dLon = meters * Math.sin(bearing) / (111320.0 * Math.cos(Math.toRadians(lat)));
+        return new double[]{lat + dLat, lon + dLon};
+    }
+}
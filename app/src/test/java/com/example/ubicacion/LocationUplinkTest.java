@@ -0,0 +1,213 @@
+package com.example.ubicacion;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LocationUplinkTest {
+
+    // Base de datos local que aplica los updateChildren sobre un mapa plano de rutas
+    static class FakeDatabase implements LocationUplink.Sink {
+        final Map<String, Object> values = new HashMap<>();
+        final List<LocationUplink.Callback> deferred = new ArrayList<>();
+        int writes;
+        boolean online = true;
+        boolean deferAcks;
+
+        @Override
+        public void write(Map<String, Object> updates, LocationUplink.Callback callback) {
+            writes++;
+            if (!online) {
+                callback.onComplete(false);
+                return;
+            }
+            values.putAll(updates);
+            if (deferAcks) {
+                deferred.add(callback);
+            } else {
+                callback.onComplete(true);
+            }
+        }
+    }
+
+    private FakeDatabase database;
+    private LocationUplink uplink;
+
+    @Before
+    public void setUp() {
+        database = new FakeDatabase();
+        uplink = new LocationUplink(database, "bus1", "Bus 1");
+        uplink.setWindowMs(10000);
+        uplink.setMinDistanceMeters(10);
+        uplink.setMaxSilenceMs(60000);
+    }
+
+    @Test
+    public void coalescesWindowIntoSingleWrite() {
+        for (int i = 0; i < 5; i++) {
+            uplink.offer(new LocationFix(-12.0 + i * 0.001, -77.0, i * 2000L), i * 2000L);
+            uplink.flushIfDue(i * 2000L);
+        }
+        assertEquals(0, database.writes);
+
+        assertTrue(uplink.flushIfDue(10000));
+        assertEquals(1, database.writes);
+        assertEquals(-11.996, (Double) database.values.get("locations/bus1/latitude"), 1e-9);
+        assertEquals("Bus 1", database.values.get("locations/bus1/userName"));
+        assertEquals(8000L, database.values.get("locations/bus1/timestamp"));
+        assertEquals(0f, database.values.get("locations/bus1/speed"));
+        assertTrue(database.values.containsKey("locations/bus1/bearing"));
+        assertNotNull(database.values.get("recorridos/bus1/0"));
+        assertNotNull(database.values.get("recorridos/bus1/8000"));
+        assertEquals(5, uplink.getSentFixes());
+    }
+
+    @Test
+    public void mergesStationaryFixes() {
+        assertTrue(uplink.offer(new LocationFix(-12.0, -77.0, 0), 0));
+        assertFalse(uplink.offer(new LocationFix(-12.00001, -77.0, 2000), 2000));
+        assertFalse(uplink.offer(new LocationFix(-12.00002, -77.0, 4000), 4000));
+        assertEquals(1, uplink.getPendingCount());
+
+        uplink.flush(4000);
+        // El punto fusionado conserva la hora más reciente
+        assertEquals(4000L, database.values.get("locations/bus1/timestamp"));
+    }
+
+    @Test
+    public void sendsHeartbeatAfterMaxSilence() {
+        uplink.offer(new LocationFix(-12.0, -77.0, 0), 0);
+        uplink.flush(0);
+        assertFalse(uplink.offer(new LocationFix(-12.0, -77.0, 30000), 30000));
+        assertTrue(uplink.offer(new LocationFix(-12.0, -77.0, 60000), 60000));
+    }
+
+    @Test
+    public void requeuesBatchWhenWriteFails() {
+        database.online = false;
+        uplink.offer(new LocationFix(-12.0, -77.0, 0), 0);
+        uplink.offer(new LocationFix(-12.01, -77.0, 2000), 2000);
+        uplink.flush(2000);
+        assertEquals(2, uplink.getPendingCount());
+
+        database.online = true;
+        uplink.offer(new LocationFix(-12.02, -77.0, 4000), 4000);
+        uplink.flush(4000);
+        assertEquals(0, uplink.getPendingCount());
+        assertEquals(3, uplink.getSentFixes());
+        assertEquals(-12.02, (Double) database.values.get("locations/bus1/latitude"), 1e-9);
+    }
+
+    @Test
+    public void keepsSingleWriteInFlight() {
+        database.deferAcks = true;
+        uplink.offer(new LocationFix(-12.0, -77.0, 0), 0);
+        assertTrue(uplink.flush(0));
+        uplink.offer(new LocationFix(-12.01, -77.0, 2000), 2000);
+        assertFalse(uplink.flush(2000));
+
+        database.deferred.get(0).onComplete(true);
+        assertTrue(uplink.flush(2000));
+        assertEquals(2, database.writes);
+    }
+
+    @Test
+    public void pendingQueueIsBounded() {
+        uplink.setMaxPending(3);
+        for (int i = 0; i < 10; i++) {
+            uplink.offer(new LocationFix(-12.0 + i * 0.01, -77.0, i * 1000L), i * 1000L);
+        }
+        assertEquals(3, uplink.getPendingCount());
+        assertEquals(7, uplink.getDroppedFixes());
+    }
+
+    @Test
+    public void stopEventsAreSentWithoutWaitingForWindow() {
+        uplink.offer(new LocationFix(-12.0, -77.0, 1000), 1000);
+        uplink.offerEvent(new StopEvent(StopEvent.Type.ARRIVAL, "p3", "Plaza", 1000, 0), 1000);
+        assertEquals(1, database.writes);
+        assertEquals("p3", database.values.get("locations/bus1/parada"));
+        Map<?, ?> event = (Map<?, ?>) database.values.get("eventos/bus1/1000_llegada");
+        assertEquals("Plaza", event.get("nombre"));
+        // La ubicación pendiente viajó en el mismo envío
+        assertEquals(0, uplink.getPendingCount());
+
+        database.online = false;
+        uplink.offerEvent(new StopEvent(StopEvent.Type.DEPARTURE, "p3", "Plaza", 40000, 39000), 40000);
+        database.online = true;
+        assertTrue(uplink.flushIfDue(40001));
+        assertEquals(39000L, ((Map<?, ?>) database.values.get("eventos/bus1/40000_salida")).get("permanenciaMs"));
+        assertTrue(database.values.containsKey("locations/bus1/parada"));
+        assertNull(database.values.get("locations/bus1/parada"));
+        assertEquals(2, uplink.getSentEvents());
+    }
+
+    @Test
+    public void earlyFlushesRespectTheRemoteMinimumGap() {
+        uplink.setMinGapMs(30000);
+        uplink.offer(new LocationFix(-12.0, -77.0, 1000), 1000);
+        assertTrue(uplink.flushEarly(1000));
+
+        // Ni la parada ni el adelanto salen antes del mínimo
+        uplink.offerEvent(new StopEvent(StopEvent.Type.ARRIVAL, "p3", "Plaza", 5000, 0), 5000);
+        assertEquals(1, database.writes);
+        assertFalse(uplink.flushEarly(20000));
+        assertEquals(11000, uplink.getEarlyFlushDelayMs(20000));
+        assertFalse(uplink.flushIfDue(30999));
+
+        assertTrue(uplink.flushIfDue(31000));
+        assertEquals("p3", database.values.get("locations/bus1/parada"));
+        assertEquals(1, uplink.getSentEvents());
+    }
+
+    @Test
+    public void awaitsAckOnlyForWhatWasSent() {
+        uplink.setWindowMs(5 * 60000);
+        uplink.offer(new LocationFix(-12.0, -77.0, 1000), 1000);
+        // Pendiente dentro de una ventana larga: nadie tiene que confirmar nada todavía
+        assertFalse(uplink.flushIfDue(4 * 60000));
+        assertTrue(uplink.hasPending());
+        assertFalse(uplink.isAwaitingAck());
+
+        database.deferAcks = true;
+        assertTrue(uplink.flushIfDue(5 * 60000 + 1000));
+        assertTrue(uplink.isAwaitingAck());
+        database.deferred.get(0).onComplete(false);
+        // Un envío fallido sigue sin confirmar
+        assertTrue(uplink.isAwaitingAck());
+
+        database.deferAcks = false;
+        uplink.flush(5 * 60000 + 2000);
+        assertFalse(uplink.isAwaitingAck());
+    }
+
+    @Test
+    public void recordsWriteMetricsAndCarriesExtras() {
+        Metrics metrics = new Metrics();
+        uplink.setMetrics(metrics);
+        uplink.offerExtra("metricas/bus1/1", "x");
+        // Solo extras: también se envían
+        assertTrue(uplink.flush(0));
+        assertEquals("x", database.values.get("metricas/bus1/1"));
+
+        database.online = false;
+        uplink.offer(new LocationFix(-12.0, -77.0, System.currentTimeMillis() - 3000), 0);
+        uplink.flush(1);
+        database.online = true;
+        uplink.flush(2);
+
+        assertEquals(2, metrics.counter("writes_ok").get());
+        assertEquals(1, metrics.counter("writes_failed").get());
+        assertEquals(1, metrics.histogram("fix_to_ack_ms").getCount());
+        assertTrue(metrics.histogram("fix_to_ack_ms").getMax() >= 3000);
+        assertEquals(3, metrics.histogram("write_ms").getCount());
+        // Los tres intentos gastan datos, también el fallido
+        assertTrue(uplink.getSentBytes() > 3 * LocationUplink.REQUEST_OVERHEAD_BYTES);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void percentilesWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram("t");
+        Random random = new Random(1);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal: muchas latencias cortas y una cola larga, como las reales
+            values[i] = (long) Math.exp(10 + random.nextGaussian() * 2);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double p : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long estimate = histogram.getPercentile(p);
+            assertTrue(p + ": " + exact + " vs " + estimate, estimate >= exact);
+            assertTrue(p + ": " + exact + " vs " + estimate, estimate <= exact + exact / 32 + 1);
+        }
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values.length, histogram.getCount());
+    }
+
+    @Test
+    public void bucketsAreContiguousAndMonotonic() {
+        int previous = -1;
+        for (long v = 0; v < 1 << 20; v++) {
+            int index = LatencyHistogram.indexFor(v);
+            assertTrue(index == previous || index == previous + 1);
+            assertTrue(v <= LatencyHistogram.upperBound(index));
+            previous = index;
+        }
+        // Fuera de rango: último cubo, sin excepciones
+        LatencyHistogram histogram = new LatencyHistogram("t");
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-5);
+        assertEquals(2, histogram.getCount());
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        Metrics metrics = new Metrics();
+        Metrics.Counter counter = metrics.counter("c");
+        LatencyHistogram histogram = metrics.histogram("h");
+        for (int i = 0; i < 100000; i++) {
+            counter.increment();
+            histogram.record(i);
+        }
+        // Lo que cuesta medir (la llamada a ThreadMXBean también reserva) no es del histograma
+        long overhead = allocatedBytes();
+        overhead = allocatedBytes() - overhead;
+        int operations = 1000000;
+        long before = allocatedBytes();
+        for (int i = 0; i < operations; i++) {
+            counter.increment();
+            histogram.record(i * 37L);
+        }
+        long allocated = allocatedBytes() - before - overhead;
+        // Un solo objeto por operación serían 16 B o más
+        double perOperation = (double) allocated / operations;
+        assertTrue("asignados por operación: " + perOperation, perOperation < 1);
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws InterruptedException {
+        Metrics metrics = new Metrics();
+        Metrics.Counter counter = metrics.counter("c");
+        LatencyHistogram histogram = metrics.histogram("h");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50000; i++) {
+                    counter.increment();
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(200000, counter.get());
+        assertEquals(200000, histogram.getCount());
+        assertEquals(49999, histogram.getMax());
+    }
+
+    @Test
+    public void snapshotIsCompactAndSkipsEmpty() {
+        Metrics metrics = new Metrics();
+        metrics.counter("fixes_received").add(12);
+        metrics.histogram("write_ms").record(40);
+        metrics.histogram("vacio");
+        metrics.gauge("battery_drain_pct_h", () -> 3.14159);
+        metrics.gauge("desconocido", () -> Double.NaN);
+        // Pedir el mismo nombre devuelve la misma instancia
+        metrics.counter("fixes_received").increment();
+
+        Map<String, Object> snapshot = metrics.snapshot();
+        assertEquals(13L, snapshot.get("fixes_received"));
+        assertEquals(3.14, snapshot.get("battery_drain_pct_h"));
+        assertEquals("1/40/40/40/40", snapshot.get("write_ms"));
+        assertFalse(snapshot.containsKey("vacio"));
+        assertFalse(snapshot.containsKey("desconocido"));
+        assertTrue(metrics.format().contains("write_ms"));
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
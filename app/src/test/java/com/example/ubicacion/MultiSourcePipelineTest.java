@@ -0,0 +1,209 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class MultiSourcePipelineTest {
+
+    @Test
+    public void rateLimitIsPerSourceAndUsesFixTime() {
+        MultiSourcePipeline pipeline = new MultiSourcePipeline(Runnable::run, 8);
+        AtomicLong delivered = new AtomicLong();
+        int slow = pipeline.addSource("slow", 16, 1000, fix -> {
+            delivered.incrementAndGet();
+            return true;
+        });
+        int fast = pipeline.addSource("fast", 16, 0, fix -> {
+            delivered.incrementAndGet();
+            return true;
+        });
+        // Ráfaga de 10 Hz durante 3 s
+        for (int i = 0; i < 30; i++) {
+            pipeline.submit(slow, new LocationFix(0, 0, i * 100L));
+            pipeline.submit(fast, new LocationFix(0, 0, i * 100L));
+        }
+        assertEquals(3, pipeline.getSource(slow).getAccepted());
+        assertEquals(27, pipeline.getSource(slow).getRateLimited());
+        assertEquals(30, pipeline.getSource(fast).getAccepted());
+        assertEquals(33, delivered.get());
+    }
+
+    @Test
+    public void failingSourceDoesNotStopTheOthers() {
+        MultiSourcePipeline pipeline = new MultiSourcePipeline(Runnable::run, 2);
+        List<Long> delivered = new ArrayList<>();
+        int broken = pipeline.addSource("broken", 16, 0, fix -> {
+            throw new IllegalArgumentException("trama inválida");
+        });
+        int good = pipeline.addSource("good", 16, 0, fix -> delivered.add(fix.time));
+
+        pipeline.submit(broken, new LocationFix(0, 0, 1));
+        pipeline.submit(good, new LocationFix(0, 0, 2));
+        pipeline.submit(broken, new LocationFix(0, 0, 3));
+        pipeline.submit(good, new LocationFix(0, 0, 4));
+
+        assertEquals(Arrays.asList(2L, 4L), delivered);
+        assertEquals(2, pipeline.getSource(broken).getFailures());
+        assertEquals(0, pipeline.getSource(broken).getDelivered());
+        assertEquals(2, pipeline.getSource(good).getDelivered());
+    }
+
+    @Test
+    public void addRemoveCyclesKeepTheSourceCountBounded() {
+        MultiSourcePipeline pipeline = new MultiSourcePipeline(Runnable::run, 2);
+        List<String> delivered = new ArrayList<>();
+        int stable = pipeline.addSource("stable", 16, 0, fix -> delivered.add("stable"));
+        // Cada cambio de configuración quita y vuelve a abrir dos unidades
+        int first = pipeline.addSource("a", 16, 0, fix -> delivered.add("a"));
+        int second = pipeline.addSource("b", 16, 0, fix -> delivered.add("b"));
+        int stale = first;
+        for (int cycle = 0; cycle < 1000; cycle++) {
+            pipeline.removeSource(first);
+            pipeline.removeSource(second);
+            first = pipeline.addSource("a", 16, 0, fix -> delivered.add("a"));
+            second = pipeline.addSource("b", 16, 0, fix -> delivered.add("b"));
+        }
+        assertEquals(3, pipeline.getSourceCount());
+        assertEquals(3, pipeline.getSlotCount());
+
+        // El índice viejo apunta al mismo hueco, pero ya no escribe en la fuente nueva
+        assertNull(pipeline.getSource(stale));
+        assertFalse(pipeline.submit(stale, new LocationFix(0, 0, 1)));
+        assertTrue(pipeline.submit(first, new LocationFix(0, 0, 2)));
+        assertTrue(pipeline.submit(stable, new LocationFix(0, 0, 3)));
+        assertEquals(Arrays.asList("a", "stable"), delivered);
+
+        // Quitar la última deja el arreglo sin huecos al final
+        pipeline.removeSource(second);
+        pipeline.removeSource(second);
+        assertEquals(2, pipeline.getSourceCount());
+        assertEquals(2, pipeline.getSlotCount());
+    }
+
+    @Test
+    public void busySourceDoesNotStarveTheOthers() throws InterruptedException {
+        // Un solo hilo de proceso detenido hasta que todas las colas están llenas
+        CountDownLatch gate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.execute(() -> {
+            try {
+                gate.await();
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        MultiSourcePipeline pipeline = new MultiSourcePipeline(executor, 2);
+        StringBuilder order = new StringBuilder();
+        int noisy = pipeline.addSource("noisy", 64, 0, fix -> {
+            order.append('n');
+            return true;
+        });
+        int quiet = pipeline.addSource("quiet", 64, 0, fix -> {
+            order.append('q');
+            return true;
+        });
+        for (int i = 0; i < 60; i++) {
+            pipeline.submit(noisy, new LocationFix(0, 0, i));
+        }
+        for (int i = 0; i < 4; i++) {
+            pipeline.submit(quiet, new LocationFix(0, 0, i));
+        }
+        gate.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(64, order.length());
+        // Las 4 de la fuente tranquila salen en las dos primeras rondas, no tras las 60 de la otra
+        assertTrue(order.toString(), order.lastIndexOf("q") < 10);
+    }
+
+    @Test
+    public void dozensOfSourcesThroughOneThread() throws InterruptedException {
+        int sources = 48;
+        int fixesPerSource = 20000;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ExecutorService producers = Executors.newFixedThreadPool(8);
+        try {
+            MultiSourcePipeline pipeline = new MultiSourcePipeline(executor, 16);
+            long[] lastTime = new long[sources];
+            boolean[] outOfOrder = new boolean[1];
+            // Un solo destino compartido por todas las unidades, como en LocationService
+            Set<String> writtenPaths = ConcurrentHashMap.newKeySet();
+            LocationUplink.Sink sink = (updates, callback) -> {
+                writtenPaths.addAll(updates.keySet());
+                callback.onComplete(true);
+            };
+            for (int s = 0; s < sources; s++) {
+                final int source = s;
+                TrackFilter filter = new TrackFilter();
+                LocationUplink uplink = new LocationUplink(sink, "unidad-" + s, "Unidad " + s);
+                pipeline.addSource("unidad-" + s, 256, 0, fix -> {
+                    if (fix.time < lastTime[source]) {
+                        outOfOrder[0] = true;
+                    }
+                    lastTime[source] = fix.time;
+                    if (filter.process(fix)) {
+                        uplink.offer(fix, fix.time);
+                        uplink.flushIfDue(fix.time);
+                    }
+                    return true;
+                });
+            }
+            CountDownLatch finished = new CountDownLatch(sources);
+            long start = System.nanoTime();
+            for (int s = 0; s < sources; s++) {
+                final int source = s;
+                producers.execute(() -> {
+                    LocationFix fix = new LocationFix();
+                    for (int i = 0; i < fixesPerSource; i++) {
+                        fix.set(-12 + source * 1e-3, -77 + i * 1e-5, i * 1000L, 8f, 90f, 5f);
+                        // Como un receptor real: si la cola está llena se reintenta más tarde
+                        while (!pipeline.submit(source, fix)) {
+                            Thread.yield();
+                        }
+                    }
+                    finished.countDown();
+                });
+            }
+            assertTrue(finished.await(60, TimeUnit.SECONDS));
+            long total = 0;
+            for (int wait = 0; wait < 500; wait++) {
+                total = 0;
+                for (int s = 0; s < sources; s++) {
+                    total += pipeline.getSource(s).getDelivered();
+                }
+                if (total == (long) sources * fixesPerSource) {
+                    break;
+                }
+                Thread.sleep(10);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            assertEquals((long) sources * fixesPerSource, total);
+            assertFalse(outOfOrder[0]);
+            for (int s = 0; s < sources; s++) {
+                assertTrue(writtenPaths.contains("locations/unidad-" + s + "/latitude"));
+            }
+            for (int s = 0; s < sources; s++) {
+                assertEquals(0, pipeline.getSource(s).getRateLimited());
+            }
+            // Muy por encima de lo necesario: 48 unidades a 1 Hz son 48 ubicaciones por segundo
+            assertTrue(total / seconds > 10000);
+        } finally {
+            producers.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NmeaParserTest {
+
+    static String sentence(String body) {
+        int sum = 0;
+        for (int i = 0; i < body.length(); i++) {
+            sum ^= body.charAt(i);
+        }
+        return String.format("$%s*%02X", body, sum);
+    }
+
+    @Test
+    public void parsesRmcWithHdopFromGga() {
+        NmeaParser parser = new NmeaParser();
+        LocationFix fix = new LocationFix();
+        assertFalse(parser.parse(sentence("GPGGA,123519.00,1203.5000,S,07702.2500,W,1,08,1.6,150.0,M,10.0,M,,"), fix));
+        assertTrue(parser.parse(sentence("GNRMC,123519.50,A,1203.5000,S,07702.2500,W,10.0,84.4,230394,,,A") + "\r\n", fix));
+
+        assertEquals(-(12 + 3.5 / 60), fix.latitude, 1e-9);
+        assertEquals(-(77 + 2.25 / 60), fix.longitude, 1e-9);
+        // 1994-03-23 12:35:19.5 UTC
+        assertEquals(764426119500L, fix.time);
+        assertEquals(5.14444f, fix.speed, 1e-3);
+        assertEquals(84.4f, fix.bearing, 1e-3);
+        assertEquals(8f, fix.accuracy, 1e-3);
+    }
+
+    @Test
+    public void rejectsBadChecksumVoidAndForeignSentences() {
+        NmeaParser parser = new NmeaParser();
+        LocationFix fix = new LocationFix();
+        String good = sentence("GPRMC,000000,A,4807.038,N,01131.000,E,0.0,0.0,010124,,");
+        String corrupted = good.replace("4807", "4808");
+        assertFalse(parser.parse(corrupted, fix));
+        assertEquals(1, parser.getBadChecksums());
+        assertFalse(parser.parse(sentence("GPRMC,000000,V,,,,,,,010124,,"), fix));
+        assertFalse(parser.parse(sentence("GPGSV,3,1,11,03,03,111,00"), fix));
+        assertFalse(parser.parse("basura", fix));
+        assertFalse(parser.parse(sentence("GPRMC,000000,A,48x7.038,N,01131.000,E,0.0,0.0,010124,,"), fix));
+
+        assertTrue(parser.parse(good, fix));
+        assertEquals(48 + 7.038 / 60, fix.latitude, 1e-9);
+        assertEquals(11 + 31.0 / 60, fix.longitude, 1e-9);
+        // Sin GGA previo la precisión es la de por defecto
+        assertEquals(10f, fix.accuracy, 0);
+    }
+
+    @Test
+    public void daysFromCivilMatchesKnownDates() {
+        assertEquals(0, NmeaParser.daysFromCivil(1970, 1, 1));
+        assertEquals(19723, NmeaParser.daysFromCivil(2024, 1, 1));
+        assertEquals(19782, NmeaParser.daysFromCivil(2024, 2, 29));
+        assertEquals(-1, NmeaParser.daysFromCivil(1969, 12, 31));
+    }
+
+    @Test
+    public void sourceReadsAStreamIntoThePipeline() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append(sentence(String.format("GPRMC,1200%02d,A,1200.%04d,S,07700.0000,W,5.0,0.0,150524,,", i, i * 10))).append("\r\n");
+            text.append(sentence("GPGSA,A,3,,,,,,,,,,,,,2.0,1.6,1.2")).append("\r\n");
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            MultiSourcePipeline pipeline = new MultiSourcePipeline(executor, 4);
+            List<Long> times = new ArrayList<>();
+            CountDownLatch done = new CountDownLatch(20);
+            int index = pipeline.addSource("bus-7", 64, 0, fix -> {
+                times.add(fix.time);
+                done.countDown();
+                return true;
+            });
+            byte[] bytes = text.toString().getBytes(Charset.forName("US-ASCII"));
+            NmeaSource source = new NmeaSource("bus-7", () -> new ByteArrayInputStream(bytes), false, false, pipeline, index);
+            source.start();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            // La última frase (GSA) puede llegar justo después de la última ubicación
+            for (int i = 0; i < 100 && source.getLines() < 40; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(40, source.getLines());
+            assertEquals(1000L, times.get(1) - times.get(0));
+            source.close();
+            assertFalse(pipeline.submit(index, new LocationFix(0, 0, 0)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PresenceMonitorTest {
+
+    private final List<PresenceMonitor.Mode> changes = new ArrayList<>();
+    private final PresenceMonitor monitor = new PresenceMonitor(changes::add);
+
+    @Test
+    public void goesLiveAtOnceAndBackToHeartbeatAfterLinger() {
+        // Al arrancar se publica en vivo hasta saber que nadie mira
+        assertEquals(PresenceMonitor.Mode.LIVE, monitor.getMode());
+        monitor.onWatchers(new long[0], 0);
+        monitor.tick(PresenceMonitor.LINGER_MS);
+        assertEquals(PresenceMonitor.Mode.HEARTBEAT, monitor.getMode());
+
+        // Aparece un pasajero: el cambio es inmediato, en la misma notificación
+        long t = 10 * 60 * 1000L;
+        monitor.onWatchers(new long[]{t}, t + 200);
+        assertEquals(PresenceMonitor.Mode.LIVE, monitor.getMode());
+        assertEquals(1, monitor.getWatcherCount());
+
+        // Cierra y reabre el mapa dentro de la espera: no hay cambio de modo
+        monitor.onWatchers(new long[0], t + 5000);
+        monitor.tick(t + 15000);
+        monitor.onWatchers(new long[]{t + 20000}, t + 20000);
+        monitor.onWatchers(new long[0], t + 40000);
+        monitor.tick(t + 40000 + PresenceMonitor.LINGER_MS - 1);
+        assertEquals(PresenceMonitor.Mode.LIVE, monitor.getMode());
+        monitor.tick(t + 40000 + PresenceMonitor.LINGER_MS);
+        assertEquals(PresenceMonitor.Mode.HEARTBEAT, monitor.getMode());
+
+        assertEquals(3, changes.size());
+    }
+
+    @Test
+    public void staleWatchersExpireWithoutDisconnect() {
+        // Un navegador cerrado a la fuerza deja su marca; deja de contar cuando caduca
+        monitor.onWatchers(new long[]{0, 1000}, 1000);
+        assertEquals(2, monitor.getWatcherCount());
+        monitor.tick(PresenceMonitor.WATCHER_TTL_MS + 500);
+        assertEquals(1, monitor.getWatcherCount());
+        long expired = PresenceMonitor.WATCHER_TTL_MS + 1000;
+        monitor.tick(expired);
+        assertEquals(0, monitor.getWatcherCount());
+        assertEquals(PresenceMonitor.Mode.LIVE, monitor.getMode());
+        monitor.tick(expired + PresenceMonitor.LINGER_MS);
+        assertEquals(PresenceMonitor.Mode.HEARTBEAT, monitor.getMode());
+    }
+
+    @Test
+    public void mostlyUnwatchedShiftWritesAFractionOfAlwaysLive() {
+        // 12 h de recorrido; alguien mira 10 min cada 2 h
+        long hour = 60 * 60 * 1000L;
+        LocationUplinkTest.FakeDatabase alwaysLive = new LocationUplinkTest.FakeDatabase();
+        LocationUplinkTest.FakeDatabase presence = new LocationUplinkTest.FakeDatabase();
+        int liveWrites = simulateWrites(alwaysLive, null, 12 * hour);
+        PresenceMonitor monitor = new PresenceMonitor(mode -> { });
+        int presenceWrites = simulateWrites(presence, monitor, 12 * hour);
+        assertTrue(presenceWrites * 5 < liveWrites);
+    }
+
+    private static int simulateWrites(LocationUplinkTest.FakeDatabase database, PresenceMonitor monitor, long duration) {
+        LocationUplink uplink = new LocationUplink(database, "bus1", "Bus 1");
+        SamplingPolicy policy = new SamplingPolicy();
+        UploadScheduler scheduler = new UploadScheduler(Long.MAX_VALUE, duration, 0);
+        long next = 0;
+        for (long now = 0; now < duration; now += 1000) {
+            if (monitor != null) {
+                boolean watching = now % (2 * 60 * 60 * 1000L) < 10 * 60 * 1000L;
+                monitor.onWatchers(watching ? new long[]{now} : new long[0], now);
+                boolean live = monitor.getMode() == PresenceMonitor.Mode.LIVE;
+                policy.setLive(live);
+                scheduler.setWatched(live);
+            }
+            UploadScheduler.Plan plan = scheduler.evaluate(now);
+            uplink.setWindowMs(plan.windowMs);
+            if (now >= next) {
+                // Bus a 10 m/s hacia el norte
+                LocationFix fix = new LocationFix(-12.0 + now * 9e-8, -77.0, now, 10f, 0f, 5f);
+                policy.onFix(fix);
+                uplink.offer(fix, now);
+                next = now + policy.evaluate().intervalMs;
+            }
+            uplink.flushIfDue(now);
+        }
+        return database.writes;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProfileRefreshTest {
+
+    static class RecordingListener implements ProfileRefresh.Listener {
+        final List<String> requests = new ArrayList<>();
+        VehicleProfile profile;
+        boolean deactivated;
+
+        @Override
+        public void requestAccount() {
+            requests.add("vehiculos");
+        }
+
+        @Override
+        public void requestRoute(String empresa, String ruta) {
+            requests.add(empresa + "/" + ruta);
+        }
+
+        @Override
+        public void onProfile(VehicleProfile profile) {
+            this.profile = profile;
+        }
+
+        @Override
+        public void onDeactivated() {
+            deactivated = true;
+        }
+    }
+
+    private static final VehicleProfile CACHED = new VehicleProfile("u1", true, "emp", "r1", "Bus 7", 0);
+
+    @Test
+    public void withoutCacheReadsAreSequential() {
+        RecordingListener listener = new RecordingListener();
+        ProfileRefresh refresh = new ProfileRefresh("u1", null, listener, 100);
+        refresh.start();
+        assertEquals(1, listener.requests.size());
+
+        refresh.onAccount(true, "emp", "r1");
+        assertEquals("emp/r1", listener.requests.get(1));
+        refresh.onRoute("emp", "r1", "Bus 7");
+
+        assertTrue(listener.profile.sameContent(CACHED));
+        assertEquals(100, listener.profile.fetchedAt);
+    }
+
+    @Test
+    public void withCacheBothReadsStartTogether() {
+        RecordingListener listener = new RecordingListener();
+        ProfileRefresh refresh = new ProfileRefresh("u1", CACHED, listener, 100);
+        refresh.start();
+        assertEquals(2, listener.requests.size());
+
+        // La respuesta de la ruta puede llegar antes que la de la cuenta
+        refresh.onRoute("emp", "r1", "Bus 8");
+        assertNull(listener.profile);
+        refresh.onAccount(true, "emp", "r1");
+        assertEquals("Bus 8", listener.profile.nombre);
+        assertEquals(2, listener.requests.size());
+    }
+
+    @Test
+    public void reissuesRouteReadWhenAssignmentChanged() {
+        RecordingListener listener = new RecordingListener();
+        ProfileRefresh refresh = new ProfileRefresh("u1", CACHED, listener, 100);
+        refresh.start();
+        refresh.onAccount(true, "emp", "r2");
+        assertEquals("emp/r2", listener.requests.get(2));
+
+        // La lectura especulativa llega tarde y se ignora
+        refresh.onRoute("emp", "r1", "Bus 7");
+        assertNull(listener.profile);
+        refresh.onRoute("emp", "r2", "Bus 9");
+        assertEquals("r2", listener.profile.ruta);
+        assertEquals("Bus 9", listener.profile.nombre);
+    }
+
+    @Test
+    public void deactivatedAccountWinsOverCache() {
+        RecordingListener listener = new RecordingListener();
+        ProfileRefresh refresh = new ProfileRefresh("u1", CACHED, listener, 100);
+        refresh.start();
+        refresh.onRoute("emp", "r1", "Bus 7");
+        refresh.onAccount(false, "emp", "r1");
+        assertTrue(listener.deactivated);
+        assertNull(listener.profile);
+        assertTrue(refresh.isFinished());
+    }
+
+    @Test
+    public void freshnessHonoursTtl() {
+        VehicleProfile profile = new VehicleProfile("u1", true, "emp", "r1", "Bus 7", 1000);
+        assertTrue(profile.isFresh(1000 + ProfileCache.TTL_MS - 1, ProfileCache.TTL_MS));
+        assertFalse(profile.isFresh(1000 + ProfileCache.TTL_MS, ProfileCache.TTL_MS));
+        // Reloj del teléfono retrasado: no confiamos en la caché
+        assertFalse(profile.isFresh(500, ProfileCache.TTL_MS));
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RouteMatcherTest {
+
+    private static final double SPACING_METERS = 10;
+
+    // Trazado con un vértice cada 10 m que serpentea por la ciudad sin cruzarse
+    static double[][] windingRoute(int vertices) {
+        double[] lat = new double[vertices];
+        double[] lon = new double[vertices];
+        lat[0] = 4.60;
+        lon[0] = -74.10;
+        for (int i = 1; i < vertices; i++) {
+            double heading = 0.6 + 0.5 * Math.sin(i / 150.0);
+            lat[i] = lat[i - 1] + Math.cos(heading) * SPACING_METERS / 110574.0;
+            lon[i] = lon[i - 1] + Math.sin(heading) * SPACING_METERS / (111320.0 * Math.cos(Math.toRadians(lat[i - 1])));
+        }
+        return new double[][]{lat, lon};
+    }
+
+    // Punto a "along" metros del inicio, desplazado "lateral" metros hacia el norte/este y con ruido
+    private static LocationFix pointAlong(double[][] route, double along, double lateral, Random random, long time,
+                                          LocationFix into) {
+        int i = Math.min((int) (along / SPACING_METERS), route[0].length - 2);
+        double t = along / SPACING_METERS - i;
+        double lat = route[0][i] + (route[0][i + 1] - route[0][i]) * t;
+        double lon = route[1][i] + (route[1][i + 1] - route[1][i]) * t;
+        double noise = random != null ? random.nextGaussian() * 4 : 0;
+        lat += (lateral + noise) / 110574.0;
+        lon -= (lateral + (random != null ? random.nextGaussian() * 4 : 0)) / 111320.0;
+        return into.set(lat, lon, time, 12f, 0f, 8f);
+    }
+
+    @Test
+    public void followsRouteAndRecoversAfterGap() {
+        double[][] points = windingRoute(2000);
+        RouteGeometry route = new RouteGeometry(points[0], points[1]);
+        RouteMatcher matcher = new RouteMatcher();
+        matcher.setRoute(route);
+        Random random = new Random(1);
+        LocationFix fix = new LocationFix();
+        double worst = 0;
+        for (int s = 0; s < 1500; s++) {
+            // Un túnel de cinco minutos a mitad de camino: sin ubicaciones y reaparece 3.6 km más allá
+            if (s >= 600 && s < 900) {
+                continue;
+            }
+            double along = s * 12.0;
+            matcher.process(pointAlong(points, along, 0, random, s * 1000L, fix));
+            assertFalse(matcher.isOffRoute());
+            worst = Math.max(worst, Math.abs(matcher.getDistanceAlongMeters() - along));
+        }
+        assertTrue("error máximo " + worst, worst < 20);
+        // Sin túnel todo se resuelve en la ventana; la primera ubicación y la salida del túnel usan la rejilla
+        assertEquals(2, matcher.getGridQueries());
+    }
+
+    @Test
+    public void flagsOffRouteWithHysteresis() {
+        double[][] points = windingRoute(500);
+        RouteMatcher matcher = new RouteMatcher();
+        matcher.setRoute(new RouteGeometry(points[0], points[1]));
+        LocationFix fix = new LocationFix();
+        long time = 0;
+        for (int s = 0; s < 50; s++, time += 1000) {
+            matcher.process(pointAlong(points, s * 10.0, 0, null, time, fix));
+        }
+        double beforeDetour = matcher.getDistanceAlongMeters();
+
+        // Desvío de 150 m: hacen falta tres ubicaciones seguidas para avisar
+        for (int s = 0; s < 5; s++, time += 1000) {
+            matcher.process(pointAlong(points, 500 + s * 10.0, 150, null, time, fix));
+            assertEquals(s >= RouteMatcher.OFF_ROUTE_FIXES - 1, matcher.isOffRoute());
+            assertTrue(matcher.getDistanceFromRouteMeters() > 100);
+        }
+        // Mientras está fuera se conserva el último avance conocido
+        assertEquals(beforeDetour, matcher.getDistanceAlongMeters(), 1e-9);
+
+        // Una ubicación suelta cerca no basta para volver
+        matcher.process(pointAlong(points, 560, 0, null, time += 1000, fix));
+        assertTrue(matcher.isOffRoute());
+        matcher.process(pointAlong(points, 570, 0, null, time += 1000, fix));
+        assertFalse(matcher.isOffRoute());
+        assertEquals(570, matcher.getDistanceAlongMeters(), 5);
+    }
+
+    @Test
+    public void outAndBackOnSameStreetKeepsDirection() {
+        // Ida 2 km hacia el este y vuelta por la misma calle
+        int half = 201;
+        double metersPerDegreeLon = 111320.0 * Math.cos(Math.toRadians(4.60));
+        double[] lat = new double[half * 2 - 1];
+        double[] lon = new double[lat.length];
+        for (int i = 0; i < lat.length; i++) {
+            int k = i < half ? i : 2 * (half - 1) - i;
+            lat[i] = 4.60;
+            lon[i] = -74.10 + k * SPACING_METERS / metersPerDegreeLon;
+        }
+        RouteGeometry route = new RouteGeometry(lat, lon);
+        assertEquals(4000, route.getLengthMeters(), 5);
+        RouteMatcher matcher = new RouteMatcher();
+        matcher.setRoute(route);
+        Random random = new Random(4);
+        LocationFix fix = new LocationFix();
+        for (int s = 0; s <= 390; s++) {
+            double along = s * 10.0;
+            double k = along <= 2000 ? along : 4000 - along;
+            fix.set(4.60 + random.nextGaussian() * 3 / 110574.0,
+                    -74.10 + (k + random.nextGaussian() * 3) / metersPerDegreeLon, s * 1000L, 10f, 0f, 6f);
+            matcher.process(fix);
+            assertEquals("segundo " + s, along, matcher.getDistanceAlongMeters(), 15);
+        }
+    }
+
+    @Test
+    public void decodesEncodedPolyline() {
+        // Ejemplo de la documentación del formato
+        RouteGeometry route = RouteGeometry.fromEncodedPolyline("_p~iF~ps|U_ulLnnqC_mqNvxq`@");
+        assertEquals(2, route.getSegmentCount());
+        double first = LocationFix.distanceMeters(38.5, -120.2, 40.7, -120.95);
+        double total = first + LocationFix.distanceMeters(40.7, -120.95, 43.252, -126.453);
+        // La proyección plana pierde exactitud a cientos de kilómetros del centro; basta el orden
+        assertEquals(total, route.getLengthMeters(), total * 0.02);
+    }
+
+    @Test
+    public void perFixCostDoesNotGrowWithRouteLength() {
+        int[] sizes = {1000, 10000, 100000};
+        double[] segmentsPerFix = new double[sizes.length];
+        double[] nanosPerFix = new double[sizes.length];
+        for (int r = 0; r < sizes.length; r++) {
+            double[][] points = windingRoute(sizes[r]);
+            RouteMatcher matcher = new RouteMatcher();
+            matcher.setRoute(new RouteGeometry(points[0], points[1]));
+            int fixes = 20000;
+            LocationFix[] trace = new LocationFix[fixes];
+            Random random = new Random(9);
+            double length = (sizes[r] - 1) * SPACING_METERS;
+            for (int i = 0; i < fixes; i++) {
+                // Vueltas completas a 1 Hz y 10 m/s; al final del trazado vuelve al inicio (nueva vuelta)
+                double along = (i * 10.0) % length;
+                trace[i] = pointAlong(points, along, 0, random, i * 1000L, new LocationFix());
+            }
+            // Calentamiento para que el JIT compile la etapa
+            for (LocationFix fix : trace) {
+                matcher.process(fix);
+            }
+            long visitedBefore = matcher.getSegmentsVisited();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            for (LocationFix fix : trace) {
+                matcher.process(fix);
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocatedBefore;
+            segmentsPerFix[r] = (double) (matcher.getSegmentsVisited() - visitedBefore) / fixes;
+            nanosPerFix[r] = (double) elapsed / fixes;
+            assertTrue(allocated < 1024);
+            assertTrue(segmentsPerFix[r] <= RouteMatcher.WINDOW_BEHIND + RouteMatcher.WINDOW_AHEAD + 1 + 1);
+        }
+        assertEquals(segmentsPerFix[0], segmentsPerFix[2], 1);
+        // Holgura amplia para máquinas de CI ruidosas: lo que importa es que no escale con el trazado
+        assertTrue(nanosPerFix[2] < nanosPerFix[0] * 5 + 200);
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
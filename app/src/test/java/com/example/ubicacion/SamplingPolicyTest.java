@@ -0,0 +1,134 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class SamplingPolicyTest {
+
+    private static LocationFix fix(long time, float speed) {
+        return new LocationFix(-12.0, -77.0, time, speed, 0f, 5f);
+    }
+
+    @Test
+    public void initialDecisionMatchesPreviousFixedRequest() {
+        SamplingPolicy.Decision decision = new SamplingPolicy().evaluate();
+        assertEquals(5000, decision.intervalMs);
+        assertEquals(2000, decision.fastestIntervalMs);
+        assertEquals(SamplingPolicy.Priority.HIGH_ACCURACY, decision.priority);
+    }
+
+    @Test
+    public void fasterVehicleSamplesMoreOften() {
+        SamplingPolicy slow = new SamplingPolicy();
+        slow.onFix(fix(0, 4f));
+        SamplingPolicy fast = new SamplingPolicy();
+        fast.onFix(fix(0, 25f));
+        assertTrue(fast.evaluate().intervalMs < slow.evaluate().intervalMs);
+    }
+
+    @Test
+    public void backsOffWhenStoppedAndParked() {
+        SamplingPolicy policy = new SamplingPolicy();
+        policy.onFix(fix(0, 0f));
+        policy.onFix(fix(SamplingPolicy.STOP_DWELL_MS, 0f));
+        assertTrue(policy.isStopped());
+        assertEquals(SamplingPolicy.Priority.BALANCED, policy.evaluate().priority);
+
+        policy.onFix(fix(SamplingPolicy.PARKED_DWELL_MS, 0f));
+        SamplingPolicy.Decision parked = policy.evaluate();
+        assertEquals(SamplingPolicy.Priority.LOW_POWER, parked.priority);
+        assertTrue(parked.minDisplacementMeters > 0);
+
+        policy.onFix(fix(SamplingPolicy.PARKED_DWELL_MS + 5000, 10f));
+        assertEquals(SamplingPolicy.Priority.HIGH_ACCURACY, policy.evaluate().priority);
+    }
+
+    @Test
+    public void lowBatteryStretchesIntervalAndNearStopTightensIt() {
+        SamplingPolicy policy = new SamplingPolicy();
+        policy.onFix(fix(0, 6f));
+        long normal = policy.evaluate().intervalMs;
+
+        policy.setBattery(15, false);
+        assertTrue(policy.evaluate().intervalMs > normal);
+        assertEquals(SamplingPolicy.Priority.BALANCED, policy.evaluate().priority);
+
+        policy.setBattery(15, true);
+        assertEquals(normal, policy.evaluate().intervalMs);
+
+        policy.setDistanceToNextStop(100);
+        assertTrue(policy.evaluate().intervalMs <= 3000);
+    }
+
+    @Test
+    public void remoteLimitsCapIntervalAndPriority() {
+        SamplingPolicy policy = new SamplingPolicy();
+        policy.onFix(fix(0, 15f));
+        policy.setDistanceToNextStop(100);
+        assertEquals(SamplingPolicy.Priority.HIGH_ACCURACY, policy.evaluate().priority);
+
+        // Ni siquiera llegando a una parada se baja del límite
+        policy.setLimits(10000, SamplingPolicy.Priority.BALANCED);
+        SamplingPolicy.Decision limited = policy.evaluate();
+        assertEquals(10000, limited.intervalMs);
+        assertEquals(10000, limited.fastestIntervalMs);
+        assertEquals(SamplingPolicy.Priority.BALANCED, limited.priority);
+        // También antes de la primera ubicación
+        SamplingPolicy fresh = new SamplingPolicy();
+        fresh.setLimits(10000, null);
+        assertEquals(10000, fresh.evaluate().intervalMs);
+
+        policy.setLimits(0, null);
+        assertTrue(policy.evaluate().intervalMs <= 3000);
+    }
+
+    @Test
+    public void simulationUsesFewerFixesWithBoundedError() {
+        GpsTrace trace = GpsTrace.syntheticShift(7);
+        SamplingSimulator.Report fixed = SamplingSimulator.run(trace, null, t -> 80);
+        SamplingSimulator.Report adaptive = SamplingSimulator.run(trace, new SamplingPolicy(), t -> 80);
+        assertTrue(adaptive.fixes < fixed.fixes * 0.6);
+        assertTrue(adaptive.p95ErrorMeters < 150);
+        // Las reconfiguraciones del proveedor deben ser pocas comparadas con las ubicaciones
+        assertTrue(adaptive.reconfigurations < adaptive.fixes / 5);
+    }
+
+    @Test
+    public void simulationOnLowBatteryShiftSavesMore() {
+        GpsTrace trace = GpsTrace.syntheticShift(11);
+        SamplingSimulator.Report full = SamplingSimulator.run(trace, new SamplingPolicy(), t -> 90);
+        SamplingSimulator.Report low = SamplingSimulator.run(trace, new SamplingPolicy(), t -> 15);
+        assertTrue(low.fixes < full.fixes);
+    }
+
+    @Test
+    public void heartbeatModeSamplesAFractionOfLiveMode() {
+        GpsTrace trace = GpsTrace.syntheticShift(7);
+        SamplingSimulator.Report live = SamplingSimulator.run(trace, new SamplingPolicy(), t -> 80);
+        SamplingPolicy unwatched = new SamplingPolicy();
+        unwatched.setLive(false);
+        SamplingSimulator.Report heartbeat = SamplingSimulator.run(trace, unwatched, t -> 80);
+        assertTrue(heartbeat.fixes * 4 < live.fixes);
+        assertTrue(unwatched.evaluate().intervalMs >= SamplingPolicy.HEARTBEAT_INTERVAL_MS);
+        assertTrue(unwatched.evaluate().priority != SamplingPolicy.Priority.HIGH_ACCURACY);
+        // Al aparecer un observador vuelve enseguida a la resolución normal
+        unwatched.setLive(true);
+        assertTrue(unwatched.evaluate().intervalMs < SamplingPolicy.HEARTBEAT_INTERVAL_MS);
+    }
+
+    @Test
+    public void loadsRecordedTraceFromCsv() throws IOException {
+        String csv = "# tiempo_ms,latitud,longitud,velocidad_mps\n"
+                + "0,-12.0464,-77.0428,0\n"
+                + "1000,-12.0463,-77.0428,11.1\n"
+                + "2000,-12.0462,-77.0428,11.1\n";
+        GpsTrace trace = GpsTrace.load(new StringReader(csv));
+        assertEquals(3, trace.size());
+        SamplingSimulator.Report report = SamplingSimulator.run(trace, new SamplingPolicy(), t -> 100);
+        assertEquals(1, report.fixes);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.ubicacion;
+
+import java.util.Arrays;
+
+// Reproduce un recorrido de referencia como lo haría el proveedor de ubicación con la
+// configuración vigente y mide cuántas ubicaciones se piden y cuánto se aleja la última
+// posición conocida de la real en cada segundo.
+class SamplingSimulator {
+
+    static class Report {
+        int fixes;
+        int reconfigurations;
+        double meanErrorMeters;
+        double p95ErrorMeters;
+        double maxErrorMeters;
+
+        @Override
+        public String toString() {
+            return String.format("%d ubicaciones, %d reconfiguraciones, error medio %.1f m, p95 %.1f m, máx %.1f m",
+                    fixes, reconfigurations, meanErrorMeters, p95ErrorMeters, maxErrorMeters);
+        }
+    }
+
+    interface BatteryModel {
+        int percentAt(long timeMs);
+    }
+
+    // Con policy == null se usa la configuración fija anterior (5 s, alta precisión)
+    static Report run(GpsTrace trace, SamplingPolicy policy, BatteryModel battery) {
+        Report report = new Report();
+        double[] errors = new double[trace.size()];
+        LocationFix lastDelivered = null;
+        SamplingPolicy.Decision decision = SamplingPolicy.INITIAL;
+        double errorSum = 0;
+
+        for (int i = 0; i < trace.size(); i++) {
+            LocationFix truth = trace.get(i);
+            boolean due = lastDelivered == null
+                    || (truth.time - lastDelivered.time >= decision.intervalMs
+                    && truth.distanceTo(lastDelivered) >= decision.minDisplacementMeters);
+            if (due) {
+                lastDelivered = truth;
+                report.fixes++;
+                if (policy != null) {
+                    policy.setBattery(battery.percentAt(truth.time), false);
+                    policy.onFix(truth);
+                    SamplingPolicy.Decision next = policy.evaluate();
+                    if (!next.equals(decision)) {
+                        report.reconfigurations++;
+                        decision = next;
+                    }
+                }
+            }
+            errors[i] = truth.distanceTo(lastDelivered);
+            errorSum += errors[i];
+        }
+
+        Arrays.sort(errors);
+        report.meanErrorMeters = errorSum / errors.length;
+        report.p95ErrorMeters = errors[(int) (errors.length * 0.95)];
+        report.maxErrorMeters = errors[errors.length - 1];
+        return report;
+    }
+}
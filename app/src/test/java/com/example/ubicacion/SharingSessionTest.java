@@ -0,0 +1,145 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SharingSessionTest {
+
+    // Simula las preferencias: sobrevive a "matar el proceso" creando otra SharingSession
+    private static final class MemoryStore implements SharingSession.Store {
+        SharingSession.State saved;
+        final List<SharingSession.State> writes = new ArrayList<>();
+
+        @Override
+        public SharingSession.State load() {
+            return saved;
+        }
+
+        @Override
+        public void save(SharingSession.State state) {
+            saved = state;
+            writes.add(state);
+        }
+    }
+
+    @Test
+    public void startsIdleAndIgnoresDuplicateStarts() {
+        MemoryStore store = new MemoryStore();
+        SharingSession session = new SharingSession(store);
+        assertEquals(SharingSession.State.IDLE, session.getState());
+
+        assertTrue(session.requestStart());
+        assertFalse(session.requestStart());
+        assertTrue(session.isActive());
+        assertEquals(1, store.writes.size());
+    }
+
+    @Test
+    public void processDeathKeepsSharingAndUiRestartsService() {
+        MemoryStore store = new MemoryStore();
+        new SharingSession(store).requestStart();
+
+        // El sistema mata el proceso sin pasar por onDestroy
+        SharingSession restored = new SharingSession(store);
+        assertTrue(restored.isActive());
+        assertEquals(SharingSession.Action.START_SERVICE, restored.reconcile(false));
+        // START_STICKY ya lo había relanzado: nada que hacer
+        assertEquals(SharingSession.Action.NONE, restored.reconcile(true));
+        assertTrue(restored.onServiceStarted());
+    }
+
+    @Test
+    public void systemStopWhileSharingIsResumedAfterBoot() {
+        MemoryStore store = new MemoryStore();
+        SharingSession session = new SharingSession(store);
+        session.requestStart();
+        session.onServiceStopped();
+        assertTrue(session.isActive());
+
+        assertTrue(new SharingSession(store).shouldResumeAfterBoot());
+    }
+
+    @Test
+    public void userStopEndsTheSession() {
+        MemoryStore store = new MemoryStore();
+        SharingSession session = new SharingSession(store);
+        session.requestStart();
+        assertTrue(session.requestStop());
+        assertEquals(SharingSession.State.STOPPING, session.getState());
+        // Un reinicio de START_STICKY durante la parada no debe seguir enviando
+        assertFalse(session.onServiceStarted());
+        session.onServiceStopped();
+        assertEquals(SharingSession.State.IDLE, session.getState());
+        assertFalse(session.requestStop());
+        assertFalse(new SharingSession(store).shouldResumeAfterBoot());
+    }
+
+    @Test
+    public void interruptedStopIsFinishedOnBootOrLaunch() {
+        MemoryStore store = new MemoryStore();
+        SharingSession session = new SharingSession(store);
+        session.requestStart();
+        session.requestStop();
+
+        assertFalse(new SharingSession(store).shouldResumeAfterBoot());
+        assertEquals(SharingSession.State.IDLE, store.saved);
+
+        store.saved = SharingSession.State.STOPPING;
+        SharingSession launched = new SharingSession(store);
+        assertEquals(SharingSession.Action.STOP_SERVICE, launched.reconcile(true));
+        assertEquals(SharingSession.Action.NONE, launched.reconcile(false));
+        assertEquals(SharingSession.State.IDLE, launched.getState());
+    }
+
+    @Test
+    public void offlinePauseIsStillActive() {
+        MemoryStore store = new MemoryStore();
+        SharingSession session = new SharingSession(store);
+        session.onConnectivityChanged(false);
+        assertEquals(SharingSession.State.IDLE, session.getState());
+
+        session.requestStart();
+        session.onConnectivityChanged(false);
+        assertEquals(SharingSession.State.PAUSED_OFFLINE, session.getState());
+        assertTrue(session.isActive());
+        assertFalse(session.requestStart());
+        assertTrue(new SharingSession(store).shouldResumeAfterBoot());
+
+        session.onConnectivityChanged(true);
+        assertEquals(SharingSession.State.SHARING, session.getState());
+    }
+
+    @Test
+    public void idleSessionStopsAStrayService() {
+        SharingSession session = new SharingSession(new MemoryStore());
+        assertEquals(SharingSession.Action.STOP_SERVICE, session.reconcile(true));
+        assertEquals(SharingSession.Action.NONE, session.reconcile(false));
+    }
+
+    @Test
+    public void listenerSeesEveryTransition() {
+        SharingSession session = new SharingSession(new MemoryStore());
+        List<String> changes = new ArrayList<>();
+        session.setListener((previous, state) -> changes.add(previous + ">" + state));
+
+        session.requestStart();
+        assertFalse(session.requestStart());
+        session.onConnectivityChanged(false);
+        session.onConnectivityChanged(true);
+        session.requestStop();
+        // Compartir de nuevo antes de que el servicio termine
+        session.requestStart();
+        assertEquals(5, changes.size());
+        assertEquals("IDLE>SHARING", changes.get(0));
+        assertEquals("PAUSED_OFFLINE>SHARING", changes.get(2));
+        assertEquals("STOPPING>SHARING", changes.get(4));
+
+        session.setListener(null);
+        session.requestStop();
+        assertEquals(5, changes.size());
+    }
+}
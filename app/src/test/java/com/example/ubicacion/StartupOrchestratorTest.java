@@ -0,0 +1,140 @@
+package com.example.ubicacion;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class StartupOrchestratorTest {
+
+    // El splash anterior esperaba siempre 2 s
+    private static final long OLD_SPLASH_MS = 2000;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private StartupOrchestrator newStartup() {
+        return new StartupOrchestrator(executor, System::nanoTime, System.nanoTime());
+    }
+
+    private static StartupOrchestrator.Task<String> sleeping(long ms, String result) {
+        return startup -> {
+            Thread.sleep(ms);
+            return result;
+        };
+    }
+
+    private static void awaitReady(StartupOrchestrator startup) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        startup.whenReady(latch::countDown);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void independentTasksRunInParallel() throws InterruptedException {
+        // Reloj simulado: cada tarea "tarda" 150 ms, pero solo terminan si corren a la vez
+        AtomicLong now = new AtomicLong();
+        CyclicBarrier bothRunning = new CyclicBarrier(2);
+        StartupOrchestrator.Task<String> task150 = startup -> {
+            bothRunning.await(5, TimeUnit.SECONDS);
+            now.set(TimeUnit.MILLISECONDS.toNanos(150));
+            return "ok";
+        };
+        StartupOrchestrator startup = new StartupOrchestrator(executor, now::get, 0)
+                .add("auth", task150)
+                .add("service_state", task150);
+        startup.start();
+        awaitReady(startup);
+
+        // Listo cuando termina la más lenta, no la suma de todas
+        assertEquals(150, startup.getReadyMillis());
+        assertTrue(startup.getReadyMillis() < OLD_SPLASH_MS);
+        assertEquals("ok", startup.get("auth"));
+        assertEquals("ok", startup.get("service_state"));
+        assertNull(startup.getError("auth"));
+    }
+
+    @Test
+    public void dependentTaskSeesItsDependency() throws InterruptedException {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        StartupOrchestrator startup = newStartup()
+                .add("profile", "auth", s -> {
+                    order.add("profile");
+                    return "perfil de " + s.get("auth");
+                })
+                .add("auth", s -> {
+                    Thread.sleep(50);
+                    order.add("auth");
+                    return "uid";
+                });
+        startup.start();
+        awaitReady(startup);
+
+        assertEquals(Arrays.asList("auth", "profile"), order);
+        assertEquals("perfil de uid", startup.get("profile"));
+        Map<String, Long> trace = startup.getTrace();
+        assertTrue(trace.get("profile") >= trace.get("auth"));
+        assertTrue(trace.containsKey("ready"));
+    }
+
+    @Test
+    public void failingTaskDoesNotBlockReadiness() throws InterruptedException {
+        StartupOrchestrator startup = newStartup()
+                .add("auth", s -> {
+                    throw new IllegalStateException("sin red");
+                })
+                .add("profile", "auth", s -> "cache");
+        startup.start();
+        awaitReady(startup);
+
+        assertNull(startup.get("auth"));
+        assertTrue(startup.getError("auth") instanceof IllegalStateException);
+        assertEquals("cache", startup.get("profile"));
+    }
+
+    @Test
+    public void listenersRunOnceAndLateListenersRunImmediately() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        Runnable removed = calls::incrementAndGet;
+        StartupOrchestrator startup = newStartup().add("auth", sleeping(30, "uid"));
+        startup.whenReady(calls::incrementAndGet);
+        startup.whenReady(removed);
+        startup.removeListener(removed);
+        CountDownLatch latch = new CountDownLatch(1);
+        startup.whenReady(latch::countDown);
+        startup.start();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+
+        startup.whenReady(calls::incrementAndGet);
+        assertEquals(2, calls.get());
+        assertTrue(startup.isReady());
+    }
+
+    @Test
+    public void emptyStartupIsReadyRightAway() {
+        StartupOrchestrator startup = newStartup();
+        startup.start();
+        assertTrue(startup.isReady());
+        startup.mark("interactive");
+        startup.mark("interactive");
+        assertTrue(startup.getTrace().containsKey("interactive"));
+    }
+}
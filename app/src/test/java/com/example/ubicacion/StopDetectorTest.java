@@ -0,0 +1,90 @@
+package com.example.ubicacion;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StopDetectorTest {
+
+    private final List<StopEvent> events = new ArrayList<>();
+    private StopDetector detector;
+    private List<Stop> stops;
+
+    @Before
+    public void setUp() {
+        stops = StopIndexTest.routeStops(100, 5);
+        detector = new StopDetector(events::add);
+        detector.setIndex(new StopIndex(stops));
+    }
+
+    private void feed(double lat, double lon, long time, float speed) {
+        detector.process(new LocationFix(lat, lon, time, speed, 0f, 5f));
+    }
+
+    // Punto desplazado "meters" al norte de la parada
+    private static double north(Stop stop, double meters) {
+        return stop.latitude + meters / 110574.0;
+    }
+
+    @Test
+    public void arrivalThenDepartureWithDwell() {
+        Stop stop = stops.get(10);
+        feed(north(stop, 120), stop.longitude, 0, 8f);
+        feed(north(stop, 20), stop.longitude, 5000, 6f);
+        assertTrue(events.isEmpty());
+        feed(north(stop, 5), stop.longitude, 8000, 4f);
+        assertEquals(1, events.size());
+        assertEquals(StopEvent.Type.ARRIVAL, events.get(0).type);
+        assertEquals(stop.id, events.get(0).stopId);
+
+        feed(north(stop, -stop.radiusMeters * 2), stop.longitude, 38000, 7f);
+        assertEquals(2, events.size());
+        assertEquals(StopEvent.Type.DEPARTURE, events.get(1).type);
+        assertEquals(30000, events.get(1).dwellMs);
+    }
+
+    @Test
+    public void slowSingleFixIsEnoughToArrive() {
+        Stop stop = stops.get(3);
+        feed(north(stop, 3), stop.longitude, 0, 0.2f);
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void jitterAtTheEdgeDoesNotRepeatEvents() {
+        Stop stop = stops.get(20);
+        feed(stop.latitude, stop.longitude, 0, 0f);
+        for (int i = 1; i <= 40; i++) {
+            // Oscila entre justo dentro y justo fuera del radio
+            double offset = stop.radiusMeters * (i % 2 == 0 ? 0.9 : 1.2);
+            feed(north(stop, offset), stop.longitude, i * 2000L, 0.5f);
+        }
+        assertEquals(1, events.size());
+        assertEquals(1, detector.getArrivals());
+        assertEquals(0, detector.getDepartures());
+    }
+
+    @Test
+    public void passingThroughFastNeedsTwoFixesInside() {
+        Stop stop = stops.get(30);
+        feed(north(stop, 10), stop.longitude, 0, 12f);
+        feed(north(stop, 200), stop.longitude, 2000, 12f);
+        assertTrue(events.isEmpty());
+        // A 200 m puede haber otra parada de la ruta más cerca
+        assertTrue(detector.getDistanceToNearestStop() <= 201);
+    }
+
+    @Test
+    public void newStopListResetsState() {
+        Stop stop = stops.get(40);
+        feed(stop.latitude, stop.longitude, 0, 0f);
+        assertEquals(1, events.size());
+        detector.setIndex(new StopIndex(new ArrayList<>()));
+        feed(stop.latitude, stop.longitude, 1000, 0f);
+        assertEquals(1, events.size());
+    }
+}
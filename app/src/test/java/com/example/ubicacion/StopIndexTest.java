@@ -0,0 +1,127 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StopIndexTest {
+
+    // Paradas cada ~300 m a lo largo de una ruta en zigzag por una ciudad
+    static List<Stop> routeStops(int count, long seed) {
+        Random random = new Random(seed);
+        List<Stop> stops = new ArrayList<>();
+        double lat = 4.60;
+        double lon = -74.10;
+        for (int i = 0; i < count; i++) {
+            double heading = Math.toRadians((i / 20) % 2 == 0 ? 20 : 160) + (random.nextDouble() - 0.5) * 0.6;
+            lat += Math.cos(heading) * 300 / 110574.0;
+            lon += Math.sin(heading) * 300 / 111320.0;
+            stops.add(new Stop("p" + i, "Parada " + i, lat, lon, 30 + random.nextInt(30)));
+        }
+        return stops;
+    }
+
+    private static int bruteForceInside(List<Stop> stops, double lat, double lon) {
+        int best = -1;
+        double bestRatio = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < stops.size(); i++) {
+            Stop stop = stops.get(i);
+            double ratio = LocationFix.distanceMeters(lat, lon, stop.latitude, stop.longitude) / stop.radiusMeters;
+            if (ratio <= 1 && ratio < bestRatio) {
+                bestRatio = ratio;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void matchesBruteForce() {
+        List<Stop> stops = routeStops(400, 1);
+        StopIndex index = new StopIndex(stops);
+        StopIndex.Match match = new StopIndex.Match();
+        Random random = new Random(2);
+        int inside = 0;
+        for (int i = 0; i < 20000; i++) {
+            Stop near = stops.get(random.nextInt(stops.size()));
+            double lat = near.latitude + (random.nextDouble() - 0.5) * 0.002;
+            double lon = near.longitude + (random.nextDouble() - 0.5) * 0.002;
+            index.query(lat, lon, match);
+            int expected = bruteForceInside(stops, lat, lon);
+            // La proyección plana difiere de haversine en centímetros: solo se admite en el borde
+            if (expected != match.inside) {
+                Stop s = stops.get(expected >= 0 ? expected : match.inside);
+                double d = LocationFix.distanceMeters(lat, lon, s.latitude, s.longitude);
+                assertEquals(s.radiusMeters, d, s.radiusMeters * 0.005);
+            } else if (expected >= 0) {
+                inside++;
+            }
+        }
+        assertTrue(inside > 1000);
+    }
+
+    @Test
+    public void farFromRouteFindsNothing() {
+        StopIndex index = new StopIndex(routeStops(50, 1));
+        StopIndex.Match match = index.query(5.5, -73.0, new StopIndex.Match());
+        assertEquals(-1, match.stop);
+        assertEquals(-1, match.inside);
+        assertTrue(Double.isInfinite(match.distanceMeters));
+
+        StopIndex empty = new StopIndex(new ArrayList<>());
+        assertEquals(-1, empty.query(4.6, -74.1, match).stop);
+    }
+
+    @Test
+    public void lookupCostDoesNotGrowWithStopCount() {
+        StopIndex.Match match = new StopIndex.Match();
+        double[] nanosPerLookup = new double[3];
+        int[] sizes = {50, 500, 2000};
+        for (int s = 0; s < sizes.length; s++) {
+            List<Stop> stops = routeStops(sizes[s], 7);
+            StopIndex index = new StopIndex(stops);
+            int lookups = 200000;
+            double[] lat = new double[lookups];
+            double[] lon = new double[lookups];
+            Random random = new Random(3);
+            for (int i = 0; i < lookups; i++) {
+                Stop near = stops.get(random.nextInt(stops.size()));
+                lat[i] = near.latitude + (random.nextDouble() - 0.5) * 0.004;
+                lon[i] = near.longitude + (random.nextDouble() - 0.5) * 0.004;
+            }
+            // Calentamiento para que el JIT compile la consulta
+            for (int i = 0; i < lookups; i++) {
+                index.query(lat[i], lon[i], match);
+            }
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            int hits = 0;
+            for (int i = 0; i < lookups; i++) {
+                if (index.query(lat[i], lon[i], match).inside >= 0) {
+                    hits++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocatedBefore;
+            nanosPerLookup[s] = (double) elapsed / lookups;
+            assertTrue(hits > 0);
+            assertTrue(allocated < 1024);
+        }
+        // Holgura amplia para máquinas de CI ruidosas: lo que importa es que no escale con las paradas
+        assertTrue(nanosPerLookup[2] < nanosPerLookup[0] * 5 + 200);
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TrackFilterTest {
+
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    // Añade ruido gaussiano del tamaño de la precisión declarada
+    private static List<LocationFix> noisy(GpsTrace trace, double sigmaMeters, long seed) {
+        Random random = new Random(seed);
+        List<LocationFix> fixes = new ArrayList<>();
+        for (LocationFix truth : trace.points) {
+            double lat = truth.latitude + random.nextGaussian() * sigmaMeters / METERS_PER_DEGREE;
+            double lon = truth.longitude + random.nextGaussian() * sigmaMeters
+                    / (METERS_PER_DEGREE * Math.cos(Math.toRadians(truth.latitude)));
+            fixes.add(new LocationFix(lat, lon, truth.time, truth.speed, 0f, (float) (sigmaMeters * 1.5)));
+        }
+        return fixes;
+    }
+
+    private static List<LocationFix> run(TrackFilter filter, List<LocationFix> input) {
+        List<LocationFix> emitted = new ArrayList<>();
+        LocationFix scratch = new LocationFix();
+        for (LocationFix fix : input) {
+            if (filter.process(scratch.copyFrom(fix))) {
+                emitted.add(new LocationFix().copyFrom(scratch));
+            }
+        }
+        return emitted;
+    }
+
+    // Error del recorrido que reconstruye un consumidor interpolando linealmente entre puntos emitidos
+    private static double[] reconstructionErrors(GpsTrace truth, List<LocationFix> emitted) {
+        double[] errors = new double[truth.size()];
+        int j = 0;
+        for (int i = 0; i < truth.size(); i++) {
+            LocationFix t = truth.get(i);
+            while (j + 1 < emitted.size() && emitted.get(j + 1).time <= t.time) {
+                j++;
+            }
+            LocationFix a = emitted.get(j);
+            LocationFix b = j + 1 < emitted.size() ? emitted.get(j + 1) : a;
+            double f = b.time > a.time ? Math.max(0, Math.min(1, (double) (t.time - a.time) / (b.time - a.time))) : 0;
+            errors[i] = LocationFix.distanceMeters(t.latitude, t.longitude,
+                    a.latitude + f * (b.latitude - a.latitude), a.longitude + f * (b.longitude - a.longitude));
+        }
+        Arrays.sort(errors);
+        return errors;
+    }
+
+    @Test
+    public void stationaryJitterCollapsesToFewPoints() {
+        GpsTrace parked = new GpsTrace();
+        for (int s = 0; s < 600; s++) {
+            parked.points.add(new LocationFix(-12.0464, -77.0428, s * 1000L, 0f, 0f, 5f));
+        }
+        List<LocationFix> emitted = run(new TrackFilter(), noisy(parked, 6, 1));
+        // Casi solo el primer punto y los latidos por inactividad (uno por minuto)
+        assertTrue("emitidas " + emitted.size(), emitted.size() <= 30);
+        for (LocationFix fix : emitted) {
+            assertTrue(LocationFix.distanceMeters(fix.latitude, fix.longitude, -12.0464, -77.0428) < 20);
+        }
+    }
+
+    @Test
+    public void rejectsOutliersAndInaccurateFixes() {
+        TrackFilter filter = new TrackFilter();
+        assertTrue(filter.process(new LocationFix(-12.0, -77.0, 0, 0f, 0f, 5f)));
+        // Salto de 1 km en un segundo
+        assertFalse(filter.process(new LocationFix(-11.991, -77.0, 1000, 0f, 0f, 5f)));
+        // Precisión declarada de 200 m
+        assertFalse(filter.process(new LocationFix(-12.0, -77.0, 2000, 0f, 0f, 200f)));
+        assertEquals(2, filter.getRejectedCount());
+
+        LocationFix next = new LocationFix(-12.00001, -77.0, 3000, 0f, 0f, 5f);
+        filter.process(next);
+        assertTrue(LocationFix.distanceMeters(next.latitude, next.longitude, -12.0, -77.0) < 5);
+    }
+
+    @Test
+    public void acceptsRepeatedJumpAsRealRelocation() {
+        TrackFilter filter = new TrackFilter();
+        filter.process(new LocationFix(-12.0, -77.0, 0, 0f, 0f, 5f));
+        boolean emitted = false;
+        for (int i = 1; i <= 7; i++) {
+            emitted |= filter.process(new LocationFix(-11.9, -77.0, i * 1000L, 0f, 0f, 5f));
+        }
+        assertTrue(emitted);
+    }
+
+    @Test
+    public void shiftIsSimplifiedWithoutHurtingMapQuality() {
+        GpsTrace truth = GpsTrace.syntheticShift(5);
+        List<LocationFix> input = noisy(truth, 4, 2);
+        List<LocationFix> emitted = run(new TrackFilter(), input);
+
+        double[] errors = reconstructionErrors(truth, emitted);
+        double p50 = errors[errors.length / 2];
+        double p95 = errors[errors.length * 95 / 100];
+        assertTrue(emitted.size() * 4 < input.size());
+        assertTrue(p50 < 10);
+        assertTrue(p95 < 30);
+    }
+
+    @Test
+    public void viewerCanDeadReckonBetweenEmittedFixes() {
+        GpsTrace truth = GpsTrace.syntheticShift(5);
+        List<LocationFix> emitted = run(new TrackFilter(), noisy(truth, 4, 2));
+
+        // Quien mira solo tiene el último punto recibido y lo extrapola con speed y bearing
+        double[] errors = new double[truth.size()];
+        int j = 0;
+        for (int i = 0; i < truth.size(); i++) {
+            LocationFix t = truth.get(i);
+            while (j + 1 < emitted.size() && emitted.get(j + 1).time <= t.time) {
+                j++;
+            }
+            LocationFix a = emitted.get(j);
+            double meters = a.speed * Math.max(0, t.time - a.time) / 1000.0;
+            double north = meters * Math.cos(Math.toRadians(a.bearing));
+            double east = meters * Math.sin(Math.toRadians(a.bearing));
+            double lat = a.latitude + north / METERS_PER_DEGREE;
+            double lon = a.longitude + east / (METERS_PER_DEGREE * Math.cos(Math.toRadians(a.latitude)));
+            errors[i] = LocationFix.distanceMeters(t.latitude, t.longitude, lat, lon);
+        }
+        Arrays.sort(errors);
+        assertTrue(errors[errors.length / 2] < 10);
+        assertTrue(errors[errors.length * 95 / 100] < 30);
+    }
+
+    @Test
+    public void processingDoesNotAllocate() {
+        List<LocationFix> input = noisy(GpsTrace.syntheticShift(9), 4, 3);
+        TrackFilter filter = new TrackFilter();
+        LocationFix scratch = new LocationFix();
+        // Calentamiento para que el JIT no cuente como asignación
+        for (LocationFix fix : input) {
+            filter.process(scratch.copyFrom(fix));
+        }
+
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+        long threadId = Thread.currentThread().getId();
+        TrackFilter measured = new TrackFilter();
+        long before = hotspot.getThreadAllocatedBytes(threadId);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < input.size(); i++) {
+                measured.process(scratch.copyFrom(input.get(i)));
+            }
+        }
+        long allocated = hotspot.getThreadAllocatedBytes(threadId) - before;
+        // Margen para el propio contador del MXBean
+        assertTrue("asignados " + allocated, allocated < 1024);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TrackingConfigTest {
+
+    @Test
+    public void vehicleOverridesFleet() {
+        TrackingConfig config = new TrackingConfig();
+        assertTrue(config.resolve().sameLimits(TrackingConfig.DEFAULTS));
+
+        // Así llegan los números desde la base de datos: Long o Double
+        config.put(TrackingConfig.Layer.FLEET, "version", 3L);
+        config.put(TrackingConfig.Layer.FLEET, "intervaloMinMs", 10000L);
+        config.put(TrackingConfig.Layer.FLEET, "ventanaMinMs", 30000.0);
+        config.put(TrackingConfig.Layer.FLEET, "prioridadMax", "balanced");
+        config.put(TrackingConfig.Layer.VEHICLE, "version", 1L);
+        config.put(TrackingConfig.Layer.VEHICLE, "intervaloMinMs", 5000L);
+        TrackingConfig.Values values = config.resolve();
+        assertEquals(3, values.fleetVersion);
+        assertEquals(1, values.vehicleVersion);
+        assertEquals(5000, values.minIntervalMs);
+        assertEquals(SamplingPolicy.Priority.BALANCED, values.maxPriority);
+        assertEquals(30000, values.limitWindowMs(UploadScheduler.REAL_TIME.windowMs));
+        assertEquals(UploadScheduler.BULK.windowMs, values.limitWindowMs(UploadScheduler.BULK.windowMs));
+
+        // Se borra la clave del vehículo: vuelve a valer la de la flota
+        config.put(TrackingConfig.Layer.VEHICLE, "intervaloMinMs", null);
+        assertEquals(10000, config.resolve().minIntervalMs);
+    }
+
+    @Test
+    public void invalidValuesAreIgnored() {
+        TrackingConfig config = new TrackingConfig();
+        config.put(TrackingConfig.Layer.FLEET, "intervaloMinMs", "diez");
+        config.put(TrackingConfig.Layer.FLEET, "ventanaMinMs", -5L);
+        config.put(TrackingConfig.Layer.FLEET, "loteMax", 0L);
+        config.put(TrackingConfig.Layer.FLEET, "prioridadMax", "MAXIMA");
+        config.put(TrackingConfig.Layer.FLEET, "otraCosa", true);
+        TrackingConfig.Values values = config.resolve();
+        assertTrue(values.sameLimits(TrackingConfig.DEFAULTS));
+        assertEquals(200, values.capBatchSize(200));
+
+        config.put(TrackingConfig.Layer.FLEET, "loteMax", 50L);
+        assertEquals(50, config.resolve().capBatchSize(200));
+        assertEquals(20, config.resolve().capBatchSize(20));
+    }
+
+    @Test
+    public void anyLayerCanDeactivate() {
+        TrackingConfig config = new TrackingConfig();
+        config.put(TrackingConfig.Layer.ACCOUNT, "activo", true);
+        assertTrue(config.resolve().active);
+
+        config.put(TrackingConfig.Layer.ACCOUNT, "activo", false);
+        TrackingConfig.Values off = config.resolve();
+        assertFalse(off.active);
+        assertFalse(off.sameLimits(TrackingConfig.DEFAULTS));
+
+        config.put(TrackingConfig.Layer.ACCOUNT, "activo", true);
+        config.put(TrackingConfig.Layer.FLEET, "activo", false);
+        assertFalse(config.resolve().active);
+
+        // Al soltar los nodos de una empresa no queda nada de ella
+        config.clear(TrackingConfig.Layer.FLEET);
+        assertTrue(config.resolve().active);
+    }
+
+    @Test
+    public void versionBumpWithoutChangesKeepsLimits() {
+        TrackingConfig config = new TrackingConfig();
+        config.put(TrackingConfig.Layer.FLEET, "intervaloMinMs", 10000L);
+        TrackingConfig.Values before = config.resolve();
+        config.put(TrackingConfig.Layer.FLEET, "version", 8L);
+        TrackingConfig.Values after = config.resolve();
+        // El servicio informa la versión nueva pero no vuelve a pedir ubicaciones
+        assertTrue(after.sameLimits(before));
+        assertEquals(8, after.fleetVersion);
+    }
+}
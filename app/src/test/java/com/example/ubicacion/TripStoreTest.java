@@ -0,0 +1,206 @@
+package com.example.ubicacion;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TripStoreTest {
+
+    private static final long SHIFT_START = 1700000000000L;
+    private static final int SHIFT_FIXES = 12 * 3600; // 12 h a 1 Hz
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("trips").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    // Recorrido a ~10 m/s con pequeñas variaciones, como un bus en ciudad
+    private static LocationFix fix(int i, LocationFix into) {
+        return into.set(-12.0 + i * 6e-5 + Math.sin(i / 30.0) * 1e-4, -77.0 - i * 4e-5,
+                SHIFT_START + 1000L * i, 8f + (i % 5), (i * 7) % 360, 4f + (i % 3));
+    }
+
+    @Test
+    public void fullShiftStaysSmallAndQueriesByTime() throws IOException {
+        LocationFix scratch = new LocationFix();
+        try (TripStore store = new TripStore(dir)) {
+            for (int i = 0; i < SHIFT_FIXES; i++) {
+                store.append(fix(i, scratch));
+            }
+            store.flush();
+            long bytes = store.getDiskBytes();
+            assertTrue("bytes en disco: " + bytes, bytes < 12L * SHIFT_FIXES);
+
+            // Una hora en mitad del turno
+            long from = SHIFT_START + 5 * 3600 * 1000L;
+            long to = from + 3600 * 1000L - 1;
+            List<LocationFix> out = new ArrayList<>();
+            int count = store.query(from, to, f -> out.add(new LocationFix().copyFrom(f)));
+            assertEquals(3600, count);
+            LocationFix expected = fix(5 * 3600, new LocationFix());
+            assertEquals(expected.time, out.get(0).time);
+            assertEquals(expected.latitude, out.get(0).latitude, 1e-6);
+            assertEquals(expected.longitude, out.get(0).longitude, 1e-6);
+            assertEquals(expected.speed, out.get(0).speed, 0.05);
+            for (int i = 1; i < out.size(); i++) {
+                assertEquals(out.get(i - 1).time + 1000, out.get(i).time);
+            }
+        }
+    }
+
+    @Test
+    public void appendingDoesNotAllocatePerFix() throws IOException {
+        LocationFix scratch = new LocationFix();
+        try (TripStore store = new TripStore(dir)) {
+            for (int i = 0; i < 3000; i++) {
+                store.append(fix(i, scratch));
+            }
+            long before = allocatedBytes();
+            for (int i = 3000; i < SHIFT_FIXES; i++) {
+                store.append(fix(i, scratch));
+            }
+            long allocated = allocatedBytes() - before;
+            // Solo reservas puntuales (crecer el índice, abrir un archivo), nunca por ubicación
+            assertTrue("asignados: " + allocated, allocated < 64 * 1024);
+        }
+    }
+
+    @Test
+    public void diskUseIsBoundedByRotation() throws IOException {
+        LocationFix scratch = new LocationFix();
+        int fileBytes = 16 * 1024;
+        try (TripStore store = new TripStore(dir, 100, fileBytes, 3)) {
+            for (int i = 0; i < SHIFT_FIXES; i++) {
+                store.append(fix(i, scratch));
+            }
+            assertTrue(store.getDiskBytes() <= 3L * fileBytes);
+            assertEquals(3, dir.listFiles().length);
+
+            // Lo más antiguo se descartó; lo reciente sigue disponible
+            long oldest = store.getOldestTime();
+            assertTrue(oldest > SHIFT_START);
+            assertEquals(0, store.query(SHIFT_START, oldest - 1, f -> true));
+            long lastHour = SHIFT_START + (SHIFT_FIXES - 3600) * 1000L;
+            assertEquals(3600, store.query(lastHour, Long.MAX_VALUE, f -> true));
+        }
+    }
+
+    @Test
+    public void reopensAndDropsTornSegment() throws IOException {
+        LocationFix scratch = new LocationFix();
+        TripStore store = new TripStore(dir, 100, TripStore.DEFAULT_FILE_BYTES, 4);
+        for (int i = 0; i < 1050; i++) {
+            store.append(fix(i, scratch));
+        }
+        // Sin close(): las 50 del bloque activo se pierden, como al matar el proceso
+        File file = dir.listFiles()[0];
+        long validLength = file.length();
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            // Cabecera de un segmento que nunca terminó de escribirse
+            raw.seek(validLength);
+            raw.writeInt(0x53454731);
+            raw.writeInt(100);
+            raw.write(new byte[40]);
+        }
+        // Un archivo con la cabecera rota se descarta entero
+        File garbage = new File(dir, "trip-99.seg");
+        Files.write(garbage.toPath(), new byte[]{1, 2, 3});
+
+        try (TripStore reopened = new TripStore(dir, 100, TripStore.DEFAULT_FILE_BYTES, 4)) {
+            assertFalse(garbage.exists());
+            assertEquals(validLength, file.length());
+            assertEquals(1000, reopened.query(0, Long.MAX_VALUE, f -> true));
+            reopened.append(fix(2000, scratch));
+            reopened.flush();
+            assertEquals(1001, reopened.query(0, Long.MAX_VALUE, f -> true));
+        }
+    }
+
+    @Test
+    public void sparseFixesReachDiskWithoutFlush() throws IOException {
+        // Tras el filtro llega más o menos una ubicación cada 20 s: el bloque de 300 no se llena
+        LocationFix scratch = new LocationFix();
+        TripStore store = new TripStore(dir);
+        int count = 100;
+        for (int i = 0; i < count; i++) {
+            store.append(fix(i * 20, scratch));
+        }
+        // Sin flush() ni close(), como al matar el proceso
+        try (TripStore reopened = new TripStore(dir)) {
+            int survived = reopened.query(0, Long.MAX_VALUE, f -> true);
+            assertTrue(survived > 0);
+            // Solo se pierde lo que cabe en la edad máxima de un bloque
+            int lost = count - survived;
+            assertTrue(lost * 20000L <= TripStore.DEFAULT_MAX_BLOCK_AGE_MS);
+        }
+    }
+
+    @Test
+    public void replayDownsamplesAndKeepsLastFix() throws IOException {
+        LocationFix scratch = new LocationFix();
+        try (TripStore store = new TripStore(dir)) {
+            for (int i = 0; i < 3605; i++) {
+                store.append(fix(i, scratch));
+            }
+            List<Long> times = new ArrayList<>();
+            int emitted = store.replay(SHIFT_START, Long.MAX_VALUE, 60000, f -> times.add(f.time));
+            // Una por minuto durante una hora, más la última real
+            assertEquals(62, emitted);
+            assertEquals(SHIFT_START, (long) times.get(0));
+            assertEquals(SHIFT_START + 60000, (long) times.get(1));
+            assertEquals(SHIFT_START + 3604 * 1000L, (long) times.get(times.size() - 1));
+        }
+    }
+
+    @Test
+    public void exportsGpx() throws IOException {
+        LocationFix scratch = new LocationFix();
+        try (TripStore store = new TripStore(dir)) {
+            for (int i = 0; i < 500; i++) {
+                store.append(fix(i, scratch));
+            }
+            StringWriter out = new StringWriter();
+            int count = store.exportGpx(SHIFT_START + 100000, SHIFT_START + 199000, "Ruta <5> & centro", out);
+            String gpx = out.toString();
+            assertEquals(100, count);
+            assertEquals(100, gpx.split("<trkpt ", -1).length - 1);
+            assertTrue(gpx.startsWith("<?xml"));
+            assertTrue(gpx.contains("<name>Ruta &lt;5&gt; &amp; centro</name>"));
+            assertTrue(gpx.contains("<time>2023-11-14T22:15:00.000Z</time>"));
+            assertTrue(gpx.trim().endsWith("</gpx>"));
+        }
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.ubicacion;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UploadSchedulerTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long BUDGET = 10L * 1024 * 1024;
+
+    @Test
+    public void watchedVehicleOnGoodNetworkIsRealTime() {
+        UploadScheduler scheduler = new UploadScheduler(BUDGET, 12 * HOUR, 0);
+        assertEquals(UploadScheduler.Mode.REAL_TIME, scheduler.evaluate(0).mode);
+
+        scheduler.setWatched(false);
+        assertEquals(UploadScheduler.Mode.NEAR_REAL_TIME, scheduler.evaluate(0).mode);
+
+        // Nadie mira y la red es 2G: lotes grandes
+        scheduler.setNetwork(UploadScheduler.Network.SLOW);
+        UploadScheduler.Plan plan = scheduler.evaluate(0);
+        assertEquals(UploadScheduler.Mode.BULK, plan.mode);
+        assertTrue(plan.windowMs > UploadScheduler.REAL_TIME.windowMs);
+        assertTrue(plan.maxBatchSize > UploadScheduler.REAL_TIME.maxBatchSize);
+    }
+
+    @Test
+    public void batteryAndDozeBackOffAndRecover() {
+        UploadScheduler scheduler = new UploadScheduler(BUDGET, 12 * HOUR, 0);
+        scheduler.setBattery(18, false);
+        assertEquals(UploadScheduler.Mode.NEAR_REAL_TIME, scheduler.evaluate(0).mode);
+        scheduler.setBattery(8, false);
+        assertEquals(UploadScheduler.Mode.BULK, scheduler.evaluate(0).mode);
+        // Enchufado la batería no cuenta
+        scheduler.setBattery(8, true);
+        assertEquals(UploadScheduler.Mode.REAL_TIME, scheduler.evaluate(0).mode);
+
+        scheduler.setDeviceIdle(true);
+        assertEquals(UploadScheduler.Mode.BULK, scheduler.evaluate(0).mode);
+        scheduler.setDeviceIdle(false);
+        scheduler.setNetwork(UploadScheduler.Network.NONE);
+        assertEquals(UploadScheduler.Mode.BULK, scheduler.evaluate(0).mode);
+        scheduler.setNetwork(UploadScheduler.Network.CELLULAR);
+        assertEquals(UploadScheduler.Mode.REAL_TIME, scheduler.evaluate(0).mode);
+    }
+
+    @Test
+    public void spendingAheadOfTheShiftPaceSlowsDown() {
+        UploadScheduler scheduler = new UploadScheduler(BUDGET, 12 * HOUR, 0);
+        // A la hora del turno ya se gastó la mitad del presupuesto
+        scheduler.setBytesSent(BUDGET / 2);
+        assertEquals(UploadScheduler.Mode.NEAR_REAL_TIME, scheduler.evaluate(HOUR).mode);
+        // En Wi-Fi no hay presupuesto que cuidar
+        scheduler.setNetwork(UploadScheduler.Network.UNMETERED);
+        assertEquals(UploadScheduler.Mode.REAL_TIME, scheduler.evaluate(HOUR).mode);
+        scheduler.setNetwork(UploadScheduler.Network.CELLULAR);
+        // A mitad de turno ese gasto ya va al ritmo
+        assertEquals(UploadScheduler.Mode.REAL_TIME, scheduler.evaluate(6 * HOUR).mode);
+
+        scheduler.setBytesSent(BUDGET);
+        assertEquals(UploadScheduler.Mode.BULK, scheduler.evaluate(11 * HOUR).mode);
+
+        // El turno siguiente empieza de cero aunque el contador del envío siga sumando
+        scheduler.startShift(12 * HOUR);
+        assertEquals(0, scheduler.getShiftBytes());
+        assertEquals(UploadScheduler.Mode.REAL_TIME, scheduler.evaluate(12 * HOUR).mode);
+    }
+
+    @Test
+    public void budgetStartsAgainWhenTheShiftWindowRollsOver() {
+        UploadScheduler scheduler = new UploadScheduler(BUDGET, 12 * HOUR, 0);
+        scheduler.setBytesSent(BUDGET);
+        assertEquals(UploadScheduler.Mode.BULK, scheduler.evaluate(11 * HOUR).mode);
+        // Nadie llama a startShift: basta con que se cumplan las 12 h
+        assertEquals(UploadScheduler.Mode.REAL_TIME, scheduler.evaluate(12 * HOUR + 5000).mode);
+        assertEquals(0, scheduler.getShiftBytes());
+
+        // La ventana nueva cuenta desde ahí
+        scheduler.setBytesSent(2 * BUDGET);
+        assertEquals(UploadScheduler.Mode.BULK, scheduler.evaluate(23 * HOUR).mode);
+        assertEquals(UploadScheduler.Mode.REAL_TIME, scheduler.evaluate(24 * HOUR + 5000).mode);
+    }
+
+    @Test
+    public void wifiTrafficDoesNotUseTheMobileBudget() {
+        UploadScheduler scheduler = new UploadScheduler(BUDGET, 12 * HOUR, 0);
+        scheduler.setBytesSent(BUDGET / 10);
+        // Lo que sale por Wi-Fi no se descuenta al volver a datos móviles
+        scheduler.setNetwork(UploadScheduler.Network.UNMETERED);
+        scheduler.setBytesSent(3 * BUDGET);
+        scheduler.setNetwork(UploadScheduler.Network.CELLULAR);
+        assertEquals(BUDGET / 10, scheduler.getShiftBytes());
+        assertEquals(UploadScheduler.Mode.REAL_TIME, scheduler.evaluate(6 * HOUR).mode);
+
+        scheduler.setBytesSent(3 * BUDGET + BUDGET / 10);
+        assertEquals(BUDGET / 5, scheduler.getShiftBytes());
+    }
+
+    @Test
+    public void piggybacksOnlyWithPendingDataAndAfterMinimumGap() {
+        long gap = UploadScheduler.NEAR_REAL_TIME.piggybackMinGapMs;
+        assertFalse(UploadScheduler.shouldPiggyback(gap, 10000, 0, false));
+        assertFalse(UploadScheduler.shouldPiggyback(gap, gap - 1, 0, true));
+        assertTrue(UploadScheduler.shouldPiggyback(gap, gap, 0, true));
+
+        // Con un mínimo remoto mayor, el piggyback tampoco lo adelanta
+        TrackingConfig.Values limits = new TrackingConfig.Values(0, 0, true, 0, null, gap * 4, 0);
+        long limited = limits.limitWindowMs(gap);
+        assertFalse(UploadScheduler.shouldPiggyback(limited, gap, 0, true));
+        assertTrue(UploadScheduler.shouldPiggyback(limited, gap * 4, 0, true));
+    }
+
+    @Test
+    public void simulatedShiftStaysWithinBudget() {
+        // Un turno de 12 h con una ubicación cada 2 s y alguien mirando todo el tiempo
+        LocationUplinkTest.FakeDatabase database = new LocationUplinkTest.FakeDatabase();
+        LocationUplink uplink = new LocationUplink(database, "bus1", "Bus 1");
+        uplink.setCompactTrail(true);
+        long budget = 2L * 1024 * 1024;
+        UploadScheduler scheduler = new UploadScheduler(budget, 12 * HOUR, 0);
+        UploadScheduler.Plan applied = null;
+        int realTimeMinutes = 0;
+        for (long now = 0; now < 12 * HOUR; now += 2000) {
+            scheduler.setBytesSent(uplink.getSentBytes());
+            UploadScheduler.Plan plan = scheduler.evaluate(now);
+            if (plan != applied) {
+                applied = plan;
+                uplink.setWindowMs(plan.windowMs);
+                uplink.setMaxBatchSize(plan.maxBatchSize);
+            }
+            if (plan.mode == UploadScheduler.Mode.REAL_TIME && now % 60000 == 0) {
+                realTimeMinutes++;
+            }
+            uplink.offer(new LocationFix(-12.0 + now * 1e-7, -77.0, now, 10f, 0f, 5f), now);
+            uplink.flushIfDue(now);
+        }
+        assertTrue(uplink.getSentBytes() <= budget + budget / 20);
+        // El presupuesto se reparte: no se agota en la primera hora
+        assertTrue(realTimeMinutes > 60);
+    }
+}
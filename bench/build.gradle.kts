@@ -0,0 +1,63 @@
+plugins {
+    java
+    application
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+// El pipeline de la app es Java puro: se compila aquí tal cual, sin nada de Android, para
+// medir exactamente el código que corre en LocationService. Si una de estas clases empieza
+// a usar Android este módulo deja de compilar, y eso también es un aviso.
+val trackingSources = listOf(
+    "EtaPredictor", "FixCodec", "FixJournal", "FixPipeline", "FixQueue", "FleetView", "LatencyHistogram",
+    "LocationFix", "LocationUplink", "Metrics", "MultiSourcePipeline", "NmeaParser", "NmeaSource",
+    "PresenceMonitor", "RouteGeometry", "RouteMatcher", "SamplingPolicy", "SegmentTravelTimes",
+    "Stop", "StopDetector", "StopEvent", "StopIndex", "TrackFilter", "UploadScheduler",
+    // Envío al relay, para probar la app contra el relay de punta a punta
+    "RelayUplinkSink"
+)
+
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include(trackingSources.map { "com/example/ubicacion/$it.java" })
+            include("com/example/ubicacion/bench/**")
+        }
+    }
+}
+
+application {
+    mainClass.set("com.example.ubicacion.bench.FleetSimulator")
+}
+
+dependencies {
+    // Json del relay para medir el cuerpo de cada escritura como lo vería la API REST
+    implementation(project(":relay"))
+    // Android trae org.json; en la JVM hace falta la biblioteca (la usa RelayUplinkSink)
+    implementation(libs.json)
+    testImplementation(libs.junit)
+}
+
+// ./gradlew :bench:jmh — microbenchmarks con el perfilador de GC (asignaciones por operación)
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
+
+// ./gradlew :bench:simulate -Pargs="50 12 7" — vehículos, horas de turno, semilla
+tasks.register<JavaExec>("simulate") {
+    group = "verification"
+    description = "Reproduce una flota sintética por el pipeline de la app contra una base de datos falsa."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("com.example.ubicacion.bench.FleetSimulator")
+    args = (project.findProperty("args") as String? ?: "").split(" ").filter { it.isNotBlank() }
+}
@@ -0,0 +1,65 @@
+package com.example.ubicacion.bench;
+
+import com.example.ubicacion.FixCodec;
+import com.example.ubicacion.LocationFix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Codificación de un lote con FixCodec + Base64, tal como va en recorridos/<uid>, y su lectura.
+// Los tamaños son los lotes de los tres planes del UploadScheduler.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+
+    @Param({"50", "200", "500"})
+    public int batchSize;
+
+    private LocationFix[] batch;
+    private FixCodec.Writer writer;
+    private byte[] encoded;
+    private final LocationFix decoded = new LocationFix();
+
+    @Setup
+    public void setUp() {
+        FleetTrace trace = FleetTrace.generate(11, batchSize * 3);
+        batch = new LocationFix[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            // Una ubicación cada 3 s, como en marcha
+            batch[i] = trace.get(i * 3, FleetSimulator.START_MS, new LocationFix());
+        }
+        writer = new FixCodec.Writer(batchSize * 12);
+        for (LocationFix fix : batch) {
+            writer.add(fix);
+        }
+        encoded = writer.toByteArray();
+    }
+
+    @Benchmark
+    public String encode() {
+        writer.reset();
+        for (LocationFix fix : batch) {
+            writer.add(fix);
+        }
+        return FixCodec.toBase64(writer.buffer(), writer.size());
+    }
+
+    @Benchmark
+    public long decode() {
+        FixCodec.Reader reader = new FixCodec.Reader(encoded, 0, encoded.length);
+        long sum = 0;
+        while (reader.next(decoded)) {
+            sum += decoded.time;
+        }
+        return sum;
+    }
+}
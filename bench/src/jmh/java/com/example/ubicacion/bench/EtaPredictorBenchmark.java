@@ -0,0 +1,74 @@
+package com.example.ubicacion.bench;
+
+import com.example.ubicacion.EtaPredictor;
+import com.example.ubicacion.RouteGeometry;
+import com.example.ubicacion.SegmentTravelTimes;
+import com.example.ubicacion.Stop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+// Actualización de las llegadas estimadas con cada ubicación, aprendiendo en cada cruce de
+// tramo, según el largo del trazado: de 20 km a 2 000 km el coste solo debe crecer
+// con el logaritmo del número de tramos.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EtaPredictorBenchmark {
+
+    private static final double SPACING_METERS = 10;
+    // Lunes 2024-01-01 a mediodía, UTC
+    private static final long START_MS = 1704110400000L;
+
+    @Param({"20000", "2000000"})
+    public double lengthMeters;
+
+    private EtaPredictor predictor;
+    private double length;
+    private long timeMs = START_MS;
+    private double along;
+
+    @Setup
+    public void setUp() {
+        int vertices = (int) (lengthMeters / SPACING_METERS) + 1;
+        double[] lat = new double[vertices];
+        double[] lon = new double[vertices];
+        lat[0] = -12.05;
+        lon[0] = -77.04;
+        for (int i = 1; i < vertices; i++) {
+            double heading = 0.6 + 0.5 * Math.sin(i / 150.0);
+            lat[i] = lat[i - 1] + Math.cos(heading) * SPACING_METERS / 110574.0;
+            lon[i] = lon[i - 1] + Math.sin(heading) * SPACING_METERS / (111320.0 * Math.cos(Math.toRadians(lat[i - 1])));
+        }
+        RouteGeometry route = new RouteGeometry(lat, lon);
+        List<Stop> stops = new ArrayList<>();
+        for (int v = 50; v < vertices; v += 50) {
+            stops.add(new Stop("p" + v, "Parada", lat[v], lon[v], 30));
+        }
+        length = route.getLengthMeters();
+        predictor = new EtaPredictor(route, stops,
+                new SegmentTravelTimes(length, SegmentTravelTimes.DEFAULT_BIN_METERS), TimeZone.getTimeZone("UTC"));
+    }
+
+    @Benchmark
+    public boolean update() {
+        // 9 m/s, una ubicación por segundo; al final del trazado vuelve al principio
+        timeMs += 1000;
+        along += 9;
+        if (along >= length) {
+            along = 0;
+        }
+        return predictor.update(timeMs, along, false);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.ubicacion.bench;
+
+import com.example.ubicacion.FixJournal;
+import com.example.ubicacion.LocationFix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Escritura en el diario de ubicaciones pendientes, que LocationService hace con cada
+// ubicación antes de enviarla, y la relectura del diario lleno al arrancar el servicio.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FixJournalBenchmark {
+
+    private static final int CAPACITY = 20000;
+
+    private File dir;
+    private FixJournal journal;
+    private final LocationFix fix = new LocationFix().set(-12.05, -77.04, 0, 8f, 90f, 10f);
+    private final List<LocationFix> replay = new ArrayList<>(CAPACITY);
+    private long time;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("journal-bench").toFile();
+        journal = new FixJournal(FixJournal.fileFor(dir, "bench"), CAPACITY);
+        for (int i = 0; i < CAPACITY; i++) {
+            fix.time = ++time;
+            journal.append(fix);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public long append() {
+        // El diario lleno descarta lo más viejo, como un turno largo sin conexión
+        fix.time = ++time;
+        return journal.append(fix);
+    }
+
+    @Benchmark
+    public int replay() {
+        replay.clear();
+        journal.read(CAPACITY, replay);
+        return replay.size();
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.ubicacion.bench;
+
+import com.example.ubicacion.FleetView;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Un cuadro de la vista del despachador: cada vehículo publica posición, hora y avance dos
+// veces y FleetView lo junta en un solo cambio por fila. Tiene que quedar muy por debajo
+// de los 16 ms de un cuadro y, con -prof gc, sin asignaciones.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FleetViewBenchmark {
+
+    @Param({"100", "500"})
+    public int fleet;
+
+    private final FleetView view = new FleetView();
+    private String[] uids;
+    private final Double[] values = new Double[16];
+    private final Long stamp = 1L;
+    private int changed;
+    private int frame;
+
+    private final FleetView.Changes changes = new FleetView.Changes() {
+        @Override
+        public void onInserted(int position) {
+        }
+
+        @Override
+        public void onRemoved(int position) {
+        }
+
+        @Override
+        public void onChanged(int position) {
+            changed++;
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        uids = new String[fleet];
+        for (int i = 0; i < fleet; i++) {
+            uids[i] = "uid" + i;
+            view.putVehicle(uids[i], "Unidad " + i);
+        }
+        view.flush(changes);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 0.001;
+        }
+    }
+
+    @Benchmark
+    public int frame() {
+        changed = 0;
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < fleet; i++) {
+                Double value = values[(frame + i + round) & 15];
+                view.putField(uids[i], "latitude", value);
+                view.putField(uids[i], "longitude", value);
+                view.putField(uids[i], "timestamp", stamp);
+                view.putField(uids[i], "progreso", value);
+            }
+        }
+        view.flush(changes);
+        frame++;
+        return changed;
+    }
+}
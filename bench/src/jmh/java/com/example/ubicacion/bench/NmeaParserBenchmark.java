@@ -0,0 +1,43 @@
+package com.example.ubicacion.bench;
+
+import com.example.ubicacion.LocationFix;
+import com.example.ubicacion.NmeaParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Un par GGA + RMC de un receptor externo: lo que cuesta cada ubicación de una fuente NMEA
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NmeaParserBenchmark {
+
+    private static final String GGA = "$GPGGA,123519.00,1203.5000,S,07702.2500,W,1,08,1.6,150.0,M,10.0,M,,*";
+    private static final String RMC = "$GNRMC,123519.50,A,1203.5000,S,07702.2500,W,10.0,84.4,230324,,,A*";
+
+    private final NmeaParser parser = new NmeaParser();
+    private final LocationFix fix = new LocationFix();
+    private final String gga = withChecksum(GGA);
+    private final String rmc = withChecksum(RMC);
+
+    @Benchmark
+    public LocationFix parsePair() {
+        parser.parse(gga, fix);
+        parser.parse(rmc, fix);
+        return fix;
+    }
+
+    private static String withChecksum(String sentence) {
+        int sum = 0;
+        for (int i = 1; i < sentence.length() - 1; i++) {
+            sum ^= sentence.charAt(i);
+        }
+        return sentence + String.format("%02X", sum);
+    }
+}
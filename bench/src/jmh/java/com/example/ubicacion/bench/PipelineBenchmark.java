@@ -0,0 +1,45 @@
+package com.example.ubicacion.bench;
+
+import com.example.ubicacion.LocationFix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Una ubicación por el pipeline de LocationService (muestreo, paradas, ruta, ETA, filtro y
+// envío por lotes compactos; ver SimulatedVehicle) contra un destino que confirma al instante. Con -prof gc
+// (activado en build.gradle.kts) da también los bytes reservados por ubicación.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PipelineBenchmark {
+
+    private FleetTrace trace;
+    private SimulatedVehicle vehicle;
+    private final LocationFix fix = new LocationFix();
+    private int second;
+    private long startMs = FleetSimulator.START_MS;
+
+    @Setup
+    public void setUp() {
+        trace = FleetTrace.generate(7, 6 * 3600);
+        vehicle = new SimulatedVehicle("bench", trace, (updates, callback) -> callback.onComplete(true), startMs);
+    }
+
+    @Benchmark
+    public long processFix() {
+        if (second == trace.size()) {
+            // Al dar la vuelta el recorrido sigue una hora después, como un turno nuevo
+            second = 0;
+            startMs += trace.size() * 1000L + 3600 * 1000L;
+        }
+        trace.get(second++, startMs, fix);
+        return vehicle.process(fix);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.ubicacion.bench;
+
+import com.example.ubicacion.LocationFix;
+import com.example.ubicacion.RouteGeometry;
+import com.example.ubicacion.RouteMatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Ajuste de una ubicación al trazado según su número de vértices: el coste debe ser el mismo
+// con 1 000 que con 100 000. "jump" mide el peor caso, una ubicación lejos del último
+// ajuste que obliga a consultar la rejilla.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RouteMatcherBenchmark {
+
+    private static final double SPACING_METERS = 10;
+    private static final int TRACE_SIZE = 4096;
+
+    @Param({"1000", "10000", "100000"})
+    public int vertices;
+
+    private final RouteMatcher matcher = new RouteMatcher();
+    private final RouteMatcher jumpMatcher = new RouteMatcher();
+    private LocationFix[] trace;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        double[] lat = new double[vertices];
+        double[] lon = new double[vertices];
+        lat[0] = -12.05;
+        lon[0] = -77.04;
+        for (int i = 1; i < vertices; i++) {
+            double heading = 0.6 + 0.5 * Math.sin(i / 150.0);
+            lat[i] = lat[i - 1] + Math.cos(heading) * SPACING_METERS / 110574.0;
+            lon[i] = lon[i - 1] + Math.sin(heading) * SPACING_METERS / (111320.0 * Math.cos(Math.toRadians(lat[i - 1])));
+        }
+        RouteGeometry route = new RouteGeometry(lat, lon);
+        matcher.setRoute(route);
+        jumpMatcher.setRoute(route);
+
+        // Un vértice por segundo (10 m/s) con ruido de GPS; en trazados cortos da la vuelta
+        Random random = new Random(1);
+        trace = new LocationFix[TRACE_SIZE];
+        for (int i = 0; i < TRACE_SIZE; i++) {
+            int v = i % (vertices - 1);
+            trace[i] = new LocationFix().set(lat[v] + random.nextGaussian() * 4 / 110574.0,
+                    lon[v] + random.nextGaussian() * 4 / 111320.0, i * 1000L, 10f, 0f, 8f);
+        }
+    }
+
+    @Benchmark
+    public double follow() {
+        matcher.process(trace[next]);
+        next = (next + 1) & (TRACE_SIZE - 1);
+        return matcher.getDistanceAlongMeters();
+    }
+
+    @Benchmark
+    public double jump() {
+        // Cada ubicación cae a mitad de la traza respecto de la anterior: siempre fuera de la ventana
+        jumpMatcher.process(trace[next]);
+        next = (next + TRACE_SIZE / 2 + 1) & (TRACE_SIZE - 1);
+        return jumpMatcher.getDistanceAlongMeters();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.ubicacion.bench;
+
+import com.example.ubicacion.Stop;
+import com.example.ubicacion.StopIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Búsqueda de la parada más cercana según el número de paradas de la ruta: con la rejilla
+// el coste debe ser el mismo con 50 que con 2 000.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StopIndexBenchmark {
+
+    private static final int LOOKUPS = 4096;
+
+    @Param({"50", "500", "2000"})
+    public int stops;
+
+    private StopIndex index;
+    private final StopIndex.Match match = new StopIndex.Match();
+    private double[] lat;
+    private double[] lon;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // Una parada cada 300 m, en zigzag de veinte en veinte
+        Random random = new Random(7);
+        List<Stop> list = new ArrayList<>();
+        double stopLat = 4.60;
+        double stopLon = -74.10;
+        for (int i = 0; i < stops; i++) {
+            double heading = Math.toRadians((i / 20) % 2 == 0 ? 20 : 160) + (random.nextDouble() - 0.5) * 0.6;
+            stopLat += Math.cos(heading) * 300 / 110574.0;
+            stopLon += Math.sin(heading) * 300 / 111320.0;
+            list.add(new Stop("p" + i, "Parada " + i, stopLat, stopLon, 30 + random.nextInt(30)));
+        }
+        index = new StopIndex(list);
+
+        // Ubicaciones a menos de 250 m de una parada cualquiera
+        lat = new double[LOOKUPS];
+        lon = new double[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            Stop near = list.get(random.nextInt(list.size()));
+            lat[i] = near.latitude + (random.nextDouble() - 0.5) * 0.004;
+            lon[i] = near.longitude + (random.nextDouble() - 0.5) * 0.004;
+        }
+    }
+
+    @Benchmark
+    public int query() {
+        index.query(lat[next], lon[next], match);
+        next = (next + 1) & (LOOKUPS - 1);
+        return match.inside;
+    }
+}
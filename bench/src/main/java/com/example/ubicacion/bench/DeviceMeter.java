@@ -0,0 +1,59 @@
+package com.example.ubicacion.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+// Tiempo y memoria reservada solo en el código del dispositivo (pipeline, filtro, envío),
+// sin contar la base de datos falsa ni el propio simulador. Las mediciones pueden anidarse:
+// una confirmación que dispara otro envío se cuenta una sola vez.
+final class DeviceMeter {
+
+    private final com.sun.management.ThreadMXBean allocations;
+    private final long threadId = Thread.currentThread().getId();
+    private int depth;
+    private long startNanos;
+    private long startBytes;
+    private long nanos;
+    private long bytes;
+
+    DeviceMeter() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean hotspot = null;
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            hotspot = (com.sun.management.ThreadMXBean) bean;
+            if (!hotspot.isThreadAllocatedMemorySupported()) {
+                hotspot = null;
+            } else {
+                hotspot.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+        allocations = hotspot;
+    }
+
+    void start() {
+        if (depth++ == 0) {
+            startBytes = allocated();
+            startNanos = System.nanoTime();
+        }
+    }
+
+    void stop() {
+        if (--depth == 0) {
+            nanos += System.nanoTime() - startNanos;
+            bytes += allocated() - startBytes;
+        }
+    }
+
+    long getNanos() {
+        return nanos;
+    }
+
+    // -1 si la JVM no sabe medir las reservas por hilo
+    long getAllocatedBytes() {
+        return allocations != null ? bytes : -1;
+    }
+
+    private long allocated() {
+        return allocations != null ? allocations.getThreadAllocatedBytes(threadId) : 0;
+    }
+}
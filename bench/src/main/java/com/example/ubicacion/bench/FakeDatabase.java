@@ -0,0 +1,126 @@
+package com.example.ubicacion.bench;
+
+import com.example.ubicacion.FixCodec;
+import com.example.ubicacion.LatencyHistogram;
+import com.example.ubicacion.LocationFix;
+import com.example.ubicacion.LocationUplink;
+import com.example.ubicacion.relay.Json;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+// Sustituto en memoria de DatabaseReference.updateChildren: aplica cada escritura multi-ruta
+// sobre un mapa plano y la confirma tras una latencia de red simulada. Mide el tamaño del
+// cuerpo JSON que viajaría (el mismo formato que PATCH /.json de la API REST) y, al
+// confirmar, la latencia de extremo a extremo de cada ubicación: desde su hora hasta que
+// queda escrita.
+public class FakeDatabase implements LocationUplink.Sink {
+
+    private static final class Write {
+        final Map<String, Object> updates;
+        final LocationUplink.Callback callback;
+        final long dueMs;
+        final long sequence;
+
+        Write(Map<String, Object> updates, LocationUplink.Callback callback, long dueMs, long sequence) {
+            this.updates = updates;
+            this.callback = callback;
+            this.dueMs = dueMs;
+            this.sequence = sequence;
+        }
+    }
+
+    private final Map<String, Object> values = new HashMap<>();
+    // Por hora de confirmación y, a igual hora, por orden de llegada: el resultado no depende del azar
+    private final PriorityQueue<Write> inFlight = new PriorityQueue<>(64, (a, b) -> a.dueMs != b.dueMs
+            ? Long.compare(a.dueMs, b.dueMs) : Long.compare(a.sequence, b.sequence));
+    private final LatencyHistogram endToEnd = new LatencyHistogram("end_to_end_ms");
+    private final LocationFix decoded = new LocationFix();
+    private final Random random;
+    private final long latencyMs;
+    private final long jitterMs;
+    private final StringBuilder json = new StringBuilder(4096);
+    private DeviceMeter meter;
+    private long nowMs;
+    private long writes;
+    private long wireBytes;
+
+    public FakeDatabase(long latencyMs, long jitterMs, long seed) {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.random = new Random(seed);
+    }
+
+    // La confirmación corre código del dispositivo (y a veces el siguiente envío): se mide aparte
+    void setDeviceMeter(DeviceMeter meter) {
+        this.meter = meter;
+    }
+
+    // Hora simulada con la que se programan las confirmaciones
+    public void setNow(long nowMs) {
+        this.nowMs = nowMs;
+    }
+
+    @Override
+    public void write(Map<String, Object> updates, LocationUplink.Callback callback) {
+        writes++;
+        long jitter = jitterMs > 0 ? (long) (random.nextDouble() * jitterMs) : 0;
+        inFlight.add(new Write(updates, callback, nowMs + latencyMs + jitter, writes));
+    }
+
+    // Aplica y confirma las escrituras cuya latencia ya pasó. Devuelve cuántas.
+    // El JSON se arma aquí y no en write() para no cargarle su coste al dispositivo
+    public int deliver(long nowMs) {
+        int delivered = 0;
+        while (!inFlight.isEmpty() && inFlight.peek().dueMs <= nowMs) {
+            Write write = inFlight.poll();
+            json.setLength(0);
+            Json.write(write.updates, json);
+            wireBytes += LocationUplink.REQUEST_OVERHEAD_BYTES + json.toString().getBytes(StandardCharsets.UTF_8).length;
+            values.putAll(write.updates);
+            // La confirmación llega a su hora aunque se procese más tarde
+            recordLatency(write.updates, write.dueMs);
+            if (meter != null) {
+                meter.start();
+            }
+            write.callback.onComplete(true);
+            if (meter != null) {
+                meter.stop();
+            }
+            delivered++;
+        }
+        return delivered;
+    }
+
+    private void recordLatency(Map<String, Object> updates, long nowMs) {
+        for (Map.Entry<String, Object> entry : updates.entrySet()) {
+            if (!entry.getKey().startsWith("recorridos/") || !(entry.getValue() instanceof String)) {
+                continue;
+            }
+            byte[] data = FixCodec.fromBase64((String) entry.getValue());
+            FixCodec.Reader reader = new FixCodec.Reader(data, 0, data.length);
+            while (reader.next(decoded)) {
+                endToEnd.record(nowMs - decoded.time);
+            }
+        }
+    }
+
+    public Object get(String path) {
+        return values.get(path);
+    }
+
+    public long getWrites() {
+        return writes;
+    }
+
+    public long getWireBytes() {
+        return wireBytes;
+    }
+
+    public LatencyHistogram getEndToEnd() {
+        return endToEnd;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.ubicacion.bench;
+
+import com.example.ubicacion.LatencyHistogram;
+
+import java.util.Locale;
+
+// Simulador determinista de una flota: cada vehículo reproduce su recorrido sintético con
+// las mismas etapas que LocationService (muestreo, paradas, filtro, envío por lotes con
+// FixCodec) contra una FakeDatabase con latencia simulada. El reloj es simulado, así que
+// con la misma semilla las escrituras y los bytes salen idénticos en cualquier máquina;
+// solo el tiempo de proceso y las reservas de memoria dependen del equipo.
+public class FleetSimulator {
+
+    public static final long DEFAULT_LATENCY_MS = 150;
+    public static final long DEFAULT_JITTER_MS = 350;
+    // Hora de inicio fija para que los lotes codificados no dependan del día
+    static final long START_MS = 1700000000000L;
+
+    public static final class Report {
+        public int vehicles;
+        public long simulatedSeconds;
+        public long fixesIn;
+        public long fixesUploaded;
+        public long stopEvents;
+        public long writes;
+        public long wireBytes;
+        public long deviceNanos;
+        public long allocatedBytes;
+        public long wallNanos;
+        public long p50Ms;
+        public long p95Ms;
+        public long p99Ms;
+        public long maxMs;
+
+        public double fixesPerSecond() {
+            return deviceNanos > 0 ? fixesIn * 1e9 / deviceNanos : 0;
+        }
+
+        public double bytesPerFix() {
+            return fixesIn > 0 ? (double) wireBytes / fixesIn : 0;
+        }
+
+        // -1 si la JVM no mide reservas por hilo
+        public double allocatedBytesPerFix() {
+            return allocatedBytes >= 0 && fixesIn > 0 ? (double) allocatedBytes / fixesIn : -1;
+        }
+
+        public double allocationMbPerSecond() {
+            return allocatedBytes >= 0 && deviceNanos > 0 ? allocatedBytes * 1e9 / deviceNanos / (1 << 20) : -1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d vehículos, %.1f h simuladas en %.1f s%n"
+                            + "  ubicaciones: %d recibidas, %d enviadas, %d eventos de parada%n"
+                            + "  red: %d escrituras, %.1f KB (%.1f B por ubicación)%n"
+                            + "  proceso: %.0f ubicaciones/s, %.0f B reservados por ubicación (%.1f MB/s)%n"
+                            + "  extremo a extremo: p50 %d ms, p95 %d ms, p99 %d ms, máx %d ms",
+                    vehicles, simulatedSeconds / 3600.0, wallNanos / 1e9,
+                    fixesIn, fixesUploaded, stopEvents,
+                    writes, wireBytes / 1024.0, bytesPerFix(),
+                    fixesPerSecond(), allocatedBytesPerFix(), allocationMbPerSecond(),
+                    p50Ms, p95Ms, p99Ms, maxMs);
+        }
+    }
+
+    public static Report run(int vehicleCount, double hours, long seed) {
+        return run(vehicleCount, hours, seed, DEFAULT_LATENCY_MS, DEFAULT_JITTER_MS);
+    }
+
+    public static Report run(int vehicleCount, double hours, long seed, long latencyMs, long jitterMs) {
+        long wallStart = System.nanoTime();
+        int seconds = (int) (hours * 3600);
+        FakeDatabase database = new FakeDatabase(latencyMs, jitterMs, seed);
+        DeviceMeter meter = new DeviceMeter();
+        database.setDeviceMeter(meter);
+        SimulatedVehicle[] vehicles = new SimulatedVehicle[vehicleCount];
+        for (int i = 0; i < vehicleCount; i++) {
+            vehicles[i] = new SimulatedVehicle(String.format(Locale.US, "v%03d", i), FleetTrace.generate(seed * 1000 + i, seconds),
+                    database, START_MS);
+        }
+
+        Report report = new Report();
+        report.vehicles = vehicleCount;
+        report.simulatedSeconds = seconds;
+        for (int t = 0; t < seconds; t++) {
+            long now = START_MS + t * 1000L;
+            database.setNow(now);
+            for (SimulatedVehicle vehicle : vehicles) {
+                if (now >= vehicle.nextFixMs && t < vehicle.trace.size()) {
+                    // El proveedor entrega una ubicación cuando vence el intervalo pedido
+                    vehicle.trace.get(t, START_MS, vehicle.fix);
+                    meter.start();
+                    long interval = vehicle.process(vehicle.fix);
+                    meter.stop();
+                    vehicle.nextFixMs = now + interval;
+                    report.fixesIn++;
+                }
+                meter.start();
+                vehicle.uplink.flushIfDue(now);
+                meter.stop();
+            }
+            database.deliver(now);
+        }
+        // Fin del turno: lo pendiente se envía como en onDestroy
+        long end = START_MS + seconds * 1000L;
+        database.setNow(end);
+        for (SimulatedVehicle vehicle : vehicles) {
+            meter.start();
+            vehicle.uplink.flush(end);
+            meter.stop();
+        }
+        database.deliver(Long.MAX_VALUE);
+
+        for (SimulatedVehicle vehicle : vehicles) {
+            report.fixesUploaded += vehicle.uploaded;
+            report.stopEvents += vehicle.events;
+        }
+        report.writes = database.getWrites();
+        report.wireBytes = database.getWireBytes();
+        report.deviceNanos = meter.getNanos();
+        report.allocatedBytes = meter.getAllocatedBytes();
+        LatencyHistogram endToEnd = database.getEndToEnd();
+        report.p50Ms = endToEnd.getPercentile(50);
+        report.p95Ms = endToEnd.getPercentile(95);
+        report.p99Ms = endToEnd.getPercentile(99);
+        report.maxMs = endToEnd.getMax();
+        report.wallNanos = System.nanoTime() - wallStart;
+        return report;
+    }
+
+    // Argumentos: vehículos, horas, semilla
+    public static void main(String[] args) {
+        int vehicles = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        double hours = args.length > 1 ? Double.parseDouble(args[1]) : 12;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 7;
+        // Una pasada corta antes para que el JIT no cuente en el resultado
+        run(Math.min(vehicles, 10), 0.5, seed + 1);
+        System.out.println(run(vehicles, hours, seed));
+    }
+}
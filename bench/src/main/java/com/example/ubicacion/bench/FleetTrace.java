@@ -0,0 +1,114 @@
+package com.example.ubicacion.bench;
+
+import com.example.ubicacion.LocationFix;
+import com.example.ubicacion.RouteGeometry;
+import com.example.ubicacion.Stop;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Recorrido sintético a 1 Hz de un bus urbano: espera en la terminal, tramos entre paradas
+// con ruido de GPS y algún salto aislado, y vuelta a empezar. Misma semilla, mismo recorrido.
+// Se guarda en arreglos de primitivos: 50 vehículos × 12 h son dos millones de puntos.
+public final class FleetTrace {
+
+    private static final double METERS_PER_DEGREE = 111320;
+
+    private final double[] latitude;
+    private final double[] longitude;
+    private final float[] speed;
+    private final float[] accuracy;
+    private final List<Stop> stops = new ArrayList<>();
+    private double startLatitude;
+    private double startLongitude;
+    private int size;
+
+    private FleetTrace(int capacity) {
+        latitude = new double[capacity];
+        longitude = new double[capacity];
+        speed = new float[capacity];
+        accuracy = new float[capacity];
+    }
+
+    public static FleetTrace generate(long seed, int seconds) {
+        FleetTrace trace = new FleetTrace(seconds);
+        Random random = new Random(seed);
+        // Cada vehículo empieza en un punto distinto de un área de unos 20 km
+        double lat = -12.05 + (random.nextDouble() - 0.5) * 0.2;
+        double lon = -77.04 + (random.nextDouble() - 0.5) * 0.2;
+        double bearing = random.nextDouble() * 2 * Math.PI;
+        int stopIndex = 0;
+        trace.startLatitude = lat;
+        trace.startLongitude = lon;
+
+        trace.dwell(lat, lon, 5 * 60 + random.nextInt(10 * 60), random);
+        while (trace.size < seconds) {
+            // Tramo hasta la próxima parada: 300-900 m a 6-12 m/s con ruido de velocidad
+            bearing += (random.nextDouble() - 0.5) * 0.8;
+            double cruise = 6 + random.nextDouble() * 6;
+            double meters = 300 + random.nextDouble() * 600;
+            while (meters > 0 && trace.size < seconds) {
+                double v = Math.max(0, cruise + random.nextGaussian());
+                lat += v * Math.cos(bearing) / METERS_PER_DEGREE;
+                lon += v * Math.sin(bearing) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(lat)));
+                meters -= v;
+                trace.add(lat, lon, (float) v, random);
+            }
+            trace.stops.add(new Stop("p" + stopIndex, "Parada " + stopIndex, lat, lon, 0));
+            stopIndex++;
+            trace.dwell(lat, lon, 15 + random.nextInt(45), random);
+        }
+        return trace;
+    }
+
+    private void dwell(double lat, double lon, int seconds, Random random) {
+        for (int s = 0; s < seconds && size < latitude.length; s++) {
+            add(lat, lon, 0f, random);
+        }
+    }
+
+    private void add(double lat, double lon, float v, Random random) {
+        double noise = 3 + random.nextDouble() * 4;
+        // Uno de cada 500 puntos es un salto de varios cientos de metros (multitrayecto)
+        if (random.nextInt(500) == 0) {
+            noise = 300;
+        }
+        double angle = random.nextDouble() * 2 * Math.PI;
+        latitude[size] = lat + noise * Math.cos(angle) / METERS_PER_DEGREE;
+        longitude[size] = lon + noise * Math.sin(angle) / METERS_PER_DEGREE;
+        speed[size] = v;
+        accuracy[size] = (float) (4 + random.nextDouble() * 8);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Punto del segundo "second", con la hora desplazada a startMs
+    public LocationFix get(int second, long startMs, LocationFix into) {
+        return into.set(latitude[second], longitude[second], startMs + second * 1000L, speed[second], 0f, accuracy[second]);
+    }
+
+    public List<Stop> getStops() {
+        return stops;
+    }
+
+    // Cada tramo va en línea recta hasta su parada: el trazado une el inicio con las paradas.
+    // null si el recorrido es tan corto que no llegó a ninguna.
+    public RouteGeometry getRoute() {
+        if (stops.isEmpty()) {
+            return null;
+        }
+        double[] latitudes = new double[stops.size() + 1];
+        double[] longitudes = new double[stops.size() + 1];
+        latitudes[0] = startLatitude;
+        longitudes[0] = startLongitude;
+        for (int i = 0; i < stops.size(); i++) {
+            latitudes[i + 1] = stops.get(i).latitude;
+            longitudes[i + 1] = stops.get(i).longitude;
+        }
+        return new RouteGeometry(latitudes, longitudes);
+    }
+}
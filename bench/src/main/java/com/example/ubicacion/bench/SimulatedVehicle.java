@@ -0,0 +1,108 @@
+package com.example.ubicacion.bench;
+
+import com.example.ubicacion.EtaPredictor;
+import com.example.ubicacion.FixPipeline;
+import com.example.ubicacion.LocationFix;
+import com.example.ubicacion.LocationUplink;
+import com.example.ubicacion.RouteGeometry;
+import com.example.ubicacion.RouteMatcher;
+import com.example.ubicacion.SamplingPolicy;
+import com.example.ubicacion.SegmentTravelTimes;
+import com.example.ubicacion.StopDetector;
+import com.example.ubicacion.StopIndex;
+import com.example.ubicacion.TrackFilter;
+import com.example.ubicacion.UploadScheduler;
+
+import java.util.TimeZone;
+
+// Un vehículo con las etapas de LocationService en el mismo orden: muestreo, paradas, avance
+// sobre la ruta, ETA, filtro y envío por lotes compactos con el plan del UploadScheduler.
+// Falta solo "trip", el historial local en disco, que no cambia nada de lo que se envía.
+// El pipeline corre en el hilo del llamador para que la simulación sea determinista.
+final class SimulatedVehicle {
+
+    final FleetTrace trace;
+    final SamplingPolicy policy = new SamplingPolicy();
+    final TrackFilter filter = new TrackFilter();
+    final RouteMatcher route = new RouteMatcher();
+    final EtaPredictor eta;
+    final StopDetector stops;
+    final LocationUplink uplink;
+    final UploadScheduler scheduler;
+    final FixPipeline pipeline;
+    final LocationFix fix = new LocationFix();
+    private UploadScheduler.Plan plan;
+    long nextFixMs;
+    long uploaded;
+    long events;
+
+    SimulatedVehicle(String uid, FleetTrace trace, LocationUplink.Sink sink, long startMs) {
+        this.trace = trace;
+        uplink = new LocationUplink(sink, uid, "Bus " + uid);
+        uplink.setCompactTrail(true);
+        scheduler = new UploadScheduler(Long.MAX_VALUE, 12 * 3600 * 1000L, startMs);
+        stops = new StopDetector(event -> {
+            events++;
+            uplink.offerEvent(event, event.time);
+        });
+        stops.setIndex(new StopIndex(trace.getStops()));
+        RouteGeometry geometry = trace.getRoute();
+        if (geometry != null) {
+            route.setRoute(geometry);
+            eta = new EtaPredictor(geometry, trace.getStops(),
+                    new SegmentTravelTimes(geometry.getLengthMeters(), SegmentTravelTimes.DEFAULT_BIN_METERS),
+                    TimeZone.getTimeZone("UTC"));
+        } else {
+            eta = null;
+        }
+        pipeline = new FixPipeline(256, Runnable::run)
+                .addStage("sampling", f -> {
+                    policy.onFix(f);
+                    return true;
+                })
+                .addStage("stops", f -> {
+                    stops.process(f);
+                    policy.setDistanceToNextStop(stops.getDistanceToNearestStop());
+                    return true;
+                })
+                .addStage("route", f -> {
+                    route.process(f);
+                    if (route.hasMatch()) {
+                        uplink.offerRouteProgress(route.getDistanceAlongMeters(), route.isOffRoute());
+                    }
+                    return true;
+                })
+                .addStage("eta", f -> {
+                    if (eta != null && eta.update(f.time, route.getDistanceAlongMeters(), route.isOffRoute())) {
+                        uplink.offerStopEtas(eta.toMap());
+                    }
+                    return true;
+                })
+                .addStage("filter", filter)
+                .addStage("upload", f -> {
+                    if (uplink.offer(f, f.time)) {
+                        uploaded++;
+                    }
+                    // Como en el servicio: el gasto cambia con cada envío, el plan se revisa con cada ubicación
+                    applyUploadPlan(f.time);
+                    uplink.flushIfDue(f.time);
+                    return true;
+                });
+    }
+
+    // Procesa una ubicación y devuelve el intervalo que pediría ahora al proveedor
+    long process(LocationFix location) {
+        pipeline.submit(location);
+        return policy.evaluate().intervalMs;
+    }
+
+    private void applyUploadPlan(long nowMs) {
+        scheduler.setBytesSent(uplink.getSentBytes());
+        UploadScheduler.Plan next = scheduler.evaluate(nowMs);
+        if (next != plan) {
+            plan = next;
+            uplink.setWindowMs(next.windowMs);
+            uplink.setMaxBatchSize(next.maxBatchSize);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.ubicacion.bench;
+
+import com.example.ubicacion.LocationUplink;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FleetSimulatorTest {
+
+    @Test
+    public void sameSeedGivesSameTraffic() {
+        FleetSimulator.Report first = FleetSimulator.run(4, 1, 3);
+        FleetSimulator.Report second = FleetSimulator.run(4, 1, 3);
+
+        assertEquals(first.fixesIn, second.fixesIn);
+        assertEquals(first.fixesUploaded, second.fixesUploaded);
+        assertEquals(first.writes, second.writes);
+        assertEquals(first.wireBytes, second.wireBytes);
+        assertEquals(first.p95Ms, second.p95Ms);
+        assertTrue(first.wireBytes != FleetSimulator.run(4, 1, 4).wireBytes);
+    }
+
+    @Test
+    public void reportsTrafficLatencyAndStops() {
+        FleetSimulator.Report report = FleetSimulator.run(6, 2, 7);
+
+        assertTrue(report.fixesIn > 0);
+        // El filtro y la fusión de puntos quietos dejan pasar menos de las que entran
+        assertTrue(report.fixesUploaded < report.fixesIn);
+        assertTrue(report.stopEvents > 0);
+        // Lotes: muchas menos escrituras que ubicaciones
+        assertTrue(report.writes < report.fixesIn / 2);
+        assertTrue(report.bytesPerFix() > 0);
+        // La latencia incluye la ventana del lote y la de la red simulada
+        assertTrue(report.p50Ms >= FleetSimulator.DEFAULT_LATENCY_MS);
+        assertTrue(report.p99Ms < 3 * 60 * 1000L);
+        assertTrue(report.fixesPerSecond() > 0);
+    }
+
+    @Test
+    public void fakeDatabaseAppliesWritesAfterLatency() {
+        FakeDatabase database = new FakeDatabase(100, 0, 1);
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("locations/u1/latitude", -12.0);
+        boolean[] acked = new boolean[1];
+        database.setNow(1000);
+        database.write(updates, success -> acked[0] = success);
+
+        assertEquals(0, database.deliver(1099));
+        assertNull(database.get("locations/u1/latitude"));
+        assertEquals(1, database.deliver(1100));
+        assertTrue(acked[0]);
+        assertEquals(-12.0, database.get("locations/u1/latitude"));
+        // {"locations/u1/latitude":-12.0} más la cabecera
+        assertEquals(LocationUplink.REQUEST_OVERHEAD_BYTES + 31, database.getWireBytes());
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.ubicacion.bench;
+
+import com.example.ubicacion.LocationFix;
+import com.example.ubicacion.LocationUplink;
+import com.example.ubicacion.RelayUplinkSink;
+import com.example.ubicacion.relay.FleetStore;
+import com.example.ubicacion.relay.RelayServer;
+import com.example.ubicacion.relay.RouteIndex;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+// De punta a punta: el LocationUplink de la app, por HTTP con RelayUplinkSink, hasta las
+// rutas del relay, sin escribir nada a mano en vehiculos/<uid>
+public class RelayUplinkTest {
+
+    private RelayServer relay;
+    private LocationUplink uplink;
+
+    @Before
+    public void setUp() throws IOException {
+        relay = new RelayServer(new FleetStore(), 0);
+        relay.start();
+        uplink = new LocationUplink(new RelayUplinkSink("http://127.0.0.1:" + relay.getPort()), "u1", "Bus 1");
+        uplink.setCompactTrail(true);
+    }
+
+    @After
+    public void tearDown() {
+        relay.stop();
+    }
+
+    @Test
+    public void serviceUplinkShowsUpInItsRoute() throws InterruptedException {
+        uplink.setRoute("emp", "r1");
+        send(new LocationFix(4.60, -74.08, 1000));
+        RouteIndex r1 = awaitVehicle("r1", 1000);
+        assertEquals(4.60, r1.get("u1").latitude, 1e-9);
+        assertEquals("Bus 1", r1.get("u1").name);
+
+        // Siguiente posición: llega como delta de la misma ruta
+        long version = r1.getVersion();
+        send(new LocationFix(4.61, -74.08, 2000));
+        awaitVehicle("r1", 2000);
+        RouteIndex.Delta delta = r1.deltasSince(version);
+        assertFalse(delta.reset);
+        assertEquals(1, delta.updated.size());
+
+        // Reasignado a otra ruta: sale de r1 y aparece en r2
+        uplink.setRoute("emp", "r2");
+        send(new LocationFix(4.62, -74.08, 3000));
+        awaitVehicle("r2", 3000);
+        assertNull(r1.get("u1"));
+        assertTrue(r1.deltasSince(version).removed.contains("u1"));
+    }
+
+    // flush() no sale mientras el envío anterior espera su confirmación
+    private void send(LocationFix fix) throws InterruptedException {
+        uplink.offer(fix, fix.time);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!uplink.flush(fix.time)) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    // El envío es asíncrono: se espera a que el relay tenga esa posición
+    private RouteIndex awaitVehicle(String ruta, long time) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            RouteIndex index = relay.getStore().getRoute("emp", ruta);
+            if (index != null && index.get("u1") != null && index.get("u1").time == time) {
+                return index;
+            }
+            Thread.sleep(10);
+        }
+        fail("El relay no recibió la posición de " + time + " en " + ruta);
+        return null;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.ubicacion.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import kotlin.Unit;
+
+// Tiempo hasta la primera pantalla (timeToInitialDisplay) y hasta MainActivity lista
+// (timeToFullDisplay, marcado con reportFullyDrawn) en arranque en frío y en caliente.
+// ./gradlew :macrobenchmark:connectedBenchmarkAndroidTest
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+
+    private static final String PACKAGE_NAME = "com.example.ubicacion";
+    private static final int ITERATIONS = 10;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void startupCold() {
+        measure(StartupMode.COLD);
+    }
+
+    @Test
+    public void startupWarm() {
+        measure(StartupMode.WARM);
+    }
+
+    private void measure(StartupMode mode) {
+        benchmarkRule.measureRepeated(
+                PACKAGE_NAME,
+                Collections.singletonList(new StartupTimingMetric()),
+                CompilationMode.DEFAULT,
+                mode,
+                ITERATIONS,
+                scope -> {
+                    scope.pressHome();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    // Espera a que SplashActivity dé paso a MainActivity y esta llame a reportFullyDrawn
+                    scope.startActivityAndWait();
+                    return Unit.INSTANCE;
+                });
+    }
+}
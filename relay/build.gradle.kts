@@ -0,0 +1,26 @@
+plugins {
+    java
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+application {
+    mainClass.set("com.example.ubicacion.relay.RelayServer")
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+// ./gradlew :relay:loadTest -Pargs="5000 100 30 5000"
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Simula una flota contra el relay y mide rendimiento y latencia."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("com.example.ubicacion.relay.LoadTest")
+    args = (project.findProperty("args") as String? ?: "").split(" ").filter { it.isNotBlank() }
+}
@@ -0,0 +1,215 @@
+package com.example.ubicacion.relay;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Estado del relay: une las posiciones de locations/<uid> con su ruta y mantiene un
+// RouteIndex por cada empresa/ruta. La ruta llega con la propia posición
+// (locations/<uid>/empresa y ruta, ver LocationUplink.setRoute) o desde vehiculos/<uid>.
+public class FleetStore {
+
+    private static final class VehicleState {
+        String routeKey;
+        String name;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        long time;
+    }
+
+    private final Map<String, VehicleState> vehicles = new ConcurrentHashMap<>();
+    private final Map<String, RouteIndex> routes = new ConcurrentHashMap<>();
+    private final AtomicLong acceptedUpdates = new AtomicLong();
+    private final AtomicLong ignoredPaths = new AtomicLong();
+
+    public static String routeKey(String empresa, String ruta) {
+        return empresa + "/" + ruta;
+    }
+
+    // Aplica una actualización multi-ruta como las de updateChildren: claves con "/" y valores
+    // escalares o mapas. Devuelve el número de vehículos tocados.
+    public int applyUpdate(Map<String, Object> updates) {
+        Map<String, Map<String, Object>> locations = new HashMap<>();
+        Map<String, Map<String, Object>> assignments = new HashMap<>();
+        for (Map.Entry<String, Object> entry : updates.entrySet()) {
+            String[] parts = trimSlashes(entry.getKey()).split("/");
+            if (parts.length >= 2 && parts[0].equals("locations")) {
+                collect(locations, parts, entry.getValue());
+            } else if (parts.length >= 2 && parts[0].equals("vehiculos")) {
+                collect(assignments, parts, entry.getValue());
+            } else {
+                // recorridos/ y el resto no afectan a la última posición
+                ignoredPaths.incrementAndGet();
+            }
+        }
+        for (Map.Entry<String, Map<String, Object>> entry : assignments.entrySet()) {
+            applyAssignment(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Map<String, Object>> entry : locations.entrySet()) {
+            applyLocation(entry.getKey(), entry.getValue());
+        }
+        acceptedUpdates.incrementAndGet();
+        return locations.size() + assignments.size();
+    }
+
+    public void assign(String uid, String empresa, String ruta, String name) {
+        VehicleState state = stateOf(uid);
+        synchronized (state) {
+            String newKey = empresa != null && ruta != null ? routeKey(empresa, ruta) : null;
+            if (name != null) {
+                state.name = name;
+            }
+            if (newKey == null ? state.routeKey == null : newKey.equals(state.routeKey)) {
+                return;
+            }
+            if (state.routeKey != null) {
+                routeIndex(state.routeKey).remove(uid);
+            }
+            state.routeKey = newKey;
+            publish(uid, state);
+        }
+    }
+
+    public void updatePosition(String uid, double latitude, double longitude, long time, String name) {
+        VehicleState state = stateOf(uid);
+        synchronized (state) {
+            if (time < state.time) {
+                return;
+            }
+            state.latitude = latitude;
+            state.longitude = longitude;
+            state.time = time;
+            if (name != null) {
+                state.name = name;
+            }
+            publish(uid, state);
+        }
+    }
+
+    // Retira de los índices los vehículos sin posición desde "olderThan"
+    public int expire(long olderThan) {
+        int removed = 0;
+        for (RouteIndex index : routes.values()) {
+            removed += index.expire(olderThan);
+        }
+        return removed;
+    }
+
+    public RouteIndex getRoute(String empresa, String ruta) {
+        return routes.get(routeKey(empresa, ruta));
+    }
+
+    public RouteIndex routeIndex(String key) {
+        RouteIndex index = routes.get(key);
+        if (index == null) {
+            index = routes.computeIfAbsent(key, RouteIndex::new);
+        }
+        return index;
+    }
+
+    public Collection<RouteIndex> getRoutes() {
+        return new ArrayList<>(routes.values());
+    }
+
+    public int getVehicleCount() {
+        return vehicles.size();
+    }
+
+    public long getAcceptedUpdates() {
+        return acceptedUpdates.get();
+    }
+
+    public long getIgnoredPaths() {
+        return ignoredPaths.get();
+    }
+
+    private VehicleState stateOf(String uid) {
+        VehicleState state = vehicles.get(uid);
+        if (state == null) {
+            state = vehicles.computeIfAbsent(uid, k -> new VehicleState());
+        }
+        return state;
+    }
+
+    private void publish(String uid, VehicleState state) {
+        if (state.routeKey != null && !Double.isNaN(state.latitude)) {
+            routeIndex(state.routeKey).upsert(uid, state.latitude, state.longitude, state.time, state.name);
+        }
+    }
+
+    private void applyAssignment(String uid, Map<String, Object> fields) {
+        Object activo = fields.get("activo");
+        if (Boolean.FALSE.equals(activo)) {
+            assign(uid, null, null, null);
+            return;
+        }
+        Object empresa = fields.get("empresa");
+        Object ruta = fields.get("ruta");
+        if (empresa != null && ruta != null) {
+            assign(uid, empresa.toString(), ruta.toString(), asString(fields.get("nombre")));
+        }
+    }
+
+    private void applyLocation(String uid, Map<String, Object> fields) {
+        Object latitude = fields.get("latitude");
+        Object longitude = fields.get("longitude");
+        if (!(latitude instanceof Number) || !(longitude instanceof Number)) {
+            ignoredPaths.incrementAndGet();
+            return;
+        }
+        Object empresa = fields.get("empresa");
+        Object ruta = fields.get("ruta");
+        if (empresa != null && ruta != null) {
+            assign(uid, empresa.toString(), ruta.toString(), null);
+        }
+        Object timestamp = fields.get("timestamp");
+        long time = timestamp instanceof Number ? ((Number) timestamp).longValue() : System.currentTimeMillis();
+        updatePosition(uid, ((Number) latitude).doubleValue(), ((Number) longitude).doubleValue(),
+                time, asString(fields.get("userName")));
+    }
+
+    // "locations/u1/latitude" -> u1 {latitude: v}; "locations/u1" -> u1 {mapa completo}
+    @SuppressWarnings("unchecked")
+    private static void collect(Map<String, Map<String, Object>> into, String[] parts, Object value) {
+        Map<String, Object> fields = into.get(parts[1]);
+        if (fields == null) {
+            fields = new HashMap<>();
+            into.put(parts[1], fields);
+        }
+        if (parts.length == 2 && value instanceof Map) {
+            fields.putAll((Map<String, Object>) value);
+        } else if (parts.length == 3) {
+            fields.put(parts[2], value);
+        }
+    }
+
+    private static String trimSlashes(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+
+    private static String asString(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    static List<Map<String, Object>> toMaps(Collection<RouteIndex.Vehicle> vehicles) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (RouteIndex.Vehicle vehicle : vehicles) {
+            Map<String, Object> map = vehicle.toMap();
+            map.put("uid", vehicle.uid);
+            out.add(map);
+        }
+        return out;
+    }
+}
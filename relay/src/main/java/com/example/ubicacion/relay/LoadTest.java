@@ -0,0 +1,233 @@
+package com.example.ubicacion.relay;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Simula una flota enviando el mismo tipo de actualización que LocationUplink y mide
+// cuántas por segundo aguanta el relay y cuánto tarda cada una.
+//
+// Uso: LoadTest [vehiculos] [rutas] [segundos] [intervaloMs] [url]
+// Sin url se prueba el relay en el mismo proceso, pasando igualmente por HTTP en local.
+public class LoadTest {
+
+    public static final class Result {
+        public final long requests;
+        public final long errors;
+        public final double seconds;
+        public final long p50Micros;
+        public final long p95Micros;
+        public final long p99Micros;
+        public final long maxMicros;
+
+        Result(long requests, long errors, double seconds, long[] latencies) {
+            this.requests = requests;
+            this.errors = errors;
+            this.seconds = seconds;
+            Arrays.sort(latencies);
+            p50Micros = percentile(latencies, 0.50);
+            p95Micros = percentile(latencies, 0.95);
+            p99Micros = percentile(latencies, 0.99);
+            maxMicros = latencies.length > 0 ? latencies[latencies.length - 1] : 0;
+        }
+
+        public double throughput() {
+            return seconds > 0 ? requests / seconds : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d peticiones (%d errores) en %.1f s = %.0f/s; latencia p50 %d us, p95 %d us, p99 %d us, max %d us",
+                    requests, errors, seconds, throughput(), p50Micros, p95Micros, p99Micros, maxMicros);
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+        }
+    }
+
+    interface Target {
+        void send(Map<String, Object> updates) throws IOException;
+    }
+
+    private final int vehicles;
+    private final int routes;
+    private final long intervalMs;
+    private final Target target;
+
+    public LoadTest(int vehicles, int routes, long intervalMs, Target target) {
+        this.vehicles = vehicles;
+        this.routes = routes;
+        this.intervalMs = intervalMs;
+        this.target = target;
+    }
+
+    // Asigna cada vehículo a una ruta, como haría el panel de administración
+    public void seed() throws IOException {
+        Map<String, Object> updates = new HashMap<>();
+        for (int i = 0; i < vehicles; i++) {
+            int route = i % routes;
+            updates.put("vehiculos/bus" + i + "/empresa", "empresa" + (route % 10));
+            updates.put("vehiculos/bus" + i + "/ruta", "ruta" + route);
+            updates.put("vehiculos/bus" + i + "/activo", true);
+            if (updates.size() >= 3000) {
+                target.send(updates);
+                updates = new HashMap<>();
+            }
+        }
+        if (!updates.isEmpty()) {
+            target.send(updates);
+        }
+    }
+
+    public Result run(long durationMs, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicLong requests = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long[][] latencies = new long[threads][];
+        int[] counts = new int[threads];
+        CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMs);
+
+        for (int t = 0; t < threads; t++) {
+            final int worker = t;
+            latencies[t] = new long[1024];
+            pool.execute(() -> {
+                Random random = new Random(worker);
+                // Cada hilo mueve su parte de la flota; las posiciones parten de Bogotá
+                int from = worker * vehicles / threads;
+                int to = (worker + 1) * vehicles / threads;
+                double[] lat = new double[to - from];
+                double[] lon = new double[to - from];
+                for (int i = 0; i < lat.length; i++) {
+                    lat[i] = 4.60 + random.nextDouble() * 0.15;
+                    lon[i] = -74.15 + random.nextDouble() * 0.10;
+                }
+                long tickNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+                long nextTick = System.nanoTime();
+                try {
+                    while (System.nanoTime() < end) {
+                        for (int i = 0; i < lat.length && System.nanoTime() < end; i++) {
+                            lat[i] += (random.nextDouble() - 0.5) * 0.0004;
+                            lon[i] += (random.nextDouble() - 0.5) * 0.0004;
+                            Map<String, Object> updates = new LinkedHashMap<>();
+                            String uid = "bus" + (from + i);
+                            updates.put("locations/" + uid + "/latitude", lat[i]);
+                            updates.put("locations/" + uid + "/longitude", lon[i]);
+                            updates.put("locations/" + uid + "/userName", uid);
+                            updates.put("locations/" + uid + "/timestamp", System.currentTimeMillis());
+                            long sent = System.nanoTime();
+                            try {
+                                target.send(updates);
+                            } catch (IOException e) {
+                                errors.incrementAndGet();
+                            }
+                            long micros = (System.nanoTime() - sent) / 1000;
+                            if (counts[worker] == latencies[worker].length) {
+                                latencies[worker] = Arrays.copyOf(latencies[worker], counts[worker] * 2);
+                            }
+                            latencies[worker][counts[worker]++] = micros;
+                            requests.incrementAndGet();
+                        }
+                        nextTick += tickNanos;
+                        long sleep = nextTick - System.nanoTime();
+                        if (sleep > 0) {
+                            Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        pool.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(latencies[t], 0, all, offset, counts[t]);
+            offset += counts[t];
+        }
+        return new Result(requests.get(), errors.get(), seconds, all);
+    }
+
+    static Target http(String baseUrl) {
+        final String url = baseUrl.endsWith("/") ? baseUrl + ".json" : baseUrl + "/.json";
+        return updates -> {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            // HttpURLConnection no admite PATCH
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(Json.write(updates).getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    while (in.read() != -1) {
+                        // vaciar para reutilizar la conexión
+                    }
+                }
+            }
+            if (status != 200) {
+                throw new IOException("HTTP " + status);
+            }
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        int vehicles = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int routes = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 30;
+        long intervalMs = args.length > 3 ? Long.parseLong(args[3]) : 5000;
+
+        RelayServer local = null;
+        String url;
+        if (args.length > 4) {
+            url = args[4];
+        } else {
+            local = new RelayServer(new FleetStore(), 0);
+            local.start();
+            url = "http://127.0.0.1:" + local.getPort();
+        }
+
+        LoadTest test = new LoadTest(vehicles, routes, intervalMs, http(url));
+        test.seed();
+        System.out.println(vehicles + " vehículos en " + routes + " rutas, una posición cada "
+                + intervalMs + " ms, contra " + url);
+        Result result = test.run(TimeUnit.SECONDS.toMillis(seconds), Math.min(64, Math.max(4, vehicles / 100)));
+        System.out.println(result);
+        if (local != null) {
+            System.out.println("Vehículos en el relay: " + local.getStore().getVehicleCount()
+                    + ", rutas: " + local.getStore().getRoutes().size());
+            local.stop();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.ubicacion.relay;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Sustituto local de la base de datos para la flota.
+//   PATCH /.json                                 actualización multi-ruta (igual que updateChildren)
+//   GET /routes/<empresa>/<ruta>                 foto de la ruta
+//   GET /routes/<empresa>/<ruta>/deltas?since=N  cambios desde la versión N (waitMs para long polling)
+//   GET /routes/<empresa>/<ruta>/nearby?lat=&lon=&radius=
+//   GET /stats
+public class RelayServer {
+
+    public static final int DEFAULT_PORT = 8089;
+    static final long MAX_WAIT_MS = 30000;
+    static final long STALE_AFTER_MS = 10 * 60 * 1000L;
+
+    private final FleetStore store;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService janitor;
+
+    public RelayServer(FleetStore store, int port) throws IOException {
+        this.store = store;
+        // Sin esto cada respuesta pequeña espera ~40 ms por el algoritmo de Nagle
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        // Las peticiones de long polling ocupan un hilo mientras esperan
+        executor = Executors.newCachedThreadPool();
+        janitor = Executors.newSingleThreadScheduledExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        janitor.scheduleWithFixedDelay(
+                () -> store.expire(System.currentTimeMillis() - STALE_AFTER_MS), 1, 1, TimeUnit.MINUTES);
+    }
+
+    public void stop() {
+        server.stop(0);
+        janitor.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public FleetStore getStore() {
+        return store;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String override = exchange.getRequestHeaders().getFirst("X-HTTP-Method-Override");
+            if ("POST".equals(method) && override != null) {
+                // Igual que la API REST de Firebase: POST + cabecera para clientes sin PATCH
+                method = override;
+            }
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+            if (path.endsWith(".json") && "PATCH".equals(method)) {
+                Object body = Json.parse(readBody(exchange.getRequestBody()));
+                if (!(body instanceof Map)) {
+                    send(exchange, 400, error("Se esperaba un objeto"));
+                    return;
+                }
+                store.applyUpdate(prefix(path, (Map<String, Object>) body));
+                send(exchange, 200, "{}");
+                return;
+            }
+            if (!"GET".equals(method)) {
+                send(exchange, 405, error("Método no permitido"));
+                return;
+            }
+            if (path.equals("/stats")) {
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("vehicles", store.getVehicleCount());
+                stats.put("routes", store.getRoutes().size());
+                stats.put("updates", store.getAcceptedUpdates());
+                stats.put("ignoredPaths", store.getIgnoredPaths());
+                send(exchange, 200, Json.write(stats));
+                return;
+            }
+
+            String[] parts = path.split("/");
+            // "", "routes", empresa, ruta, [accion]
+            if (parts.length < 4 || !parts[1].equals("routes")) {
+                send(exchange, 404, error("Ruta desconocida"));
+                return;
+            }
+            RouteIndex index = store.routeIndex(FleetStore.routeKey(parts[2], parts[3]));
+            String action = parts.length > 4 ? parts[4] : "";
+            switch (action) {
+                case "":
+                    send(exchange, 200, Json.write(snapshot(index)));
+                    break;
+                case "deltas":
+                    send(exchange, 200, Json.write(deltas(index,
+                            parseLong(query.get("since"), 0),
+                            Math.min(MAX_WAIT_MS, parseLong(query.get("waitMs"), 0)))));
+                    break;
+                case "nearby":
+                    List<RouteIndex.Vehicle> found = index.nearby(
+                            Double.parseDouble(query.get("lat")),
+                            Double.parseDouble(query.get("lon")),
+                            query.containsKey("radius") ? Double.parseDouble(query.get("radius")) : 1000);
+                    send(exchange, 200, Json.write(FleetStore.toMaps(found)));
+                    break;
+                default:
+                    send(exchange, 404, error("Ruta desconocida"));
+            }
+        } catch (IllegalArgumentException | NullPointerException e) {
+            send(exchange, 400, error(String.valueOf(e.getMessage())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, error("Interrumpido"));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    static Map<String, Object> snapshot(RouteIndex index) {
+        // deltasSince(-1) siempre devuelve la foto completa junto con su versión
+        RouteIndex.Delta full = index.deltasSince(-1);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("version", full.version);
+        out.put("vehicles", byUid(full.updated));
+        return out;
+    }
+
+    static Map<String, Object> deltas(RouteIndex index, long since, long waitMs) throws InterruptedException {
+        if (waitMs > 0) {
+            index.awaitChange(since, waitMs);
+        }
+        RouteIndex.Delta delta = index.deltasSince(since);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("version", delta.version);
+        out.put("reset", delta.reset);
+        out.put("updated", byUid(delta.updated));
+        out.put("removed", delta.removed);
+        return out;
+    }
+
+    private static Map<String, Object> byUid(List<RouteIndex.Vehicle> vehicles) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (RouteIndex.Vehicle vehicle : vehicles) {
+            out.put(vehicle.uid, vehicle.toMap());
+        }
+        return out;
+    }
+
+    // PATCH /locations/u1.json {latitude: ..} equivale a PATCH /.json {"locations/u1/latitude": ..}
+    private static Map<String, Object> prefix(String path, Map<String, Object> body) {
+        String base = path.substring(0, path.length() - ".json".length());
+        while (base.startsWith("/")) {
+            base = base.substring(1);
+        }
+        if (base.isEmpty()) {
+            return body;
+        }
+        Map<String, Object> out = new HashMap<>();
+        for (Map.Entry<String, Object> entry : body.entrySet()) {
+            out.put(base + "/" + entry.getKey(), entry.getValue());
+        }
+        return out;
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String error(String message) {
+        Map<String, Object> out = new HashMap<>();
+        out.put("error", message);
+        return Json.write(out);
+    }
+
+    private static Map<String, String> parseQuery(String raw) throws IOException {
+        Map<String, String> query = new HashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            String value = eq >= 0 ? pair.substring(eq + 1) : "";
+            query.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return query;
+    }
+
+    private static long parseLong(String value, long fallback) {
+        return value == null || value.isEmpty() ? fallback : Long.parseLong(value);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        RelayServer relay = new RelayServer(new FleetStore(), port);
+        relay.start();
+        System.out.println("Relay escuchando en el puerto " + relay.getPort());
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.ubicacion.relay;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Última posición de cada vehículo de una ruta, con una rejilla espacial para búsquedas
+// por cercanía y un número de versión para servir diferencias a los suscriptores.
+public class RouteIndex {
+
+    static final double CELL_DEGREES = 0.005; // ~550 m
+    private static final int MAX_TOMBSTONES = 1024;
+    // Radio máximo de una búsqueda por cercanía; más que esto es pedir la ruta entera
+    static final double MAX_NEARBY_RADIUS_METERS = 50000;
+
+    public static final class Vehicle {
+        public final String uid;
+        public final double latitude;
+        public final double longitude;
+        public final long time;
+        public final String name;
+        public final long version;
+
+        Vehicle(String uid, double latitude, double longitude, long time, String name, long version) {
+            this.uid = uid;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.time = time;
+            this.name = name;
+            this.version = version;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("latitude", latitude);
+            map.put("longitude", longitude);
+            map.put("timestamp", time);
+            map.put("userName", name);
+            return map;
+        }
+    }
+
+    public static final class Delta {
+        public final long version;
+        // Si es true, el suscriptor se quedó demasiado atrás y "updated" es la foto completa
+        public final boolean reset;
+        public final List<Vehicle> updated;
+        public final List<String> removed;
+
+        Delta(long version, boolean reset, List<Vehicle> updated, List<String> removed) {
+            this.version = version;
+            this.reset = reset;
+            this.updated = updated;
+            this.removed = removed;
+        }
+    }
+
+    private static final class Tombstone {
+        final String uid;
+        final long version;
+
+        Tombstone(String uid, long version) {
+            this.uid = uid;
+            this.version = version;
+        }
+    }
+
+    public final String key;
+    private final Map<String, Vehicle> vehicles = new HashMap<>();
+    private final Map<Long, Set<String>> cells = new HashMap<>();
+    private final ArrayDeque<Tombstone> tombstones = new ArrayDeque<>();
+    private long version;
+    private long oldestDiffableVersion;
+
+    public RouteIndex(String key) {
+        this.key = key;
+    }
+
+    public synchronized void upsert(String uid, double latitude, double longitude, long time, String name) {
+        Vehicle previous = vehicles.get(uid);
+        if (previous != null) {
+            if (time < previous.time) {
+                // Llegó tarde: ya tenemos una posición más reciente
+                return;
+            }
+            if (name == null) {
+                name = previous.name;
+            }
+            removeFromCell(previous);
+        }
+        Vehicle vehicle = new Vehicle(uid, latitude, longitude, time, name, ++version);
+        vehicles.put(uid, vehicle);
+        Set<String> cell = cells.get(cellKey(latitude, longitude));
+        if (cell == null) {
+            cell = new HashSet<>();
+            cells.put(cellKey(latitude, longitude), cell);
+        }
+        cell.add(uid);
+        notifyAll();
+    }
+
+    public synchronized void remove(String uid) {
+        Vehicle previous = vehicles.remove(uid);
+        if (previous == null) {
+            return;
+        }
+        removeFromCell(previous);
+        tombstones.addLast(new Tombstone(uid, ++version));
+        while (tombstones.size() > MAX_TOMBSTONES) {
+            oldestDiffableVersion = tombstones.removeFirst().version;
+        }
+        notifyAll();
+    }
+
+    // Quita los vehículos sin noticias desde antes de "olderThan"; devuelve cuántos
+    public synchronized int expire(long olderThan) {
+        List<String> stale = new ArrayList<>();
+        for (Vehicle vehicle : vehicles.values()) {
+            if (vehicle.time < olderThan) {
+                stale.add(vehicle.uid);
+            }
+        }
+        for (String uid : stale) {
+            remove(uid);
+        }
+        return stale.size();
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized int size() {
+        return vehicles.size();
+    }
+
+    public synchronized Vehicle get(String uid) {
+        return vehicles.get(uid);
+    }
+
+    public synchronized List<Vehicle> snapshot() {
+        return new ArrayList<>(vehicles.values());
+    }
+
+    public synchronized Delta deltasSince(long since) {
+        if (since < oldestDiffableVersion || since > version) {
+            return new Delta(version, true, snapshot(), new ArrayList<>());
+        }
+        List<Vehicle> updated = new ArrayList<>();
+        for (Vehicle vehicle : vehicles.values()) {
+            if (vehicle.version > since) {
+                updated.add(vehicle);
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        Iterator<Tombstone> it = tombstones.descendingIterator();
+        while (it.hasNext()) {
+            Tombstone tombstone = it.next();
+            if (tombstone.version <= since) {
+                break;
+            }
+            if (!vehicles.containsKey(tombstone.uid)) {
+                removed.add(tombstone.uid);
+            }
+        }
+        return new Delta(version, false, updated, removed);
+    }
+
+    // Espera hasta que haya cambios posteriores a "since" o venza el plazo (long polling)
+    public synchronized boolean awaitChange(long since, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (version <= since) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    public synchronized List<Vehicle> nearby(double latitude, double longitude, double radiusMeters) {
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Coordenadas fuera de rango");
+        }
+        if (!(radiusMeters >= 0)) {
+            throw new IllegalArgumentException("Radio inválido");
+        }
+        radiusMeters = Math.min(radiusMeters, MAX_NEARBY_RADIUS_METERS);
+        List<Vehicle> result = new ArrayList<>();
+        // Cerca de los polos una celda mide casi 0 m de ancho: el radio en celdas se acota
+        double cellMeters = CELL_DEGREES * 111320.0 * Math.max(Math.cos(Math.toRadians(latitude)), 1e-6);
+        long cellRadius = (long) Math.ceil(radiusMeters / cellMeters);
+        long cellsToVisit = (2 * cellRadius + 1) * (2 * cellRadius + 1);
+        if (cellsToVisit > vehicles.size()) {
+            // Más celdas que vehículos: recorrerlos todos es más barato que la rejilla
+            for (Vehicle vehicle : vehicles.values()) {
+                if (distanceMeters(latitude, longitude, vehicle.latitude, vehicle.longitude) <= radiusMeters) {
+                    result.add(vehicle);
+                }
+            }
+            return result;
+        }
+        long centerLat = (long) Math.floor(latitude / CELL_DEGREES);
+        long centerLon = (long) Math.floor(longitude / CELL_DEGREES);
+        for (long dLat = -cellRadius; dLat <= cellRadius; dLat++) {
+            for (long dLon = -cellRadius; dLon <= cellRadius; dLon++) {
+                Set<String> cell = cells.get(pack(centerLat + dLat, centerLon + dLon));
+                if (cell == null) {
+                    continue;
+                }
+                for (String uid : cell) {
+                    Vehicle vehicle = vehicles.get(uid);
+                    if (distanceMeters(latitude, longitude, vehicle.latitude, vehicle.longitude) <= radiusMeters) {
+                        result.add(vehicle);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private void removeFromCell(Vehicle vehicle) {
+        long cellKey = cellKey(vehicle.latitude, vehicle.longitude);
+        Set<String> cell = cells.get(cellKey);
+        if (cell != null) {
+            cell.remove(vehicle.uid);
+            if (cell.isEmpty()) {
+                cells.remove(cellKey);
+            }
+        }
+    }
+
+    static long cellKey(double latitude, double longitude) {
+        return pack((long) Math.floor(latitude / CELL_DEGREES), (long) Math.floor(longitude / CELL_DEGREES));
+    }
+
+    private static long pack(long row, long column) {
+        return (row << 32) ^ (column & 0xFFFFFFFFL);
+    }
+
+    static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * 6371008.8 * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.ubicacion.relay;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RelayServerTest {
+
+    private RelayServer relay;
+    private String base;
+
+    @Before
+    public void setUp() throws IOException {
+        relay = new RelayServer(new FleetStore(), 0);
+        relay.start();
+        base = "http://127.0.0.1:" + relay.getPort();
+    }
+
+    @After
+    public void tearDown() {
+        relay.stop();
+    }
+
+    // Mismo formato que LocationUplink.buildUpdates
+    private static Map<String, Object> uplink(String uid, double lat, double lon, long time) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("locations/" + uid + "/latitude", lat);
+        updates.put("locations/" + uid + "/longitude", lon);
+        updates.put("locations/" + uid + "/userName", "Bus " + uid);
+        updates.put("locations/" + uid + "/timestamp", time);
+        updates.put("recorridos/" + uid, "AQID");
+        return updates;
+    }
+
+    @Test
+    public void joinsPositionsWithRouteAssignment() throws IOException {
+        // La posición puede llegar antes que la asignación
+        LoadTest.http(base).send(uplink("u1", 4.60, -74.08, 1000));
+        Map<String, Object> assignment = new HashMap<>();
+        assignment.put("vehiculos/u1/empresa", "emp");
+        assignment.put("vehiculos/u1/ruta", "r1");
+        LoadTest.http(base).send(assignment);
+
+        Map<?, ?> snapshot = (Map<?, ?>) Json.parse(get("/routes/emp/r1"));
+        Map<?, ?> vehicles = (Map<?, ?>) snapshot.get("vehicles");
+        assertEquals(1, vehicles.size());
+        Map<?, ?> u1 = (Map<?, ?>) vehicles.get("u1");
+        assertEquals(4.60, ((Number) u1.get("latitude")).doubleValue(), 1e-9);
+        assertEquals("Bus u1", u1.get("userName"));
+
+        // Cambio de ruta: sale de r1 y aparece en r2
+        assignment.put("vehiculos/u1/ruta", "r2");
+        LoadTest.http(base).send(assignment);
+        Map<?, ?> delta = (Map<?, ?>) Json.parse(get("/routes/emp/r1/deltas?since=" + snapshot.get("version")));
+        assertEquals(Boolean.FALSE, delta.get("reset"));
+        assertTrue(((List<?>) delta.get("removed")).contains("u1"));
+        assertEquals(1, ((Map<?, ?>) ((Map<?, ?>) Json.parse(get("/routes/emp/r2"))).get("vehicles")).size());
+    }
+
+    @Test
+    public void longPollReturnsOnNextUpdate() throws Exception {
+        relay.getStore().assign("u1", "emp", "r1", null);
+        relay.getStore().updatePosition("u1", 4.60, -74.08, 1000, null);
+        long version = relay.getStore().getRoute("emp", "r1").getVersion();
+
+        Thread writer = new Thread(() -> relay.getStore().updatePosition("u1", 4.61, -74.08, 2000, null));
+        long start = System.currentTimeMillis();
+        writer.start();
+        Map<?, ?> delta = (Map<?, ?>) Json.parse(get("/routes/emp/r1/deltas?since=" + version + "&waitMs=10000"));
+        writer.join();
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertEquals(1, ((Map<?, ?>) delta.get("updated")).size());
+    }
+
+    @Test
+    public void nearbyAndBadRequests() throws IOException {
+        relay.getStore().assign("u1", "emp", "r1", null);
+        relay.getStore().updatePosition("u1", 4.60, -74.08, 1000, null);
+        assertEquals(1, ((List<?>) Json.parse(get("/routes/emp/r1/nearby?lat=4.601&lon=-74.08&radius=300"))).size());
+        assertEquals(400, status("/routes/emp/r1/nearby?lat=x&lon=0"));
+        assertEquals(400, status("/routes/emp/r1/nearby?lat=95&lon=0"));
+        assertEquals(400, status("/routes/emp/r1/nearby?lat=0&lon=0&radius=-5"));
+        assertEquals(404, status("/otra"));
+    }
+
+    private String get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(base + path).openConnection();
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                out.write(b);
+            }
+            return out.toString("UTF-8");
+        }
+    }
+
+    private int status(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(base + path).openConnection();
+        return connection.getResponseCode();
+    }
+}
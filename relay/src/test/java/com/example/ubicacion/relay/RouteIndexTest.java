@@ -0,0 +1,117 @@
+package com.example.ubicacion.relay;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RouteIndexTest {
+
+    @Test
+    public void deltasOnlyContainChangesSinceVersion() {
+        RouteIndex index = new RouteIndex("emp/r1");
+        index.upsert("a", 4.60, -74.08, 1000, "A");
+        index.upsert("b", 4.61, -74.08, 1000, "B");
+        long version = index.getVersion();
+
+        index.upsert("a", 4.602, -74.08, 2000, null);
+        index.remove("b");
+
+        RouteIndex.Delta delta = index.deltasSince(version);
+        assertFalse(delta.reset);
+        assertEquals(1, delta.updated.size());
+        assertEquals("a", delta.updated.get(0).uid);
+        // El nombre se conserva si la actualización no lo trae
+        assertEquals("A", delta.updated.get(0).name);
+        assertEquals(1, delta.removed.size());
+        assertEquals("b", delta.removed.get(0));
+    }
+
+    @Test
+    public void latePositionIsIgnored() {
+        RouteIndex index = new RouteIndex("emp/r1");
+        index.upsert("a", 4.60, -74.08, 2000, "A");
+        index.upsert("a", 4.70, -74.08, 1000, "A");
+        assertEquals(4.60, index.get("a").latitude, 1e-9);
+        assertEquals(1, index.getVersion());
+    }
+
+    @Test
+    public void subscriberTooFarBehindGetsReset() {
+        RouteIndex index = new RouteIndex("emp/r1");
+        for (int i = 0; i < 1100; i++) {
+            index.upsert("v" + i, 4.6, -74.0, i, null);
+            index.remove("v" + i);
+        }
+        index.upsert("x", 4.6, -74.0, 1, null);
+        RouteIndex.Delta delta = index.deltasSince(1);
+        assertTrue(delta.reset);
+        assertEquals(1, delta.updated.size());
+    }
+
+    @Test
+    public void nearbyUsesDistanceNotJustCells() {
+        RouteIndex index = new RouteIndex("emp/r1");
+        index.upsert("close", 4.6000, -74.0800, 1, null);
+        index.upsert("edge", 4.6040, -74.0800, 1, null);   // ~445 m
+        index.upsert("far", 4.6300, -74.0800, 1, null);    // ~3.3 km
+        List<RouteIndex.Vehicle> found = index.nearby(4.6000, -74.0800, 500);
+        assertEquals(2, found.size());
+        assertEquals(1, index.nearby(4.6000, -74.0800, 100).size());
+        assertEquals(3, index.nearby(4.6000, -74.0800, 5000).size());
+    }
+
+    @Test
+    public void nearbyRejectsBadInputAndBoundsTheWork() {
+        RouteIndex index = new RouteIndex("emp/r1");
+        index.upsert("a", 4.6000, -74.0800, 1, null);
+        index.upsert("b", 89.9999, 10.0, 1, null);
+        // Radio enorme o junto al polo: sin recorrer millones de celdas vacías
+        assertEquals(1, index.nearby(4.6, -74.08, 1e12).size());
+        assertEquals(1, index.nearby(89.9999, 10.0, 1000).size());
+        assertEquals("b", index.nearby(89.9, 0, RouteIndex.MAX_NEARBY_RADIUS_METERS * 1000).get(0).uid);
+
+        // Con más vehículos que celdas se usa la rejilla y el resultado es el mismo
+        for (int i = 0; i < 200; i++) {
+            index.upsert("f" + i, 4.5 + i * 0.001, -74.0800, 1, null);
+        }
+        assertEquals(10, index.nearby(4.6, -74.08, 500).size());
+
+        for (double[] bad : new double[][]{{91, 0, 10}, {0, -181, 10}, {Double.NaN, 0, 10}, {0, 0, -1}, {0, 0, Double.NaN}}) {
+            try {
+                index.nearby(bad[0], bad[1], bad[2]);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void expireRemovesStaleVehicles() {
+        RouteIndex index = new RouteIndex("emp/r1");
+        index.upsert("old", 4.6, -74.0, 1000, null);
+        index.upsert("new", 4.6, -74.0, 5000, null);
+        assertEquals(1, index.expire(2000));
+        assertNull(index.get("old"));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void awaitChangeWakesOnUpdate() throws Exception {
+        RouteIndex index = new RouteIndex("emp/r1");
+        Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            index.upsert("a", 4.6, -74.0, 1, null);
+        });
+        writer.start();
+        long start = System.currentTimeMillis();
+        assertTrue(index.awaitChange(0, 5000));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertFalse(index.awaitChange(index.getVersion(), 20));
+        writer.join();
+    }
+}
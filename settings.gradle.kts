@@ -21,4 +21,7 @@ dependencyResolutionManagement {
 
 rootProject.name = "Ubicacion"
 include(":app")
+include(":relay")
+include(":macrobenchmark")
+include(":bench")
  
\ No newline at end of file